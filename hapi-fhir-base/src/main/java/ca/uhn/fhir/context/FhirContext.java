@@ -26,7 +26,6 @@ import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
-import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
@@ -88,7 +87,7 @@ public class FhirContext {
 	private HapiLocalizer myLocalizer = new HapiLocalizer();
 	private volatile Map<String, BaseRuntimeElementDefinition<?>> myNameToElementDefinition = Collections.emptyMap();
 	private volatile Map<String, RuntimeResourceDefinition> myNameToResourceDefinition = Collections.emptyMap();
-	private volatile Map<String, Class<? extends IBaseResource>> myNameToResourceType;
+	private volatile ModelIndex myModelIndex;
 	private volatile INarrativeGenerator myNarrativeGenerator;
 	private volatile IParserErrorHandler myParserErrorHandler = new LenientErrorHandler();
 	private ParserOptions myParserOptions = new ParserOptions();
@@ -97,7 +96,7 @@ public class FhirContext {
 	private volatile IRestfulClientFactory myRestfulClientFactory;
 	private volatile RuntimeChildUndeclaredExtensionDefinition myRuntimeChildUndeclaredExtensionDefinition;
 	private IContextValidationSupport<?, ?, ?, ?, ?, ?> myValidationSupport;
-	private Map<FhirVersionEnum, Map<String, Class<? extends IBaseResource>>> myVersionToNameToResourceType = Collections.emptyMap();
+	private Map<FhirVersionEnum, ModelIndex> myVersionToModelIndex = Collections.emptyMap();
 
 	/**
 	 * @deprecated It is recommended that you use one of the static initializer methods instead
@@ -397,19 +396,17 @@ public class FhirContext {
 			return getResourceDefinition(theResourceName);
 		}
 
-		Map<String, Class<? extends IBaseResource>> nameToType = myVersionToNameToResourceType.get(theVersion);
-		if (nameToType == null) {
-			nameToType = new HashMap<>();
-			Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> existing = new HashMap<>();
-			ModelScanner.scanVersionPropertyFile(null, nameToType, theVersion, existing);
+		ModelIndex modelIndex = myVersionToModelIndex.get(theVersion);
+		if (modelIndex == null) {
+			modelIndex = new ModelIndex(theVersion.getVersionImplementation());
 
-			Map<FhirVersionEnum, Map<String, Class<? extends IBaseResource>>> newVersionToNameToResourceType = new HashMap<>();
-			newVersionToNameToResourceType.putAll(myVersionToNameToResourceType);
-			newVersionToNameToResourceType.put(theVersion, nameToType);
-			myVersionToNameToResourceType = newVersionToNameToResourceType;
+			Map<FhirVersionEnum, ModelIndex> newVersionToModelIndex = new HashMap<>();
+			newVersionToModelIndex.putAll(myVersionToModelIndex);
+			newVersionToModelIndex.put(theVersion, modelIndex);
+			myVersionToModelIndex = newVersionToModelIndex;
 		}
 
-		Class<? extends IBaseResource> resourceType = nameToType.get(theResourceName.toLowerCase());
+		Class<? extends IBaseResource> resourceType = modelIndex.getResourceType(theResourceName.toLowerCase());
 		if (resourceType == null) {
 			throw new DataFormatException(createUnknownResourceNameError(theResourceName, theVersion));
 		}
@@ -444,7 +441,7 @@ public class FhirContext {
 		RuntimeResourceDefinition retVal = myNameToResourceDefinition.get(resourceName);
 
 		if (retVal == null) {
-			Class<? extends IBaseResource> clazz = myNameToResourceType.get(resourceName.toLowerCase());
+			Class<? extends IBaseResource> clazz = getModelIndex().getResourceType(resourceName);
 			if (clazz == null) {
 				// ***********************************************************************
 				// Multiple spots in HAPI FHIR and Smile CDR depend on DataFormatException
@@ -486,19 +483,7 @@ public class FhirContext {
 		Set<String> resourceNames = new HashSet<>();
 
 		if (myNameToResourceDefinition.isEmpty()) {
-			Properties props = new Properties();
-			try {
-				props.load(myVersion.getFhirVersionPropertiesFile());
-			} catch (IOException theE) {
-				throw new ConfigurationException("Failed to load version properties file");
-			}
-			Enumeration<?> propNames = props.propertyNames();
-			while (propNames.hasMoreElements()) {
-				String next = (String) propNames.nextElement();
-				if (next.startsWith("resource.")) {
-					resourceNames.add(next.substring("resource.".length()).trim());
-				}
-			}
+			resourceNames.addAll(getModelIndex().getResourceNames());
 		}
 
 		for (RuntimeResourceDefinition next : myNameToResourceDefinition.values()) {
@@ -778,7 +763,7 @@ public class FhirContext {
 			myCustomTypes = null;
 		}
 
-		ModelScanner scanner = new ModelScanner(this, myVersion.getVersion(), myClassToElementDefinition, typesToScan);
+		ModelScanner scanner = new ModelScanner(this, myVersion.getVersion(), getModelIndex(), myClassToElementDefinition, typesToScan);
 		if (myRuntimeChildUndeclaredExtensionDefinition == null) {
 			myRuntimeChildUndeclaredExtensionDefinition = scanner.getRuntimeChildUndeclaredExtensionDefinition();
 		}
@@ -821,8 +806,6 @@ public class FhirContext {
 		myIdToResourceDefinition = idToElementDefinition;
 		myNameToResourceDefinition = nameToResourceDefinition;
 
-		myNameToResourceType = scanner.getNameToResourceType();
-
 		myInitialized = true;
 		return classToElementDefinition;
 	}
@@ -885,6 +868,25 @@ public class FhirContext {
 		return resTypes;
 	}
 
+	/**
+	 * Returns the index of built-in model classes for this context's version. The
+	 * index is only read once per context, and resource classes are only loaded
+	 * as they are needed.
+	 */
+	private ModelIndex getModelIndex() {
+		ModelIndex retVal = myModelIndex;
+		if (retVal == null) {
+			synchronized (this) {
+				retVal = myModelIndex;
+				if (retVal == null) {
+					retVal = new ModelIndex(myVersion);
+					myModelIndex = retVal;
+				}
+			}
+		}
+		return retVal;
+	}
+
 	private void validateInitialized() {
 		// See #610
 		if (!myInitialized) {
@@ -0,0 +1,141 @@
+package ca.uhn.fhir.context;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.model.api.IFhirVersion;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the model classes for a single FHIR version, as listed in the
+ * <code>fhirversion.properties</code> file which is generated at build time for
+ * each structures module.
+ * <p>
+ * The index is read once, and only holds class names. Resource classes are
+ * only loaded the first time they are actually requested, so that creating a
+ * context and working with a handful of resource types does not require every
+ * resource class in the structures JAR to be loaded and initialized.
+ * </p>
+ */
+class ModelIndex {
+
+	private final FhirVersionEnum myVersion;
+	private final Map<String, String> myResourceNameToClassName = new HashMap<>();
+	private final Set<String> myResourceNames = new HashSet<>();
+	private final List<String> myDatatypeClassNames = new ArrayList<>();
+	private final Map<String, Class<? extends IBaseResource>> myResourceNameToType = new ConcurrentHashMap<>();
+	private volatile List<Class<? extends IBase>> myDatatypes;
+
+	ModelIndex(IFhirVersion theVersion) {
+		myVersion = theVersion.getVersion();
+
+		Properties prop = new Properties();
+		try (InputStream str = theVersion.getFhirVersionPropertiesFile()) {
+			prop.load(str);
+		} catch (IOException e) {
+			throw new ConfigurationException("Failed to load model property file from classpath for version " + myVersion, e);
+		}
+
+		for (Map.Entry<Object, Object> nextEntry : prop.entrySet()) {
+			String nextKey = nextEntry.getKey().toString();
+			String nextValue = nextEntry.getValue().toString();
+
+			if (nextKey.startsWith("datatype.")) {
+				myDatatypeClassNames.add(nextValue);
+			} else if (nextKey.startsWith("resource.")) {
+				String resName = nextKey.substring("resource.".length()).trim();
+				myResourceNames.add(resName);
+				myResourceNameToClassName.put(resName.toLowerCase(), nextValue);
+			} else {
+				throw new ConfigurationException("Unexpected property in version property file: " + nextKey + "=" + nextValue);
+			}
+		}
+	}
+
+	/**
+	 * Returns all resource names in the index, without loading any classes
+	 */
+	Set<String> getResourceNames() {
+		return Collections.unmodifiableSet(myResourceNames);
+	}
+
+	/**
+	 * Returns the built-in class for the given resource name, loading it if this is the
+	 * first time it has been requested
+	 *
+	 * @param theResourceName The resource name (must be lowercase)
+	 * @return Returns <code>null</code> if the index has no resource by the given name
+	 */
+	Class<? extends IBaseResource> getResourceType(String theResourceName) {
+		Class<? extends IBaseResource> retVal = myResourceNameToType.get(theResourceName);
+		if (retVal == null) {
+			String className = myResourceNameToClassName.get(theResourceName);
+			if (className == null) {
+				return null;
+			}
+
+			Class<?> nextClass;
+			try {
+				nextClass = Class.forName(className);
+			} catch (ClassNotFoundException e) {
+				throw new ConfigurationException("Unknown class[" + className + "] for resource definition: " + theResourceName, e);
+			}
+			if (!IBaseResource.class.isAssignableFrom(nextClass)) {
+				throw new ConfigurationException("Class is not assignable from " + IBaseResource.class.getSimpleName() + ": " + className);
+			}
+
+			@SuppressWarnings("unchecked")
+			Class<? extends IBaseResource> resourceClass = (Class<? extends IBaseResource>) nextClass;
+			retVal = resourceClass;
+			myResourceNameToType.put(theResourceName, retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns all datatype classes in the index. Datatypes are always scanned when a context
+	 * is initialized so these are all loaded on the first call.
+	 */
+	List<Class<? extends IBase>> getDatatypes() {
+		List<Class<? extends IBase>> retVal = myDatatypes;
+		if (retVal == null) {
+			retVal = new ArrayList<>(myDatatypeClassNames.size());
+			for (String next : myDatatypeClassNames) {
+				try {
+					@SuppressWarnings("unchecked")
+					Class<? extends IBase> dtType = (Class<? extends IBase>) Class.forName(next);
+					retVal.add(dtType);
+				} catch (ClassNotFoundException e) {
+					throw new ConfigurationException("Unknown class[" + next + "] for data type definition in version " + myVersion, e);
+				}
+			}
+			retVal = Collections.unmodifiableList(retVal);
+			myDatatypes = retVal;
+		}
+		return retVal;
+	}
+
+}
@@ -30,8 +30,6 @@ import ca.uhn.fhir.util.ReflectionUtil;
 import org.hl7.fhir.instance.model.api.*;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
@@ -50,17 +48,18 @@ class ModelScanner {
 	private Map<String, RuntimeResourceDefinition> myIdToResourceDefinition = new HashMap<>();
 	private Map<String, BaseRuntimeElementDefinition<?>> myNameToElementDefinitions = new HashMap<>();
 	private Map<String, RuntimeResourceDefinition> myNameToResourceDefinitions = new HashMap<>();
-	private Map<String, Class<? extends IBaseResource>> myNameToResourceType = new HashMap<>();
+	private ModelIndex myModelIndex;
 	private RuntimeChildUndeclaredExtensionDefinition myRuntimeChildUndeclaredExtensionDefinition;
 	private Set<Class<? extends IBase>> myScanAlso = new HashSet<>();
 	private FhirVersionEnum myVersion;
 
 	private Set<Class<? extends IBase>> myVersionTypes;
 
-	ModelScanner(FhirContext theContext, FhirVersionEnum theVersion, Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> theExistingDefinitions,
+	ModelScanner(FhirContext theContext, FhirVersionEnum theVersion, ModelIndex theModelIndex, Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> theExistingDefinitions,
 					 @Nonnull Collection<Class<? extends IBase>> theResourceTypes) throws ConfigurationException {
 		myContext = theContext;
 		myVersion = theVersion;
+		myModelIndex = theModelIndex;
 		Set<Class<? extends IBase>> toScan = new HashSet<>(theResourceTypes);
 		init(theExistingDefinitions, toScan);
 	}
@@ -81,10 +80,6 @@ class ModelScanner {
 		return myNameToResourceDefinitions;
 	}
 
-	Map<String, Class<? extends IBaseResource>> getNameToResourceType() {
-		return myNameToResourceType;
-	}
-
 	RuntimeChildUndeclaredExtensionDefinition getRuntimeChildUndeclaredExtensionDefinition() {
 		return myRuntimeChildUndeclaredExtensionDefinition;
 	}
@@ -96,10 +91,9 @@ class ModelScanner {
 
 		int startSize = myClassToElementDefinitions.size();
 		long start = System.currentTimeMillis();
-		Map<String, Class<? extends IBaseResource>> resourceTypes = myNameToResourceType;
 
 		Set<Class<? extends IBase>> typesToScan = theTypesToScan;
-		myVersionTypes = scanVersionPropertyFile(typesToScan, resourceTypes, myVersion, myClassToElementDefinitions);
+		myVersionTypes = scanVersionDatatypes(typesToScan, myModelIndex, myClassToElementDefinitions);
 
 		do {
 			for (Class<? extends IBase> nextClass : typesToScan) {
@@ -289,7 +283,7 @@ class ModelScanner {
 		}
 
 		String resourceNameLowerCase = resourceName.toLowerCase();
-		Class<? extends IBaseResource> builtInType = myNameToResourceType.get(resourceNameLowerCase);
+		Class<? extends IBaseResource> builtInType = myModelIndex.getResourceType(resourceNameLowerCase);
 		boolean standardType = builtInType != null && builtInType.equals(theClass) == true;
 		if (primaryNameProvider) {
 			if (builtInType != null && builtInType.equals(theClass) == false) {
@@ -473,68 +467,20 @@ class ModelScanner {
 		return type;
 	}
 
-	static Set<Class<? extends IBase>> scanVersionPropertyFile(Set<Class<? extends IBase>> theDatatypes, Map<String, Class<? extends IBaseResource>> theResourceTypes, FhirVersionEnum theVersion, Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> theExistingElementDefinitions) {
+	static Set<Class<? extends IBase>> scanVersionDatatypes(Set<Class<? extends IBase>> theDatatypes, ModelIndex theModelIndex, Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> theExistingElementDefinitions) {
 		Set<Class<? extends IBase>> retVal = new HashSet<>();
 
-		try (InputStream str = theVersion.getVersionImplementation().getFhirVersionPropertiesFile()) {
-			Properties prop = new Properties();
-			prop.load(str);
-			for (Entry<Object, Object> nextEntry : prop.entrySet()) {
-				String nextKey = nextEntry.getKey().toString();
-				String nextValue = nextEntry.getValue().toString();
-
-				if (nextKey.startsWith("datatype.")) {
-					if (theDatatypes != null) {
-						try {
-							// Datatypes
-
-							@SuppressWarnings("unchecked")
-							Class<? extends IBase> dtType = (Class<? extends IBase>) Class.forName(nextValue);
-							if (theExistingElementDefinitions.containsKey(dtType)) {
-								continue;
-							}
-							retVal.add(dtType);
-
-							if (IElement.class.isAssignableFrom(dtType)) {
-								@SuppressWarnings("unchecked")
-								Class<? extends IElement> nextClass = (Class<? extends IElement>) dtType;
-								theDatatypes.add(nextClass);
-							} else if (IBaseDatatype.class.isAssignableFrom(dtType)) {
-								@SuppressWarnings("unchecked")
-								Class<? extends IBaseDatatype> nextClass = (Class<? extends IBaseDatatype>) dtType;
-								theDatatypes.add(nextClass);
-							} else {
-								ourLog.warn("Class is not assignable from " + IElement.class.getSimpleName() + " or " + IBaseDatatype.class.getSimpleName() + ": " + nextValue);
-								continue;
-							}
-
-						} catch (ClassNotFoundException e) {
-							throw new ConfigurationException("Unknown class[" + nextValue + "] for data type definition: " + nextKey.substring("datatype.".length()), e);
-						}
-					}
-				} else if (nextKey.startsWith("resource.")) {
-					// Resources
-					String resName = nextKey.substring("resource.".length()).toLowerCase();
-					try {
-						@SuppressWarnings("unchecked")
-						Class<? extends IBaseResource> nextClass = (Class<? extends IBaseResource>) Class.forName(nextValue);
-						if (theExistingElementDefinitions.containsKey(nextClass)) {
-							continue;
-						}
-						if (!IBaseResource.class.isAssignableFrom(nextClass)) {
-							throw new ConfigurationException("Class is not assignable from " + IBaseResource.class.getSimpleName() + ": " + nextValue);
-						}
-
-						theResourceTypes.put(resName, nextClass);
-					} catch (ClassNotFoundException e) {
-						throw new ConfigurationException("Unknown class[" + nextValue + "] for resource definition: " + nextKey.substring("resource.".length()), e);
-					}
-				} else {
-					throw new ConfigurationException("Unexpected property in version property file: " + nextKey + "=" + nextValue);
-				}
+		for (Class<? extends IBase> dtType : theModelIndex.getDatatypes()) {
+			if (theExistingElementDefinitions.containsKey(dtType)) {
+				continue;
+			}
+			retVal.add(dtType);
+
+			if (IElement.class.isAssignableFrom(dtType) || IBaseDatatype.class.isAssignableFrom(dtType)) {
+				theDatatypes.add(dtType);
+			} else {
+				ourLog.warn("Class is not assignable from " + IElement.class.getSimpleName() + " or " + IBaseDatatype.class.getSimpleName() + ": " + dtType.getName());
 			}
-		} catch (IOException e) {
-			throw new ConfigurationException("Failed to load model property file from classpath: " + "/ca/uhn/fhir/model/dstu/model.properties");
 		}
 
 		return retVal;
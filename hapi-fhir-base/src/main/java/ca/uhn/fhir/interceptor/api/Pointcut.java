@@ -1604,7 +1604,11 @@ public enum Pointcut {
 	 * systems, since calling it may (or may not) carry a cost.
 	 * <p>
 	 * This hook is invoked when a query has executed, and includes the raw SQL
-	 * statements that were executed against the database.
+	 * statements that were executed against the database. If enabled using the
+	 * JPA server's <code>DaoConfig#setCaptureWriteSqlEnabled(boolean)</code> setting,
+	 * it is also invoked after each resource is written (created, updated or deleted)
+	 * by a request, with the statements that were issued in order to store the
+	 * resource and its indexes.
 	 * </p>
 	 * Hooks may accept the following parameters:
 	 * <ul>
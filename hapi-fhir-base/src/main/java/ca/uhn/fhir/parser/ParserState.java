@@ -37,7 +37,6 @@ import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.instance.model.api.*;
 
-import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import java.util.*;
 
@@ -91,8 +90,8 @@ class ParserState<T> {
 		myState.enteringNewElement(theNamespaceUri, theName);
 	}
 
-	public void enteringNewElementExtension(StartElement theElem, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
-		myState.enteringNewElementExtension(theElem, theUrlAttr, theIsModifier, baseServerUrl);
+	public void enteringNewElementExtension(String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
+		myState.enteringNewElementExtension(theUrlAttr, theIsModifier, baseServerUrl);
 	}
 
 	public T getObject() {
@@ -152,6 +151,14 @@ class ParserState<T> {
 		}
 	}
 
+	/**
+	 * Returns <code>true</code> if the current state needs to receive raw XML events
+	 * through {@link #xmlEvent(XMLEvent)} (e.g. because it is collecting an XHTML narrative)
+	 */
+	public boolean isCollectingXmlEvents() {
+		return myState != null && myState.isCollectingXmlEvents();
+	}
+
 	private abstract class BaseState {
 
 		private PreResourceState myPreResourceState;
@@ -188,7 +195,7 @@ class ParserState<T> {
 		 * Default implementation just handles undeclared extensions
 		 */
 		@SuppressWarnings("unused")
-		public void enteringNewElementExtension(StartElement theElement, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
+		public void enteringNewElementExtension(String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
 			if (myPreResourceState != null && getCurrentElement() instanceof ISupportsUndeclaredExtensions) {
 				ExtensionDt newExtension = new ExtensionDt(theIsModifier);
 				newExtension.setUrl(theUrlAttr);
@@ -258,6 +265,10 @@ class ParserState<T> {
 			// ignore
 		}
 
+		public boolean isCollectingXmlEvents() {
+			return false;
+		}
+
 	}
 
 	private class ContainedResourcesStateHapi extends PreResourceState {
@@ -406,7 +417,7 @@ class ParserState<T> {
 		}
 
 		@Override
-		public void enteringNewElementExtension(StartElement theElement, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
+		public void enteringNewElementExtension(String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
 			RuntimeChildDeclaredExtensionDefinition declaredExtension = myDefinition.getChildExtensionForUrl(theUrlAttr);
 			if (declaredExtension != null) {
 				if (myChildInstance == null) {
@@ -416,7 +427,7 @@ class ParserState<T> {
 				BaseState newState = new DeclaredExtensionState(getPreResourceState(), declaredExtension, myChildInstance);
 				push(newState);
 			} else {
-				super.enteringNewElementExtension(theElement, theUrlAttr, theIsModifier, baseServerUrl);
+				super.enteringNewElementExtension(theUrlAttr, theIsModifier, baseServerUrl);
 			}
 		}
 
@@ -590,13 +601,13 @@ class ParserState<T> {
 		}
 
 		@Override
-		public void enteringNewElementExtension(StartElement theElement, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
+		public void enteringNewElementExtension(String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
 			RuntimeChildDeclaredExtensionDefinition declaredExtension = myDefinition.getDeclaredExtension(theUrlAttr, baseServerUrl);
 			if (declaredExtension != null) {
 				BaseState newState = new DeclaredExtensionState(getPreResourceState(), declaredExtension, myInstance);
 				push(newState);
 			} else {
-				super.enteringNewElementExtension(theElement, theUrlAttr, theIsModifier, baseServerUrl);
+				super.enteringNewElementExtension(theUrlAttr, theIsModifier, baseServerUrl);
 			}
 		}
 
@@ -806,7 +817,7 @@ class ParserState<T> {
 		}
 
 		@Override
-		public void enteringNewElementExtension(StartElement theElem, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
+		public void enteringNewElementExtension(String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
 			ResourceMetadataKeyEnum.ExtensionResourceMetadataKey resourceMetadataKeyEnum = new ResourceMetadataKeyEnum.ExtensionResourceMetadataKey(theUrlAttr);
 			Object metadataValue = myMap.get(resourceMetadataKeyEnum);
 			ExtensionDt newExtension;
@@ -1367,7 +1378,7 @@ class ParserState<T> {
 		}
 
 		@Override
-		public void enteringNewElementExtension(StartElement theElement, String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
+		public void enteringNewElementExtension(String theUrlAttr, boolean theIsModifier, final String baseServerUrl) {
 			myDepth++;
 		}
 
@@ -1523,6 +1534,11 @@ class ParserState<T> {
 			return myDt;
 		}
 
+		@Override
+		public boolean isCollectingXmlEvents() {
+			return !myJsonMode;
+		}
+
 		@Override
 		public void xmlEvent(XMLEvent theEvent) {
 			if (theEvent.isEndElement()) {
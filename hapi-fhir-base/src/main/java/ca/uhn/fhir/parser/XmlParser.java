@@ -35,7 +35,6 @@ import ca.uhn.fhir.util.XmlUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.*;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 import javax.xml.stream.events.*;
 import java.io.Reader;
@@ -71,9 +70,9 @@ public class XmlParser extends BaseParser {
 		myContext = theContext;
 	}
 
-	private XMLEventReader createStreamReader(Reader theReader) {
+	private XMLStreamReader createStreamReader(Reader theReader) {
 		try {
-			return XmlUtil.createXmlReader(theReader);
+			return XmlUtil.createXmlStreamReader(theReader);
 		} catch (FactoryConfigurationError e1) {
 			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
 		} catch (XMLStreamException e1) {
@@ -112,48 +111,45 @@ public class XmlParser extends BaseParser {
 
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 		return parseResource(theResourceType, streamReader);
 	}
 
-	private <T> T doXmlLoop(XMLEventReader streamReader, ParserState<T> parserState) {
+	/**
+	 * Walks the document using the StAX cursor API, which avoids allocating an event object for
+	 * every node. Event objects are only created while the parser state is collecting raw XML
+	 * (i.e. for XHTML narratives).
+	 */
+	private <T> T doXmlLoop(XMLStreamReader streamReader, ParserState<T> parserState) {
 		ourLog.trace("Entering XML parsing loop with state: {}", parserState);
 
 		try {
 			List<String> heldComments = new ArrayList<>(1);
 
 			while (streamReader.hasNext()) {
-				XMLEvent nextEvent = streamReader.nextEvent();
+				int eventType = streamReader.next();
 				try {
 
-					switch (nextEvent.getEventType()) {
+					switch (eventType) {
 						case XMLStreamConstants.START_ELEMENT: {
-							StartElement elem = nextEvent.asStartElement();
-
-							String namespaceURI = elem.getName().getNamespaceURI();
+							String namespaceURI = streamReader.getNamespaceURI();
+							String elementName = streamReader.getLocalName();
 
-							if ("extension".equals(elem.getName().getLocalPart())) {
-								Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-								String url;
-								if (urlAttr == null || isBlank(urlAttr.getValue())) {
+							if ("extension".equals(elementName)) {
+								String url = getUrlAttribute(streamReader);
+								if (isBlank(url)) {
 									getErrorHandler().missingRequiredElement(new ParseLocation().setParentElementName("extension"), "url");
 									url = null;
-								} else {
-									url = urlAttr.getValue();
 								}
-								parserState.enteringNewElementExtension(elem, url, false, getServerBaseUrl());
-							} else if ("modifierExtension".equals(elem.getName().getLocalPart())) {
-								Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-								String url;
-								if (urlAttr == null || isBlank(urlAttr.getValue())) {
+								parserState.enteringNewElementExtension(url, false, getServerBaseUrl());
+							} else if ("modifierExtension".equals(elementName)) {
+								String url = getUrlAttribute(streamReader);
+								if (isBlank(url)) {
 									getErrorHandler().missingRequiredElement(new ParseLocation().setParentElementName("modifierExtension"), "url");
 									url = null;
-								} else {
-									url = urlAttr.getValue();
 								}
-								parserState.enteringNewElementExtension(elem, url, true, getServerBaseUrl());
+								parserState.enteringNewElementExtension(url, true, getServerBaseUrl());
 							} else {
-								String elementName = elem.getName().getLocalPart();
 								parserState.enteringNewElement(namespaceURI, elementName);
 							}
 
@@ -164,9 +160,8 @@ public class XmlParser extends BaseParser {
 								heldComments.clear();
 							}
 
-							for (Iterator<Attribute> attributes = elem.getAttributes(); attributes.hasNext(); ) {
-								Attribute next = attributes.next();
-								parserState.attributeValue(next.getName().getLocalPart(), next.getValue());
+							for (int i = 0; i < streamReader.getAttributeCount(); i++) {
+								parserState.attributeValue(streamReader.getAttributeLocalName(i), streamReader.getAttributeValue(i));
 							}
 
 							break;
@@ -180,27 +175,24 @@ public class XmlParser extends BaseParser {
 								heldComments.clear();
 							}
 							parserState.endingElement();
-//						if (parserState.isComplete()) {
-//							return parserState.getObject();
-//						}
 							break;
 						}
 						case XMLStreamConstants.CHARACTERS: {
-							parserState.string(nextEvent.asCharacters().getData());
+							parserState.string(streamReader.getText());
 							break;
 						}
 						case XMLStreamConstants.COMMENT: {
-							Comment comment = (Comment) nextEvent;
-							String commentText = comment.getText();
-							heldComments.add(commentText);
+							heldComments.add(streamReader.getText());
 							break;
 						}
 					}
 
-					parserState.xmlEvent(nextEvent);
+					if (parserState.isCollectingXmlEvents()) {
+						parserState.xmlEvent(XmlUtil.createXmlEvent(streamReader));
+					}
 
 				} catch (DataFormatException e) {
-					throw new DataFormatException("DataFormatException at [" + nextEvent.getLocation().toString() + "]: " + e.getMessage(), e);
+					throw new DataFormatException("DataFormatException at [" + streamReader.getLocation().toString() + "]: " + e.getMessage(), e);
 				}
 			}
 			return parserState.getObject();
@@ -741,7 +733,19 @@ public class XmlParser extends BaseParser {
 		return EncodingEnum.XML;
 	}
 
-	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLEventReader theStreamReader) {
+	/**
+	 * Returns the value of the (un-namespaced) <code>url</code> attribute on the current element
+	 */
+	private static String getUrlAttribute(XMLStreamReader theStreamReader) {
+		for (int i = 0; i < theStreamReader.getAttributeCount(); i++) {
+			if ("url".equals(theStreamReader.getAttributeLocalName(i)) && isBlank(theStreamReader.getAttributeNamespace(i))) {
+				return theStreamReader.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLStreamReader theStreamReader) {
 		ParserState<T> parserState = ParserState.getPreResourceInstance(this, theResourceType, myContext, false, getErrorHandler());
 		return doXmlLoop(theStreamReader, parserState);
 	}
@@ -168,6 +168,7 @@ public class Constants {
 	public static final String PARAM_REVINCLUDE = "_revinclude";
 	public static final String PARAM_REVINCLUDE_RECURSE = PARAM_REVINCLUDE + PARAM_INCLUDE_QUALIFIER_RECURSE;
 	public static final String PARAM_REVINCLUDE_ITERATE = PARAM_REVINCLUDE + PARAM_INCLUDE_QUALIFIER_ITERATE;
+	public static final String PARAM_SCORE = "_score";
 	public static final String PARAM_SEARCH = "_search";
 	public static final String PARAM_SECURITY = "_security";
 	public static final String PARAM_SINCE = "_since";
@@ -202,6 +203,7 @@ public class Constants {
 	public static final int STATUS_HTTP_422_UNPROCESSABLE_ENTITY = 422;
 	public static final int STATUS_HTTP_500_INTERNAL_ERROR = 500;
 	public static final int STATUS_HTTP_501_NOT_IMPLEMENTED = 501;
+	public static final int STATUS_HTTP_503_SERVICE_UNAVAILABLE = 503;
 	public static final String TAG_SUBSETTED_CODE = "SUBSETTED";
 	public static final String TAG_SUBSETTED_SYSTEM_DSTU3 = "http://hl7.org/fhir/v3/ObservationValue";
 	public static final String TAG_SUBSETTED_SYSTEM_R4 = "http://terminology.hl7.org/CodeSystem/v3-ObservationValue";
@@ -210,6 +212,7 @@ public class Constants {
 	public static final String OO_INFOSTATUS_PROCESSING = "processing";
 	public static final String PARAM_GRAPHQL_QUERY = "query";
 	public static final String HEADER_X_CACHE = "X-Cache";
+	public static final String HEADER_INDEX_CONSISTENCY_TOKEN = "X-Index-Consistency-Token";
 	public static final String HEADER_X_SECURITY_CONTEXT = "X-Security-Context";
 	public static final String POWERED_BY_HEADER = "X-Powered-By";
 	public static final Charset CHARSET_US_ASCII;
@@ -47,6 +47,8 @@ public enum SearchTotalModeEnum {
 			for (SearchTotalModeEnum next : values()) {
 				map.put(next.getCode(), next);
 			}
+			// The FHIR specification uses "estimate" for this mode
+			map.put("estimate", ESTIMATED);
 			ourCodeToEnum = map;
 		}
 		return map.get(theCode);
@@ -13,6 +13,7 @@ import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.*;
 
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -617,10 +618,42 @@ public class FhirTerser {
 		Validate.notBlank(defaultString(theTarget.getIdPart()), "theTarget must have a populated ID (theTarget.getIdPart() does not return a value)");
 
 		String wantRef = theTarget.toUnqualifiedVersionless().getValue();
+		return visitCompartmentOwners(theCompartmentName, theSource, wantRef::equals);
+	}
+
+	/**
+	 * Returns the IDs (in the form <code>ResourceType/id</code>) of every resource whose compartment named
+	 * <code>theCompartmentName</code> contains <code>theSource</code>. This is equivalent to calling
+	 * {@link #isSourceInCompartmentForTarget(String, IBaseResource, IIdType)} for every possible
+	 * compartment owner, but only evaluates the compartment paths once, which is useful when
+	 * checking the same resource against many compartment owners.
+	 *
+	 * @param theCompartmentName The name of the compartment
+	 * @param theSource          The potential member of the compartment
+	 * @return A set of unqualified versionless resource IDs
+	 */
+	public Set<String> getCompartmentOwnersForResource(String theCompartmentName, IBaseResource theSource) {
+		Validate.notBlank(theCompartmentName, "theCompartmentName must not be null or blank");
+		Validate.notNull(theSource, "theSource must not be null");
+
+		Set<String> retVal = new HashSet<>();
+		visitCompartmentOwners(theCompartmentName, theSource, t -> {
+			retVal.add(t);
+			return false;
+		});
+		return retVal;
+	}
 
+	/**
+	 * Passes the ID of each compartment owner for <code>theSource</code> to <code>theCallback</code>,
+	 * stopping as soon as the callback returns <code>true</code>
+	 *
+	 * @return <code>true</code> if the callback returned <code>true</code>
+	 */
+	private boolean visitCompartmentOwners(String theCompartmentName, IBaseResource theSource, Predicate<String> theCallback) {
 		RuntimeResourceDefinition sourceDef = myContext.getResourceDefinition(theSource);
 		if (theSource.getIdElement().hasIdPart()) {
-			if (wantRef.equals(sourceDef.getName() + '/' + theSource.getIdElement().getIdPart())) {
+			if (theCallback.test(sourceDef.getName() + '/' + theSource.getIdElement().getIdPart())) {
 				return true;
 			}
 		}
@@ -672,7 +705,7 @@ public class FhirTerser {
 						}
 					}
 
-					if (wantRef.equals(nextRef)) {
+					if (isNotBlank(nextRef) && theCallback.test(nextRef)) {
 						return true;
 					}
 				}
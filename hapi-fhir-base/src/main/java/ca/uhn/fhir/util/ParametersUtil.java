@@ -227,6 +227,14 @@ public class ParametersUtil {
 		addPart(theContext, theParameter, theName, value);
 	}
 
+	@SuppressWarnings("unchecked")
+	public static void addPartInteger(FhirContext theContext, IBase theParameter, String theName, Integer theValue) {
+		IPrimitiveType<Integer> value = (IPrimitiveType<Integer>) theContext.getElementDefinition("integer").newInstance();
+		value.setValue(theValue);
+
+		addPart(theContext, theParameter, theName, value);
+	}
+
 	public static void addPartCoding(FhirContext theContext, IBase theParameter, String theName, String theSystem, String theCode, String theDisplay) {
 		IBase coding = theContext.getElementDefinition("coding").newInstance();
 
@@ -38,10 +38,13 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.*;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
 import javax.xml.stream.events.XMLEvent;
 import java.io.*;
 import java.util.*;
 
+import static org.apache.commons.lang3.StringUtils.defaultString;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
@@ -55,6 +58,7 @@ public class XmlUtil {
 	private static final ExtendedEntityReplacingXmlResolver XML_RESOLVER = new ExtendedEntityReplacingXmlResolver();
 	private static XMLOutputFactory ourFragmentOutputFactory;
 	private static volatile boolean ourHaveLoggedStaxImplementation;
+	private static volatile XMLEventFactory ourEventFactory;
 	private static volatile XMLInputFactory ourInputFactory;
 	private static Throwable ourNextException;
 	private static volatile XMLOutputFactory ourOutputFactory;
@@ -1625,6 +1629,72 @@ public class XmlUtil {
 		return inputFactory.createXMLEventReader(reader);
 	}
 
+	public static XMLStreamReader createXmlStreamReader(Reader reader) throws FactoryConfigurationError, XMLStreamException {
+		throwUnitTestExceptionIfConfiguredToDoSo();
+
+		XMLInputFactory inputFactory = getOrCreateInputFactory();
+
+		// Now.. create the reader and return it
+		return inputFactory.createXMLStreamReader(reader);
+	}
+
+	/**
+	 * Creates an event object for the node at the current position of the given cursor. This is used
+	 * for content which is kept as raw XML (e.g. XHTML narratives) while the rest of the document
+	 * is read using the cursor API.
+	 */
+	public static XMLEvent createXmlEvent(XMLStreamReader theReader) {
+		XMLEventFactory factory = getOrCreateEventFactory();
+		switch (theReader.getEventType()) {
+			case XMLStreamConstants.START_ELEMENT: {
+				List<Attribute> attributes = new ArrayList<>(theReader.getAttributeCount());
+				for (int i = 0; i < theReader.getAttributeCount(); i++) {
+					attributes.add(factory.createAttribute(defaultString(theReader.getAttributePrefix(i)), defaultString(theReader.getAttributeNamespace(i)), theReader.getAttributeLocalName(i), theReader.getAttributeValue(i)));
+				}
+				return factory.createStartElement(defaultString(theReader.getPrefix()), defaultString(theReader.getNamespaceURI()), theReader.getLocalName(), attributes.iterator(), createNamespaces(theReader, factory).iterator());
+			}
+			case XMLStreamConstants.END_ELEMENT:
+				return factory.createEndElement(defaultString(theReader.getPrefix()), defaultString(theReader.getNamespaceURI()), theReader.getLocalName(), createNamespaces(theReader, factory).iterator());
+			case XMLStreamConstants.CHARACTERS:
+				return factory.createCharacters(theReader.getText());
+			case XMLStreamConstants.SPACE:
+				return factory.createSpace(theReader.getText());
+			case XMLStreamConstants.CDATA:
+				return factory.createCData(theReader.getText());
+			case XMLStreamConstants.COMMENT:
+				return factory.createComment(theReader.getText());
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				return factory.createProcessingInstruction(theReader.getPITarget(), theReader.getPIData());
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				return factory.createEntityReference(theReader.getLocalName(), null);
+			case XMLStreamConstants.DTD:
+				return factory.createDTD(theReader.getText());
+			case XMLStreamConstants.START_DOCUMENT:
+				return factory.createStartDocument();
+			case XMLStreamConstants.END_DOCUMENT:
+			default:
+				return factory.createEndDocument();
+		}
+	}
+
+	private static List<Namespace> createNamespaces(XMLStreamReader theReader, XMLEventFactory theFactory) {
+		int count = theReader.getNamespaceCount();
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		List<Namespace> retVal = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String prefix = theReader.getNamespacePrefix(i);
+			String uri = defaultString(theReader.getNamespaceURI(i));
+			if (isBlank(prefix)) {
+				retVal.add(theFactory.createNamespace(uri));
+			} else {
+				retVal.add(theFactory.createNamespace(prefix, uri));
+			}
+		}
+		return retVal;
+	}
+
 	public static XMLStreamWriter createXmlStreamWriter(Writer theWriter) throws FactoryConfigurationError, XMLStreamException {
 		throwUnitTestExceptionIfConfiguredToDoSo();
 
@@ -1672,6 +1742,15 @@ public class XmlUtil {
 		return retVal;
 	}
 
+	private static XMLEventFactory getOrCreateEventFactory() throws FactoryConfigurationError {
+		XMLEventFactory retVal = ourEventFactory;
+		if (retVal == null) {
+			retVal = XMLEventFactory.newInstance();
+			ourEventFactory = retVal;
+		}
+		return retVal;
+	}
+
 	private static XMLInputFactory getOrCreateInputFactory() throws FactoryConfigurationError {
 		if (ourInputFactory == null) {
 
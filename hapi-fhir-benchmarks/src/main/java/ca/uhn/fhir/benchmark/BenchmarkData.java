@@ -0,0 +1,94 @@
+package ca.uhn.fhir.benchmark;
+
+import org.hl7.fhir.r4.model.*;
+
+import java.util.Date;
+
+/**
+ * Creates representative resources for the benchmarks to work with
+ */
+public class BenchmarkData {
+
+	private BenchmarkData() {
+		// non instantiable
+	}
+
+	public static Patient createPatient(int theIndex) {
+		Patient patient = new Patient();
+		patient.setId("Patient/P" + theIndex);
+		patient.getMeta().setVersionId("1");
+		patient.getMeta().setLastUpdatedElement(new InstantType("2019-09-01T10:00:00.000Z"));
+		patient.getMeta().addProfile("http://example.com/StructureDefinition/patient");
+		patient.addIdentifier().setSystem("http://example.com/mrn").setValue("MRN" + theIndex);
+		patient.addName().setFamily("FAMILY" + theIndex).addGiven("GIVEN" + theIndex).addGiven("MIDDLE");
+		patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("555-555-" + theIndex);
+		patient.addAddress().addLine(theIndex + " Main Street").setCity("Toronto").setState("ON").setPostalCode("M5V 1A1");
+		patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+		patient.setBirthDateElement(new DateType("1970-01-01"));
+		patient.setActive(true);
+		patient.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div>Patient " + theIndex + "</div>");
+		return patient;
+	}
+
+	public static Observation createObservation(int theIndex, String thePatientId) {
+		Observation obs = new Observation();
+		obs.setId("Observation/O" + theIndex);
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.addCategory().addCoding().setSystem("http://terminology.hl7.org/CodeSystem/observation-category").setCode("vital-signs");
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7").setDisplay("Body Weight");
+		obs.setSubject(new Reference(thePatientId));
+		obs.setEffective(new DateTimeType(new Date(1567332000000L + theIndex * 1000L)));
+		obs.setValue(new Quantity().setValue(70 + (theIndex % 30)).setUnit("kg").setSystem("http://unitsofmeasure.org").setCode("kg"));
+		obs.addInterpretation().addCoding().setSystem("http://terminology.hl7.org/CodeSystem/v3-ObservationInterpretation").setCode("N");
+		return obs;
+	}
+
+	/**
+	 * Creates a searchset Bundle containing the given number of entries (half
+	 * Patients and half Observations referring to them)
+	 */
+	public static Bundle createSearchBundle(int theSize) {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.SEARCHSET);
+		bundle.setTotal(theSize);
+		bundle.addLink().setRelation("self").setUrl("http://example.com/fhir/Observation?_include=Observation:subject");
+		for (int i = 0; i < theSize; i++) {
+			Resource resource;
+			if (i % 2 == 0) {
+				resource = createPatient(i);
+			} else {
+				resource = createObservation(i, "Patient/P" + (i - 1));
+			}
+			bundle.addEntry()
+				.setFullUrl("http://example.com/fhir/" + resource.getId())
+				.setResource(resource)
+				.getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+		}
+		return bundle;
+	}
+
+	/**
+	 * Creates a transaction Bundle which creates the given number of Patients, each
+	 * with an Observation referring to it by placeholder ID
+	 */
+	public static Bundle createTransactionBundle(int thePatientCount, String theUniquePart) {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+		for (int i = 0; i < thePatientCount; i++) {
+			String placeholderId = "urn:uuid:" + theUniquePart + "-" + i;
+
+			Patient patient = createPatient(i);
+			patient.setId((String) null);
+			patient.getMeta().setVersionId(null).setLastUpdated(null);
+			patient.getMeta().getProfile().clear();
+			patient.getIdentifierFirstRep().setValue(theUniquePart + "-" + i);
+			bundle.addEntry().setFullUrl(placeholderId).setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+
+			Observation obs = createObservation(i, placeholderId);
+			obs.setId((String) null);
+			bundle.addEntry().setResource(obs).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+		}
+		return bundle;
+	}
+
+}
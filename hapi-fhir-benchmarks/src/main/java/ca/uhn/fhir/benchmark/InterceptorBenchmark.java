@@ -0,0 +1,75 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.executor.InterceptorService;
+import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interceptor dispatch, which happens many times for every request on
+ * the server whether or not any interceptors are registered
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterceptorBenchmark {
+
+	@Param({"0", "1", "10"})
+	private int myInterceptorCount;
+
+	private InterceptorService myInterceptorService;
+	private HookParams myParams;
+
+	@Setup
+	public void setup() {
+		myInterceptorService = new InterceptorService("benchmark");
+		for (int i = 0; i < myInterceptorCount; i++) {
+			myInterceptorService.registerInterceptor(new MessageCountingInterceptor());
+		}
+
+		myParams = new HookParams()
+			.add(RequestDetails.class, null)
+			.add(ServletRequestDetails.class, null)
+			.add(StorageProcessingMessage.class, new StorageProcessingMessage().setMessage("message"));
+	}
+
+	@Benchmark
+	public boolean hasHooks() {
+		return myInterceptorService.hasHooks(Pointcut.JPA_PERFTRACE_INFO);
+	}
+
+	@Benchmark
+	public boolean callHooks() {
+		return myInterceptorService.callHooks(Pointcut.JPA_PERFTRACE_INFO, myParams);
+	}
+
+	@Benchmark
+	public void callHooksWithoutRegisteredPointcut(Blackhole theBlackhole) {
+		theBlackhole.consume(myInterceptorService.callHooks(Pointcut.JPA_PERFTRACE_WARNING, myParams));
+	}
+
+	public static class MessageCountingInterceptor {
+
+		private long myCount;
+
+		@Hook(Pointcut.JPA_PERFTRACE_INFO)
+		public void info(StorageProcessingMessage theMessage) {
+			myCount += theMessage.getMessage().length();
+		}
+
+		public long getCount() {
+			return myCount;
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.jpa.binstore.IBinaryStorageSvc;
+import ca.uhn.fhir.jpa.binstore.MemoryBinaryStorageSvcImpl;
+import ca.uhn.fhir.jpa.config.BaseJavaConfigR4;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.search.LuceneSearchMappingFactory;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.hibernate.dialect.H2Dialect;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Properties;
+
+/**
+ * R4 JPA server backed by an in-memory H2 database, used by {@link JpaThroughputBenchmark}
+ */
+@Configuration
+@EnableTransactionManagement()
+public class JpaBenchmarkConfig extends BaseJavaConfigR4 {
+
+	@Bean
+	public DaoConfig daoConfig() {
+		DaoConfig retVal = new DaoConfig();
+		// Otherwise the repeated search benchmark would just return the results of the first search
+		retVal.setReuseCachedSearchResultsForMillis(null);
+		return retVal;
+	}
+
+	@Bean
+	public ModelConfig modelConfig() {
+		return daoConfig().getModelConfig();
+	}
+
+	@Bean(destroyMethod = "close")
+	public BasicDataSource dataSource() {
+		BasicDataSource retVal = new BasicDataSource();
+		retVal.setDriver(new org.h2.Driver());
+		retVal.setUrl("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+		retVal.setUsername("");
+		retVal.setPassword("");
+		return retVal;
+	}
+
+	@Override
+	@Bean
+	public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+		LocalContainerEntityManagerFactoryBean retVal = super.entityManagerFactory();
+		retVal.setPersistenceUnitName("PU_HapiFhirBenchmark");
+		retVal.setDataSource(dataSource());
+		retVal.setJpaProperties(jpaProperties());
+		return retVal;
+	}
+
+	private Properties jpaProperties() {
+		Properties extraProperties = new Properties();
+		extraProperties.put("hibernate.format_sql", "false");
+		extraProperties.put("hibernate.show_sql", "false");
+		extraProperties.put("hibernate.hbm2ddl.auto", "update");
+		extraProperties.put("hibernate.dialect", H2Dialect.class.getName());
+		extraProperties.put("hibernate.search.model_mapping", LuceneSearchMappingFactory.class.getName());
+		extraProperties.put("hibernate.search.default.directory_provider", "local-heap");
+		extraProperties.put("hibernate.search.lucene_version", "LUCENE_CURRENT");
+		return extraProperties;
+	}
+
+	@Bean
+	public JpaTransactionManager transactionManager(EntityManagerFactory theEntityManagerFactory) {
+		JpaTransactionManager retVal = new JpaTransactionManager();
+		retVal.setEntityManagerFactory(theEntityManagerFactory);
+		return retVal;
+	}
+
+	@Bean
+	public IBinaryStorageSvc binaryStorage() {
+		return new MemoryBinaryStorageSvcImpl();
+	}
+
+}
@@ -0,0 +1,65 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of reading the current version of a resource by ID from the R4 JPA
+ * server, with and without the parsed resource cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class JpaReadBenchmark {
+
+	private static final int PRELOADED_PATIENT_COUNT = 1000;
+
+	@Param({"0", "10000"})
+	private int myParsedResourceCacheSize;
+
+	private AnnotationConfigApplicationContext myAppCtx;
+	private IFhirResourceDao<Patient> myPatientDao;
+	private List<IIdType> myIds;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		myAppCtx = new AnnotationConfigApplicationContext(JpaBenchmarkConfig.class);
+		myAppCtx.getBean(DaoConfig.class).setParsedResourceCacheSize(myParsedResourceCacheSize);
+		myPatientDao = myAppCtx.getBean(DaoRegistry.class).getResourceDao(Patient.class);
+
+		myIds = new ArrayList<>(PRELOADED_PATIENT_COUNT);
+		for (int i = 0; i < PRELOADED_PATIENT_COUNT; i++) {
+			Patient patient = BenchmarkData.createPatient(i);
+			patient.setIdElement(new IdType());
+			patient.setMeta(null);
+			myIds.add(myPatientDao.create(patient).getId().toUnqualifiedVersionless());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		myAppCtx.close();
+	}
+
+	@Benchmark
+	public Patient read() {
+		IIdType id = myIds.get(ThreadLocalRandom.current().nextInt(myIds.size()));
+		return myPatientDao.read(id);
+	}
+
+}
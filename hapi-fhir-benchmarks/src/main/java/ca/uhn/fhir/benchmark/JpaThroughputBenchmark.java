@@ -0,0 +1,86 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.jpa.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.StringParam;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of the R4 JPA server (create, search and transaction)
+ * against an embedded H2 database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class JpaThroughputBenchmark {
+
+	private static final int PRELOADED_PATIENT_COUNT = 1000;
+	private static final int TRANSACTION_PATIENT_COUNT = 10;
+
+	private AnnotationConfigApplicationContext myAppCtx;
+	private IFhirResourceDao<Patient> myPatientDao;
+	private IFhirSystemDao<Bundle, Meta> mySystemDao;
+	private int myNextIndex;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		myAppCtx = new AnnotationConfigApplicationContext(JpaBenchmarkConfig.class);
+		DaoRegistry daoRegistry = myAppCtx.getBean(DaoRegistry.class);
+		myPatientDao = daoRegistry.getResourceDao(Patient.class);
+		mySystemDao = daoRegistry.getSystemDao();
+
+		for (int i = 0; i < PRELOADED_PATIENT_COUNT; i++) {
+			myPatientDao.create(newPatient());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		myAppCtx.close();
+	}
+
+	private synchronized Patient newPatient() {
+		Patient patient = BenchmarkData.createPatient(myNextIndex++);
+		patient.setIdElement(new IdType());
+		patient.setMeta(null);
+		return patient;
+	}
+
+	@Benchmark
+	public IdType create() {
+		return (IdType) myPatientDao.create(newPatient()).getId();
+	}
+
+	@Benchmark
+	public List<IBaseResource> search() {
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(false);
+		map.add(Patient.SP_FAMILY, new StringParam("FAMILY1"));
+		IBundleProvider outcome = myPatientDao.search(map);
+		return outcome.getResources(0, 20);
+	}
+
+	@Benchmark
+	public Bundle transaction() {
+		Bundle input = BenchmarkData.createTransactionBundle(TRANSACTION_PATIENT_COUNT, UUID.randomUUID().toString());
+		return mySystemDao.transaction(null, input);
+	}
+
+}
@@ -0,0 +1,53 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and parsing of searchset Bundles, as the server and client do
+ * for every search
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({"json", "xml"})
+	private String myEncoding;
+
+	@Param({"10", "1000"})
+	private int myBundleSize;
+
+	private FhirContext myCtx;
+	private Bundle myBundle;
+	private String myEncodedBundle;
+
+	@Setup
+	public void setup() {
+		myCtx = FhirContext.forR4();
+		myBundle = BenchmarkData.createSearchBundle(myBundleSize);
+		myEncodedBundle = newParser().encodeResourceToString(myBundle);
+	}
+
+	private IParser newParser() {
+		return "json".equals(myEncoding) ? myCtx.newJsonParser() : myCtx.newXmlParser();
+	}
+
+	@Benchmark
+	public String encodeBundle() {
+		return newParser().encodeResourceToString(myBundle);
+	}
+
+	@Benchmark
+	public Bundle parseBundle() {
+		return newParser().parseResource(Bundle.class, myEncodedBundle);
+	}
+
+}
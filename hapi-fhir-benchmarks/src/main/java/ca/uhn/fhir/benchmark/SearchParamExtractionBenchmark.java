@@ -0,0 +1,129 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.searchparam.JpaRuntimeSearchParam;
+import ca.uhn.fhir.jpa.searchparam.extractor.SearchParamExtractorR4;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.hapi.ctx.DefaultProfileValidationSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search parameter extraction, which happens for every resource version
+ * written to the JPA server
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchParamExtractionBenchmark {
+
+	@Param({"Patient", "Observation"})
+	private String myResourceType;
+
+	private SearchParamExtractorR4 myExtractor;
+	private IBaseResource myResource;
+
+	@Setup
+	public void setup() {
+		FhirContext ctx = FhirContext.forR4();
+		myExtractor = new SearchParamExtractorR4(new ModelConfig(), ctx, new DefaultProfileValidationSupport(), new BuiltInSearchParamRegistry(ctx));
+		if ("Patient".equals(myResourceType)) {
+			myResource = BenchmarkData.createPatient(1);
+		} else {
+			myResource = BenchmarkData.createObservation(1, "Patient/P1");
+		}
+	}
+
+	@Benchmark
+	public void extractAll(Blackhole theBlackhole) {
+		ResourceTable entity = new ResourceTable();
+		theBlackhole.consume(myExtractor.extractSearchParamStrings(entity, myResource));
+		theBlackhole.consume(myExtractor.extractSearchParamTokens(entity, myResource));
+		theBlackhole.consume(myExtractor.extractSearchParamDates(entity, myResource));
+		theBlackhole.consume(myExtractor.extractSearchParamQuantity(entity, myResource));
+		theBlackhole.consume(myExtractor.extractSearchParamNumber(entity, myResource));
+		theBlackhole.consume(myExtractor.extractSearchParamUri(entity, myResource));
+		theBlackhole.consume(myExtractor.extractSearchParamCoords(entity, myResource));
+	}
+
+	/**
+	 * Registry which just serves the built-in search parameters, so that no database is needed
+	 */
+	private static class BuiltInSearchParamRegistry implements ISearchParamRegistry {
+
+		private final FhirContext myCtx;
+		private final Map<String, Map<String, RuntimeSearchParam>> myResourceNameToParams = new HashMap<>();
+
+		BuiltInSearchParamRegistry(FhirContext theCtx) {
+			myCtx = theCtx;
+		}
+
+		@Override
+		public void forceRefresh() {
+			// nothing
+		}
+
+		@Override
+		public RuntimeSearchParam getActiveSearchParam(String theResourceName, String theParamName) {
+			return getActiveSearchParams(theResourceName).get(theParamName);
+		}
+
+		@Override
+		public boolean refreshCacheIfNecessary() {
+			return false;
+		}
+
+		@Override
+		public Map<String, Map<String, RuntimeSearchParam>> getActiveSearchParams() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public synchronized Map<String, RuntimeSearchParam> getActiveSearchParams(String theResourceName) {
+			return myResourceNameToParams.computeIfAbsent(theResourceName, t -> {
+				Map<String, RuntimeSearchParam> retVal = new HashMap<>();
+				for (RuntimeSearchParam next : myCtx.getResourceDefinition(theResourceName).getSearchParams()) {
+					retVal.put(next.getName(), next);
+				}
+				return retVal;
+			});
+		}
+
+		@Override
+		public List<JpaRuntimeSearchParam> getActiveUniqueSearchParams(String theResourceName, Set<String> theParamNames) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<JpaRuntimeSearchParam> getActiveUniqueSearchParams(String theResourceName) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void requestRefresh() {
+			// nothing
+		}
+
+		@Override
+		public RuntimeSearchParam getSearchParamByName(RuntimeResourceDefinition theResourceDef, String theParamName) {
+			return getActiveSearchParam(theResourceDef.getName(), theParamName);
+		}
+
+		@Override
+		public Collection<RuntimeSearchParam> getSearchParamsByResourceType(RuntimeResourceDefinition theResourceDef) {
+			return getActiveSearchParams(theResourceDef.getName()).values();
+		}
+	}
+
+}
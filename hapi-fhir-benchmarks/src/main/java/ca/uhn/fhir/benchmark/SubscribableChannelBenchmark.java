@@ -0,0 +1,77 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.subscription.module.ResourceModifiedMessage;
+import ca.uhn.fhir.jpa.subscription.module.cache.LinkedBlockingQueueSubscribableChannelFactory;
+import ca.uhn.fhir.jpa.subscription.module.cache.SubscriptionConstants;
+import ca.uhn.fhir.jpa.subscription.module.channel.DiskSubscribableChannelFactory;
+import ca.uhn.fhir.jpa.subscription.module.channel.ISubscribableChannelFactory;
+import ca.uhn.fhir.jpa.subscription.module.subscriber.ResourceModifiedJsonMessage;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.messaging.SubscribableChannel;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of sending messages through a subscription channel and handing them
+ * to a subscriber, for the in-memory channel and the disk-backed channel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SubscribableChannelBenchmark {
+
+	private static final int MESSAGES_PER_INVOCATION = 1000;
+
+	@Param({"memory", "disk"})
+	private String myChannelType;
+
+	private File myDirectory;
+	private SubscribableChannel myChannel;
+	private ResourceModifiedJsonMessage myMessage;
+	private volatile CountDownLatch myLatch;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		ISubscribableChannelFactory factory;
+		if ("disk".equals(myChannelType)) {
+			myDirectory = Files.createTempDirectory("channel-benchmark").toFile();
+			factory = new DiskSubscribableChannelFactory(myDirectory);
+		} else {
+			factory = new LinkedBlockingQueueSubscribableChannelFactory();
+		}
+		myChannel = factory.createSubscribableChannel("benchmark", SubscriptionConstants.DELIVERY_CHANNEL_CONCURRENT_CONSUMERS);
+		myChannel.subscribe(theMessage -> myLatch.countDown());
+
+		myMessage = new ResourceModifiedJsonMessage(new ResourceModifiedMessage(FhirContext.forR4(), BenchmarkData.createPatient(1), ResourceModifiedMessage.OperationTypeEnum.CREATE));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (myChannel instanceof DisposableBean) {
+			((DisposableBean) myChannel).destroy();
+		}
+		if (myDirectory != null) {
+			FileUtils.deleteDirectory(myDirectory);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+	public void sendAndReceive() throws InterruptedException {
+		myLatch = new CountDownLatch(MESSAGES_PER_INVOCATION);
+		for (int i = 0; i < MESSAGES_PER_INVOCATION; i++) {
+			myChannel.send(myMessage);
+		}
+		myLatch.await();
+	}
+
+}
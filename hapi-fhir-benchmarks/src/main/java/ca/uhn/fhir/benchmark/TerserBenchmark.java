@@ -0,0 +1,54 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path based access to resource elements using {@link FhirTerser}, which is used
+ * heavily by the server (e.g. reference handling and search parameter extraction)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TerserBenchmark {
+
+	private FhirTerser myTerser;
+	private Patient myPatient;
+	private Observation myObservation;
+	private Bundle myBundle;
+
+	@Setup
+	public void setup() {
+		myTerser = FhirContext.forR4().newTerser();
+		myPatient = BenchmarkData.createPatient(1);
+		myObservation = BenchmarkData.createObservation(1, "Patient/P1");
+		myBundle = BenchmarkData.createSearchBundle(100);
+	}
+
+	@Benchmark
+	public List<Object> getPatientGivenNames() {
+		return myTerser.getValues(myPatient, "Patient.name.given");
+	}
+
+	@Benchmark
+	public List<Object> getObservationCodes() {
+		return myTerser.getValues(myObservation, "Observation.code.coding.code");
+	}
+
+	@Benchmark
+	public List<IBaseReference> getAllReferencesInBundle() {
+		return myTerser.getAllPopulatedChildElementsOfType(myBundle, IBaseReference.class);
+	}
+
+}
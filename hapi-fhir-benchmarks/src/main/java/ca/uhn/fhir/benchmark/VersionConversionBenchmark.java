@@ -0,0 +1,93 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.dstu2.resource.Patient;
+import ca.uhn.fhir.model.dstu2.valueset.AdministrativeGenderEnum;
+import ca.uhn.fhir.model.dstu2.valueset.BundleTypeEnum;
+import ca.uhn.fhir.model.primitive.DateDt;
+import ca.uhn.hapi.converters.server.HapiToHl7OrgDstu2Copier;
+import org.hl7.fhir.convertors.VersionConvertor_30_40;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serving a search response in a different FHIR version than the one
+ * the server is using (see VersionedApiConverterInterceptor), compared to
+ * serving it unconverted
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VersionConversionBenchmark {
+
+	@Param({"10", "100"})
+	private int myBundleSize;
+
+	private FhirContext myCtxDstu2;
+	private FhirContext myCtxDstu2Hl7Org;
+	private FhirContext myCtxDstu3;
+	private FhirContext myCtxR4;
+	private VersionConvertor_30_40 myVersionConvertor_30_40;
+	private HapiToHl7OrgDstu2Copier myDstu2Copier;
+	private Bundle myR4Bundle;
+	private ca.uhn.fhir.model.dstu2.resource.Bundle myDstu2Bundle;
+
+	@Setup
+	public void setup() {
+		myCtxDstu2 = FhirContext.forDstu2();
+		myCtxDstu2Hl7Org = FhirContext.forDstu2Hl7Org();
+		myCtxDstu3 = FhirContext.forDstu3();
+		myCtxR4 = FhirContext.forR4();
+		myVersionConvertor_30_40 = new VersionConvertor_30_40();
+		myDstu2Copier = new HapiToHl7OrgDstu2Copier(myCtxDstu2, myCtxDstu2Hl7Org);
+
+		myR4Bundle = BenchmarkData.createSearchBundle(myBundleSize);
+
+		myDstu2Bundle = new ca.uhn.fhir.model.dstu2.resource.Bundle();
+		myDstu2Bundle.setType(BundleTypeEnum.SEARCH_RESULTS);
+		myDstu2Bundle.setTotal(myBundleSize);
+		for (int i = 0; i < myBundleSize; i++) {
+			Patient patient = new Patient();
+			patient.setId("Patient/P" + i);
+			patient.addIdentifier().setSystem("http://example.com/mrn").setValue("MRN" + i);
+			patient.addName().addFamily("FAMILY" + i).addGiven("GIVEN" + i);
+			patient.setGender(AdministrativeGenderEnum.FEMALE);
+			patient.setBirthDate(new DateDt("1970-01-01"));
+			myDstu2Bundle.addEntry().setFullUrl("http://example.com/fhir/Patient/P" + i).setResource(patient);
+		}
+	}
+
+	@Benchmark
+	public String r4Unconverted() {
+		return myCtxR4.newJsonParser().encodeResourceToString(myR4Bundle);
+	}
+
+	@Benchmark
+	public String r4ConvertedToDstu3() throws FHIRException {
+		org.hl7.fhir.dstu3.model.Resource converted = myVersionConvertor_30_40.convertResource(myR4Bundle, true);
+		return myCtxDstu3.newJsonParser().encodeResourceToString(converted);
+	}
+
+	@Benchmark
+	public String dstu2Unconverted() {
+		return myCtxDstu2.newJsonParser().encodeResourceToString(myDstu2Bundle);
+	}
+
+	@Benchmark
+	public org.hl7.fhir.dstu2.model.Resource dstu2CopiedToHl7Org() throws FHIRException {
+		return myDstu2Copier.copy(myDstu2Bundle);
+	}
+
+	@Benchmark
+	public org.hl7.fhir.dstu2.model.Resource dstu2ReserializedToHl7Org() {
+		String encoded = myCtxDstu2.newJsonParser().encodeResourceToString(myDstu2Bundle);
+		return (org.hl7.fhir.dstu2.model.Resource) myCtxDstu2Hl7Org.newJsonParser().parseResource(encoded);
+	}
+
+}
@@ -0,0 +1,256 @@
+package ca.uhn.hapi.converters.server;
+
+/*-
+ * #%L
+ * HAPI FHIR - Converter
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.*;
+import ca.uhn.fhir.model.api.*;
+import ca.uhn.fhir.model.base.composite.BaseCodingDt;
+import ca.uhn.fhir.model.base.composite.BaseContainedDt;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import org.hl7.fhir.dstu2.model.Meta;
+import org.hl7.fhir.dstu2.model.Resource;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.instance.model.api.*;
+
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Copies resources from the HAPI DSTU2 structures (<code>ca.uhn.fhir.model.dstu2</code>) into
+ * the equivalent HL7.org DSTU2 structures (<code>org.hl7.fhir.dstu2.model</code>) by walking
+ * both models element by element, without encoding and re-parsing the resource.
+ * <p>
+ * Resources which use features that can not be copied this way (e.g. custom types with
+ * declared extensions, or references which point to a resource object instead of an ID)
+ * cause a {@link FHIRException} to be thrown, so that the caller can fall back to
+ * another approach.
+ * </p>
+ */
+public class HapiToHl7OrgDstu2Copier {
+
+	private final FhirContext myCtxDstu2;
+	private final FhirContext myCtxDstu2Hl7Org;
+
+	/**
+	 * Constructor
+	 */
+	public HapiToHl7OrgDstu2Copier(FhirContext theCtxDstu2, FhirContext theCtxDstu2Hl7Org) {
+		myCtxDstu2 = theCtxDstu2;
+		myCtxDstu2Hl7Org = theCtxDstu2Hl7Org;
+	}
+
+	public Resource copy(IResource theSource) throws FHIRException {
+		RuntimeResourceDefinition sourceDef = myCtxDstu2.getResourceDefinition(theSource);
+		RuntimeResourceDefinition targetDef = myCtxDstu2Hl7Org.getResourceDefinition(sourceDef.getName());
+		Resource target = (Resource) targetDef.newInstance();
+
+		if (theSource.getIdElement() != null && !theSource.getIdElement().isEmpty()) {
+			target.setId(theSource.getIdElement().getValue());
+		}
+		copyMeta(theSource, target);
+		copyChildren(sourceDef, theSource, targetDef, target);
+		copyExtensions(theSource, target);
+
+		return target;
+	}
+
+	private void copyMeta(IResource theSource, Resource theTarget) throws FHIRException {
+		ResourceMetadataMap metadata = theSource.getResourceMetadata();
+		for (ResourceMetadataKeyEnum<?> next : metadata.keySet()) {
+			if (next instanceof ResourceMetadataKeyEnum.ExtensionResourceMetadataKey) {
+				throw new FHIRException("Unable to copy extension metadata key: " + next.name());
+			}
+		}
+
+		Meta meta = theTarget.getMeta();
+
+		String versionId = theSource.getIdElement().getVersionIdPart();
+		if (isBlank(versionId)) {
+			versionId = ResourceMetadataKeyEnum.VERSION.get(theSource);
+		}
+		if (isNotBlank(versionId)) {
+			meta.setVersionId(versionId);
+		}
+
+		InstantDt updated = ResourceMetadataKeyEnum.UPDATED.get(theSource);
+		if (updated != null && updated.getValue() != null) {
+			meta.setLastUpdated(updated.getValue());
+		}
+
+		List<IdDt> profiles = ResourceMetadataKeyEnum.PROFILES.get(theSource);
+		if (profiles != null) {
+			for (IdDt next : profiles) {
+				if (next != null && isNotBlank(next.getValue())) {
+					meta.addProfile(next.getValue());
+				}
+			}
+		}
+
+		List<BaseCodingDt> securityLabels = ResourceMetadataKeyEnum.SECURITY_LABELS.get(theSource);
+		if (securityLabels != null) {
+			for (BaseCodingDt next : securityLabels) {
+				meta.addSecurity()
+					.setSystem(next.getSystemElement().getValueAsString())
+					.setCode(next.getCodeElement().getValueAsString())
+					.setDisplay(next.getDisplayElement().getValueAsString());
+			}
+		}
+
+		TagList tags = ResourceMetadataKeyEnum.TAG_LIST.get(theSource);
+		if (tags != null) {
+			for (Tag next : tags) {
+				if (!next.isEmpty()) {
+					meta.addTag()
+						.setSystem(next.getScheme())
+						.setCode(next.getTerm())
+						.setDisplay(next.getLabel());
+				}
+			}
+		}
+	}
+
+	private void copyChildren(BaseRuntimeElementCompositeDefinition<?> theSourceDef, IBase theSource, BaseRuntimeElementCompositeDefinition<?> theTargetDef, IBase theTarget) throws FHIRException {
+		if (!theSourceDef.getExtensions().isEmpty()) {
+			throw new FHIRException("Unable to copy declared extensions on type: " + theSourceDef.getName());
+		}
+
+		for (BaseRuntimeChildDefinition nextSourceChild : theSourceDef.getChildren()) {
+			List<IBase> values = nextSourceChild.getAccessor().getValues(theSource);
+			for (IBase nextValue : values) {
+				if (nextValue == null || nextValue.isEmpty()) {
+					continue;
+				}
+
+				if (nextValue instanceof BaseContainedDt) {
+					BaseRuntimeChildDefinition targetChild = getTargetChild(theTargetDef, "contained");
+					for (IResource nextContained : ((BaseContainedDt) nextValue).getContainedResources()) {
+						targetChild.getMutator().addValue(theTarget, copy(nextContained));
+					}
+					continue;
+				}
+
+				if (nextValue instanceof IResource) {
+					BaseRuntimeChildDefinition targetChild = getTargetChild(theTargetDef, nextSourceChild.getElementName());
+					targetChild.getMutator().addValue(theTarget, copy((IResource) nextValue));
+					continue;
+				}
+
+				String childName = nextSourceChild.getChildNameByDatatype(nextValue.getClass());
+				if (childName == null) {
+					childName = nextSourceChild.getElementName();
+				}
+				BaseRuntimeChildDefinition targetChild = getTargetChild(theTargetDef, childName);
+				BaseRuntimeElementDefinition<?> targetChildDef = targetChild.getChildByName(childName);
+				if (targetChildDef == null) {
+					throw new FHIRException("Unable to copy element: " + theSourceDef.getName() + "." + childName);
+				}
+
+				IBase targetValue = targetChildDef.newInstance(targetChild.getInstanceConstructorArguments());
+				copyElement(nextValue, targetValue);
+				targetChild.getMutator().addValue(theTarget, targetValue);
+			}
+		}
+	}
+
+	private void copyElement(IBase theSource, IBase theTarget) throws FHIRException {
+		if (theSource instanceof IBaseReference && ((IBaseReference) theSource).getResource() != null) {
+			throw new FHIRException("Unable to copy a reference to a resource instance");
+		}
+
+		if (theSource instanceof IPrimitiveType) {
+			if (!(theTarget instanceof IPrimitiveType)) {
+				throw new FHIRException("Unable to copy primitive into non-primitive type: " + theTarget.getClass());
+			}
+			((IPrimitiveType<?>) theTarget).setValueAsString(((IPrimitiveType<?>) theSource).getValueAsString());
+		} else {
+			BaseRuntimeElementCompositeDefinition<?> sourceDef = getCompositeDefinition(myCtxDstu2, theSource);
+			BaseRuntimeElementCompositeDefinition<?> targetDef = getCompositeDefinition(myCtxDstu2Hl7Org, theTarget);
+			copyChildren(sourceDef, theSource, targetDef, theTarget);
+		}
+
+		if (theSource instanceof IIdentifiableElement && theTarget instanceof IBaseElement) {
+			String elementId = ((IIdentifiableElement) theSource).getElementSpecificId();
+			if (isNotBlank(elementId)) {
+				((IBaseElement) theTarget).setId(elementId);
+			}
+		}
+		copyExtensions(theSource, theTarget);
+	}
+
+	private void copyExtensions(IBase theSource, IBase theTarget) throws FHIRException {
+		if (!(theSource instanceof ISupportsUndeclaredExtensions)) {
+			return;
+		}
+		ISupportsUndeclaredExtensions source = (ISupportsUndeclaredExtensions) theSource;
+
+		for (ExtensionDt next : source.getUndeclaredExtensions()) {
+			if (!(theTarget instanceof IBaseHasExtensions)) {
+				throw new FHIRException("Unable to copy extensions to type: " + theTarget.getClass());
+			}
+			copyExtension(next, ((IBaseHasExtensions) theTarget).addExtension());
+		}
+
+		for (ExtensionDt next : source.getUndeclaredModifierExtensions()) {
+			if (!(theTarget instanceof IBaseHasModifierExtensions)) {
+				throw new FHIRException("Unable to copy modifier extensions to type: " + theTarget.getClass());
+			}
+			copyExtension(next, ((IBaseHasModifierExtensions) theTarget).addModifierExtension());
+		}
+	}
+
+	private void copyExtension(ExtensionDt theSource, IBaseExtension<?, ?> theTarget) throws FHIRException {
+		theTarget.setUrl(theSource.getUrl());
+
+		IBaseDatatype value = theSource.getValue();
+		if (value != null && !value.isEmpty()) {
+			String typeName = myCtxDstu2.getElementDefinition(value.getClass()).getName();
+			BaseRuntimeElementDefinition<?> targetDef = myCtxDstu2Hl7Org.getElementDefinition(typeName);
+			if (targetDef == null) {
+				throw new FHIRException("Unable to copy extension value of type: " + typeName);
+			}
+			IBase targetValue = targetDef.newInstance();
+			copyElement(value, targetValue);
+			theTarget.setValue((IBaseDatatype) targetValue);
+		}
+
+		copyExtensions(theSource, theTarget);
+	}
+
+	private static BaseRuntimeChildDefinition getTargetChild(BaseRuntimeElementCompositeDefinition<?> theTargetDef, String theChildName) throws FHIRException {
+		BaseRuntimeChildDefinition retVal = theTargetDef.getChildByName(theChildName);
+		if (retVal == null) {
+			throw new FHIRException("Unable to copy element: " + theTargetDef.getName() + "." + theChildName);
+		}
+		return retVal;
+	}
+
+	private static BaseRuntimeElementCompositeDefinition<?> getCompositeDefinition(FhirContext theContext, IBase theElement) throws FHIRException {
+		BaseRuntimeElementDefinition<?> retVal = theContext.getElementDefinition(theElement.getClass());
+		if (!(retVal instanceof BaseRuntimeElementCompositeDefinition)) {
+			throw new FHIRException("Unable to copy element of type: " + theElement.getClass());
+		}
+		return (BaseRuntimeElementCompositeDefinition<?>) retVal;
+	}
+
+}
@@ -35,6 +35,8 @@ import org.hl7.fhir.convertors.*;
 import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -52,8 +54,10 @@ import static org.apache.commons.lang3.StringUtils.*;
  * </p>
  */
 public class VersionedApiConverterInterceptor extends InterceptorAdapter {
+	private static final Logger ourLog = LoggerFactory.getLogger(VersionedApiConverterInterceptor.class);
 	private final FhirContext myCtxDstu2;
 	private final FhirContext myCtxDstu2Hl7Org;
+	private final HapiToHl7OrgDstu2Copier myDstu2Copier;
 	private VersionConvertor_30_40 myVersionConvertor_30_40;
 	private VersionConvertor_10_40 myVersionConvertor_10_40;
 	private VersionConvertor_10_30 myVersionConvertor_10_30;
@@ -67,6 +71,7 @@ public class VersionedApiConverterInterceptor extends InterceptorAdapter {
 
 		myCtxDstu2 = FhirContext.forDstu2();
 		myCtxDstu2Hl7Org = FhirContext.forDstu2Hl7Org();
+		myDstu2Copier = new HapiToHl7OrgDstu2Copier(myCtxDstu2, myCtxDstu2Hl7Org);
 	}
 
 	@Override
@@ -129,7 +134,13 @@ public class VersionedApiConverterInterceptor extends InterceptorAdapter {
 
 	private org.hl7.fhir.dstu2.model.Resource toDstu2(IBaseResource theResponseResource) {
 		if (theResponseResource instanceof IResource) {
-			return (org.hl7.fhir.dstu2.model.Resource) myCtxDstu2Hl7Org.newJsonParser().parseResource(myCtxDstu2.newJsonParser().encodeResourceToString(theResponseResource));
+			try {
+				return myDstu2Copier.copy((IResource) theResponseResource);
+			} catch (FHIRException e) {
+				// Some structures can't be copied directly, so fall back to an encode/parse round trip
+				ourLog.debug("Unable to copy resource directly, going to reserialize it: {}", e.getMessage());
+				return (org.hl7.fhir.dstu2.model.Resource) myCtxDstu2Hl7Org.newJsonParser().parseResource(myCtxDstu2.newJsonParser().encodeResourceToString(theResponseResource));
+			}
 		}
 		return (org.hl7.fhir.dstu2.model.Resource) theResponseResource;
 	}
@@ -0,0 +1,83 @@
+package ca.uhn.hapi.converters.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.ExtensionDt;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.model.api.Tag;
+import ca.uhn.fhir.model.api.TagList;
+import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.composite.ResourceReferenceDt;
+import ca.uhn.fhir.model.dstu2.resource.Bundle;
+import ca.uhn.fhir.model.dstu2.resource.Observation;
+import ca.uhn.fhir.model.dstu2.resource.Patient;
+import ca.uhn.fhir.model.dstu2.valueset.AdministrativeGenderEnum;
+import ca.uhn.fhir.model.dstu2.valueset.BundleTypeEnum;
+import ca.uhn.fhir.model.dstu2.valueset.ObservationStatusEnum;
+import ca.uhn.fhir.model.primitive.DateDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.model.primitive.StringDt;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HapiToHl7OrgDstu2CopierTest {
+
+	private static FhirContext ourCtxDstu2 = FhirContext.forDstu2();
+	private static FhirContext ourCtxDstu2Hl7Org = FhirContext.forDstu2Hl7Org();
+
+	@Test
+	public void testCopyPatientMatchesReserialization() throws FHIRException {
+		Patient patient = new Patient();
+		patient.setId("Patient/A/_history/2");
+		ResourceMetadataKeyEnum.UPDATED.put(patient, new InstantDt("2019-01-01T10:00:00.000Z"));
+		TagList tags = new TagList();
+		tags.add(new Tag("http://tags", "tag1", "Tag 1"));
+		ResourceMetadataKeyEnum.TAG_LIST.put(patient, tags);
+		patient.getText().setDiv("<div>Hello</div>");
+		patient.addIdentifier().setSystem("http://mrn").setValue("123");
+		patient.addName().addFamily("FAMILY").addGiven("GIVEN");
+		patient.setGender(AdministrativeGenderEnum.FEMALE);
+		patient.setBirthDate(new DateDt("1970-01-01"));
+		patient.addUndeclaredExtension(new ExtensionDt(false, "http://ext", new StringDt("value")));
+		patient.getBirthDateElement().addUndeclaredExtension(new ExtensionDt(false, "http://ext-birthtime", new StringDt("10:00")));
+
+		assertCopyMatchesReserialization(patient);
+	}
+
+	@Test
+	public void testCopyBundleMatchesReserialization() throws FHIRException {
+		Bundle bundle = new Bundle();
+		bundle.setType(BundleTypeEnum.SEARCH_RESULTS);
+		bundle.setTotal(2);
+		for (int i = 0; i < 2; i++) {
+			Observation obs = new Observation();
+			obs.setId("Observation/" + i);
+			obs.setStatus(ObservationStatusEnum.FINAL);
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("29463-7");
+			obs.setSubject(new ResourceReferenceDt("Patient/A"));
+			obs.setValue(new QuantityDt(70 + i).setUnit("kg"));
+			bundle.addEntry().setFullUrl("http://example.com/Observation/" + i).setResource(obs);
+		}
+
+		assertCopyMatchesReserialization(bundle);
+	}
+
+	private void assertCopyMatchesReserialization(IResource theResource) throws FHIRException {
+		HapiToHl7OrgDstu2Copier copier = new HapiToHl7OrgDstu2Copier(ourCtxDstu2, ourCtxDstu2Hl7Org);
+		String encoded = ourCtxDstu2.newJsonParser().encodeResourceToString(theResource);
+
+		String expected = ourCtxDstu2Hl7Org.newJsonParser().encodeResourceToString(ourCtxDstu2Hl7Org.newJsonParser().parseResource(encoded));
+		String actual = ourCtxDstu2Hl7Org.newJsonParser().encodeResourceToString(copier.copy(theResource));
+		assertEquals(expected, actual);
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
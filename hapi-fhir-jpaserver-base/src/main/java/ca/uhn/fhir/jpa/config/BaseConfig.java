@@ -24,6 +24,8 @@ import ca.uhn.fhir.jpa.search.cache.DatabaseSearchCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.DatabaseSearchResultCacheSvcImpl;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
 import ca.uhn.fhir.jpa.search.cache.ISearchResultCacheSvc;
+import ca.uhn.fhir.jpa.search.reindex.DeferredIndexingSvcImpl;
+import ca.uhn.fhir.jpa.search.reindex.IDeferredIndexingSvc;
 import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
 import ca.uhn.fhir.jpa.search.reindex.ResourceReindexingSvcImpl;
 import ca.uhn.fhir.jpa.subscription.dbmatcher.CompositeInMemoryDaoSubscriptionMatcher;
@@ -177,6 +179,11 @@ public abstract class BaseConfig {
 		return new ResourceReindexingSvcImpl();
 	}
 
+	@Bean
+	public IDeferredIndexingSvc deferredIndexingSvc() {
+		return new DeferredIndexingSvcImpl();
+	}
+
 	@Bean
 	public IStaleSearchDeletingSvc staleSearchDeletingSvc() {
 		return new StaleSearchDeletingSvcImpl();
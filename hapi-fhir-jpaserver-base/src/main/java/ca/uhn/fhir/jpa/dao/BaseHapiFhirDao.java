@@ -20,6 +20,7 @@ import ca.uhn.fhir.jpa.model.util.JpaConstants;
 import ca.uhn.fhir.jpa.search.ISearchCoordinatorSvc;
 import ca.uhn.fhir.jpa.search.PersistedJpaBundleProvider;
 import ca.uhn.fhir.jpa.search.cache.ISearchCacheSvc;
+import ca.uhn.fhir.jpa.search.reindex.IDeferredIndexingSvc;
 import ca.uhn.fhir.jpa.searchparam.ResourceMetaParams;
 import ca.uhn.fhir.jpa.searchparam.extractor.LogicalReferenceHelper;
 import ca.uhn.fhir.jpa.searchparam.extractor.ResourceIndexedSearchParams;
@@ -27,7 +28,9 @@ import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
 import ca.uhn.fhir.jpa.sp.ISearchParamPresenceSvc;
 import ca.uhn.fhir.jpa.term.api.ITermReadSvc;
 import ca.uhn.fhir.jpa.util.AddRemoveCount;
+import ca.uhn.fhir.jpa.util.CurrentThreadCaptureQueriesListener;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.jpa.util.SqlQueryList;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.api.Tag;
@@ -60,6 +63,7 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.mutable.MutableInt;
 import org.hl7.fhir.instance.model.api.*;
 import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
 import org.slf4j.Logger;
@@ -75,9 +79,6 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 
 import javax.annotation.PostConstruct;
 import javax.persistence.*;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.XMLEvent;
 import java.util.*;
@@ -111,6 +112,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 
 	public static final long INDEX_STATUS_INDEXED = 1L;
 	public static final long INDEX_STATUS_INDEXING_FAILED = 2L;
+	/**
+	 * The resource has been stored but its indexes have not been written yet, see
+	 * {@link DaoConfig#setDeferIndexingForResourceTypes(Set)}
+	 */
+	public static final long INDEX_STATUS_DEFERRED = 3L;
 	public static final String NS_JPA_PROFILE = "https://github.com/jamesagnew/hapi-fhir/ns/jpa/profile";
 	public static final String OO_SEVERITY_ERROR = "error";
 	public static final String OO_SEVERITY_INFO = "information";
@@ -148,6 +154,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 	@Autowired
 	protected IInterceptorBroadcaster myInterceptorBroadcaster;
 	@Autowired
+	protected TagDefinitionCacheService myTagDefinitionCacheService;
+	@Autowired
+	protected ParsedResourceCacheService myParsedResourceCacheService;
+	@Autowired
+	protected IDeferredIndexingSvc myDeferredIndexingSvc;
+	@Autowired
 	ExpungeService myExpungeService;
 	@Autowired
 	private DaoConfig myConfig;
@@ -199,11 +211,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		return retVal;
 	}
 
-	private void extractTagsHapi(IResource theResource, ResourceTable theEntity, Set<ResourceTag> allDefs) {
+	private void extractTagsHapi(IResource theResource, ResourceTable theEntity, Set<ResourceTag> allDefs, MutableInt theCacheHits) {
 		TagList tagList = ResourceMetadataKeyEnum.TAG_LIST.get(theResource);
 		if (tagList != null) {
 			for (Tag next : tagList) {
-				TagDefinition def = getTagOrNull(TagTypeEnum.TAG, next.getScheme(), next.getTerm(), next.getLabel());
+				TagDefinition def = getTagOrNull(TagTypeEnum.TAG, next.getScheme(), next.getTerm(), next.getLabel(), theCacheHits);
 				if (def != null) {
 					ResourceTag tag = theEntity.addTag(def);
 					allDefs.add(tag);
@@ -215,7 +227,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		List<BaseCodingDt> securityLabels = ResourceMetadataKeyEnum.SECURITY_LABELS.get(theResource);
 		if (securityLabels != null) {
 			for (BaseCodingDt next : securityLabels) {
-				TagDefinition def = getTagOrNull(TagTypeEnum.SECURITY_LABEL, next.getSystemElement().getValue(), next.getCodeElement().getValue(), next.getDisplayElement().getValue());
+				TagDefinition def = getTagOrNull(TagTypeEnum.SECURITY_LABEL, next.getSystemElement().getValue(), next.getCodeElement().getValue(), next.getDisplayElement().getValue(), theCacheHits);
 				if (def != null) {
 					ResourceTag tag = theEntity.addTag(def);
 					allDefs.add(tag);
@@ -227,7 +239,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		List<IdDt> profiles = ResourceMetadataKeyEnum.PROFILES.get(theResource);
 		if (profiles != null) {
 			for (IIdType next : profiles) {
-				TagDefinition def = getTagOrNull(TagTypeEnum.PROFILE, NS_JPA_PROFILE, next.getValue(), null);
+				TagDefinition def = getTagOrNull(TagTypeEnum.PROFILE, NS_JPA_PROFILE, next.getValue(), null, theCacheHits);
 				if (def != null) {
 					ResourceTag tag = theEntity.addTag(def);
 					allDefs.add(tag);
@@ -237,11 +249,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		}
 	}
 
-	private void extractTagsRi(IAnyResource theResource, ResourceTable theEntity, Set<ResourceTag> theAllTags) {
+	private void extractTagsRi(IAnyResource theResource, ResourceTable theEntity, Set<ResourceTag> theAllTags, MutableInt theCacheHits) {
 		List<? extends IBaseCoding> tagList = theResource.getMeta().getTag();
 		if (tagList != null) {
 			for (IBaseCoding next : tagList) {
-				TagDefinition def = getTagOrNull(TagTypeEnum.TAG, next.getSystem(), next.getCode(), next.getDisplay());
+				TagDefinition def = getTagOrNull(TagTypeEnum.TAG, next.getSystem(), next.getCode(), next.getDisplay(), theCacheHits);
 				if (def != null) {
 					ResourceTag tag = theEntity.addTag(def);
 					theAllTags.add(tag);
@@ -253,7 +265,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		List<? extends IBaseCoding> securityLabels = theResource.getMeta().getSecurity();
 		if (securityLabels != null) {
 			for (IBaseCoding next : securityLabels) {
-				TagDefinition def = getTagOrNull(TagTypeEnum.SECURITY_LABEL, next.getSystem(), next.getCode(), next.getDisplay());
+				TagDefinition def = getTagOrNull(TagTypeEnum.SECURITY_LABEL, next.getSystem(), next.getCode(), next.getDisplay(), theCacheHits);
 				if (def != null) {
 					ResourceTag tag = theEntity.addTag(def);
 					theAllTags.add(tag);
@@ -265,7 +277,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		List<? extends IPrimitiveType<String>> profiles = theResource.getMeta().getProfile();
 		if (profiles != null) {
 			for (IPrimitiveType<String> next : profiles) {
-				TagDefinition def = getTagOrNull(TagTypeEnum.PROFILE, NS_JPA_PROFILE, next.getValue(), null);
+				TagDefinition def = getTagOrNull(TagTypeEnum.PROFILE, NS_JPA_PROFILE, next.getValue(), null, theCacheHits);
 				if (def != null) {
 					ResourceTag tag = theEntity.addTag(def);
 					theAllTags.add(tag);
@@ -321,36 +333,26 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 	}
 
 	protected TagDefinition getTagOrNull(TagTypeEnum theTagType, String theScheme, String theTerm, String theLabel) {
+		return getTagOrNull(theTagType, theScheme, theTerm, theLabel, null);
+	}
+
+	/**
+	 * @param theCacheHits If not null, will be incremented if the definition was found in the cache
+	 */
+	private TagDefinition getTagOrNull(TagTypeEnum theTagType, String theScheme, String theTerm, String theLabel, MutableInt theCacheHits) {
 		if (isBlank(theScheme) && isBlank(theTerm) && isBlank(theLabel)) {
 			return null;
 		}
 
-		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
-		CriteriaQuery<TagDefinition> cq = builder.createQuery(TagDefinition.class);
-		Root<TagDefinition> from = cq.from(TagDefinition.class);
-
-		if (isNotBlank(theScheme)) {
-			cq.where(
-				builder.and(
-					builder.equal(from.get("myTagType"), theTagType),
-					builder.equal(from.get("mySystem"), theScheme),
-					builder.equal(from.get("myCode"), theTerm)));
-		} else {
-			cq.where(
-				builder.and(
-					builder.equal(from.get("myTagType"), theTagType),
-					builder.isNull(from.get("mySystem")),
-					builder.equal(from.get("myCode"), theTerm)));
-		}
-
-		TypedQuery<TagDefinition> q = myEntityManager.createQuery(cq);
-		try {
-			return q.getSingleResult();
-		} catch (NoResultException e) {
-			TagDefinition retVal = new TagDefinition(theTagType, theScheme, theTerm, theLabel);
-			myEntityManager.persist(retVal);
+		TagDefinition retVal = myTagDefinitionCacheService.getIfCached(theTagType, theScheme, theTerm);
+		if (retVal != null) {
+			if (theCacheHits != null) {
+				theCacheHits.increment();
+			}
 			return retVal;
 		}
+
+		return myTagDefinitionCacheService.getOrCreate(theTagType, theScheme, theTerm, theLabel);
 	}
 
 
@@ -417,6 +419,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		theProvider.setSearchCacheSvc(mySearchCacheSvc);
 		theProvider.setSearchCoordinatorSvc(mySearchCoordinatorSvc);
 		theProvider.setInterceptorBroadcaster(myInterceptorBroadcaster);
+		theProvider.setDaoConfig(myConfig);
 	}
 
 	public boolean isLogicalReference(IIdType theId) {
@@ -484,18 +487,19 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 
 			Set<ResourceTag> allDefs = new HashSet<>();
 			Set<ResourceTag> allTagsOld = getAllTagDefinitions(theEntity);
+			MutableInt tagCacheHits = new MutableInt(0);
 
 			if (theResource instanceof IResource) {
-				extractTagsHapi((IResource) theResource, theEntity, allDefs);
+				extractTagsHapi((IResource) theResource, theEntity, allDefs, tagCacheHits);
 			} else {
-				extractTagsRi((IAnyResource) theResource, theEntity, allDefs);
+				extractTagsRi((IAnyResource) theResource, theEntity, allDefs, tagCacheHits);
 			}
 
 			RuntimeResourceDefinition def = myContext.getResourceDefinition(theResource);
 			if (def.isStandardType() == false) {
 				String profile = def.getResourceProfile("");
 				if (isNotBlank(profile)) {
-					TagDefinition profileDef = getTagOrNull(TagTypeEnum.PROFILE, NS_JPA_PROFILE, profile, null);
+					TagDefinition profileDef = getTagOrNull(TagTypeEnum.PROFILE, NS_JPA_PROFILE, profile, null, tagCacheHits);
 					if (def != null) {
 						ResourceTag tag = theEntity.addTag(profileDef);
 						allDefs.add(tag);
@@ -527,6 +531,19 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			}
 			theEntity.setHasTags(!allTagsNew.isEmpty());
 
+			// Interceptor broadcast: JPA_PERFTRACE_INFO
+			if (tagCacheHits.intValue() > 0) {
+				if (JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theRequest)) {
+					StorageProcessingMessage message = new StorageProcessingMessage();
+					message.setMessage("Resolved " + tagCacheHits.intValue() + " tag definition(s) from cache, avoiding " + tagCacheHits.intValue() + " HFJ_TAG_DEF " + (tagCacheHits.intValue() == 1 ? "query" : "queries"));
+					HookParams params = new HookParams()
+						.add(RequestDetails.class, theRequest)
+						.addIfMatchesType(ServletRequestDetails.class, theRequest)
+						.add(StorageProcessingMessage.class, message);
+					JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_INFO, params);
+				}
+			}
+
 		} else {
 			theEntity.setHashSha256(null);
 			bytes = null;
@@ -782,6 +799,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		long version;
 		String provenanceSourceUri = null;
 		String provenanceRequestId = null;
+		boolean isCurrentVersion = false;
 
 		if (theEntity instanceof ResourceHistoryTable) {
 			ResourceHistoryTable history = (ResourceHistoryTable) theEntity;
@@ -796,8 +814,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		} else if (theEntity instanceof ResourceTable) {
 			ResourceTable resource = (ResourceTable) theEntity;
 			version = theEntity.getVersion();
-			ResourceHistoryTable history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(theEntity.getId(), version);
-			((ResourceTable) theEntity).setCurrentVersionEntity(history);
+			ResourceHistoryTable history = resource.getCurrentVersionEntity();
+			if (history == null || history.getVersion() != version) {
+				history = myResourceHistoryTableDao.findForIdAndVersionAndFetchProvenance(theEntity.getId(), version);
+				resource.setCurrentVersionEntity(history);
+			}
+			isCurrentVersion = history != null;
 
 			while (history == null) {
 				if (version > 1L) {
@@ -823,6 +845,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			version = view.getVersion();
 			provenanceRequestId = view.getProvenanceRequestId();
 			provenanceSourceUri = view.getProvenanceSourceUri();
+			isCurrentVersion = true;
 			if (theTagList == null)
 				myTagList = new HashSet<>();
 			else
@@ -832,10 +855,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			return null;
 		}
 
-		// 2. get The text
-		String resourceText = decodeResource(resourceBytes, resourceEncoding);
-
-		// 3. Use the appropriate custom type if one is specified in the context
+		// 2. Use the appropriate custom type if one is specified in the context
 		Class<R> resourceType = theResourceType;
 		if (myContext.hasDefaultTypeForProfile()) {
 			for (BaseTag nextTag : myTagList) {
@@ -853,9 +873,15 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			}
 		}
 
-		// 4. parse the text to FHIR
-		R retVal;
-		if (resourceEncoding != ResourceEncodingEnum.DEL) {
+		// 3. parse the text to FHIR (or copy a previously parsed body of the current version)
+		R retVal = null;
+		if (resourceEncoding != ResourceEncodingEnum.DEL && isCurrentVersion) {
+			retVal = myParsedResourceCacheService.getCopy(getContext(theEntity.getFhirVersion()), theEntity.getResourceId(), version, resourceType);
+		}
+		if (retVal != null) {
+			ourLog.trace("Using cached body for resource PID {} version {}", theEntity.getResourceId(), version);
+		} else if (resourceEncoding != ResourceEncodingEnum.DEL) {
+			String resourceText = decodeResource(resourceBytes, resourceEncoding);
 			IParser parser = resourceEncoding.newParser(getContext(theEntity.getFhirVersion()));
 			parser.setParserErrorHandler(new LenientErrorHandler(false).setErrorOnInvalidValue(false));
 
@@ -878,13 +904,17 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 				throw new DataFormatException(msg, e);
 			}
 
+			if (isCurrentVersion) {
+				myParsedResourceCacheService.putCopy(getContext(theEntity.getFhirVersion()), theEntity.getResourceId(), version, retVal);
+			}
+
 		} else {
 
 			retVal = (R) myContext.getResourceDefinition(theEntity.getResourceType()).newInstance();
 
 		}
 
-		// 5. fill MetaData
+		// 4. fill MetaData
 		if (retVal instanceof IResource) {
 			IResource res = (IResource) retVal;
 			retVal = populateResourceMetadataHapi(resourceType, theEntity, myTagList, theForHistoryOperation, res, version);
@@ -893,7 +923,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			retVal = populateResourceMetadataRi(resourceType, theEntity, myTagList, theForHistoryOperation, res, version);
 		}
 
-		// 6. Handle source (provenance)
+		// 5. Handle source (provenance)
 		if (isNotBlank(provenanceRequestId) || isNotBlank(provenanceSourceUri)) {
 			String sourceString = cleanProvenanceSourceUri(provenanceSourceUri)
 				+ (isNotBlank(provenanceRequestId) ? "#" : "")
@@ -929,9 +959,43 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		return updateEntity(theRequest, null, entity, updateTime, true, true, updateTime, false, true);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public ResourceTable updateEntity(RequestDetails theRequest, final IBaseResource theResource, ResourceTable
+		theEntity, Date theDeletedTimestampOrNull, boolean thePerformIndexing,
+													 boolean theUpdateVersion, Date theUpdateTime, boolean theForceUpdate, boolean theCreateNewHistoryEntry) {
+
+		/*
+		 * If enabled and anyone is listening for raw SQL, capture the statements issued by this
+		 * write. The inserts/updates/deletes are normally only sent to the database when the
+		 * transaction commits, so we flush here in order to attribute them to this write. Since
+		 * that changes when statements are sent, it is only done when explicitly enabled. We also
+		 * only do this when there is a request to report against since these hooks are used to
+		 * account for the database work done by each request.
+		 */
+		boolean captureWriteSql = myConfig.isCaptureWriteSqlEnabled()
+			&& theRequest != null
+			&& JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_RAW_SQL, myInterceptorBroadcaster, theRequest);
+		if (!captureWriteSql) {
+			return doUpdateEntity(theRequest, theResource, theEntity, theDeletedTimestampOrNull, thePerformIndexing, theUpdateVersion, theUpdateTime, theForceUpdate, theCreateNewHistoryEntry);
+		}
+
+		CurrentThreadCaptureQueriesListener.startCapturing();
+		try {
+			ResourceTable retVal = doUpdateEntity(theRequest, theResource, theEntity, theDeletedTimestampOrNull, thePerformIndexing, theUpdateVersion, theUpdateTime, theForceUpdate, theCreateNewHistoryEntry);
+			myEntityManager.flush();
+			return retVal;
+		} finally {
+			SqlQueryList capturedQueries = CurrentThreadCaptureQueriesListener.getCurrentQueueAndStopCapturing();
+			HookParams params = new HookParams()
+				.add(RequestDetails.class, theRequest)
+				.addIfMatchesType(ServletRequestDetails.class, theRequest)
+				.add(SqlQueryList.class, capturedQueries);
+			JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_RAW_SQL, params);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private ResourceTable doUpdateEntity(RequestDetails theRequest, final IBaseResource theResource, ResourceTable
 		theEntity, Date theDeletedTimestampOrNull, boolean thePerformIndexing,
 													 boolean theUpdateVersion, Date theUpdateTime, boolean theForceUpdate, boolean theCreateNewHistoryEntry) {
 		Validate.notNull(theEntity);
@@ -939,6 +1003,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 
 		ourLog.debug("Starting entity update");
 
+		myParsedResourceCacheService.invalidate(theEntity.getId());
+
 		/*
 		 * This should be the very first thing..
 		 */
@@ -965,6 +1031,17 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 
 		ResourceIndexedSearchParams newParams = null;
 
+		/*
+		 * Resource types can be configured to have their indexes written later by
+		 * IDeferredIndexingSvc. The resource is marked as not yet indexed and the
+		 * service indexes it using reindex(), which is flagged as CURRENTLY_REINDEXING
+		 * so that it doesn't get deferred again.
+		 */
+		boolean deferIndexing = thePerformIndexing
+			&& theDeletedTimestampOrNull == null
+			&& myDeferredIndexingSvc.isDeferIndexing(toResourceName(theResource))
+			&& !Boolean.TRUE.equals(CURRENTLY_REINDEXING.get(theResource));
+
 		EncodedResource changed;
 		if (theDeletedTimestampOrNull != null) {
 			// DELETE
@@ -977,6 +1054,20 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			theEntity.setIndexStatus(INDEX_STATUS_INDEXED);
 			changed = populateResourceIntoEntity(theRequest, theResource, theEntity, true);
 
+		} else if (deferIndexing) {
+			// CREATE or UPDATE, with the indexes left for later
+
+			theEntity.setDeleted(null);
+
+			// References are resolved now, since the stored resource must not contain match URLs
+			mySearchParamWithInlineReferencesExtractor.resolveReferences(theEntity, theResource, theUpdateTime, theRequest);
+
+			changed = populateResourceIntoEntity(theRequest, theResource, theEntity, true);
+			if (changed.isChanged()) {
+				theEntity.setUpdated(theUpdateTime);
+				theEntity.setIndexStatus(INDEX_STATUS_DEFERRED);
+			}
+
 		} else {
 			// CREATE or UPDATE
 			existingParams = new ResourceIndexedSearchParams(theEntity);
@@ -988,7 +1079,9 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 				mySearchParamWithInlineReferencesExtractor.populateFromResource(newParams, this, theUpdateTime, theEntity, theResource, existingParams, theRequest);
 
 				changed = populateResourceIntoEntity(theRequest, theResource, theEntity, true);
-				if (changed.isChanged()) {
+
+				// A resource whose indexing was deferred is unchanged when it finally gets indexed
+				if (changed.isChanged() || Long.valueOf(INDEX_STATUS_DEFERRED).equals(theEntity.getIndexStatus())) {
 					theEntity.setUpdated(theUpdateTime);
 					if (theResource instanceof IResource) {
 						theEntity.setLanguage(((IResource) theResource).getLanguage().getValue());
@@ -1047,6 +1140,15 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 			postUpdate(theEntity, (T) theResource);
 		}
 
+		myDeferredIndexingSvc.resourceWritten(theEntity);
+
+		// Any totals cached for searches against this type may now be wrong (if enabled)
+		mySearchCoordinatorSvc.invalidateSearchTotals(theEntity.getResourceType());
+
+		if (deferIndexing && theRequest != null && theRequest.getResponse() != null) {
+			theRequest.getResponse().addHeader(Constants.HEADER_INDEX_CONSISTENCY_TOKEN, myDeferredIndexingSvc.toConsistencyToken(theEntity.getId()));
+		}
+
 		/*
 		 * Create history entry
 		 */
@@ -1136,7 +1238,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao,
 		/*
 		 * Indexing
 		 */
-		if (thePerformIndexing) {
+		if (thePerformIndexing && !deferIndexing) {
 			if (newParams == null) {
 				myExpungeService.deleteAllSearchParams(theEntity.getId());
 			} else {
@@ -935,7 +935,7 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		}
 
 		StopWatch w = new StopWatch();
-		BaseHasResource entity = readEntity(theId, theRequest);
+		BaseHasResource entity = doReadEntity(theId, true, !theId.hasVersionIdPart(), theRequest);
 		validateResourceType(entity);
 
 		T retVal = toResource(myResourceType, entity, null, false);
@@ -983,10 +983,23 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 
 	@Override
 	public BaseHasResource readEntity(IIdType theId, boolean theCheckForForcedId, RequestDetails theRequest) {
+		return doReadEntity(theId, theCheckForForcedId, false, theRequest);
+	}
+
+	/**
+	 * @param theFetchCurrentVersion If <code>true</code>, the current version row (which holds the resource body) is loaded
+	 *                               in the same query as the resource entity, since the caller is going to need it
+	 */
+	private BaseHasResource doReadEntity(IIdType theId, boolean theCheckForForcedId, boolean theFetchCurrentVersion, RequestDetails theRequest) {
 		validateResourceTypeAndThrowInvalidRequestException(theId);
 
 		Long pid = myIdHelperService.translateForcedIdToPid(getResourceName(), theId.getIdPart(), theRequest);
-		BaseHasResource entity = myEntityManager.find(ResourceTable.class, pid);
+		BaseHasResource entity;
+		if (theFetchCurrentVersion) {
+			entity = findEntityAndCurrentVersion(pid);
+		} else {
+			entity = myEntityManager.find(ResourceTable.class, pid);
+		}
 
 		if (entity == null) {
 			throw new ResourceNotFoundException(theId);
@@ -1023,6 +1036,27 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return entity;
 	}
 
+	/**
+	 * Loads a resource entity along with its current version row and the provenance for that
+	 * version in a single query. The version row is attached to the entity using
+	 * {@link ResourceTable#setCurrentVersionEntity(ResourceHistoryTable)} so that
+	 * {@link #toResource(Class, IBaseResourceEntity, Collection, boolean)} doesn't need
+	 * to look it up again.
+	 */
+	private ResourceTable findEntityAndCurrentVersion(Long thePid) {
+		TypedQuery<Object[]> q = myEntityManager.createQuery("SELECT t, h FROM ResourceTable t, ResourceHistoryTable h LEFT JOIN FETCH h.myProvenance WHERE t.myId = :pid AND h.myResourceId = t.myId AND h.myResourceVersion = t.myVersion", Object[].class);
+		q.setParameter("pid", thePid);
+		List<Object[]> results = q.getResultList();
+		if (results.isEmpty()) {
+			// The resource may not exist, or its current version row may be missing (toResource handles the latter)
+			return myEntityManager.find(ResourceTable.class, thePid);
+		}
+
+		ResourceTable retVal = (ResourceTable) results.get(0)[0];
+		retVal.setCurrentVersionEntity((ResourceHistoryTable) results.get(0)[1]);
+		return retVal;
+	}
+
 	protected ResourceTable readEntityLatestVersion(IIdType theId, RequestDetails theRequest) {
 		ResourceTable entity = myEntityManager.find(ResourceTable.class, myIdHelperService.translateForcedIdToPid(getResourceName(), theId.getIdPart(), theRequest));
 		if (entity == null) {
@@ -1133,6 +1167,11 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 			cacheControlDirective.parse(theRequest.getHeaders(Constants.HEADER_CACHE_CONTROL));
 		}
 
+		// Make sure any writes the client is asking to see have been indexed
+		if (theRequest != null) {
+			myDeferredIndexingSvc.ensureIndexed(theRequest.getHeaders(Constants.HEADER_INDEX_CONSISTENCY_TOKEN));
+		}
+
 		IBundleProvider retVal = mySearchCoordinatorSvc.registerSearch(this, theParams, getResourceName(), cacheControlDirective, theRequest);
 
 		if (retVal instanceof PersistedJpaBundleProvider) {
@@ -3,6 +3,7 @@ package ca.uhn.fhir.jpa.dao;
 import ca.uhn.fhir.jpa.interceptor.CascadingDeleteInterceptor;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
 import ca.uhn.fhir.jpa.model.entity.ResourceEncodingEnum;
+import ca.uhn.fhir.jpa.search.SearchTaskExecutor;
 import ca.uhn.fhir.jpa.search.warm.WarmCacheEntry;
 import ca.uhn.fhir.jpa.searchparam.SearchParamConstants;
 import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
@@ -53,6 +54,10 @@ public class DaoConfig {
 	 * See {@link #setStatusBasedReindexingDisabled(boolean)}
 	 */
 	public static final String DISABLE_STATUS_BASED_REINDEX = "disable_status_based_reindex";
+	/**
+	 * Default value for {@link #setExpireSearchResultsWorkerCount(int)}: 4
+	 */
+	public static final int DEFAULT_EXPIRE_SEARCH_RESULTS_WORKER_COUNT = 4;
 	/**
 	 * Default value for {@link #setMaximumSearchResultCountInTransaction(Integer)}
 	 *
@@ -99,6 +104,9 @@ public class DaoConfig {
 	 * update setter javadoc if default changes
 	 */
 	private int myDeferIndexingForCodesystemsOfSize = 2000;
+	private boolean myDeferFullTextIndexingForCodesystemLoads;
+	private int myParsedResourceCacheSize = 0;
+	private Set<String> myDeferIndexingForResourceTypes = Collections.emptySet();
 	private boolean myDeleteStaleSearches = true;
 	private boolean myEnforceReferentialIntegrityOnDelete = true;
 	private boolean myUniqueIndexesEnabled = true;
@@ -106,10 +114,13 @@ public class DaoConfig {
 	private boolean myEnforceReferentialIntegrityOnWrite = true;
 	private SearchTotalModeEnum myDefaultTotalMode = null;
 	private int myEverythingIncludesFetchPageSize = 50;
+	private int myEverythingIncludesFetchThreadCount = 1;
+	private int myEverythingIncludesFetchMaximumConnections = 8;
 	/**
 	 * update setter javadoc if default changes
 	 */
 	private long myExpireSearchResultsAfterMillis = DateUtils.MILLIS_PER_HOUR;
+	private int myExpireSearchResultsWorkerCount = DEFAULT_EXPIRE_SEARCH_RESULTS_WORKER_COUNT;
 	/**
 	 * update setter javadoc if default changes
 	 */
@@ -127,6 +138,12 @@ public class DaoConfig {
 	 */
 	private Integer myResourceMetaCountHardLimit = 1000;
 	private Long myReuseCachedSearchResultsForMillis = DEFAULT_REUSE_CACHED_SEARCH_RESULTS_FOR_MILLIS;
+	private Long myReuseCachedSearchTotalsForMillis;
+	private boolean myInvalidateCachedSearchTotalsOnWrite = false;
+	private boolean myHistoryKeysetPagingEnabled = false;
+	private boolean myCaptureWriteSqlEnabled = false;
+	private int mySearchExecutorMaximumThreads = SearchTaskExecutor.DEFAULT_MAXIMUM_THREADS;
+	private int mySearchExecutorMaximumQueuedSearches = SearchTaskExecutor.DEFAULT_MAXIMUM_QUEUED_SEARCHES;
 	private boolean mySchedulingDisabled;
 	private boolean mySuppressUpdatesWithNoChange = true;
 	private boolean myAutoCreatePlaceholderReferenceTargets;
@@ -402,6 +419,154 @@ public class DaoConfig {
 		myDeferIndexingForCodesystemsOfSize = theDeferIndexingForCodesystemsOfSize;
 	}
 
+	/**
+	 * If set to <code>true</code>, concepts which are stored by the deferred (incremental) storage process
+	 * for large code systems (see {@link #setDeferIndexingForCodesystemsOfSize(int)}) are not added to the
+	 * fulltext index while they are being written. Instead, they are indexed by the terminology reindexing
+	 * job once all deferred concepts and relationships have been stored. This makes loading very large
+	 * code systems such as SNOMED CT considerably faster, but fulltext based operations (e.g. ValueSet
+	 * expansion with filters) will not see the new concepts until that job has completed.
+	 * <p>
+	 * Defaults to <code>false</code>
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public boolean isDeferFullTextIndexingForCodesystemLoads() {
+		return myDeferFullTextIndexingForCodesystemLoads;
+	}
+
+	/**
+	 * If set to <code>true</code>, concepts which are stored by the deferred (incremental) storage process
+	 * for large code systems (see {@link #setDeferIndexingForCodesystemsOfSize(int)}) are not added to the
+	 * fulltext index while they are being written. Instead, they are indexed by the terminology reindexing
+	 * job once all deferred concepts and relationships have been stored. This makes loading very large
+	 * code systems such as SNOMED CT considerably faster, but fulltext based operations (e.g. ValueSet
+	 * expansion with filters) will not see the new concepts until that job has completed.
+	 * <p>
+	 * Defaults to <code>false</code>
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setDeferFullTextIndexingForCodesystemLoads(boolean theDeferFullTextIndexingForCodesystemLoads) {
+		myDeferFullTextIndexingForCodesystemLoads = theDeferFullTextIndexingForCodesystemLoads;
+	}
+
+	/**
+	 * If set to a value greater than 0, the server keeps a cache of up to this many parsed
+	 * resource bodies (one per resource, for the current version only), so that resources
+	 * which are read frequently don't need to be parsed again on every read or search. Each
+	 * caller gets a copy of the cached resource, so this is safe even if interceptors modify
+	 * the resources being returned.
+	 * <p>
+	 * Defaults to <code>0</code> (disabled)
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getParsedResourceCacheSize() {
+		return myParsedResourceCacheSize;
+	}
+
+	/**
+	 * If set to a value greater than 0, the server keeps a cache of up to this many parsed
+	 * resource bodies (one per resource, for the current version only), so that resources
+	 * which are read frequently don't need to be parsed again on every read or search. Each
+	 * caller gets a copy of the cached resource, so this is safe even if interceptors modify
+	 * the resources being returned.
+	 * <p>
+	 * Defaults to <code>0</code> (disabled)
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setParsedResourceCacheSize(int theParsedResourceCacheSize) {
+		Validate.isTrue(theParsedResourceCacheSize >= 0, "theParsedResourceCacheSize must not be negative");
+		myParsedResourceCacheSize = theParsedResourceCacheSize;
+	}
+
+	/**
+	 * Resources of the types in this set are stored without writing their search indexes
+	 * in the same transaction. The resource and its history entry are committed immediately
+	 * and the indexes are written shortly afterward by a background worker
+	 * (see {@link ca.uhn.fhir.jpa.search.reindex.IDeferredIndexingSvc}). This keeps write
+	 * latency low for resource types which have many search parameters and are written at
+	 * a high volume (e.g. device Observations). References within the resource are still
+	 * resolved when it is written, so a write with a reference that can't be resolved is
+	 * rejected immediately.
+	 * <p>
+	 * Searches may not find a resource until it has been indexed. Each write returns a
+	 * consistency token in the {@link ca.uhn.fhir.rest.api.Constants#HEADER_INDEX_CONSISTENCY_TOKEN}
+	 * response header, and a search which supplies that token in the same request header
+	 * will not run until the corresponding resource has been indexed. The token is just the
+	 * resource's internal PID, so clients can forge tokens for other resources. Doing so
+	 * only makes the server index those resources sooner, up to 100 per search.
+	 * </p>
+	 * <p>
+	 * Before a match URL for one of these types is resolved (conditional create, update and
+	 * delete, and inline match URL references), all of its resources which are waiting to
+	 * be indexed are indexed first. Resources with an active unique combo search parameter
+	 * are always indexed when they are written, so that uniqueness is still enforced. The
+	 * remaining limits are:
+	 * </p>
+	 * <ul>
+	 * <li>A match URL only waits for pending resources of its own type, so a match URL with a
+	 * chained or <code>_has</code> parameter may miss a pending resource of another type.</li>
+	 * <li>A match URL does not wait for a resource which another transaction is writing at
+	 * the same moment. This is no different from when indexing is not deferred.</li>
+	 * </ul>
+	 * <p>
+	 * Defaults to an empty set (all resources are indexed when they are written)
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public Set<String> getDeferIndexingForResourceTypes() {
+		return myDeferIndexingForResourceTypes;
+	}
+
+	/**
+	 * Resources of the types in this set are stored without writing their search indexes
+	 * in the same transaction. The resource and its history entry are committed immediately
+	 * and the indexes are written shortly afterward by a background worker
+	 * (see {@link ca.uhn.fhir.jpa.search.reindex.IDeferredIndexingSvc}). This keeps write
+	 * latency low for resource types which have many search parameters and are written at
+	 * a high volume (e.g. device Observations). References within the resource are still
+	 * resolved when it is written, so a write with a reference that can't be resolved is
+	 * rejected immediately.
+	 * <p>
+	 * Searches may not find a resource until it has been indexed. Each write returns a
+	 * consistency token in the {@link ca.uhn.fhir.rest.api.Constants#HEADER_INDEX_CONSISTENCY_TOKEN}
+	 * response header, and a search which supplies that token in the same request header
+	 * will not run until the corresponding resource has been indexed. The token is just the
+	 * resource's internal PID, so clients can forge tokens for other resources. Doing so
+	 * only makes the server index those resources sooner, up to 100 per search.
+	 * </p>
+	 * <p>
+	 * Before a match URL for one of these types is resolved (conditional create, update and
+	 * delete, and inline match URL references), all of its resources which are waiting to
+	 * be indexed are indexed first. Resources with an active unique combo search parameter
+	 * are always indexed when they are written, so that uniqueness is still enforced. The
+	 * remaining limits are:
+	 * </p>
+	 * <ul>
+	 * <li>A match URL only waits for pending resources of its own type, so a match URL with a
+	 * chained or <code>_has</code> parameter may miss a pending resource of another type.</li>
+	 * <li>A match URL does not wait for a resource which another transaction is writing at
+	 * the same moment. This is no different from when indexing is not deferred.</li>
+	 * </ul>
+	 * <p>
+	 * Defaults to an empty set (all resources are indexed when they are written)
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setDeferIndexingForResourceTypes(Set<String> theDeferIndexingForResourceTypes) {
+		Validate.notNull(theDeferIndexingForResourceTypes, "theDeferIndexingForResourceTypes must not be null");
+		myDeferIndexingForResourceTypes = theDeferIndexingForResourceTypes;
+	}
+
 	/**
 	 * Unlike with normal search queries, $everything queries have their _includes loaded by the main search thread and these included results
 	 * are added to the normal search results instead of being added on as extras in a page. This means that they will not appear multiple times
@@ -435,6 +600,80 @@ public class DaoConfig {
 		myEverythingIncludesFetchPageSize = theEverythingIncludesFetchPageSize;
 	}
 
+	/**
+	 * The number of batches of $everything _includes (see {@link #setEverythingIncludesFetchPageSize(int)})
+	 * which will be loaded at the same time for a single search. Each batch is loaded on a separate
+	 * thread using its own database connection, and the results of each batch are added to the search
+	 * results as soon as that batch is finished, so that the first page of a large $everything can be
+	 * returned before all of the included resources have been found.
+	 * <p>
+	 * Defaults to 1, meaning that batches are loaded one at a time by the main search thread
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getEverythingIncludesFetchThreadCount() {
+		return myEverythingIncludesFetchThreadCount;
+	}
+
+	/**
+	 * The number of batches of $everything _includes (see {@link #setEverythingIncludesFetchPageSize(int)})
+	 * which will be loaded at the same time for a single search. Each batch is loaded on a separate
+	 * thread using its own database connection, and the results of each batch are added to the search
+	 * results as soon as that batch is finished, so that the first page of a large $everything can be
+	 * returned before all of the included resources have been found.
+	 * <p>
+	 * Defaults to 1, meaning that batches are loaded one at a time by the main search thread
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setEverythingIncludesFetchThreadCount(int theEverythingIncludesFetchThreadCount) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theEverythingIncludesFetchThreadCount);
+		myEverythingIncludesFetchThreadCount = theEverythingIncludesFetchThreadCount;
+	}
+
+	/**
+	 * The maximum number of batches of $everything _includes (see {@link #setEverythingIncludesFetchThreadCount(int)})
+	 * which will be loaded in the background at the same time, across all searches. Each of these uses its own
+	 * database connection while the search which is waiting for it also holds one, so the database connection
+	 * pool must have at least this many connections more than {@link #getSearchExecutorMaximumThreads()}.
+	 * Otherwise searches can end up waiting on background loads which are waiting for a connection. When this
+	 * many batches are already loading, further batches are loaded by the search thread itself.
+	 * <p>
+	 * This setting is read when the server starts, and changing it afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Defaults to 8
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getEverythingIncludesFetchMaximumConnections() {
+		return myEverythingIncludesFetchMaximumConnections;
+	}
+
+	/**
+	 * The maximum number of batches of $everything _includes (see {@link #setEverythingIncludesFetchThreadCount(int)})
+	 * which will be loaded in the background at the same time, across all searches. Each of these uses its own
+	 * database connection while the search which is waiting for it also holds one, so the database connection
+	 * pool must have at least this many connections more than {@link #getSearchExecutorMaximumThreads()}.
+	 * Otherwise searches can end up waiting on background loads which are waiting for a connection. When this
+	 * many batches are already loading, further batches are loaded by the search thread itself.
+	 * <p>
+	 * This setting is read when the server starts, and changing it afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Defaults to 8
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setEverythingIncludesFetchMaximumConnections(int theEverythingIncludesFetchMaximumConnections) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, theEverythingIncludesFetchMaximumConnections);
+		myEverythingIncludesFetchMaximumConnections = theEverythingIncludesFetchMaximumConnections;
+	}
+
 	/**
 	 * Sets the number of milliseconds that search results for a given client search
 	 * should be preserved before being purged from the database.
@@ -473,6 +712,33 @@ public class DaoConfig {
 		myExpireSearchResultsAfterMillis = theExpireSearchResultsAfterMillis;
 	}
 
+	/**
+	 * Returns the number of worker threads which delete expired searches in parallel. Each
+	 * worker uses its own database connection while it is purging a search.
+	 * <p>
+	 * Default is {@link #DEFAULT_EXPIRE_SEARCH_RESULTS_WORKER_COUNT}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getExpireSearchResultsWorkerCount() {
+		return myExpireSearchResultsWorkerCount;
+	}
+
+	/**
+	 * Sets the number of worker threads which delete expired searches in parallel. Each
+	 * worker uses its own database connection while it is purging a search.
+	 * <p>
+	 * Default is {@link #DEFAULT_EXPIRE_SEARCH_RESULTS_WORKER_COUNT}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setExpireSearchResultsWorkerCount(int theExpireSearchResultsWorkerCount) {
+		Validate.isTrue(theExpireSearchResultsWorkerCount > 0, "theExpireSearchResultsWorkerCount must be greater than 0");
+		myExpireSearchResultsWorkerCount = theExpireSearchResultsWorkerCount;
+	}
+
 	/**
 	 * Gets the default maximum number of results to load in a query.
 	 * <p>
@@ -793,6 +1059,252 @@ public class DaoConfig {
 		myReuseCachedSearchResultsForMillis = theReuseCachedSearchResultsForMillis;
 	}
 
+	/**
+	 * If this is set to a non-null value (default is <code>null</code>), a search total which has been
+	 * calculated for a search (because the client requested <code>_total=accurate</code>, or because
+	 * {@link #setDefaultTotalMode(SearchTotalModeEnum) the default total mode} is <code>accurate</code>)
+	 * will be reused for the same search (same resource type and search parameters, ignoring <code>_sort</code>
+	 * and <code>_count</code>) for
+	 * this number of milliseconds instead of running the count query again.
+	 * <p>
+	 * This can greatly reduce database load when the same searches are repeatedly performed against
+	 * large tables, but means that totals may be slightly out of date. Clients may bypass this
+	 * by using the <code>Cache-Control: no-cache</code> header.
+	 * </p>
+	 * <p>
+	 * This also applies to <code>_total=estimate</code>. If no total within this window is available,
+	 * an estimated total is calculated by running the count query.
+	 * </p>
+	 * <p>
+	 * By default, writes do not discard cached totals, so a total may be up to this old.
+	 * See {@link #setInvalidateCachedSearchTotalsOnWrite(boolean)}.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public Long getReuseCachedSearchTotalsForMillis() {
+		return myReuseCachedSearchTotalsForMillis;
+	}
+
+	/**
+	 * If this is set to a non-null value (default is <code>null</code>), a search total which has been
+	 * calculated for a search (because the client requested <code>_total=accurate</code>, or because
+	 * {@link #setDefaultTotalMode(SearchTotalModeEnum) the default total mode} is <code>accurate</code>)
+	 * will be reused for the same search (same resource type and search parameters, ignoring <code>_sort</code>
+	 * and <code>_count</code>) for
+	 * this number of milliseconds instead of running the count query again.
+	 * <p>
+	 * This can greatly reduce database load when the same searches are repeatedly performed against
+	 * large tables, but means that totals may be slightly out of date. Clients may bypass this
+	 * by using the <code>Cache-Control: no-cache</code> header.
+	 * </p>
+	 * <p>
+	 * This also applies to <code>_total=estimate</code>. If no total within this window is available,
+	 * an estimated total is calculated by running the count query.
+	 * </p>
+	 * <p>
+	 * By default, writes do not discard cached totals, so a total may be up to this old.
+	 * See {@link #setInvalidateCachedSearchTotalsOnWrite(boolean)}.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setReuseCachedSearchTotalsForMillis(Long theReuseCachedSearchTotalsForMillis) {
+		myReuseCachedSearchTotalsForMillis = theReuseCachedSearchTotalsForMillis;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), creating, updating or deleting a resource discards
+	 * any totals cached for searches against that resource type (see
+	 * {@link #setReuseCachedSearchTotalsForMillis(Long)}).
+	 * <p>
+	 * On tables which are written to constantly this means that cached totals are almost never
+	 * used. Note also that this only discards totals cached by this server (not by other servers
+	 * sharing the same database), and that writes to one resource type don't discard totals for
+	 * searches on another type which use chained or <code>_has</code> parameters.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public boolean isInvalidateCachedSearchTotalsOnWrite() {
+		return myInvalidateCachedSearchTotalsOnWrite;
+	}
+
+	/**
+	 * If enabled (default is <code>false</code>), creating, updating or deleting a resource discards
+	 * any totals cached for searches against that resource type (see
+	 * {@link #setReuseCachedSearchTotalsForMillis(Long)}).
+	 * <p>
+	 * On tables which are written to constantly this means that cached totals are almost never
+	 * used. Note also that this only discards totals cached by this server (not by other servers
+	 * sharing the same database), and that writes to one resource type don't discard totals for
+	 * searches on another type which use chained or <code>_has</code> parameters.
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setInvalidateCachedSearchTotalsOnWrite(boolean theInvalidateCachedSearchTotalsOnWrite) {
+		myInvalidateCachedSearchTotalsOnWrite = theInvalidateCachedSearchTotalsOnWrite;
+	}
+
+	/**
+	 * If enabled, pages of <code>_history</code> results after the first are
+	 * located using the timestamp and PID of the last version on the previous page (which is
+	 * stored in the page ID of the next page link) instead of an offset. This means that every
+	 * page costs the same to load no matter how deep into the history it is, and that versions
+	 * which are written while a client is paging do not cause entries to be skipped or repeated.
+	 * <p>
+	 * Note that history bundles will not contain a <code>previous</code> link when this is
+	 * enabled, since a cursor can only be used to walk forward through the results. Clients
+	 * which rely on paging backwards through history should leave this disabled.
+	 * </p>
+	 * <p>
+	 * Defaults to <code>false</code>
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public boolean isHistoryKeysetPagingEnabled() {
+		return myHistoryKeysetPagingEnabled;
+	}
+
+	/**
+	 * If enabled, pages of <code>_history</code> results after the first are
+	 * located using the timestamp and PID of the last version on the previous page (which is
+	 * stored in the page ID of the next page link) instead of an offset. This means that every
+	 * page costs the same to load no matter how deep into the history it is, and that versions
+	 * which are written while a client is paging do not cause entries to be skipped or repeated.
+	 * <p>
+	 * Note that history bundles will not contain a <code>previous</code> link when this is
+	 * enabled, since a cursor can only be used to walk forward through the results. Clients
+	 * which rely on paging backwards through history should leave this disabled.
+	 * </p>
+	 * <p>
+	 * Defaults to <code>false</code>
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setHistoryKeysetPagingEnabled(boolean theHistoryKeysetPagingEnabled) {
+		myHistoryKeysetPagingEnabled = theHistoryKeysetPagingEnabled;
+	}
+
+	/**
+	 * If enabled, and a hook is registered against the
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#JPA_PERFTRACE_RAW_SQL JPA_PERFTRACE_RAW_SQL}
+	 * pointcut, the SQL statements issued in order to store each resource written by a
+	 * request are captured and reported to that hook.
+	 * <p>
+	 * Note that in order to attribute the statements to the write, the persistence context is
+	 * flushed after each resource is written instead of only when the transaction commits. This
+	 * means that statements are sent to the database earlier (and that constraint violations are
+	 * reported earlier) than they otherwise would be, so this should only be enabled when
+	 * write SQL is actually wanted.
+	 * </p>
+	 * <p>
+	 * Defaults to <code>false</code>
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public boolean isCaptureWriteSqlEnabled() {
+		return myCaptureWriteSqlEnabled;
+	}
+
+	/**
+	 * If enabled, and a hook is registered against the
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#JPA_PERFTRACE_RAW_SQL JPA_PERFTRACE_RAW_SQL}
+	 * pointcut, the SQL statements issued in order to store each resource written by a
+	 * request are captured and reported to that hook.
+	 * <p>
+	 * Note that in order to attribute the statements to the write, the persistence context is
+	 * flushed after each resource is written instead of only when the transaction commits. This
+	 * means that statements are sent to the database earlier (and that constraint violations are
+	 * reported earlier) than they otherwise would be, so this should only be enabled when
+	 * write SQL is actually wanted.
+	 * </p>
+	 * <p>
+	 * Defaults to <code>false</code>
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setCaptureWriteSqlEnabled(boolean theCaptureWriteSqlEnabled) {
+		myCaptureWriteSqlEnabled = theCaptureWriteSqlEnabled;
+	}
+
+	/**
+	 * Returns the maximum number of searches which will be performed at the same time. Every running
+	 * search holds a database connection, so this should be comfortably smaller than the size of the
+	 * database connection pool. Searches beyond this number wait for a free thread, with searches
+	 * which are already loading further pages of results being run before new searches.
+	 * <p>
+	 * This setting is read when the server starts, and changing it afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Default is {@link SearchTaskExecutor#DEFAULT_MAXIMUM_THREADS}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getSearchExecutorMaximumThreads() {
+		return mySearchExecutorMaximumThreads;
+	}
+
+	/**
+	 * Sets the maximum number of searches which will be performed at the same time. Every running
+	 * search holds a database connection, so this should be comfortably smaller than the size of the
+	 * database connection pool. Searches beyond this number wait for a free thread, with searches
+	 * which are already loading further pages of results being run before new searches.
+	 * <p>
+	 * This setting is read when the server starts, and changing it afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Default is {@link SearchTaskExecutor#DEFAULT_MAXIMUM_THREADS}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setSearchExecutorMaximumThreads(int theSearchExecutorMaximumThreads) {
+		Validate.isTrue(theSearchExecutorMaximumThreads > 0, "theSearchExecutorMaximumThreads must be greater than 0");
+		mySearchExecutorMaximumThreads = theSearchExecutorMaximumThreads;
+	}
+
+	/**
+	 * Returns the maximum number of new searches which may be waiting for a free thread (see
+	 * {@link #getSearchExecutorMaximumThreads()}). When this many new searches are already waiting,
+	 * further new searches are rejected with an HTTP 503 (Service Unavailable) response.
+	 * <p>
+	 * This setting is read when the server starts, and changing it afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Default is {@link SearchTaskExecutor#DEFAULT_MAXIMUM_QUEUED_SEARCHES}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public int getSearchExecutorMaximumQueuedSearches() {
+		return mySearchExecutorMaximumQueuedSearches;
+	}
+
+	/**
+	 * Sets the maximum number of new searches which may be waiting for a free thread (see
+	 * {@link #getSearchExecutorMaximumThreads()}). When this many new searches are already waiting,
+	 * further new searches are rejected with an HTTP 503 (Service Unavailable) response.
+	 * <p>
+	 * This setting is read when the server starts, and changing it afterwards has no effect.
+	 * </p>
+	 * <p>
+	 * Default is {@link SearchTaskExecutor#DEFAULT_MAXIMUM_QUEUED_SEARCHES}
+	 * </p>
+	 *
+	 * @since 4.1.0
+	 */
+	public void setSearchExecutorMaximumQueuedSearches(int theSearchExecutorMaximumQueuedSearches) {
+		Validate.isTrue(theSearchExecutorMaximumQueuedSearches >= 0, "theSearchExecutorMaximumQueuedSearches must not be negative");
+		mySearchExecutorMaximumQueuedSearches = theSearchExecutorMaximumQueuedSearches;
+	}
+
 	/**
 	 * Specifies the duration in minutes for which values will be retained after being
 	 * written to the terminology translation cache. Defaults to 60.
@@ -0,0 +1,121 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool used to load batches of $everything _includes in parallel
+ * (see {@link DaoConfig#setEverythingIncludesFetchThreadCount(int)}).
+ * <p>
+ * This is deliberately separate from the search executor, since the search
+ * threads block waiting for these tasks to finish. Each task runs in its own
+ * read-only transaction. The number of tasks running at once across all searches
+ * is capped (see {@link DaoConfig#setEverythingIncludesFetchMaximumConnections(int)})
+ * and tasks are never queued, so a search never waits on a task which is itself
+ * waiting for a database connection held by another search.
+ * </p>
+ */
+@Service
+public class EverythingIncludesExecutorSvc {
+
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private ThreadPoolExecutor myExecutor;
+	private Semaphore myPermits;
+	private TransactionTemplate myTxTemplate;
+
+	@PostConstruct
+	public void start() {
+		int maximumThreads = myDaoConfig.getEverythingIncludesFetchMaximumConnections();
+		BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern("everything-includes-%d")
+			.daemon(true)
+			.build();
+		myExecutor = new ThreadPoolExecutor(maximumThreads, maximumThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+		myExecutor.allowCoreThreadTimeOut(true);
+		myPermits = new Semaphore(maximumThreads);
+
+		myTxTemplate = new TransactionTemplate(myTxManager);
+		myTxTemplate.setReadOnly(true);
+	}
+
+	@PreDestroy
+	public void stop() {
+		myExecutor.shutdownNow();
+	}
+
+	/**
+	 * Returns a new completion service which runs tasks on this pool, each
+	 * in its own transaction. Tasks must only be submitted to it using
+	 * {@link #trySubmit(CompletionService, Callable)}.
+	 */
+	public <T> CompletionService<T> newCompletionService() {
+		return new ExecutorCompletionService<>(theTask -> myExecutor.execute(() -> {
+			try {
+				myTxTemplate.execute(t -> {
+					theTask.run();
+					return null;
+				});
+			} finally {
+				myPermits.release();
+			}
+		}));
+	}
+
+	/**
+	 * Submits a task to a completion service created by {@link #newCompletionService()},
+	 * unless the maximum number of tasks are already running
+	 *
+	 * @return Returns <code>false</code> if the task was not submitted, in which case the
+	 * caller should do the work itself
+	 */
+	public <T> boolean trySubmit(CompletionService<T> theCompletionService, Callable<T> theTask) {
+		if (!myPermits.tryAcquire()) {
+			return false;
+		}
+		try {
+			theCompletionService.submit(theTask);
+		} catch (RejectedExecutionException e) {
+			myPermits.release();
+			throw e;
+		}
+		return true;
+	}
+
+}
@@ -166,7 +166,29 @@ public class FulltextSearchSvcImpl implements IFulltextSearchSvc {
 		}
 		*/
 
-		QueryBuilder qb = em.getSearchFactory().buildQueryBuilder().forEntity(ResourceTable.class).get();
+		Query luceneQuery = createLuceneQuery(em, theResourceName, theParams, theReferencingPid);
+		if (luceneQuery == null) {
+			return pids;
+		}
+
+		// wrap Lucene query in a javax.persistence.SqlQuery
+		FullTextQuery jpaQuery = em.createFullTextQuery(luceneQuery, ResourceTable.class);
+		jpaQuery.setProjection("myId");
+
+		// execute search
+		List<?> result = jpaQuery.getResultList();
+
+		return toPids(result);
+	}
+
+	/**
+	 * Creates the Lucene query for the fulltext parameters in <code>theParams</code>, removing
+	 * them from the map as it goes
+	 *
+	 * @return Returns <code>null</code> if there is nothing to search for
+	 */
+	private Query createLuceneQuery(FullTextEntityManager theEntityManager, String theResourceName, SearchParameterMap theParams, Long theReferencingPid) {
+		QueryBuilder qb = theEntityManager.getSearchFactory().buildQueryBuilder().forEntity(ResourceTable.class).get();
 		BooleanJunction<?> bool = qb.bool();
 
 		/*
@@ -186,24 +208,19 @@ public class FulltextSearchSvcImpl implements IFulltextSearchSvc {
 		}
 
 		if (bool.isEmpty()) {
-			return pids;
+			return null;
 		}
 
 		if (isNotBlank(theResourceName)) {
 			bool.must(qb.keyword().onField("myResourceType").matching(theResourceName).createQuery());
 		}
 
-		Query luceneQuery = bool.createQuery();
-
-		// wrap Lucene query in a javax.persistence.SqlQuery
-		FullTextQuery jpaQuery = em.createFullTextQuery(luceneQuery, ResourceTable.class);
-		jpaQuery.setProjection("myId");
-
-		// execute search
-		List<?> result = jpaQuery.getResultList();
+		return bool.createQuery();
+	}
 
+	private static ArrayList<Long> toPids(List<?> theProjectionResults) {
 		ArrayList<Long> retVal = new ArrayList<>();
-		for (Object object : result) {
+		for (Object object : theProjectionResults) {
 			Object[] nextArray = (Object[]) object;
 			Long next = (Long) nextArray[0];
 			if (next != null) {
@@ -268,6 +285,18 @@ public class FulltextSearchSvcImpl implements IFulltextSearchSvc {
 		return doSearch(theResourceName, theParams, null);
 	}
 
+	@Transactional()
+	@Override
+	public Iterator<List<Long>> searchInRelevanceOrder(String theResourceName, SearchParameterMap theParams, int thePageSize) {
+		Validate.isTrue(thePageSize > 0, "thePageSize must be greater than 0");
+		FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
+		Query luceneQuery = createLuceneQuery(em, theResourceName, theParams, null);
+		if (luceneQuery == null) {
+			return Collections.emptyIterator();
+		}
+		return new RelevanceOrderedPageIterator(luceneQuery, thePageSize);
+	}
+
 	@Transactional()
 	@Override
 	public List<Suggestion> suggestKeywords(String theContext, String theSearchParam, String theText, RequestDetails theRequest) {
@@ -350,6 +379,56 @@ public class FulltextSearchSvcImpl implements IFulltextSearchSvc {
 		return suggestions;
 	}
 
+	/**
+	 * Reads the PIDs matching a Lucene query one page at a time. Hits are returned by
+	 * Lucene in descending order of score, and each page only requires Lucene to collect
+	 * the top <code>firstResult + pageSize</code> hits rather than every match.
+	 */
+	private class RelevanceOrderedPageIterator implements Iterator<List<Long>> {
+
+		private final Query myLuceneQuery;
+		private final int myPageSize;
+		private int myNextFirstResult;
+		private List<Long> myNextPage;
+		private boolean myExhausted;
+
+		RelevanceOrderedPageIterator(Query theLuceneQuery, int thePageSize) {
+			myLuceneQuery = theLuceneQuery;
+			myPageSize = thePageSize;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (myNextPage == null && !myExhausted) {
+				FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
+				FullTextQuery jpaQuery = em.createFullTextQuery(myLuceneQuery, ResourceTable.class);
+				jpaQuery.setProjection("myId");
+				jpaQuery.setFirstResult(myNextFirstResult);
+				jpaQuery.setMaxResults(myPageSize);
+
+				List<?> result = jpaQuery.getResultList();
+				myNextFirstResult += result.size();
+				if (result.size() < myPageSize) {
+					myExhausted = true;
+				}
+				if (!result.isEmpty()) {
+					myNextPage = toPids(result);
+				}
+			}
+			return myNextPage != null;
+		}
+
+		@Override
+		public List<Long> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			List<Long> retVal = myNextPage;
+			myNextPage = null;
+			return retVal;
+		}
+	}
+
 	public class MySuggestionFormatter implements Formatter {
 
 		private List<Suggestion> mySuggestions;
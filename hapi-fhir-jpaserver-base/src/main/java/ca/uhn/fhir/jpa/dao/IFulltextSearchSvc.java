@@ -20,6 +20,7 @@ package ca.uhn.fhir.jpa.dao;
  * #L%
  */
 
+import java.util.Iterator;
 import java.util.List;
 
 import ca.uhn.fhir.jpa.dao.FulltextSearchSvcImpl.Suggestion;
@@ -32,6 +33,19 @@ public interface IFulltextSearchSvc {
 	
 	List<Long> search(String theResourceName, SearchParameterMap theParams);
 
+	/**
+	 * Performs a fulltext search using the <code>_content</code> and <code>_text</code> parameters
+	 * (which are removed from <code>theParams</code>), and returns the matching resource PIDs in
+	 * descending order of relevance. Hits are read from the index lazily, one page at a time, so
+	 * that only the pages which are actually consumed are ever loaded.
+	 * <p>
+	 * The returned iterator must be consumed within the transaction that created it.
+	 * </p>
+	 *
+	 * @param thePageSize The number of PIDs to return in each page
+	 */
+	Iterator<List<Long>> searchInRelevanceOrder(String theResourceName, SearchParameterMap theParams, int thePageSize);
+
 	List<Long> everything(String theResourceName, SearchParameterMap theParams, RequestDetails theRequest);
 
 	boolean isDisabled();
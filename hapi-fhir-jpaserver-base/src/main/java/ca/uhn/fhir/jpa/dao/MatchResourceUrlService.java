@@ -25,26 +25,42 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
-import ca.uhn.fhir.jpa.dao.DaoRegistry;
-import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamTokenDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
+import ca.uhn.fhir.jpa.search.reindex.IDeferredIndexingSvc;
 import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
 import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.hl7.fhir.r4.model.Request;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Set;
+import java.util.*;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @Service
 public class MatchResourceUrlService {
+
+	/**
+	 * Key used to store the resolved match URLs in {@link RequestDetails#getUserData()}
+	 * while a transaction is processing its write operations
+	 */
+	private static final String RESOLVED_MATCH_URLS_KEY = MatchResourceUrlService.class.getName() + "_RESOLVED_MATCH_URLS";
+	private static final int MAX_HASHES_PER_QUERY = 800;
+
 	@Autowired
 	private DaoRegistry myDaoRegistry;
 	@Autowired
@@ -53,6 +69,12 @@ public class MatchResourceUrlService {
 	private MatchUrlService myMatchUrlService;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private IResourceIndexedSearchParamTokenDao myResourceIndexedSearchParamTokenDao;
+	@Autowired
+	private IDeferredIndexingSvc myDeferredIndexingSvc;
 
 	public <R extends IBaseResource> Set<Long> processMatchUrl(String theMatchUrl, Class<R> theResourceType, RequestDetails theRequest) {
 		StopWatch sw = new StopWatch();
@@ -66,13 +88,30 @@ public class MatchResourceUrlService {
 			throw new InvalidRequestException("Invalid match URL[" + theMatchUrl + "] - URL has no search parameters");
 		}
 
+		Map<String, Set<Long>> resolvedMatchUrls = getResolvedMatchUrls(theRequest);
+		String cacheKey = null;
+		if (resolvedMatchUrls != null && extractSystemAndValueToken(paramMap) != null) {
+			cacheKey = toCacheKey(resourceDef.getName(), theMatchUrl);
+			Set<Long> resolved = resolvedMatchUrls.get(cacheKey);
+			if (resolved != null) {
+				return new HashSet<>(resolved);
+			}
+		}
+
 		IFhirResourceDao<R> dao = myDaoRegistry.getResourceDao(theResourceType);
 		if (dao == null) {
 			throw new InternalErrorException("No DAO for resource type: " + theResourceType.getName());
 		}
 
+		// Resources whose indexing was deferred would not be found otherwise
+		myDeferredIndexingSvc.indexPendingResources(resourceDef.getName());
+
 		Set<Long> retVal = dao.searchForIds(paramMap, theRequest);
 
+		if (cacheKey != null) {
+			resolvedMatchUrls.put(cacheKey, new HashSet<>(retVal));
+		}
+
 		// Interceptor broadcast: JPA_PERFTRACE_INFO
 		if (JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theRequest)) {
 			StorageProcessingMessage message = new StorageProcessingMessage();
@@ -87,5 +126,194 @@ public class MatchResourceUrlService {
 		return retVal;
 	}
 
+	/**
+	 * Resolves a collection of match URLs (e.g. the conditional create/update/delete URLs
+	 * found in a transaction bundle) up front, and keeps the results for subsequent calls to
+	 * {@link #processMatchUrl(String, Class, RequestDetails)} using the same request until
+	 * {@link #clearResolvedMatchUrls(RequestDetails)} is called.
+	 * <p>
+	 * Only URLs consisting of a single token parameter with both a system and a value
+	 * (e.g. <code>Patient?identifier=http://foo|123</code>) are resolved here. For each
+	 * batch of these, one search is performed through the resource DAO for all of the
+	 * tokens, and one query against the token index table works out which URL(s) each
+	 * matching resource belongs to, instead of performing one search per URL. Any other
+	 * URLs are simply ignored and will be resolved individually when they are processed.
+	 * </p>
+	 * <p>
+	 * Callers are responsible for making sure that the token index is not modified while
+	 * the resolved URLs are in use, other than by resource deletions which must be reported
+	 * using {@link #resourceDeleted(Long, RequestDetails)}.
+	 * </p>
+	 */
+	public void preFetchMatchUrls(Multimap<Class<? extends IBaseResource>, String> theMatchUrls, RequestDetails theRequest) {
+		if (theRequest == null) {
+			return;
+		}
+
+		Map<String, Set<Long>> resolvedMatchUrls = new HashMap<>();
+		theRequest.getUserData().put(RESOLVED_MATCH_URLS_KEY, resolvedMatchUrls);
+
+		if (myDaoConfig.getDisableHashBasedSearches()) {
+			return;
+		}
+
+		for (Class<? extends IBaseResource> nextResourceType : theMatchUrls.keySet()) {
+			StopWatch sw = new StopWatch();
+			RuntimeResourceDefinition resourceDef = myContext.getResourceDefinition(nextResourceType);
+			String resourceName = resourceDef.getName();
+			IFhirResourceDao<?> dao = myDaoRegistry.getResourceDao(resourceName);
+
+			// Keyed by search parameter name, since each parameter needs its own search
+			Map<String, Map<Long, TokenParam>> paramNameToHashToToken = new HashMap<>();
+			Multimap<Long, String> hashToCacheKeys = ArrayListMultimap.create();
+			for (String nextMatchUrl : theMatchUrls.get(nextResourceType)) {
+				String cacheKey = toCacheKey(resourceName, nextMatchUrl);
+				if (resolvedMatchUrls.containsKey(cacheKey)) {
+					continue;
+				}
+
+				SearchParameterMap paramMap;
+				try {
+					paramMap = myMatchUrlService.translateMatchUrl(nextMatchUrl, resourceDef);
+				} catch (InvalidRequestException e) {
+					// Leave it to processMatchUrl to report this with the appropriate context
+					continue;
+				}
+
+				TokenParam token = extractSystemAndValueToken(paramMap);
+				if (token != null) {
+					String paramName = paramMap.keySet().iterator().next();
+					long hash = ResourceIndexedSearchParamToken.calculateHashSystemAndValue(resourceName, paramName, token.getSystem(), token.getValue());
+					paramNameToHashToToken.computeIfAbsent(paramName, t -> new HashMap<>()).put(hash, token);
+					hashToCacheKeys.put(hash, cacheKey);
+					resolvedMatchUrls.put(cacheKey, new HashSet<>());
+				}
+			}
+
+			if (hashToCacheKeys.isEmpty()) {
+				continue;
+			}
+
+			// Resources whose indexing was deferred would not be found otherwise
+			myDeferredIndexingSvc.indexPendingResources(resourceName);
+
+			int queryCount = 0;
+			for (Map.Entry<String, Map<Long, TokenParam>> nextParamEntry : paramNameToHashToToken.entrySet()) {
+				Map<Long, TokenParam> hashToToken = nextParamEntry.getValue();
+				for (List<Long> nextHashes : Lists.partition(new ArrayList<>(hashToToken.keySet()), MAX_HASHES_PER_QUERY)) {
+
+					/*
+					 * The search goes through the DAO so that it is subject to the same
+					 * interceptors as any other match URL. It only tells us which resources
+					 * match at least one of the URLs though, so the token index is then
+					 * used to work out which URL(s) each of those resources matches.
+					 */
+					TokenOrListParam orList = new TokenOrListParam();
+					nextHashes.forEach(t -> orList.add(hashToToken.get(t)));
+					SearchParameterMap map = new SearchParameterMap();
+					map.add(nextParamEntry.getKey(), orList);
+					Set<Long> matchingPids = dao.searchForIds(map, theRequest);
+					queryCount++;
+					if (matchingPids.isEmpty()) {
+						continue;
+					}
+
+					queryCount++;
+					for (Object[] nextRow : myResourceIndexedSearchParamTokenDao.findResourcePidsForHashSystemAndValue(nextHashes)) {
+						Long hash = (Long) nextRow[0];
+						Long resourcePid = (Long) nextRow[1];
+						if (!matchingPids.contains(resourcePid)) {
+							continue;
+						}
+						for (String nextCacheKey : hashToCacheKeys.get(hash)) {
+							resolvedMatchUrls.get(nextCacheKey).add(resourcePid);
+						}
+					}
+				}
+			}
+
+			// Interceptor broadcast: JPA_PERFTRACE_INFO
+			if (JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theRequest)) {
+				StorageProcessingMessage message = new StorageProcessingMessage();
+				message.setMessage("Pre-fetched " + hashToCacheKeys.size() + " conditional " + resourceName + " URL(s) using " + queryCount + " quer" + (queryCount == 1 ? "y" : "ies") + " in " + sw.toString());
+				HookParams params = new HookParams()
+					.add(RequestDetails.class, theRequest)
+					.addIfMatchesType(ServletRequestDetails.class, theRequest)
+					.add(StorageProcessingMessage.class, message);
+				JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_INFO, params);
+			}
+		}
+	}
+
+	/**
+	 * Removes a deleted resource from any match URLs resolved by
+	 * {@link #preFetchMatchUrls(Multimap, RequestDetails)} for the given request
+	 */
+	public void resourceDeleted(Long theResourcePid, RequestDetails theRequest) {
+		Map<String, Set<Long>> resolvedMatchUrls = getResolvedMatchUrls(theRequest);
+		if (resolvedMatchUrls != null) {
+			for (Set<Long> next : resolvedMatchUrls.values()) {
+				next.remove(theResourcePid);
+			}
+		}
+	}
+
+	/**
+	 * Discards any match URLs resolved by {@link #preFetchMatchUrls(Multimap, RequestDetails)}
+	 * for the given request. Subsequent calls to {@link #processMatchUrl(String, Class, RequestDetails)}
+	 * will query the database again.
+	 */
+	public void clearResolvedMatchUrls(RequestDetails theRequest) {
+		if (theRequest != null) {
+			theRequest.getUserData().remove(RESOLVED_MATCH_URLS_KEY);
+		}
+	}
+
+	/**
+	 * Returns the token if the given parameters consist of exactly one plain token
+	 * parameter with both a system and a value, or <code>null</code> otherwise
+	 */
+	private TokenParam extractSystemAndValueToken(SearchParameterMap theParamMap) {
+		if (theParamMap.keySet().size() != 1 || theParamMap.getLastUpdated() != null || theParamMap.getCount() != null || theParamMap.getSort() != null) {
+			return null;
+		}
+
+		String paramName = theParamMap.keySet().iterator().next();
+		if (paramName.startsWith("_")) {
+			return null;
+		}
+
+		List<List<IQueryParameterType>> andList = theParamMap.get(paramName);
+		if (andList.size() != 1 || andList.get(0).size() != 1) {
+			return null;
+		}
+
+		IQueryParameterType param = andList.get(0).get(0);
+		if (!(param instanceof TokenParam)) {
+			return null;
+		}
+
+		TokenParam token = (TokenParam) param;
+		if (token.getModifier() != null || token.isText() || token.getMissing() != null) {
+			return null;
+		}
+		if (isBlank(token.getSystem()) || isBlank(token.getValue())) {
+			return null;
+		}
+
+		return token;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Set<Long>> getResolvedMatchUrls(RequestDetails theRequest) {
+		if (theRequest == null) {
+			return null;
+		}
+		return (Map<String, Set<Long>>) theRequest.getUserData().get(RESOLVED_MATCH_URLS_KEY);
+	}
+
+	private static String toCacheKey(String theResourceName, String theMatchUrl) {
+		return theResourceName + " " + theMatchUrl;
+	}
 
 }
@@ -0,0 +1,142 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps a bounded cache of parsed resource bodies for the current version of recently
+ * read resources, so that hot resources don't need to be parsed again every time they
+ * are read or returned by a search.
+ * <p>
+ * Entries are keyed by resource PID and are only used if the version being loaded matches
+ * the cached version, so a stale entry can never be returned even if an invalidation was
+ * missed. The cached resources are never handed out directly: callers always get a copy,
+ * which they are free to modify (e.g. by populating the metadata).
+ * </p>
+ * <p>
+ * Only RI structures ({@link IAnyResource}) are cached, since the HAPI DSTU2 structures keep
+ * part of their content in resource metadata which isn't copied.
+ * </p>
+ *
+ * @see DaoConfig#setParsedResourceCacheSize(int)
+ */
+@Service
+public class ParsedResourceCacheService {
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private volatile Cache<Long, CachedResource> myCache;
+	private volatile int myCacheSize;
+
+	/**
+	 * Returns a copy of the cached resource body for the given resource PID and version, or
+	 * <code>null</code> if it isn't cached
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends IBaseResource> R getCopy(FhirContext theContext, Long theResourcePid, long theVersion, Class<R> theResourceType) {
+		Cache<Long, CachedResource> cache = getCache();
+		if (cache == null || theResourcePid == null) {
+			return null;
+		}
+
+		CachedResource cached = cache.getIfPresent(theResourcePid);
+		if (cached == null || cached.myVersion != theVersion || cached.myResource.getClass() != theResourceType || cached.myContext != theContext) {
+			return null;
+		}
+		return (R) copy(theContext, cached.myResource);
+	}
+
+	/**
+	 * Stores a copy of the given freshly parsed resource body
+	 */
+	public void putCopy(FhirContext theContext, Long theResourcePid, long theVersion, IBaseResource theResource) {
+		Cache<Long, CachedResource> cache = getCache();
+		if (cache == null || theResourcePid == null || !(theResource instanceof IAnyResource)) {
+			return;
+		}
+		cache.put(theResourcePid, new CachedResource(theContext, theVersion, copy(theContext, theResource)));
+	}
+
+	/**
+	 * Removes any cached body for the given resource. This should be called whenever the
+	 * resource is updated, deleted or expunged.
+	 */
+	public void invalidate(Long theResourcePid) {
+		Cache<Long, CachedResource> cache = myCache;
+		if (cache != null && theResourcePid != null) {
+			cache.invalidate(theResourcePid);
+		}
+	}
+
+	/**
+	 * Clears the cache
+	 */
+	public void invalidateAll() {
+		Cache<Long, CachedResource> cache = myCache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * The cache is (re)built whenever the configured size changes, so that the size can be
+	 * changed on a running server
+	 */
+	private Cache<Long, CachedResource> getCache() {
+		int cacheSize = myDaoConfig.getParsedResourceCacheSize();
+		if (cacheSize != myCacheSize) {
+			synchronized (this) {
+				if (cacheSize != myCacheSize) {
+					myCache = cacheSize > 0 ? Caffeine.newBuilder().maximumSize(cacheSize).build() : null;
+					myCacheSize = cacheSize;
+				}
+			}
+		}
+		return myCache;
+	}
+
+	private static IBaseResource copy(FhirContext theContext, IBaseResource theResource) {
+		IBaseResource retVal = theContext.getResourceDefinition(theResource).newInstance();
+		theContext.newTerser().cloneInto(theResource, retVal, false);
+		return retVal;
+	}
+
+	private static class CachedResource {
+
+		private final FhirContext myContext;
+		private final long myVersion;
+		private final IBaseResource myResource;
+
+		private CachedResource(FhirContext theContext, long theVersion, IBaseResource theResource) {
+			myContext = theContext;
+			myVersion = theVersion;
+			myResource = theResource;
+		}
+	}
+
+}
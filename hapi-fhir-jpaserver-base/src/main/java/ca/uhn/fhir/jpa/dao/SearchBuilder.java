@@ -93,6 +93,8 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
@@ -138,7 +140,10 @@ public class SearchBuilder implements ISearchBuilder {
 	private ITermReadSvc myTerminologySvc;
 	@Autowired
 	private MatchUrlService myMatchUrlService;
+	@Autowired
+	private EverythingIncludesExecutorSvc myEverythingIncludesExecutorSvc;
 	private List<Long> myAlsoIncludePids;
+	private List<Long> myFulltextPidPage;
 	private CriteriaBuilder myBuilder;
 	private BaseHapiFhirDao<?> myCallingDao;
 	private Map<JoinKey, Join<?, ?>> myIndexJoins = Maps.newHashMap();
@@ -2006,6 +2011,21 @@ public class SearchBuilder implements ISearchBuilder {
 		myBuilder = myEntityManager.getCriteriaBuilder();
 		mySearchUuid = theSearchRuntimeDetails.getSearchUuid();
 
+		if (theSearchRuntimeDetails.getResourceType() == null) {
+			theSearchRuntimeDetails.setResourceType(myResourceName);
+		}
+
+		/*
+		 * Interceptors which break down search performance by parameter need
+		 * the query string, but we only pay to generate it if someone is
+		 * listening
+		 */
+		if (theSearchRuntimeDetails.getQueryString() == null) {
+			if (JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_SEARCH_SELECT_COMPLETE, myInterceptorBroadcaster, theRequest)) {
+				theSearchRuntimeDetails.setQueryString(theParams.toNormalizedQueryString(myContext));
+			}
+		}
+
 		if (myPidSet == null) {
 			myPidSet = new HashSet<>();
 		}
@@ -2081,7 +2101,10 @@ public class SearchBuilder implements ISearchBuilder {
 		/*
 		 * Fulltext search
 		 */
-		if (myParams.containsKey(Constants.PARAM_CONTENT) || myParams.containsKey(Constants.PARAM_TEXT)) {
+		if (myFulltextPidPage != null) {
+			// Fulltext hits are being processed one page at a time by QueryIterator
+			myPredicates.add(myResourceTableRoot.get("myId").as(Long.class).in(myFulltextPidPage));
+		} else if (myParams.containsKey(Constants.PARAM_CONTENT) || myParams.containsKey(Constants.PARAM_TEXT)) {
 			if (myFulltextSearchSvc == null) {
 				if (myParams.containsKey(Constants.PARAM_TEXT)) {
 					throw new InvalidRequestException("Fulltext search is not enabled on this service, can not process parameter: " + Constants.PARAM_TEXT);
@@ -2150,6 +2173,14 @@ public class SearchBuilder implements ISearchBuilder {
 			return false;
 		}
 
+		if (Constants.PARAM_SCORE.equals(theSort.getParamName())) {
+			/*
+			 * Relevance order only exists for fulltext searches, which QueryIterator
+			 * handles itself when _score is the only sort. Otherwise it is ignored.
+			 */
+			return createSort(theBuilder, theFrom, theSort.getChain(), theOrders, thePredicates);
+		}
+
 		if (IAnyResource.SP_RES_ID.equals(theSort.getParamName())) {
 			From<?, ?> forcedIdJoin = theFrom.join("myForcedId", JoinType.LEFT);
 			if (theSort.getOrder() == null || theSort.getOrder() == SortOrderEnum.ASC) {
@@ -2401,6 +2432,7 @@ public class SearchBuilder implements ISearchBuilder {
 		 * if it's lots of IDs. I suppose maybe we should be doing this as a join anyhow
 		 * but this should work too. Sigh.
 		 */
+		StopWatch sw = new StopWatch();
 		List<Long> pids = new ArrayList<>(thePids);
 		for (int i = 0; i < pids.size(); i += MAXIMUM_PAGE_SIZE) {
 			int to = i + MAXIMUM_PAGE_SIZE;
@@ -2409,6 +2441,29 @@ public class SearchBuilder implements ISearchBuilder {
 			doLoadPids(pidsSubList, theIncludedPids, theResourceListToPopulate, theForHistoryOperation, position, theDetails);
 		}
 
+		// Interceptor broadcast: JPA_PERFTRACE_INFO
+		if (!pids.isEmpty() && JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theDetails)) {
+			long millis = sw.getMillis();
+			StorageProcessingMessage msg = new StorageProcessingMessage()
+				.setMessage("Loaded " + pids.size() + " resource(s) in " + millis + "ms")
+				.setTiming(StorageProcessingMessage.TimingEnum.RESOURCE_LOAD, millis)
+				.setResourceType(myResourceName)
+				.setQueryString(getQueryStringForPerformanceTracing());
+			HookParams params = new HookParams()
+				.add(RequestDetails.class, theDetails)
+				.addIfMatchesType(ServletRequestDetails.class, theDetails)
+				.add(StorageProcessingMessage.class, msg);
+			JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theDetails, Pointcut.JPA_PERFTRACE_INFO, params);
+		}
+
+	}
+
+	/**
+	 * Returns the query string of the search this builder ran, or <code>null</code> if this
+	 * builder is only being used to load results of a search which ran elsewhere
+	 */
+	private String getQueryStringForPerformanceTracing() {
+		return myParams != null ? myParams.toNormalizedQueryString(myContext) : null;
 	}
 
 	/**
@@ -2418,116 +2473,126 @@ public class SearchBuilder implements ISearchBuilder {
 	@Override
 	public HashSet<Long> loadIncludes(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes,
 												 boolean theReverseMode, DateRangeParam theLastUpdated, String theSearchIdOrDescription, RequestDetails theRequest) {
-		if (theMatches.size() == 0) {
+		IncludedPids included = queryIncludedPids(theContext, theEntityManager, theMatches, theRevIncludes, theReverseMode, theLastUpdated);
+		if (included == null) {
 			return new HashSet<>();
 		}
+		return filterIncludedPids(included, theReverseMode, theSearchIdOrDescription, theRequest);
+	}
+
+	/**
+	 * Runs the queries which find the resources included by the given matches, adding any new
+	 * ones to <code>theMatches</code>. No interceptors are called here, so this may be run on a
+	 * thread other than the one processing the request, as long as the results are then passed
+	 * to {@link #filterIncludedPids(IncludedPids, boolean, String, RequestDetails)} on that thread.
+	 *
+	 * @return Returns <code>null</code> if there is nothing to include
+	 */
+	private IncludedPids queryIncludedPids(FhirContext theContext, EntityManager theEntityManager, Collection<Long> theMatches, Set<Include> theRevIncludes,
+														boolean theReverseMode, DateRangeParam theLastUpdated) {
+		if (theMatches.size() == 0) {
+			return null;
+		}
 		if (theRevIncludes == null || theRevIncludes.isEmpty()) {
-			return new HashSet<>();
+			return null;
 		}
 		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
+		String resultFieldName = theReverseMode ? "mySourceResourcePid" : "myTargetResourcePid";
+
+		/*
+		 * Resolve the include parameters into the ResourceLink paths they
+		 * correspond to once up front, since these are the same for every
+		 * round. The first round uses all includes and subsequent rounds
+		 * only use the ones flagged as :iterate/:recurse
+		 */
+		IncludePaths firstRoundPaths = new IncludePaths();
+		IncludePaths iterateRoundPaths = new IncludePaths();
+		for (Include nextInclude : theRevIncludes) {
+			if ("*".equals(nextInclude.getValue())) {
+				firstRoundPaths.setMatchAll();
+				if (nextInclude.isRecurse()) {
+					iterateRoundPaths.setMatchAll();
+				}
+				continue;
+			}
+
+			String resType = nextInclude.getParamType();
+			if (isBlank(resType)) {
+				continue;
+			}
+			RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
+			if (def == null) {
+				ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
+				continue;
+			}
+
+			String paramName = nextInclude.getParamName();
+			RuntimeSearchParam param = isNotBlank(paramName) ? mySearchParamRegistry.getSearchParamByName(def, paramName) : null;
+			if (param == null) {
+				ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
+				continue;
+			}
+
+			Set<String> targetResourceTypes = null;
+			if (nextInclude.getParamTargetType() != null) {
+				targetResourceTypes = Collections.singleton(nextInclude.getParamTargetType());
+			} else if (param.getTargets() != null && param.getTargets().isEmpty() == false) {
+				targetResourceTypes = param.getTargets();
+			}
+
+			for (String nextPath : param.getPathsSplit()) {
+				firstRoundPaths.addPath(nextPath, targetResourceTypes);
+				if (nextInclude.isRecurse()) {
+					iterateRoundPaths.addPath(nextPath, targetResourceTypes);
+				}
+			}
+		}
+
+		if (firstRoundPaths.isEmpty()) {
+			return null;
+		}
 
 		Collection<Long> nextRoundMatches = theMatches;
 		HashSet<Long> allAdded = new HashSet<>();
 		HashSet<Long> original = new HashSet<>(theMatches);
-		ArrayList<Include> includes = new ArrayList<>(theRevIncludes);
+		IncludePaths includePaths = firstRoundPaths;
 
 		int roundCounts = 0;
+		int queryCounts = 0;
 		StopWatch w = new StopWatch();
 
-		boolean addedSomeThisRound;
 		do {
 			roundCounts++;
 
 			HashSet<Long> pidsToInclude = new HashSet<>();
 
-			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
-				Include nextInclude = iter.next();
-				if (nextInclude.isRecurse() == false) {
-					iter.remove();
-				}
-
-				boolean matchAll = "*".equals(nextInclude.getValue());
-				if (matchAll) {
-					String sql;
-					sql = "SELECT r FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids) ";
-					List<Collection<Long>> partitions = partition(nextRoundMatches, MAXIMUM_PAGE_SIZE);
-					for (Collection<Long> nextPartition : partitions) {
-						TypedQuery<ResourceLink> q = theEntityManager.createQuery(sql, ResourceLink.class);
-						q.setParameter("target_pids", nextPartition);
-						List<ResourceLink> results = q.getResultList();
-						for (ResourceLink resourceLink : results) {
-							if (theReverseMode) {
-								pidsToInclude.add(resourceLink.getSourceResourcePid());
-							} else {
-								pidsToInclude.add(resourceLink.getTargetResourcePid());
-							}
-						}
-					}
-				} else {
-
-					List<String> paths;
-					RuntimeSearchParam param;
-					String resType = nextInclude.getParamType();
-					if (isBlank(resType)) {
-						continue;
-					}
-					RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
-					if (def == null) {
-						ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					String paramName = nextInclude.getParamName();
-					if (isNotBlank(paramName)) {
-						param = mySearchParamRegistry.getSearchParamByName(def, paramName);
-					} else {
-						param = null;
-					}
-					if (param == null) {
-						ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
-
-					paths = param.getPathsSplit();
-
-					String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
-					for (String nextPath : paths) {
-						String sql;
-
-						boolean haveTargetTypesDefinedByParam = param.getTargets() != null && param.getTargets().isEmpty() == false;
-						if (targetResourceType != null) {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType = :target_resource_type";
-						} else if (haveTargetTypesDefinedByParam) {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType in (:target_resource_types)";
-						} else {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids)";
-						}
+			/*
+			 * All of the paths for this round are fetched using a single query (per
+			 * partition of PIDs), and the target type restrictions that apply to
+			 * individual paths are applied to the results here
+			 */
+			String sql;
+			if (includePaths.isMatchAll()) {
+				sql = "SELECT r.mySourcePath, r.myTargetResourceType, r." + resultFieldName + " FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids)";
+			} else {
+				sql = "SELECT r.mySourcePath, r.myTargetResourceType, r." + resultFieldName + " FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids) AND r.mySourcePath IN (:src_paths)";
+			}
 
-						List<Collection<Long>> partitions = partition(nextRoundMatches, MAXIMUM_PAGE_SIZE);
-						for (Collection<Long> nextPartition : partitions) {
-							TypedQuery<ResourceLink> q = theEntityManager.createQuery(sql, ResourceLink.class);
-							q.setParameter("src_path", nextPath);
-							q.setParameter("target_pids", nextPartition);
-							if (targetResourceType != null) {
-								q.setParameter("target_resource_type", targetResourceType);
-							} else if (haveTargetTypesDefinedByParam) {
-								q.setParameter("target_resource_types", param.getTargets());
-							}
-							List<ResourceLink> results = q.getResultList();
-							for (ResourceLink resourceLink : results) {
-								if (theReverseMode) {
-									Long pid = resourceLink.getSourceResourcePid();
-									if (pid != null) {
-										pidsToInclude.add(pid);
-									}
-								} else {
-									Long pid = resourceLink.getTargetResourcePid();
-									if (pid != null) {
-										pidsToInclude.add(pid);
-									}
-								}
-							}
-						}
+			List<Collection<Long>> partitions = partition(nextRoundMatches, MAXIMUM_PAGE_SIZE);
+			for (Collection<Long> nextPartition : partitions) {
+				TypedQuery<Object[]> q = theEntityManager.createQuery(sql, Object[].class);
+				q.setParameter("target_pids", nextPartition);
+				if (!includePaths.isMatchAll()) {
+					q.setParameter("src_paths", includePaths.getPaths());
+				}
+				queryCounts++;
+
+				for (Object[] nextRow : q.getResultList()) {
+					String sourcePath = (String) nextRow[0];
+					String targetResourceType = (String) nextRow[1];
+					Long pid = (Long) nextRow[2];
+					if (pid != null && includePaths.isIncluded(sourcePath, targetResourceType)) {
+						pidsToInclude.add(pid);
 					}
 				}
 			}
@@ -2537,17 +2602,53 @@ public class SearchBuilder implements ISearchBuilder {
 					pidsToInclude = new HashSet<>(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
 				}
 			}
+			/*
+			 * Only PIDs we haven't seen yet need to be scanned in the next
+			 * round, so we stop as soon as a round doesn't find anything new
+			 */
+			HashSet<Long> newPids = new HashSet<>();
 			for (Long next : pidsToInclude) {
 				if (original.contains(next) == false && allAdded.contains(next) == false) {
 					theMatches.add(next);
+					newPids.add(next);
 				}
 			}
 
-			addedSomeThisRound = allAdded.addAll(pidsToInclude);
-			nextRoundMatches = pidsToInclude;
-		} while (includes.size() > 0 && nextRoundMatches.size() > 0 && addedSomeThisRound);
+			allAdded.addAll(pidsToInclude);
+			nextRoundMatches = newPids;
+			includePaths = iterateRoundPaths;
+		} while (includePaths.isEmpty() == false && nextRoundMatches.size() > 0);
 
-		ourLog.info("Loaded {} {} in {} rounds and {} ms for search {}", allAdded.size(), theReverseMode ? "_revincludes" : "_includes", roundCounts, w.getMillisAndRestart(), theSearchIdOrDescription);
+		return new IncludedPids(theMatches, allAdded, roundCounts, queryCounts, w.getMillis());
+	}
+
+	/**
+	 * Calls the interceptors for resources found by {@link #queryIncludedPids(FhirContext, EntityManager, Collection, Set, boolean, DateRangeParam)},
+	 * and removes any which they reject from the results. This must be called on the thread
+	 * processing the request, since interceptors may rely on that.
+	 */
+	private HashSet<Long> filterIncludedPids(IncludedPids theIncluded, boolean theReverseMode, String theSearchIdOrDescription, RequestDetails theRequest) {
+		Collection<Long> matches = theIncluded.getMatches();
+		HashSet<Long> allAdded = theIncluded.getPids();
+		int roundCounts = theIncluded.getRoundCount();
+		int queryCounts = theIncluded.getQueryCount();
+		long millis = theIncluded.getMillis();
+
+		ourLog.info("Loaded {} {} in {} rounds, {} queries and {} ms for search {}", allAdded.size(), theReverseMode ? "_revincludes" : "_includes", roundCounts, queryCounts, millis, theSearchIdOrDescription);
+
+		// Interceptor broadcast: JPA_PERFTRACE_INFO
+		if (JpaInterceptorBroadcaster.hasHooks(Pointcut.JPA_PERFTRACE_INFO, myInterceptorBroadcaster, theRequest)) {
+			StorageProcessingMessage msg = new StorageProcessingMessage()
+				.setMessage("Loaded " + allAdded.size() + " " + (theReverseMode ? "_revincludes" : "_includes") + " in " + roundCounts + " round(s) using " + queryCounts + " quer" + (queryCounts == 1 ? "y" : "ies") + " in " + millis + "ms for search " + theSearchIdOrDescription)
+				.setTiming(theReverseMode ? StorageProcessingMessage.TimingEnum.REVINCLUDE_LOAD : StorageProcessingMessage.TimingEnum.INCLUDE_LOAD, millis)
+				.setResourceType(myResourceName)
+				.setQueryString(getQueryStringForPerformanceTracing());
+			HookParams params = new HookParams()
+				.add(RequestDetails.class, theRequest)
+				.addIfMatchesType(ServletRequestDetails.class, theRequest)
+				.add(StorageProcessingMessage.class, msg);
+			JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequest, Pointcut.JPA_PERFTRACE_INFO, params);
+		}
 
 		// Interceptor call: STORAGE_PREACCESS_RESOURCES
 		// This can be used to remove results from the search result details before
@@ -2565,7 +2666,7 @@ public class SearchBuilder implements ISearchBuilder {
 				if (accessDetails.isDontReturnResourceAtIndex(i)) {
 					Long value = includedPidList.remove(i);
 					if (value != null) {
-						theMatches.remove(value);
+						matches.remove(value);
 					}
 				}
 			}
@@ -3067,6 +3168,9 @@ public class SearchBuilder implements ISearchBuilder {
 		private ArrayList<Long> myCurrentPids;
 		private Long myNext;
 		private int myPageSize = myDaoConfig.getEverythingIncludesFetchPageSize();
+		private int myThreadCount = myDaoConfig.getEverythingIncludesFetchThreadCount();
+		private CompletionService<IncludedPids> myCompletionService;
+		private int myPagesInFlight;
 
 		IncludesIterator(Set<Long> thePidSet, RequestDetails theRequest) {
 			myCurrentPids = new ArrayList<>(thePidSet);
@@ -3083,24 +3187,88 @@ public class SearchBuilder implements ISearchBuilder {
 					break;
 				}
 
-				int start = myCurrentOffset;
-				int end = myCurrentOffset + myPageSize;
-				if (end > myCurrentPids.size()) {
-					end = myCurrentPids.size();
+				Set<Long> newPids;
+				if (myThreadCount > 1) {
+					newPids = fetchNextPageInParallel();
+				} else {
+					Collection<Long> pidsToScan = nextPageToScan();
+					newPids = pidsToScan != null ? loadIncludesForPage(pidsToScan) : null;
 				}
-				if (end - start <= 0) {
+				if (newPids == null) {
 					myNext = NO_MORE;
 					break;
 				}
-				myCurrentOffset = end;
-				Collection<Long> pidsToScan = myCurrentPids.subList(start, end);
-				Set<Include> includes = Collections.singleton(new Include("*", true));
-				Set<Long> newPids = loadIncludes(myContext, myEntityManager, pidsToScan, includes, false, myParams.getLastUpdated(), mySearchUuid, myRequest);
 				myCurrentIterator = newPids.iterator();
 
 			}
 		}
 
+		/**
+		 * Keeps up to {@link DaoConfig#getEverythingIncludesFetchThreadCount()} pages
+		 * loading in the background, and returns the results of whichever one finishes
+		 * first so that they can be added to the search results right away.
+		 * <p>
+		 * Only the ResourceLink queries run in the background. Interceptors are always
+		 * called on this thread, since they may keep state in the request or in
+		 * thread locals. If the background pool is busy with other searches, the page
+		 * is loaded by this thread instead.
+		 * </p>
+		 */
+		private Set<Long> fetchNextPageInParallel() {
+			if (myCompletionService == null) {
+				myCompletionService = myEverythingIncludesExecutorSvc.newCompletionService();
+			}
+
+			Set<Include> includes = Collections.singleton(new Include("*", true));
+			while (myPagesInFlight < myThreadCount) {
+				Collection<Long> pidsToScan = nextPageToScan();
+				if (pidsToScan == null) {
+					break;
+				}
+				boolean submitted = myEverythingIncludesExecutorSvc.trySubmit(myCompletionService, () -> queryIncludedPids(myContext, myEntityManager, pidsToScan, includes, false, myParams.getLastUpdated()));
+				if (!submitted) {
+					return loadIncludesForPage(pidsToScan);
+				}
+				myPagesInFlight++;
+			}
+
+			if (myPagesInFlight == 0) {
+				return null;
+			}
+
+			try {
+				IncludedPids included = myCompletionService.take().get();
+				myPagesInFlight--;
+				if (included == null) {
+					return new HashSet<>();
+				}
+				return filterIncludedPids(included, false, mySearchUuid, myRequest);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new InternalErrorException(e.getCause());
+			}
+		}
+
+		private Collection<Long> nextPageToScan() {
+			int start = myCurrentOffset;
+			int end = Math.min(myCurrentOffset + myPageSize, myCurrentPids.size());
+			if (end - start <= 0) {
+				return null;
+			}
+			myCurrentOffset = end;
+			return new ArrayList<>(myCurrentPids.subList(start, end));
+		}
+
+		private Set<Long> loadIncludesForPage(Collection<Long> thePidsToScan) {
+			Set<Include> includes = Collections.singleton(new Include("*", true));
+			return loadIncludes(myContext, myEntityManager, thePidsToScan, includes, false, myParams.getLastUpdated(), mySearchUuid, myRequest);
+		}
+
 		@Override
 		public boolean hasNext() {
 			fetchNext();
@@ -3126,6 +3294,8 @@ public class SearchBuilder implements ISearchBuilder {
 		private Long myNext;
 		private Iterator<Long> myPreResultsIterator;
 		private ScrollableResultsIterator<Long> myResultsIterator;
+		private Iterator<List<Long>> myFulltextHitPages;
+		private Iterator<Long> myFulltextResultsIterator;
 		private SortSpec mySort;
 		private boolean myStillNeedToFetchIncludes;
 		private int mySkipCount = 0;
@@ -3150,12 +3320,22 @@ public class SearchBuilder implements ISearchBuilder {
 				}
 
 				// If we don't have a query yet, create one
-				if (myResultsIterator == null) {
+				if (myResultsIterator == null && myFulltextHitPages == null) {
 					if (myMaxResultsToFetch == null) {
 						myMaxResultsToFetch = myDaoConfig.getFetchSizeDefaultMaximum();
 					}
 
+					if (isFulltextSearchInRelevanceOrder()) {
+						mySearchRuntimeDetails.setQueryStopwatch(new StopWatch());
+						myFulltextHitPages = myFulltextSearchSvc.searchInRelevanceOrder(myResourceName, myParams, MAXIMUM_PAGE_SIZE);
+						myFulltextResultsIterator = Collections.emptyIterator();
+					}
+				}
+
+				if (myResultsIterator == null && myFulltextHitPages == null) {
+					StopWatch queryBuildStopwatch = new StopWatch();
 					final TypedQuery<Long> query = createQuery(mySort, myMaxResultsToFetch, false, myRequest);
+					mySearchRuntimeDetails.setQueryBuildMillis(queryBuildStopwatch.getMillis());
 
 					mySearchRuntimeDetails.setQueryStopwatch(new StopWatch());
 
@@ -3183,7 +3363,9 @@ public class SearchBuilder implements ISearchBuilder {
 						}
 					}
 
-					if (myNext == null) {
+					if (myNext == null && myFulltextHitPages != null) {
+						myNext = fetchNextFulltextResult();
+					} else if (myNext == null) {
 						while (myResultsIterator.hasNext()) {
 							Long next = myResultsIterator.next();
 							if (next != null) {
@@ -3253,6 +3435,46 @@ public class SearchBuilder implements ISearchBuilder {
 
 		}
 
+		/**
+		 * Fulltext hits are read from Lucene one page at a time, in relevance order.
+		 * The other search parameters are applied to each page using a regular query
+		 * restricted to the PIDs in the page, and the PIDs which survive are returned
+		 * in the same order as the page.
+		 */
+		private Long fetchNextFulltextResult() {
+			while (true) {
+				while (myFulltextResultsIterator.hasNext()) {
+					Long next = myFulltextResultsIterator.next();
+					if (myPidSet.add(next)) {
+						return next;
+					} else {
+						mySkipCount++;
+					}
+				}
+
+				if (myMaxResultsToFetch != null && myPidSet.size() >= myMaxResultsToFetch) {
+					return null;
+				}
+				if (!myFulltextHitPages.hasNext()) {
+					return null;
+				}
+
+				myFulltextPidPage = myFulltextHitPages.next();
+				StopWatch queryBuildStopwatch = new StopWatch();
+				TypedQuery<Long> query = createQuery(null, null, false, myRequest);
+				mySearchRuntimeDetails.setQueryBuildMillis(mySearchRuntimeDetails.getQueryBuildMillis() + queryBuildStopwatch.getMillis());
+
+				Set<Long> matches = new HashSet<>(query.getResultList());
+				List<Long> pageResults = new ArrayList<>(matches.size());
+				for (Long next : myFulltextPidPage) {
+					if (matches.contains(next)) {
+						pageResults.add(next);
+					}
+				}
+				myFulltextResultsIterator = pageResults.iterator();
+			}
+		}
+
 		@Override
 		public boolean hasNext() {
 			if (myNext == null) {
@@ -3284,6 +3506,21 @@ public class SearchBuilder implements ISearchBuilder {
 	}
 
 
+	/**
+	 * Fulltext searches are streamed in relevance order, one page of Lucene hits at a time,
+	 * if they aren't sorted by anything other than <code>_score</code>
+	 */
+	private boolean isFulltextSearchInRelevanceOrder() {
+		if (myFulltextSearchSvc == null || myParams.getEverythingMode() != null) {
+			return false;
+		}
+		if (!myParams.containsKey(Constants.PARAM_CONTENT) && !myParams.containsKey(Constants.PARAM_TEXT)) {
+			return false;
+		}
+		SortSpec sort = myParams.getSort();
+		return sort == null || (Constants.PARAM_SCORE.equals(sort.getParamName()) && sort.getChain() == null);
+	}
+
 	private static class CountQueryIterator implements Iterator<Long> {
 		private final TypedQuery<Long> myQuery;
 		private boolean myCountLoaded;
@@ -3347,6 +3584,98 @@ public class SearchBuilder implements ISearchBuilder {
 		}
 	}
 
+	/**
+	 * The set of ResourceLink source paths to follow in one round of
+	 * _include/_revinclude loading, along with the target resource types
+	 * each path is restricted to (if any)
+	 */
+	private static class IncludePaths {
+		private final Map<String, Set<String>> myPathToTargetResourceTypes = new HashMap<>();
+		private boolean myMatchAll;
+
+		void addPath(String thePath, Set<String> theTargetResourceTypes) {
+			if (!myPathToTargetResourceTypes.containsKey(thePath)) {
+				myPathToTargetResourceTypes.put(thePath, theTargetResourceTypes != null ? new HashSet<>(theTargetResourceTypes) : null);
+			} else {
+				Set<String> existing = myPathToTargetResourceTypes.get(thePath);
+				if (existing != null) {
+					if (theTargetResourceTypes == null) {
+						myPathToTargetResourceTypes.put(thePath, null);
+					} else {
+						existing.addAll(theTargetResourceTypes);
+					}
+				}
+			}
+		}
+
+		Set<String> getPaths() {
+			return myPathToTargetResourceTypes.keySet();
+		}
+
+		boolean isEmpty() {
+			return !myMatchAll && myPathToTargetResourceTypes.isEmpty();
+		}
+
+		boolean isIncluded(String theSourcePath, String theTargetResourceType) {
+			if (myMatchAll) {
+				return true;
+			}
+			if (!myPathToTargetResourceTypes.containsKey(theSourcePath)) {
+				return false;
+			}
+			Set<String> targetResourceTypes = myPathToTargetResourceTypes.get(theSourcePath);
+			return targetResourceTypes == null || targetResourceTypes.contains(theTargetResourceType);
+		}
+
+		boolean isMatchAll() {
+			return myMatchAll;
+		}
+
+		void setMatchAll() {
+			myMatchAll = true;
+		}
+	}
+
+	/**
+	 * The resources found by one call to {@link #queryIncludedPids(FhirContext, EntityManager, Collection, Set, boolean, DateRangeParam)},
+	 * and the matches they were added to
+	 */
+	private static class IncludedPids {
+		private final Collection<Long> myMatches;
+		private final HashSet<Long> myPids;
+		private final int myRoundCount;
+		private final int myQueryCount;
+		private final long myMillis;
+
+		IncludedPids(Collection<Long> theMatches, HashSet<Long> thePids, int theRoundCount, int theQueryCount, long theMillis) {
+			myMatches = theMatches;
+			myPids = thePids;
+			myRoundCount = theRoundCount;
+			myQueryCount = theQueryCount;
+			myMillis = theMillis;
+		}
+
+		Collection<Long> getMatches() {
+			return myMatches;
+		}
+
+		HashSet<Long> getPids() {
+			return myPids;
+		}
+
+		int getRoundCount() {
+			return myRoundCount;
+		}
+
+		int getQueryCount() {
+			return myQueryCount;
+		}
+
+		long getMillis() {
+			return myMillis;
+		}
+	}
+
 	private static String createRightMatchLikeExpression(String likeExpression) {
 		return "%" + likeExpression.replace("%", "[%]");
 	}
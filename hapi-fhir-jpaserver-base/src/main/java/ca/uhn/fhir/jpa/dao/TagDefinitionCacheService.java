@@ -0,0 +1,225 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.model.entity.TagDefinition;
+import ca.uhn.fhir.jpa.model.entity.TagTypeEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Keeps a bounded cache of {@link TagDefinition} rows, shared by all resource DAOs, so that
+ * the tags, security labels and profiles found on each resource being written don't each
+ * need a query against HFJ_TAG_DEF.
+ * <p>
+ * Missing definitions are created in their own short transaction, so that two writers adding
+ * the same new tag at the same time can't cause the loser's whole resource write to fail on the
+ * IDX_TAGDEF_TYPESYSCODE unique index. The loser simply reads the row the winner created. A
+ * definition created this way is kept even if the resource write that created it is rolled
+ * back, which is harmless since an unused definition is never returned by a search. The
+ * definitions held in the cache are detached entities, which is fine since they are never
+ * modified once they have been created.
+ * </p>
+ */
+@Service
+public class TagDefinitionCacheService {
+
+	static final int MAXIMUM_CACHE_SIZE = 10000;
+	static final int PRELOAD_COUNT = 1000;
+	private static final Logger ourLog = LoggerFactory.getLogger(TagDefinitionCacheService.class);
+
+	private final Cache<TagDefinitionKey, TagDefinition> myCache = Caffeine.newBuilder().maximumSize(MAXIMUM_CACHE_SIZE).build();
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	@Autowired
+	private PlatformTransactionManager myTransactionManager;
+
+	/**
+	 * Loads the most frequently used tag definitions (counted across HFJ_RES_TAG) into the cache,
+	 * since servers typically have a small number of tags which are used on most resources
+	 */
+	@PostConstruct
+	public void start() {
+		try {
+			TransactionTemplate txTemplate = new TransactionTemplate(myTransactionManager);
+			txTemplate.setReadOnly(true);
+			int count = txTemplate.execute(t -> {
+				TypedQuery<Long> idQuery = myEntityManager.createQuery("SELECT t.myTagId FROM ResourceTag t GROUP BY t.myTagId ORDER BY COUNT(t.myTagId) DESC", Long.class);
+				idQuery.setMaxResults(PRELOAD_COUNT);
+				List<Long> ids = idQuery.getResultList();
+				if (ids.isEmpty()) {
+					return 0;
+				}
+
+				TypedQuery<TagDefinition> q = myEntityManager.createQuery("SELECT d FROM TagDefinition d WHERE d.myId IN (:ids)", TagDefinition.class);
+				q.setParameter("ids", ids);
+				List<TagDefinition> definitions = q.getResultList();
+				for (TagDefinition next : definitions) {
+					myCache.put(new TagDefinitionKey(next.getTagType(), next.getSystem(), next.getCode()), next);
+				}
+				return definitions.size();
+			});
+			ourLog.info("Preloaded {} tag definitions", count);
+		} catch (Exception e) {
+			ourLog.warn("Failed to preload tag definitions: {}", e.toString());
+		}
+	}
+
+	/**
+	 * Returns the definition for the given tag if it is already cached, or <code>null</code>
+	 */
+	public TagDefinition getIfCached(TagTypeEnum theTagType, String theSystem, String theCode) {
+		return myCache.getIfPresent(new TagDefinitionKey(theTagType, theSystem, theCode));
+	}
+
+	/**
+	 * Returns the definition for the given tag, creating it if it does not already exist.
+	 * A newly created definition is committed in its own transaction before this method
+	 * returns, independently of the caller's transaction.
+	 */
+	public TagDefinition getOrCreate(TagTypeEnum theTagType, String theSystem, String theCode, String theDisplay) {
+		TagDefinitionKey key = new TagDefinitionKey(theTagType, theSystem, theCode);
+		TagDefinition retVal = myCache.getIfPresent(key);
+		if (retVal == null) {
+			retVal = findOrCreate(theTagType, theSystem, theCode, theDisplay);
+			myCache.put(key, retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Clears the cache. This must be called if tag definitions are deleted from the database.
+	 * If a transaction is active the cache is cleared again once it has committed, so that
+	 * definitions loaded by other writers while the deletion was in progress are dropped too.
+	 */
+	public void clearCache() {
+		myCache.invalidateAll();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					myCache.invalidateAll();
+				}
+			});
+		}
+	}
+
+	private TagDefinition findOrCreate(TagTypeEnum theTagType, String theSystem, String theCode, String theDisplay) {
+		TransactionTemplate txTemplate = new TransactionTemplate(myTransactionManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		try {
+			return txTemplate.execute(t -> {
+				TagDefinition retVal = find(theTagType, theSystem, theCode);
+				if (retVal == null) {
+					retVal = new TagDefinition(theTagType, theSystem, theCode, theDisplay);
+					myEntityManager.persist(retVal);
+					myEntityManager.flush();
+				}
+				return retVal;
+			});
+		} catch (DataIntegrityViolationException | PersistenceException e) {
+			// Another writer created the same definition at the same time, so just load theirs
+			ourLog.debug("Conflict creating tag definition {}|{}, loading existing definition: {}", theSystem, theCode, e.toString());
+			TagDefinition retVal = txTemplate.execute(t -> find(theTagType, theSystem, theCode));
+			if (retVal == null) {
+				throw new InternalErrorException("Failed to create tag definition " + theSystem + "|" + theCode, e);
+			}
+			return retVal;
+		}
+	}
+
+	private TagDefinition find(TagTypeEnum theTagType, String theSystem, String theCode) {
+		String sql;
+		if (isNotBlank(theSystem)) {
+			sql = "SELECT d FROM TagDefinition d WHERE d.myTagType = :type AND d.mySystem = :system AND d.myCode = :code";
+		} else {
+			sql = "SELECT d FROM TagDefinition d WHERE d.myTagType = :type AND d.mySystem IS NULL AND d.myCode = :code";
+		}
+		TypedQuery<TagDefinition> q = myEntityManager.createQuery(sql, TagDefinition.class);
+		q.setParameter("type", theTagType);
+		if (isNotBlank(theSystem)) {
+			q.setParameter("system", theSystem);
+		}
+		q.setParameter("code", theCode);
+		List<TagDefinition> results = q.getResultList();
+		return results.isEmpty() ? null : results.get(0);
+	}
+
+	private static class TagDefinitionKey {
+
+		private final TagTypeEnum myTagType;
+		private final String mySystem;
+		private final String myCode;
+		private final int myHashCode;
+
+		private TagDefinitionKey(TagTypeEnum theTagType, String theSystem, String theCode) {
+			myTagType = theTagType;
+			mySystem = isNotBlank(theSystem) ? theSystem : null;
+			myCode = theCode;
+			myHashCode = new HashCodeBuilder().append(myTagType).append(mySystem).append(myCode).toHashCode();
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof TagDefinitionKey)) {
+				return false;
+			}
+			TagDefinitionKey that = (TagDefinitionKey) theO;
+			return new EqualsBuilder()
+				.append(myTagType, that.myTagType)
+				.append(mySystem, that.mySystem)
+				.append(myCode, that.myCode)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+	}
+
+}
@@ -55,6 +55,7 @@ import ca.uhn.fhir.rest.server.util.ServletRequestUtil;
 import ca.uhn.fhir.util.*;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
 import org.apache.commons.lang3.Validate;
 import org.hibernate.Session;
 import org.hibernate.internal.SessionImpl;
@@ -98,6 +99,8 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 	private DeleteConflictService myDeleteConflictService;
 	@Autowired
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private MatchResourceUrlService myMatchResourceUrlService;
 
 	public BUNDLE transaction(RequestDetails theRequestDetails, BUNDLE theRequest) {
 		if (theRequestDetails != null) {
@@ -574,6 +577,14 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 				}
 			}
 
+			/*
+			 * Resolve the conditional URLs for all entries up front, so that
+			 * identifier-style match URLs can be looked up in bulk instead of
+			 * with one search per entry
+			 */
+			theTransactionStopWatch.startTask("Pre-fetch conditional URLs");
+			preFetchConditionalUrls(theRequest, theEntries);
+			theTransactionStopWatch.endCurrentTask();
 
 			/*
 			 * Loop through the request and process any entries of type
@@ -668,6 +679,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 								if (outcome.getEntity() != null) {
 									deletedResources.add(deleteId.getValueAsString());
 									entriesToProcess.put(nextRespEntry, outcome.getEntity());
+									myMatchResourceUrlService.resourceDeleted(outcome.getEntity().getId(), theRequest);
 								}
 							}
 						} else {
@@ -677,6 +689,7 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 							List<ResourceTable> allDeleted = deleteOutcome.getDeletedEntities();
 							for (ResourceTable deleted : allDeleted) {
 								deletedResources.add(deleted.getIdDt().toUnqualifiedVersionless().getValueAsString());
+								myMatchResourceUrlService.resourceDeleted(deleted.getId(), theRequest);
 							}
 							if (allDeleted.isEmpty()) {
 								status = Constants.STATUS_HTTP_204_NO_CONTENT;
@@ -766,6 +779,8 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 						PatchTypeEnum patchType = PatchTypeEnum.forContentTypeOrThrowInvalidRequestException(contentType);
 						IIdType patchId = myContext.getVersion().newIdType().setValue(parts.getResourceId());
 						DaoMethodOutcome outcome = dao.patch(patchId, matchUrl, patchType, patchBody, theRequest);
+						// Patches are indexed immediately, so previously resolved match URLs may no longer be accurate
+						myMatchResourceUrlService.clearResolvedMatchUrls(theRequest);
 						updatedEntities.add(outcome.getEntity());
 						if (outcome.getResource() != null) {
 							updatedResources.add(outcome.getResource());
@@ -783,6 +798,11 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 				theTransactionStopWatch.endCurrentTask();
 			}
 
+			/*
+			 * The resources we just wrote are indexed below, so any match URLs
+			 * resolved from here on need to see the current index state
+			 */
+			myMatchResourceUrlService.clearResolvedMatchUrls(theRequest);
 
 			/*
 			 * Make sure that there are no conflicts from deletions. E.g. we can't delete something
@@ -943,12 +963,59 @@ public class TransactionProcessor<BUNDLE extends IBaseBundle, BUNDLEENTRY> {
 			return entriesToProcess;
 
 		} finally {
+			myMatchResourceUrlService.clearResolvedMatchUrls(theRequest);
 			if (theRequest != null) {
 				theRequest.stopDeferredRequestOperationCallbackAndRunDeferredItems();
 			}
 		}
 	}
 
+	/**
+	 * Collects the conditional URLs (If-None-Exist on POST, and conditional PUT and DELETE URLs)
+	 * from the transaction entries and hands them to {@link MatchResourceUrlService} so that
+	 * they can be resolved in bulk. URLs containing placeholder IDs are skipped since they can
+	 * only be resolved once the placeholder has been substituted.
+	 */
+	private void preFetchConditionalUrls(ServletRequestDetails theRequest, List<BUNDLEENTRY> theEntries) {
+		Multimap<Class<? extends IBaseResource>, String> matchUrls = ArrayListMultimap.create();
+		for (BUNDLEENTRY nextEntry : theEntries) {
+			String verb = myVersionAdapter.getEntryRequestVerb(nextEntry);
+			IBaseResource resource = myVersionAdapter.getResource(nextEntry);
+			String matchUrl = null;
+			Class<? extends IBaseResource> resourceType = null;
+
+			if ("POST".equals(verb) && resource != null) {
+				matchUrl = myVersionAdapter.getEntryRequestIfNoneExist(nextEntry);
+				resourceType = resource.getClass();
+			} else if (("PUT".equals(verb) && resource != null) || "DELETE".equals(verb)) {
+				String url = myVersionAdapter.getEntryRequestUrl(nextEntry);
+				if (isBlank(url)) {
+					continue;
+				}
+				UrlUtil.UrlParts parts = UrlUtil.parseUrl(url);
+				if (isNotBlank(parts.getResourceId()) || isBlank(parts.getParams()) || isBlank(parts.getResourceType())) {
+					continue;
+				}
+				RuntimeResourceDefinition resourceDef;
+				try {
+					resourceDef = myContext.getResourceDefinition(parts.getResourceType());
+				} catch (DataFormatException e) {
+					continue;
+				}
+				matchUrl = parts.getResourceType() + '?' + parts.getParams();
+				resourceType = resourceDef.getImplementingClass();
+			}
+
+			if (isNotBlank(matchUrl) && !matchUrl.contains(URN_PREFIX)) {
+				matchUrls.put(resourceType, matchUrl);
+			}
+		}
+
+		if (!matchUrls.isEmpty()) {
+			myMatchResourceUrlService.preFetchMatchUrls(matchUrls, theRequest);
+		}
+	}
+
 	private void validateResourcePresent(IBaseResource theResource, Integer theOrder, String theVerb) {
 		if (theResource == null) {
 			String msg = myContext.getLocalizer().getMessage(TransactionProcessor.class, "missingMandatoryResource", theVerb, theOrder);
@@ -26,11 +26,20 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface IResourceIndexedSearchParamTokenDao extends JpaRepository<ResourceIndexedSearchParamToken, Long> {
 
 	@Query("select count(*) from ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :resid")
 	int countForResourceId(@Param("resid") Long theResourcePid);
 
+	/**
+	 * Returns pairs of [hash system and value, resource PID] for non-deleted resources
+	 */
+	@Query("SELECT t.myHashSystemAndValue, t.myResourcePid FROM ResourceIndexedSearchParamToken t, ResourceTable r WHERE r.myId = t.myResourcePid AND r.myDeleted IS NULL AND t.myHashSystemAndValue IN (:hashes)")
+	List<Object[]> findResourcePidsForHashSystemAndValue(@Param("hashes") Collection<Long> theHashes);
+
 	@Modifying
 	@Query("delete from ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :resid")
 	void deleteByResourceId(@Param("resid") Long theResourcePid);
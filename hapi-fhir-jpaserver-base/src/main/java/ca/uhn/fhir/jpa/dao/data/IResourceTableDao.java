@@ -4,13 +4,18 @@ import ca.uhn.fhir.jpa.model.entity.ResourceTable;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /*
  * #%L
@@ -55,6 +60,35 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myUpdated >= :low AND t.myUpdated <= :high AND t.myResourceType = :restype ORDER BY t.myUpdated ASC")
 	Slice<Long> findIdsOfResourcesWithinUpdatedRangeOrderedFromOldest(Pageable thePage, @Param("restype") String theResourceType, @Param("low") Date theLow, @Param("high") Date theHigh);
 
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myIndexStatus = :status AND t.myDeleted IS NULL ORDER BY t.myUpdated ASC")
+	Slice<Long> findIdsOfResourcesWithIndexStatus(Pageable thePage, @Param("status") Long theIndexStatus);
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myIndexStatus = :status AND t.myResourceType = :restype AND t.myDeleted IS NULL ORDER BY t.myUpdated ASC")
+	Slice<Long> findIdsOfResourcesWithIndexStatus(Pageable thePage, @Param("status") Long theIndexStatus, @Param("restype") String theResourceType);
+
+	@Query("SELECT COUNT(t) FROM ResourceTable t WHERE t.myIndexStatus = :status AND t.myDeleted IS NULL")
+	long countResourcesWithIndexStatus(@Param("status") Long theIndexStatus);
+
+	@Query("SELECT MIN(t.myUpdated) FROM ResourceTable t WHERE t.myIndexStatus = :status AND t.myDeleted IS NULL")
+	Date findOldestUpdatedOfResourcesWithIndexStatus(@Param("status") Long theIndexStatus);
+
+	/**
+	 * Loads a resource and holds a write lock on its row until the transaction ends
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT t FROM ResourceTable t WHERE t.myId = :id")
+	Optional<ResourceTable> findByIdForUpdate(@Param("id") Long theId);
+
+	/**
+	 * Like {@link #findByIdForUpdate(Long)}, but returns nothing instead of waiting if another
+	 * transaction holds the lock (a lock timeout of -2 is SKIP LOCKED in Hibernate). On databases
+	 * which don't support SKIP LOCKED this waits for the lock like {@link #findByIdForUpdate(Long)}.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+	@Query("SELECT t FROM ResourceTable t WHERE t.myId = :id")
+	Optional<ResourceTable> findByIdForUpdateSkipLocked(@Param("id") Long theId);
+
 	@Modifying
 	@Query("UPDATE ResourceTable t SET t.myIndexStatus = :status WHERE t.myId = :id")
 	void updateIndexStatus(@Param("id") Long theId, @Param("status") Long theIndexStatus);
@@ -46,6 +46,17 @@ public interface ISearchResultDao extends JpaRepository<SearchResult, Long> {
 	@Query("DELETE FROM SearchResult s WHERE s.myId IN :ids")
 	void deleteByIds(@Param("ids") List<Long> theContent);
 
+	@Query(value="SELECT r.myOrder FROM SearchResult r WHERE r.mySearchPid = :search ORDER BY r.myOrder ASC")
+	Slice<Integer> findOrdersForSearch(Pageable thePage, @Param("search") Long theSearchPid);
+
+	@Modifying
+	@Query("DELETE FROM SearchResult r WHERE r.mySearchPid = :search AND r.myOrder <= :maxOrder")
+	int deleteForSearchUpToOrder(@Param("search") Long theSearchPid, @Param("maxOrder") int theMaxOrder);
+
+	@Modifying
+	@Query("DELETE FROM SearchResult r WHERE r.mySearchPid = :search")
+	int deleteForSearch(@Param("search") Long theSearchPid);
+
 	@Query("SELECT count(r) FROM SearchResult r WHERE r.mySearchPid = :search")
 	int countForSearch(@Param("search") Long theSearchPid);
 }
@@ -23,6 +23,8 @@ package ca.uhn.fhir.jpa.dao.expunge;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCacheService;
+import ca.uhn.fhir.jpa.dao.TagDefinitionCacheService;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.jpa.model.entity.*;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
@@ -56,6 +58,10 @@ public class ExpungeEverythingService {
 	private PlatformTransactionManager myPlatformTransactionManager;
 	@Autowired
 	protected IInterceptorBroadcaster myInterceptorBroadcaster;
+	@Autowired
+	private TagDefinitionCacheService myTagDefinitionCacheService;
+	@Autowired
+	private ParsedResourceCacheService myParsedResourceCacheService;
 
 	private TransactionTemplate myTxTemplate;
 
@@ -120,9 +126,11 @@ public class ExpungeEverythingService {
 		counter.addAndGet(expungeEverythingByType(ResourceHistoryTag.class));
 		counter.addAndGet(expungeEverythingByType(ResourceTag.class));
 		counter.addAndGet(expungeEverythingByType(TagDefinition.class));
+		myTagDefinitionCacheService.clearCache();
 		counter.addAndGet(expungeEverythingByType(ResourceHistoryProvenanceEntity.class));
 		counter.addAndGet(expungeEverythingByType(ResourceHistoryTable.class));
 		counter.addAndGet(expungeEverythingByType(ResourceTable.class));
+		myParsedResourceCacheService.invalidateAll();
 		myTxTemplate.execute(t -> {
 			counter.addAndGet(doExpungeEverythingQuery("DELETE from " + org.hibernate.search.jpa.Search.class.getSimpleName() + " d"));
 			return null;
@@ -25,6 +25,7 @@ import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.ParsedResourceCacheService;
 import ca.uhn.fhir.jpa.dao.data.*;
 import ca.uhn.fhir.jpa.dao.index.IdHelperService;
 import ca.uhn.fhir.jpa.model.entity.ForcedId;
@@ -59,6 +60,8 @@ class ResourceExpungeService implements IResourceExpungeService {
 	@Autowired
 	private IResourceTableDao myResourceTableDao;
 	@Autowired
+	private ParsedResourceCacheService myParsedResourceCacheService;
+	@Autowired
 	private IResourceHistoryTableDao myResourceHistoryTableDao;
 	@Autowired
 	private IResourceIndexedSearchParamUriDao myResourceIndexedSearchParamUriDao;
@@ -153,6 +156,7 @@ class ResourceExpungeService implements IResourceExpungeService {
 
 		myResourceHistoryTagDao.deleteByPid(version.getTags().stream().map(t->t.getId()).collect(Collectors.toList()));
 		myResourceHistoryTableDao.deleteByPid(version.getId());
+		myParsedResourceCacheService.invalidate(version.getResourceId());
 
 		theRemainingCount.decrementAndGet();
 	}
@@ -119,6 +119,22 @@ public class SearchParamWithInlineReferencesExtractor {
 		extractCompositeStringUniques(theEntity, theParams);
 	}
 
+	/**
+	 * Resolves the references within a resource whose search indexes are not being written
+	 * yet (see {@link DaoConfig#setDeferIndexingForResourceTypes(java.util.Set)}). Inline match
+	 * URLs are replaced with the ID of the matching resource, and every other reference is
+	 * resolved (creating placeholder targets if these are enabled), so that a resource with
+	 * references which can't be resolved is rejected when it is written instead of failing
+	 * later when it is indexed. The resource links themselves are written when the resource
+	 * is indexed.
+	 */
+	public void resolveReferences(ResourceTable theEntity, IBaseResource theResource, Date theUpdateTime, RequestDetails theRequest) {
+		extractInlineReferences(theResource, theRequest);
+
+		ResourceIndexedSearchParams params = new ResourceIndexedSearchParams();
+		myResourceLinkExtractor.extractResourceLinks(params, theEntity, theResource, theUpdateTime, myDaoResourceLinkResolver, true, theRequest);
+	}
+
 	private void extractCompositeStringUniques(ResourceTable theEntity, ResourceIndexedSearchParams theParams) {
 
 		final String resourceType = theEntity.getResourceType();
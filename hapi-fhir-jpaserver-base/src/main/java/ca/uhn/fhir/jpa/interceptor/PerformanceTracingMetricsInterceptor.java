@@ -0,0 +1,211 @@
+package ca.uhn.fhir.jpa.interceptor;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.interceptor.perf.IPerformanceMetricsRegistry;
+import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
+import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
+import ca.uhn.fhir.jpa.util.SqlQueryList;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.util.StopWatch;
+import org.apache.commons.lang3.Validate;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Records search timings reported through the <code>JPA_PERFTRACE_*</code> pointcuts
+ * into an {@link IPerformanceMetricsRegistry}, broken down by resource type and by the
+ * shape of the search (the parameter names used, without their values).
+ * <p>
+ * The following metrics are recorded:
+ * </p>
+ * <ul>
+ * <li>{@link #QUERY_BUILD_MILLIS} - Time spent building the SQL query</li>
+ * <li>{@link #FIRST_RESULT_MILLIS} - Time until the first result was returned by the database</li>
+ * <li>{@link #SELECT_COMPLETE_MILLIS} - Time until all matching results were returned by the database</li>
+ * <li>{@link #SEARCH_COMPLETE_MILLIS} - Time until an asynchronous search completed</li>
+ * <li>{@link #SEARCH_FAILED_MILLIS} - Time until an asynchronous search failed</li>
+ * <li>{@link #SQL_COUNT} - Number of SQL statements issued by a search</li>
+ * <li>{@link #RESOURCE_LOAD_MILLIS} - Time spent loading the resources for a page of results</li>
+ * <li>{@link #INCLUDE_LOAD_MILLIS} - Time spent finding the <code>_include</code> targets for a page of results</li>
+ * <li>{@link #REVINCLUDE_LOAD_MILLIS} - Time spent finding the <code>_revinclude</code> targets for a page of results</li>
+ * </ul>
+ * <p>
+ * Pages of an asynchronous search are loaded separately from the search itself, so
+ * the last three are recorded with the parameter shape {@link #UNKNOWN_PARAMETERS_SHAPE}
+ * when the search parameters aren't available.
+ * </p>
+ * <p>
+ * Note that {@link #SQL_COUNT} is only available if the datasource has been proxied
+ * with a {@link ca.uhn.fhir.jpa.util.CurrentThreadCaptureQueriesListener}.
+ * </p>
+ * <p>
+ * When this interceptor is not registered, the server does no additional work.
+ * </p>
+ */
+@Interceptor()
+public class PerformanceTracingMetricsInterceptor {
+
+	public static final String QUERY_BUILD_MILLIS = "query_build_millis";
+	public static final String FIRST_RESULT_MILLIS = "first_result_millis";
+	public static final String SELECT_COMPLETE_MILLIS = "select_complete_millis";
+	public static final String SEARCH_COMPLETE_MILLIS = "search_complete_millis";
+	public static final String SEARCH_FAILED_MILLIS = "search_failed_millis";
+	public static final String SQL_COUNT = "sql_count";
+	public static final String RESOURCE_LOAD_MILLIS = "resource_load_millis";
+	public static final String INCLUDE_LOAD_MILLIS = "include_load_millis";
+	public static final String REVINCLUDE_LOAD_MILLIS = "revinclude_load_millis";
+	public static final String NO_PARAMETERS_SHAPE = "(none)";
+	public static final String UNKNOWN_PARAMETERS_SHAPE = "(unknown)";
+	private static final String SQL_COUNT_USERDATA_KEY = PerformanceTracingMetricsInterceptor.class.getName() + "_SQL_COUNT";
+	private final IPerformanceMetricsRegistry myRegistry;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theRegistry The registry to record measurements into
+	 */
+	public PerformanceTracingMetricsInterceptor(IPerformanceMetricsRegistry theRegistry) {
+		Validate.notNull(theRegistry, "theRegistry must not be null");
+		myRegistry = theRegistry;
+	}
+
+	@Hook(value = Pointcut.JPA_PERFTRACE_SEARCH_FIRST_RESULT_LOADED)
+	public void searchFirstResultLoaded(SearchRuntimeDetails theOutcome) {
+		record(FIRST_RESULT_MILLIS, theOutcome, getMillis(theOutcome));
+	}
+
+	@Hook(value = Pointcut.JPA_PERFTRACE_SEARCH_SELECT_COMPLETE)
+	public void searchSelectComplete(SearchRuntimeDetails theOutcome) {
+		// Fulltext searches build a query for every page of hits, so the total is only known now
+		record(QUERY_BUILD_MILLIS, theOutcome, theOutcome.getQueryBuildMillis());
+		record(SELECT_COMPLETE_MILLIS, theOutcome, getMillis(theOutcome));
+
+		AtomicInteger sqlCount = getSqlCounter(theOutcome.getRequestDetails());
+		if (sqlCount != null) {
+			record(SQL_COUNT, theOutcome, sqlCount.getAndSet(0));
+		}
+	}
+
+	@Hook(value = Pointcut.JPA_PERFTRACE_SEARCH_COMPLETE)
+	public void searchComplete(SearchRuntimeDetails theOutcome) {
+		record(SEARCH_COMPLETE_MILLIS, theOutcome, getMillis(theOutcome));
+	}
+
+	@Hook(value = Pointcut.JPA_PERFTRACE_SEARCH_FAILED)
+	public void searchFailed(SearchRuntimeDetails theOutcome) {
+		record(SEARCH_FAILED_MILLIS, theOutcome, getMillis(theOutcome));
+	}
+
+	@Hook(value = Pointcut.JPA_PERFTRACE_INFO)
+	public void info(StorageProcessingMessage theMessage) {
+		if (theMessage.getTiming() == null) {
+			return;
+		}
+
+		String metricName;
+		switch (theMessage.getTiming()) {
+			case RESOURCE_LOAD:
+				metricName = RESOURCE_LOAD_MILLIS;
+				break;
+			case INCLUDE_LOAD:
+				metricName = INCLUDE_LOAD_MILLIS;
+				break;
+			case REVINCLUDE_LOAD:
+				metricName = REVINCLUDE_LOAD_MILLIS;
+				break;
+			default:
+				return;
+		}
+
+		String shape = theMessage.getQueryString() != null ? toParameterShape(theMessage.getQueryString()) : UNKNOWN_PARAMETERS_SHAPE;
+		myRegistry.record(metricName, theMessage.getResourceType(), shape, theMessage.getMillis());
+	}
+
+	@Hook(value = Pointcut.JPA_PERFTRACE_RAW_SQL)
+	public void rawSql(RequestDetails theRequestDetails, SqlQueryList theQueries) {
+		if (theRequestDetails == null || theQueries.isEmpty()) {
+			return;
+		}
+
+		// Searches can run on a different thread than the one processing the request
+		Map<Object, Object> userData = theRequestDetails.getUserData();
+		AtomicInteger counter;
+		synchronized (userData) {
+			counter = (AtomicInteger) userData.computeIfAbsent(SQL_COUNT_USERDATA_KEY, t -> new AtomicInteger());
+		}
+		counter.addAndGet(theQueries.size());
+	}
+
+	private void record(String theMetricName, SearchRuntimeDetails theOutcome, long theValue) {
+		myRegistry.record(theMetricName, theOutcome.getResourceType(), toParameterShape(theOutcome.getQueryString()), theValue);
+	}
+
+	private static AtomicInteger getSqlCounter(RequestDetails theRequestDetails) {
+		if (theRequestDetails == null) {
+			return null;
+		}
+		Map<Object, Object> userData = theRequestDetails.getUserData();
+		synchronized (userData) {
+			return (AtomicInteger) userData.get(SQL_COUNT_USERDATA_KEY);
+		}
+	}
+
+	private static long getMillis(SearchRuntimeDetails theOutcome) {
+		StopWatch sw = theOutcome.getQueryStopwatch();
+		return sw != null ? sw.getMillis() : 0;
+	}
+
+	/**
+	 * Converts a normalized query string (e.g. <code>?birthdate=ge2000&amp;name=smith</code>)
+	 * into the sorted parameter names, without their values (e.g. <code>birthdate&amp;name</code>)
+	 */
+	static String toParameterShape(String theQueryString) {
+		if (isBlank(theQueryString)) {
+			return NO_PARAMETERS_SHAPE;
+		}
+
+		TreeSet<String> names = new TreeSet<>();
+		for (String next : theQueryString.split("&")) {
+			if (next.startsWith("?")) {
+				next = next.substring(1);
+			}
+			int equalsIdx = next.indexOf('=');
+			String name = equalsIdx == -1 ? next : next.substring(0, equalsIdx);
+			if (!name.isEmpty()) {
+				names.add(name);
+			}
+		}
+
+		if (names.isEmpty()) {
+			return NO_PARAMETERS_SHAPE;
+		}
+		return String.join("&", names);
+	}
+
+}
@@ -0,0 +1,43 @@
+package ca.uhn.fhir.jpa.interceptor.perf;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A registry which receives the measurements collected by
+ * {@link ca.uhn.fhir.jpa.interceptor.PerformanceTracingMetricsInterceptor}. Implement
+ * this interface in order to forward measurements to an external metrics
+ * system, or use {@link InMemoryPerformanceMetricsRegistry} to keep histograms
+ * in memory.
+ */
+public interface IPerformanceMetricsRegistry {
+
+	/**
+	 * Records a single measurement. This method is called on the thread which is
+	 * processing the search, so implementations should return quickly.
+	 *
+	 * @param theMetricName     The metric name, e.g. {@literal first_result_millis}
+	 * @param theResourceType   The resource type being searched for (may be <code>null</code>)
+	 * @param theParameterShape The parameter names used in the search, without their values
+	 * @param theValue          The measured value
+	 */
+	void record(String theMetricName, String theResourceType, String theParameterShape, long theValue);
+
+}
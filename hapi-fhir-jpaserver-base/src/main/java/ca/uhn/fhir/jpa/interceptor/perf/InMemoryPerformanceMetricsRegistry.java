@@ -0,0 +1,155 @@
+package ca.uhn.fhir.jpa.interceptor.perf;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a {@link PerformanceHistogram} in memory for each combination of metric
+ * name, resource type and parameter shape. The number of distinct parameter shapes
+ * tracked is capped (see {@link #setMaximumHistogramCount(int)}) and any
+ * measurements for new shapes beyond this cap are grouped under
+ * {@link #OTHER_PARAMETER_SHAPE}.
+ * <p>
+ * The histograms can be exposed through the <code>$perf-stats</code> operation
+ * (see {@link ca.uhn.fhir.jpa.provider.PerformanceStatsProvider}) and/or through
+ * JMX by calling {@link #registerMBean(String)}.
+ * </p>
+ */
+public class InMemoryPerformanceMetricsRegistry implements IPerformanceMetricsRegistry, InMemoryPerformanceMetricsRegistryMBean {
+
+	public static final String OTHER_PARAMETER_SHAPE = "(other)";
+	public static final int DEFAULT_MAXIMUM_HISTOGRAM_COUNT = 1000;
+	private final ConcurrentHashMap<HistogramKey, PerformanceHistogram> myHistograms = new ConcurrentHashMap<>();
+	private int myMaximumHistogramCount = DEFAULT_MAXIMUM_HISTOGRAM_COUNT;
+
+	@Override
+	public void record(String theMetricName, String theResourceType, String theParameterShape, long theValue) {
+		HistogramKey key = new HistogramKey(theMetricName, theResourceType, theParameterShape);
+		PerformanceHistogram histogram = myHistograms.get(key);
+		if (histogram == null) {
+			if (myHistograms.size() >= myMaximumHistogramCount) {
+				key = new HistogramKey(theMetricName, theResourceType, OTHER_PARAMETER_SHAPE);
+			}
+			histogram = myHistograms.computeIfAbsent(key, t -> new PerformanceHistogram(t.myMetricName, t.myResourceType, t.myParameterShape));
+		}
+		histogram.record(theValue);
+	}
+
+	/**
+	 * Returns all histograms, sorted by metric name, resource type and parameter shape
+	 */
+	public List<PerformanceHistogram> getHistograms() {
+		List<PerformanceHistogram> retVal = new ArrayList<>(myHistograms.values());
+		retVal.sort(Comparator
+			.comparing(PerformanceHistogram::getMetricName)
+			.thenComparing(PerformanceHistogram::getResourceType, Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparing(PerformanceHistogram::getParameterShape));
+		return retVal;
+	}
+
+	@Override
+	public String[] getHistogramSummaries() {
+		return getHistograms()
+			.stream()
+			.map(PerformanceHistogram::toString)
+			.toArray(String[]::new);
+	}
+
+	@Override
+	public int getHistogramCount() {
+		return myHistograms.size();
+	}
+
+	@Override
+	public void reset() {
+		myHistograms.clear();
+	}
+
+	/**
+	 * Sets the maximum number of distinct histograms to keep. Defaults to
+	 * {@link #DEFAULT_MAXIMUM_HISTOGRAM_COUNT}.
+	 */
+	public void setMaximumHistogramCount(int theMaximumHistogramCount) {
+		Validate.isTrue(theMaximumHistogramCount > 0, "theMaximumHistogramCount must be greater than 0");
+		myMaximumHistogramCount = theMaximumHistogramCount;
+	}
+
+	/**
+	 * Registers this registry with the platform MBean server
+	 *
+	 * @param theObjectName The JMX object name, e.g. <code>ca.uhn.fhir.jpa:type=PerformanceMetrics</code>
+	 */
+	public void registerMBean(String theObjectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(theObjectName));
+	}
+
+	private static class HistogramKey {
+
+		private final String myMetricName;
+		private final String myResourceType;
+		private final String myParameterShape;
+		private final int myHashCode;
+
+		HistogramKey(String theMetricName, String theResourceType, String theParameterShape) {
+			myMetricName = theMetricName;
+			myResourceType = theResourceType;
+			myParameterShape = theParameterShape;
+			myHashCode = new HashCodeBuilder()
+				.append(myMetricName)
+				.append(myResourceType)
+				.append(myParameterShape)
+				.toHashCode();
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (this == theO) {
+				return true;
+			}
+			if (!(theO instanceof HistogramKey)) {
+				return false;
+			}
+			HistogramKey that = (HistogramKey) theO;
+			return new EqualsBuilder()
+				.append(myMetricName, that.myMetricName)
+				.append(myResourceType, that.myResourceType)
+				.append(myParameterShape, that.myParameterShape)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+	}
+
+}
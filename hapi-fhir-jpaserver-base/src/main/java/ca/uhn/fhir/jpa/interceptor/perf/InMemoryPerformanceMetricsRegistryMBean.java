@@ -0,0 +1,40 @@
+package ca.uhn.fhir.jpa.interceptor.perf;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * JMX management interface for {@link InMemoryPerformanceMetricsRegistry}
+ */
+public interface InMemoryPerformanceMetricsRegistryMBean {
+
+	/**
+	 * Returns a one line summary of every histogram in the registry
+	 */
+	String[] getHistogramSummaries();
+
+	int getHistogramCount();
+
+	/**
+	 * Discards all recorded measurements
+	 */
+	void reset();
+
+}
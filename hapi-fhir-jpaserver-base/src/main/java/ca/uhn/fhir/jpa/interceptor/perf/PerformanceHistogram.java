@@ -0,0 +1,118 @@
+package ca.uhn.fhir.jpa.interceptor.perf;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A low overhead histogram of non-negative values. Values are counted in
+ * buckets whose bounds are powers of two, so recording a value is just a few
+ * atomic increments and percentiles are accurate to within a factor of two.
+ */
+public class PerformanceHistogram {
+
+	private static final int BUCKET_COUNT = 64;
+	private final String myMetricName;
+	private final String myResourceType;
+	private final String myParameterShape;
+	private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder myCount = new LongAdder();
+	private final LongAdder mySum = new LongAdder();
+	private final LongAccumulator myMax = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Constructor
+	 */
+	public PerformanceHistogram(String theMetricName, String theResourceType, String theParameterShape) {
+		myMetricName = theMetricName;
+		myResourceType = theResourceType;
+		myParameterShape = theParameterShape;
+	}
+
+	public String getMetricName() {
+		return myMetricName;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public String getParameterShape() {
+		return myParameterShape;
+	}
+
+	public void record(long theValue) {
+		long value = Math.max(0, theValue);
+		// Bucket N holds values in the range [2^(N-1), 2^N), and bucket 0 holds zero
+		myBuckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(value));
+		myCount.increment();
+		mySum.add(value);
+		myMax.accumulate(value);
+	}
+
+	public long getCount() {
+		return myCount.sum();
+	}
+
+	public long getMax() {
+		return myMax.get();
+	}
+
+	public long getMean() {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		return mySum.sum() / count;
+	}
+
+	/**
+	 * Returns an estimate of the given percentile, which is the upper bound of the
+	 * bucket containing it (never more than the largest value recorded)
+	 *
+	 * @param thePercentile The percentile, between 0 and 100
+	 */
+	public long getPercentile(double thePercentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+
+		long wanted = (long) Math.ceil(count * (thePercentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += myBuckets.get(i);
+			if (seen >= wanted) {
+				long upperBound = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upperBound, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	@Override
+	public String toString() {
+		return myMetricName + "[" + myResourceType + "?" + myParameterShape + "] count=" + getCount() + " mean=" + getMean() + " p50=" + getPercentile(50) + " p95=" + getPercentile(95) + " p99=" + getPercentile(99) + " max=" + getMax();
+	}
+
+}
@@ -0,0 +1,94 @@
+package ca.uhn.fhir.jpa.provider;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.interceptor.perf.InMemoryPerformanceMetricsRegistry;
+import ca.uhn.fhir.jpa.interceptor.perf.PerformanceHistogram;
+import ca.uhn.fhir.jpa.model.util.JpaConstants;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Provides the <code>$perf-stats</code> server operation, which returns the search
+ * performance histograms collected by a
+ * {@link ca.uhn.fhir.jpa.interceptor.PerformanceTracingMetricsInterceptor}
+ * into an {@link InMemoryPerformanceMetricsRegistry}.
+ * <p>
+ * Each histogram is returned as a <code>histogram</code> parameter, with the timings
+ * expressed in milliseconds.
+ * </p>
+ */
+public class PerformanceStatsProvider extends BaseJpaProvider {
+
+	public static final String RESP_PARAM_HISTOGRAM = "histogram";
+	private final InMemoryPerformanceMetricsRegistry myRegistry;
+
+	/**
+	 * Constructor
+	 */
+	public PerformanceStatsProvider(FhirContext theContext, InMemoryPerformanceMetricsRegistry theRegistry) {
+		Validate.notNull(theRegistry, "theRegistry must not be null");
+		setContext(theContext);
+		myRegistry = theRegistry;
+	}
+
+	/**
+	 * <code>
+	 * $perf-stats
+	 * </code>
+	 */
+	@Operation(name = JpaConstants.OPERATION_PERF_STATS, idempotent = true)
+	public IBaseParameters perfStats(HttpServletRequest theServletRequest) {
+		startRequest(theServletRequest);
+		try {
+			FhirContext ctx = getContext();
+			IBaseParameters retVal = ParametersUtil.newInstance(ctx);
+			for (PerformanceHistogram next : myRegistry.getHistograms()) {
+				IBase histogram = ParametersUtil.addParameterToParameters(ctx, retVal, RESP_PARAM_HISTOGRAM);
+				ParametersUtil.addPartString(ctx, histogram, "metric", next.getMetricName());
+				if (next.getResourceType() != null) {
+					ParametersUtil.addPartString(ctx, histogram, "resourceType", next.getResourceType());
+				}
+				ParametersUtil.addPartString(ctx, histogram, "parameterShape", next.getParameterShape());
+				ParametersUtil.addPartInteger(ctx, histogram, "count", toInt(next.getCount()));
+				ParametersUtil.addPartInteger(ctx, histogram, "mean", toInt(next.getMean()));
+				ParametersUtil.addPartInteger(ctx, histogram, "p50", toInt(next.getPercentile(50)));
+				ParametersUtil.addPartInteger(ctx, histogram, "p95", toInt(next.getPercentile(95)));
+				ParametersUtil.addPartInteger(ctx, histogram, "p99", toInt(next.getPercentile(99)));
+				ParametersUtil.addPartInteger(ctx, histogram, "max", toInt(next.getMax()));
+			}
+			return retVal;
+		} finally {
+			endRequest(theServletRequest);
+		}
+	}
+
+	private static int toInt(long theValue) {
+		return (int) Math.min(theValue, Integer.MAX_VALUE);
+	}
+
+}
@@ -62,6 +62,20 @@ public class DatabaseBackedPagingProvider extends BasePagingProvider implements
 		return provider;
 	}
 
+	/**
+	 * Page IDs are only used when paging through history results
+	 */
+	@Override
+	public synchronized IBundleProvider retrieveResultList(RequestDetails theRequestDetails, String theId, String thePageId) {
+		IFhirSystemDao<?, ?> systemDao = myDaoRegistry.getSystemDao();
+		PersistedJpaBundleProvider provider = new PersistedJpaBundleProvider(theRequestDetails, theId, systemDao);
+		if (!provider.ensureSearchEntityLoaded()) {
+			return null;
+		}
+		provider.setHistoryPageId(thePageId);
+		return provider;
+	}
+
 	@Override
 	public synchronized String storeResultList(RequestDetails theRequestDetails, IBundleProvider theList) {
 		String uuid = theList.getUuid();
@@ -44,4 +44,11 @@ public interface ISearchCoordinatorSvc {
 	 */
 	Optional<Integer> getSearchTotal(String theUuid);
 
+	/**
+	 * Discards any cached search totals for the given resource type. This is called whenever
+	 * a resource of that type is created, updated or deleted, but only has an effect if
+	 * {@link ca.uhn.fhir.jpa.dao.DaoConfig#isInvalidateCachedSearchTotalsOnWrite()} is enabled.
+	 */
+	void invalidateSearchTotals(String theResourceType);
+
 }
@@ -24,6 +24,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.entity.Search;
@@ -35,6 +36,7 @@ import ca.uhn.fhir.jpa.util.InterceptorUtil;
 import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.server.*;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
@@ -54,8 +56,13 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.util.*;
 
+import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
+import static org.apache.commons.lang3.StringUtils.defaultString;
+
 public class PersistedJpaBundleProvider implements IBundleProvider {
 
+	static final String HISTORY_FIRST_PAGE_ID = "first";
+
 	private static final Logger ourLog = LoggerFactory.getLogger(PersistedJpaBundleProvider.class);
 	private final RequestDetails myRequest;
 	private FhirContext myContext;
@@ -68,6 +75,9 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	private String myUuid;
 	private boolean myCacheHit;
 	private IInterceptorBroadcaster myInterceptorBroadcaster;
+	private DaoConfig myDaoConfig;
+	private String myHistoryPageId;
+	private String myHistoryNextPageId;
 
 	public PersistedJpaBundleProvider(RequestDetails theRequest, String theSearchUuid, IDao theDao) {
 		myRequest = theRequest;
@@ -90,6 +100,21 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	private List<IBaseResource> doHistoryInTransaction(int theFromIndex, int theToIndex) {
 		List<ResourceHistoryTable> results;
 
+		/*
+		 * If we're paging using page IDs, the page ID holds the position (timestamp and PID) of
+		 * the last version on the previous page, and the page size. We can then just ask the
+		 * database for the next versions after that position, which costs the same no matter
+		 * how deep into the history we are (whereas an offset gets slower with every page).
+		 */
+		HistoryPageCursor cursor = null;
+		int pageSize = theToIndex - theFromIndex;
+		int offset = theFromIndex;
+		if (isHistoryKeysetPaging() && myHistoryPageId != null && !HISTORY_FIRST_PAGE_ID.equals(myHistoryPageId)) {
+			cursor = HistoryPageCursor.parse(myHistoryPageId);
+			pageSize = cursor.getPageSize();
+			offset = 0;
+		}
+
 		CriteriaBuilder cb = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<ResourceHistoryTable> q = cb.createQuery(ResourceHistoryTable.class);
 		Root<ResourceHistoryTable> from = q.from(ResourceHistoryTable.class);
@@ -110,21 +135,48 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 			predicates.add(cb.lessThanOrEqualTo(from.get("myUpdated").as(Date.class), mySearchEntity.getLastUpdatedHigh()));
 		}
 
+		if (cursor != null) {
+			Date cursorUpdated = new Date(cursor.getUpdated());
+			predicates.add(cb.or(
+				cb.lessThan(from.get("myUpdated").as(Date.class), cursorUpdated),
+				cb.and(
+					cb.equal(from.get("myUpdated").as(Date.class), cursorUpdated),
+					cb.lessThan(from.get("myId").as(Long.class), cursor.getPid())
+				)
+			));
+		}
+
 		if (predicates.size() > 0) {
 			q.where(predicates.toArray(new Predicate[0]));
 		}
 
-		q.orderBy(cb.desc(from.get("myUpdated")));
+		// The PID is only a tiebreaker, but it means that the order is stable between pages
+		q.orderBy(cb.desc(from.get("myUpdated")), cb.desc(from.get("myId")));
 
 		TypedQuery<ResourceHistoryTable> query = myEntityManager.createQuery(q);
 
-		if (theToIndex - theFromIndex > 0) {
-			query.setFirstResult(theFromIndex);
-			query.setMaxResults(theToIndex - theFromIndex);
+		/*
+		 * When paging using page IDs we ask for one more row than we need, so that
+		 * we only produce a next page ID if there really is a next page (otherwise
+		 * a last page that is exactly full would link to an empty page)
+		 */
+		boolean keysetPaging = isHistoryKeysetPaging();
+		if (pageSize > 0) {
+			query.setFirstResult(offset);
+			query.setMaxResults(keysetPaging ? pageSize + 1 : pageSize);
 		}
 
 		results = query.getResultList();
 
+		if (keysetPaging) {
+			myHistoryNextPageId = null;
+			if (pageSize > 0 && results.size() > pageSize) {
+				results = results.subList(0, pageSize);
+				ResourceHistoryTable last = results.get(results.size() - 1);
+				myHistoryNextPageId = new HistoryPageCursor(last.getUpdatedDate().getTime(), last.getId(), pageSize).toPageId();
+			}
+		}
+
 		ArrayList<IBaseResource> retVal = new ArrayList<>();
 		for (ResourceHistoryTable next : results) {
 			BaseHasResource resource;
@@ -250,6 +302,45 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		return myUuid;
 	}
 
+	/**
+	 * History results are paged using page IDs (see {@link DaoConfig#setHistoryKeysetPagingEnabled(boolean)})
+	 */
+	@Override
+	public String getCurrentPageId() {
+		if (isHistoryKeysetPaging()) {
+			return defaultIfBlank(myHistoryPageId, HISTORY_FIRST_PAGE_ID);
+		}
+		return null;
+	}
+
+	@Override
+	public String getNextPageId() {
+		if (isHistoryKeysetPaging()) {
+			return myHistoryNextPageId;
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the page ID (as returned by {@link #getNextPageId()} for a previous page) of
+	 * the page to load
+	 *
+	 * @throws InvalidRequestException If the page ID isn't valid
+	 */
+	void setHistoryPageId(String thePageId) {
+		if (!HISTORY_FIRST_PAGE_ID.equals(thePageId)) {
+			HistoryPageCursor.parse(thePageId);
+		}
+		myHistoryPageId = thePageId;
+	}
+
+	private boolean isHistoryKeysetPaging() {
+		if (!ensureSearchEntityLoaded() || mySearchEntity.getSearchType() != SearchTypeEnum.HISTORY) {
+			return false;
+		}
+		return myDaoConfig != null && myDaoConfig.isHistoryKeysetPagingEnabled();
+	}
+
 	public boolean isCacheHit() {
 		return myCacheHit;
 	}
@@ -332,4 +423,56 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 	public void setSearchCacheSvc(ISearchCacheSvc theSearchCacheSvc) {
 		mySearchCacheSvc = theSearchCacheSvc;
 	}
+
+	public void setDaoConfig(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	/**
+	 * The position of the last version on a page of history results, encoded
+	 * in the page ID of the next page
+	 */
+	private static class HistoryPageCursor {
+
+		private final long myUpdated;
+		private final long myPid;
+		private final int myPageSize;
+
+		private HistoryPageCursor(long theUpdated, long thePid, int thePageSize) {
+			myUpdated = theUpdated;
+			myPid = thePid;
+			myPageSize = thePageSize;
+		}
+
+		long getUpdated() {
+			return myUpdated;
+		}
+
+		long getPid() {
+			return myPid;
+		}
+
+		int getPageSize() {
+			return myPageSize;
+		}
+
+		String toPageId() {
+			return myUpdated + "-" + myPid + "-" + myPageSize;
+		}
+
+		static HistoryPageCursor parse(String thePageId) {
+			String[] parts = defaultString(thePageId).split("-");
+			if (parts.length == 3) {
+				try {
+					int pageSize = Integer.parseInt(parts[2]);
+					if (pageSize > 0) {
+						return new HistoryPageCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]), pageSize);
+					}
+				} catch (NumberFormatException e) {
+					// fall through
+				}
+			}
+			throw new InvalidRequestException("Invalid page ID: " + thePageId);
+		}
+	}
 }
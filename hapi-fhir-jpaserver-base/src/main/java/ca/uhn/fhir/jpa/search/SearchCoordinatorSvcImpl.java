@@ -55,6 +55,8 @@ import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.rest.server.util.ICachedSearchDetails;
 import ca.uhn.fhir.util.AsyncUtil;
 import ca.uhn.fhir.util.StopWatch;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -67,7 +69,6 @@ import org.springframework.data.domain.Sort;
 import org.springframework.orm.jpa.JpaDialect;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
-import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -75,34 +76,43 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+import static org.apache.commons.lang3.StringUtils.defaultString;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 @Component("mySearchCoordinatorSvc")
 public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	public static final int DEFAULT_SYNC_SIZE = 250;
+	static final int SEARCH_TOTAL_CACHE_SIZE = 1000;
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchCoordinatorSvcImpl.class);
 	private final ConcurrentHashMap<String, SearchTask> myIdToSearchTask = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, AtomicLong> mySearchTotalGenerations = new ConcurrentHashMap<>();
+	private final Cache<String, CachedSearchTotal> mySearchTotalCache = Caffeine.newBuilder().maximumSize(SEARCH_TOTAL_CACHE_SIZE).expireAfterWrite(1, TimeUnit.HOURS).build();
 	@Autowired
 	private FhirContext myContext;
 	@Autowired
 	private DaoConfig myDaoConfig;
 	@Autowired
 	private EntityManager myEntityManager;
-	private ExecutorService myExecutor;
+	private final SearchTaskExecutor mySearchExecutor = new SearchTaskExecutor();
 	private Integer myLoadingThrottleForUnitTests = null;
 	private long myMaxMillisToWaitForRemoteResults = DateUtils.MILLIS_PER_MINUTE;
 	private boolean myNeverUseLocalSearchForUnitTests;
@@ -126,11 +136,11 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	private boolean myCustomIsolationSupported;
 
 	/**
-	 * Constructor
+	 * Returns the executor which runs search tasks. This is mostly useful
+	 * for monitoring queue depths and wait times.
 	 */
-	public SearchCoordinatorSvcImpl() {
-		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("search_coord_");
-		myExecutor = Executors.newCachedThreadPool(threadFactory);
+	public SearchTaskExecutor getSearchExecutor() {
+		return mySearchExecutor;
 	}
 
 	@VisibleForTesting
@@ -150,6 +160,9 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		if (myCustomIsolationSupported == false) {
 			ourLog.warn("JPA dialect does not support transaction isolation! This can have an impact on search performance.");
 		}
+
+		mySearchExecutor.setMaximumThreads(myDaoConfig.getSearchExecutorMaximumThreads());
+		mySearchExecutor.setMaximumQueuedSearches(myDaoConfig.getSearchExecutorMaximumQueuedSearches());
 	}
 
 	@Override
@@ -234,12 +247,9 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				Optional<Search> newSearch = mySearchCacheSvc.tryToMarkSearchAsInProgress(search);
 				if (newSearch.isPresent()) {
 					search = newSearch.get();
-					String resourceType = search.getResourceType();
-					SearchParameterMap params = search.getSearchParameterMap().orElseThrow(() -> new IllegalStateException("No map in PASSCOMPLET search"));
-					IFhirResourceDao<?> resourceDao = myDaoRegistry.getResourceDao(resourceType);
-					SearchContinuationTask task = new SearchContinuationTask(search, resourceDao, params, resourceType, theRequestDetails);
+					SearchContinuationTask task = newSearchContinuationTask(search, theRequestDetails);
 					myIdToSearchTask.put(search.getUuid(), task);
-					myExecutor.submit(task);
+					submitTask(task, SearchTaskExecutor.PriorityEnum.CONTINUATION, theRequestDetails);
 				}
 			}
 
@@ -258,6 +268,46 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		return pids;
 	}
 
+	@Nonnull
+	private SearchContinuationTask newSearchContinuationTask(Search theSearch, RequestDetails theRequestDetails) {
+		String resourceType = theSearch.getResourceType();
+		SearchParameterMap params = theSearch.getSearchParameterMap().orElseThrow(() -> new IllegalStateException("No map in PASSCOMPLET search"));
+		IFhirResourceDao<?> resourceDao = myDaoRegistry.getResourceDao(resourceType);
+		return new SearchContinuationTask(theSearch, resourceDao, params, resourceType, theRequestDetails);
+	}
+
+	/**
+	 * Continues loading a search which stopped its pass early to make way for other tasks
+	 * (see {@link SearchTask#setYieldToWaitingTasks(boolean)}), once nothing more important
+	 * is waiting for a thread
+	 */
+	private void submitBackgroundPrefetch(Search theSearch, RequestDetails theRequestDetails) {
+		String uuid = theSearch.getUuid();
+		int numFound = theSearch.getNumFound();
+		Callable<Void> prefetch = () -> {
+			// If a client has already continued the search there's nothing left to do
+			Optional<Search> search = mySearchCacheSvc.fetchByUuid(uuid);
+			if (!search.isPresent() || search.get().getStatus() != SearchStatusEnum.PASSCMPLET || search.get().getNumFound() != numFound) {
+				return null;
+			}
+			Optional<Search> newSearch = mySearchCacheSvc.tryToMarkSearchAsInProgress(search.get());
+			if (newSearch.isPresent()) {
+				SearchContinuationTask task = newSearchContinuationTask(newSearch.get(), theRequestDetails);
+				task.setYieldToWaitingTasks(true);
+				myIdToSearchTask.put(uuid, task);
+				task.call();
+			}
+			return null;
+		};
+
+		try {
+			mySearchExecutor.submit(prefetch, SearchTaskExecutor.PriorityEnum.BACKGROUND_PREFETCH, getClientKey(theRequestDetails));
+		} catch (RuntimeException e) {
+			// The search will still be continued when a client asks for more results
+			ourLog.warn("Failed to submit background prefetch for search {}: {}", uuid, e.toString());
+		}
+	}
+
 	@Nonnull
 	private ResourceGoneException newResourceGoneException(String theUuid) {
 		ourLog.trace("Client requested unknown paging ID[{}]", theUuid);
@@ -312,7 +362,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			}
 		}
 
-		return submitSearch(theCallingDao, theParams, theResourceType, theRequestDetails, searchUuid, sb, queryString);
+		return submitSearch(theCallingDao, theParams, theResourceType, theRequestDetails, searchUuid, sb, queryString, useCache);
 
 	}
 
@@ -332,7 +382,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		Optional<Search> search = mySearchCacheSvc.fetchByUuid(theUuid);
 		if (search.isPresent()) {
 			Optional<SearchParameterMap> searchParameterMap = search.get().getSearchParameterMap();
-			if (searchParameterMap.isPresent() && searchParameterMap.get().getSearchTotalMode() == SearchTotalModeEnum.ACCURATE) {
+			if (searchParameterMap.isPresent() && (searchParameterMap.get().getSearchTotalMode() == SearchTotalModeEnum.ACCURATE || searchParameterMap.get().getSearchTotalMode() == SearchTotalModeEnum.ESTIMATED)) {
 				for (int i = 0; i < 10; i++) {
 					if (search.isPresent()) {
 						verifySearchHasntFailedOrThrowInternalErrorException(search.get());
@@ -349,7 +399,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	}
 
 	@NotNull
-	private IBundleProvider submitSearch(IDao theCallingDao, SearchParameterMap theParams, String theResourceType, RequestDetails theRequestDetails, String theSearchUuid, ISearchBuilder theSb, String theQueryString) {
+	private IBundleProvider submitSearch(IDao theCallingDao, SearchParameterMap theParams, String theResourceType, RequestDetails theRequestDetails, String theSearchUuid, ISearchBuilder theSb, String theQueryString, boolean theUseCache) {
 		StopWatch w = new StopWatch();
 		Search search = new Search();
 		populateSearchEntity(theParams, theResourceType, theSearchUuid, theQueryString, search);
@@ -362,8 +412,15 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		JpaInterceptorBroadcaster.doCallHooks(myInterceptorBroadcaster, theRequestDetails, Pointcut.STORAGE_PRESEARCH_REGISTERED, params);
 
 		SearchTask task = new SearchTask(search, theCallingDao, theParams, theResourceType, theRequestDetails);
+		task.setUseCachedSearchTotal(theUseCache);
+		task.setYieldToWaitingTasks(true);
 		myIdToSearchTask.put(search.getUuid(), task);
-		myExecutor.submit(task);
+		try {
+			submitTask(task, SearchTaskExecutor.PriorityEnum.NEW_SEARCH, theRequestDetails);
+		} catch (RuntimeException e) {
+			myIdToSearchTask.remove(search.getUuid());
+			throw e;
+		}
 
 		PersistedJpaSearchFirstPageBundleProvider retVal = new PersistedJpaSearchFirstPageBundleProvider(search, theCallingDao, task, theSb, myManagedTxManager, theRequestDetails);
 		populateBundleProvider(retVal);
@@ -609,6 +666,9 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		private List<Long> myPreviouslyAddedResourcePids;
 		private Integer myMaxResultsToFetch;
 		private SearchRuntimeDetails mySearchRuntimeDetails;
+		private boolean myUseCachedSearchTotal = true;
+		private boolean myYieldToWaitingTasks;
+		private boolean myYielded;
 
 		/**
 		 * Constructor
@@ -624,6 +684,25 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			myRequest = theRequest;
 		}
 
+		/**
+		 * Should a recently calculated total for the same search be used instead of
+		 * running a new count query (default is <code>true</code>, but this only has an
+		 * effect if {@link DaoConfig#getReuseCachedSearchTotalsForMillis()} is set)
+		 */
+		void setUseCachedSearchTotal(boolean theUseCachedSearchTotal) {
+			myUseCachedSearchTotal = theUseCachedSearchTotal;
+		}
+
+		/**
+		 * Should this task stop loading results once the first page is available if other
+		 * searches are waiting for a thread (default is <code>false</code>)? If so, loading
+		 * the rest of this pass is handed to a {@link SearchTaskExecutor.PriorityEnum#BACKGROUND_PREFETCH}
+		 * task. This should not be set for tasks a client is waiting on beyond the first page.
+		 */
+		void setYieldToWaitingTasks(boolean theYieldToWaitingTasks) {
+			myYieldToWaitingTasks = theYieldToWaitingTasks;
+		}
+
 		/**
 		 * This method is called by the server HTTP thread, and
 		 * will block until at least one page of results have been
@@ -798,6 +877,10 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 								mySearch.setStatus(SearchStatusEnum.FINISHED);
 								mySearch.setTotalCount(myCountSavedTotal);
 							}
+						} else if (myYielded) {
+							ourLog.trace("Setting search status to PASSCMPLET to make way for other tasks");
+							mySearch.setStatus(SearchStatusEnum.PASSCMPLET);
+							mySearch.setSearchParameterMap(myParams);
 						}
 					}
 
@@ -934,6 +1017,10 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				myInitialCollectionLatch.countDown();
 				markComplete();
 
+				if (myYielded && mySearch.getStatus() == SearchStatusEnum.PASSCMPLET) {
+					submitBackgroundPrefetch(mySearch, myRequest);
+				}
+
 			}
 			return null;
 		}
@@ -963,22 +1050,43 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			 * before doing anything else.
 			 */
 			boolean wantOnlyCount = SummaryEnum.COUNT.equals(myParams.getSummaryMode());
-			boolean wantCount =
-				wantOnlyCount ||
-					SearchTotalModeEnum.ACCURATE.equals(myParams.getSearchTotalMode()) ||
-					(myParams.getSearchTotalMode() == null && SearchTotalModeEnum.ACCURATE.equals(myDaoConfig.getDefaultTotalMode()));
-			if (wantCount) {
+			SearchTotalModeEnum totalMode = myParams.getSearchTotalMode();
+			if (totalMode == null) {
+				totalMode = myDaoConfig.getDefaultTotalMode();
+			}
+			boolean wantCount = wantOnlyCount || totalMode == SearchTotalModeEnum.ACCURATE;
+			boolean wantEstimate = !wantCount && totalMode == SearchTotalModeEnum.ESTIMATED;
+
+			/*
+			 * A previously calculated total is used if it is recent enough. If there isn't one,
+			 * an estimated total falls back to running the count, since otherwise the Bundle
+			 * would have no total until the search has been completely loaded.
+			 */
+			Integer count = null;
+			if (myUseCachedSearchTotal && (wantCount || wantEstimate)) {
+				count = getCachedSearchTotal(mySearch.getResourceType(), mySearch.getSearchQueryString());
+				if (count != null) {
+					ourLog.trace("Using cached count {}", count);
+				}
+			}
+
+			if (count == null && (wantCount || wantEstimate)) {
 				ourLog.trace("Performing count");
+				long generation = getSearchTotalGeneration(mySearch.getResourceType());
 				ISearchBuilder sb = newSearchBuilder();
 				Iterator<Long> countIterator = sb.createCountQuery(myParams, mySearch.getUuid(), myRequest);
-				Long count = countIterator.next();
+				count = countIterator.next().intValue();
 				ourLog.trace("Got count {}", count);
+				mySearchTotalCache.put(createSearchTotalCacheKey(mySearch.getResourceType(), mySearch.getSearchQueryString()), new CachedSearchTotal(count, generation));
+			}
 
+			if (count != null) {
+				int totalCount = count;
 				TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
 				txTemplate.execute(new TransactionCallbackWithoutResult() {
 					@Override
 					protected void doInTransactionWithoutResult(TransactionStatus theArg0) {
-						mySearch.setTotalCount(count.intValue());
+						mySearch.setTotalCount(totalCount);
 						if (wantOnlyCount) {
 							mySearch.setStatus(SearchStatusEnum.FINISHED);
 						}
@@ -1075,6 +1183,17 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 					if (shouldSync) {
 						saveUnsynced(resultIterator);
+
+						/*
+						 * Once the first page is available, anything else we load is only
+						 * prefetching, so don't hold on to this thread if other searches
+						 * are waiting for one
+						 */
+						if (myYieldToWaitingTasks && resultIterator.hasNext() && myInitialCollectionLatch.getCount() == 0 && mySearchExecutor.hasQueuedTasksAbove(SearchTaskExecutor.PriorityEnum.BACKGROUND_PREFETCH)) {
+							ourLog.debug("Search {} is yielding to waiting tasks after {} results", mySearch.getUuid(), myCountSavedTotal);
+							myYielded = true;
+							break;
+						}
 					}
 
 					if (myLoadingThrottleForUnitTests != null) {
@@ -1135,6 +1254,146 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	}
 
 
+	/**
+	 * Returns a previously calculated total for the given search, or <code>null</code> if there
+	 * is none which is recent enough (see {@link DaoConfig#getReuseCachedSearchTotalsForMillis()})
+	 */
+	private Integer getCachedSearchTotal(String theResourceType, String theQueryString) {
+		Long reuseMillis = myDaoConfig.getReuseCachedSearchTotalsForMillis();
+		if (reuseMillis == null) {
+			return null;
+		}
+		CachedSearchTotal cached = mySearchTotalCache.getIfPresent(createSearchTotalCacheKey(theResourceType, theQueryString));
+		if (cached == null || cached.getGeneration() != getSearchTotalGeneration(theResourceType)) {
+			return null;
+		}
+		if (System.currentTimeMillis() - cached.getCreated() <= reuseMillis) {
+			return cached.getTotal();
+		}
+		return null;
+	}
+
+	/**
+	 * Discards the cached totals for the given resource type, if
+	 * {@link DaoConfig#isInvalidateCachedSearchTotalsOnWrite()} is enabled. Rather than scanning
+	 * the cache, this moves the type on to a new generation, and totals calculated in an earlier
+	 * generation are ignored. This happens again when the current transaction commits, since
+	 * a count which ran while the write was still uncommitted won't have seen it.
+	 */
+	@Override
+	public void invalidateSearchTotals(String theResourceType) {
+		if (!myDaoConfig.isInvalidateCachedSearchTotalsOnWrite()) {
+			return;
+		}
+		AtomicLong generation = mySearchTotalGenerations.computeIfAbsent(theResourceType, t -> new AtomicLong());
+		generation.incrementAndGet();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					generation.incrementAndGet();
+				}
+			});
+		}
+	}
+
+	private long getSearchTotalGeneration(String theResourceType) {
+		AtomicLong retVal = mySearchTotalGenerations.get(theResourceType);
+		return retVal != null ? retVal.get() : 0L;
+	}
+
+	/**
+	 * Clears any previously calculated search totals
+	 */
+	@VisibleForTesting
+	void clearSearchTotalCache() {
+		mySearchTotalCache.invalidateAll();
+	}
+
+	/**
+	 * Creates the key for a cached total. Parameters which only affect how the results are
+	 * returned (and not how many of them there are) are left out, so that e.g. a search with
+	 * <code>_total=estimate</code> can use a total calculated by the same search
+	 * with <code>_total=accurate</code>.
+	 */
+	static String createSearchTotalCacheKey(String theResourceType, String theQueryString) {
+		StringBuilder b = new StringBuilder();
+		b.append(theResourceType);
+		char separator = '?';
+		for (String next : defaultString(theQueryString).split("[?&]")) {
+			if (next.isEmpty() || isResultOnlyParameter(next)) {
+				continue;
+			}
+			b.append(separator).append(next);
+			separator = '&';
+		}
+		return b.toString();
+	}
+
+	private static boolean isResultOnlyParameter(String theParameter) {
+		return isParameter(theParameter, Constants.PARAM_COUNT) ||
+			isParameter(theParameter, Constants.PARAM_SUMMARY) ||
+			isParameter(theParameter, Constants.PARAM_SEARCH_TOTAL_MODE) ||
+			isParameter(theParameter, Constants.PARAM_SORT) ||
+			isParameter(theParameter, Constants.PARAM_INCLUDE) ||
+			isParameter(theParameter, Constants.PARAM_REVINCLUDE);
+	}
+
+	/**
+	 * Is the given <code>name=value</code> pair for the given parameter (with or without a qualifier)?
+	 */
+	private static boolean isParameter(String theParameter, String theParameterName) {
+		return theParameter.startsWith(theParameterName + "=") || theParameter.startsWith(theParameterName + ":");
+	}
+
+	private static class CachedSearchTotal {
+		private final int myTotal;
+		private final long myCreated;
+		private final long myGeneration;
+
+		CachedSearchTotal(int theTotal, long theGeneration) {
+			myTotal = theTotal;
+			myCreated = System.currentTimeMillis();
+			myGeneration = theGeneration;
+		}
+
+		long getGeneration() {
+			return myGeneration;
+		}
+
+		int getTotal() {
+			return myTotal;
+		}
+
+		long getCreated() {
+			return myCreated;
+		}
+	}
+
+	private void submitTask(SearchTask theTask, SearchTaskExecutor.PriorityEnum thePriority, RequestDetails theRequestDetails) {
+		mySearchExecutor.submit(theTask, thePriority, getClientKey(theRequestDetails));
+	}
+
+	/**
+	 * Identifies the client a search is being performed for, so that the
+	 * search executor can be fair between clients
+	 */
+	private static String getClientKey(RequestDetails theRequestDetails) {
+		if (theRequestDetails == null) {
+			return null;
+		}
+		if (isNotBlank(theRequestDetails.getTenantId())) {
+			return "tenant:" + theRequestDetails.getTenantId();
+		}
+		if (theRequestDetails instanceof ServletRequestDetails) {
+			HttpServletRequest servletRequest = ((ServletRequestDetails) theRequestDetails).getServletRequest();
+			if (servletRequest != null) {
+				return "address:" + servletRequest.getRemoteAddr();
+			}
+		}
+		return null;
+	}
+
 	public static void populateSearchEntity(SearchParameterMap theParams, String theResourceType, String theSearchUuid, String theQueryString, Search theSearch) {
 		theSearch.setDeleted(false);
 		theSearch.setUuid(theSearchUuid);
@@ -0,0 +1,298 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.defaultString;
+
+/**
+ * Runs search tasks on a bounded number of threads, since every running search holds
+ * a database connection and a transaction for as long as it runs.
+ * <p>
+ * When all threads are busy, tasks are queued. Queued continuation tasks (which load
+ * further pages of a search that is already in progress, often while a client is waiting
+ * for that page) are run before tasks for new searches, so that work which has already
+ * been admitted is finished first. Background prefetching of results no client has asked
+ * for yet is run last. Within each of these, tasks from clients with fewer
+ * outstanding tasks are run first so that a single client can't starve everyone else.
+ * Once too many new searches are already waiting, further new searches are rejected with
+ * an HTTP 503 so that clients back off instead of piling up in the queue.
+ * </p>
+ */
+public class SearchTaskExecutor {
+
+	/**
+	 * Default value for {@link #setMaximumThreads(int)}
+	 */
+	public static final int DEFAULT_MAXIMUM_THREADS = 64;
+	/**
+	 * Default value for {@link #setMaximumQueuedSearches(int)}
+	 */
+	public static final int DEFAULT_MAXIMUM_QUEUED_SEARCHES = 1000;
+	private static final Logger ourLog = LoggerFactory.getLogger(SearchTaskExecutor.class);
+	private static final int RETRY_AFTER_SECONDS = 5;
+
+	private final ThreadPoolExecutor myExecutor;
+	private final AtomicLong mySequence = new AtomicLong();
+	private final ConcurrentHashMap<String, AtomicInteger> myClientToOutstandingCount = new ConcurrentHashMap<>();
+	private final AtomicInteger[] myQueuedCounts;
+	private final AtomicLong myStartedCount = new AtomicLong();
+	private final AtomicLong myRejectedCount = new AtomicLong();
+	private final AtomicLong myTotalQueueWaitMillis = new AtomicLong();
+	private final AtomicLong myMaximumQueueWaitMillis = new AtomicLong();
+	private volatile int myMaximumQueuedSearches = DEFAULT_MAXIMUM_QUEUED_SEARCHES;
+
+	/**
+	 * Constructor
+	 */
+	public SearchTaskExecutor() {
+		myQueuedCounts = new AtomicInteger[PriorityEnum.values().length];
+		for (int i = 0; i < myQueuedCounts.length; i++) {
+			myQueuedCounts[i] = new AtomicInteger();
+		}
+
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("search_coord_");
+		myExecutor = new ThreadPoolExecutor(DEFAULT_MAXIMUM_THREADS, DEFAULT_MAXIMUM_THREADS, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), threadFactory);
+		myExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the maximum number of searches which will be run at the same time
+	 */
+	public int getMaximumThreads() {
+		return myExecutor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Sets the maximum number of searches which will be run at the same time. Default is {@link #DEFAULT_MAXIMUM_THREADS}.
+	 */
+	public void setMaximumThreads(int theMaximumThreads) {
+		Validate.isTrue(theMaximumThreads > 0, "theMaximumThreads must be greater than 0");
+		if (theMaximumThreads == myExecutor.getMaximumPoolSize()) {
+			return;
+		}
+		// The order matters here, core size can never be larger than maximum size
+		if (theMaximumThreads > myExecutor.getMaximumPoolSize()) {
+			myExecutor.setMaximumPoolSize(theMaximumThreads);
+			myExecutor.setCorePoolSize(theMaximumThreads);
+		} else {
+			myExecutor.setCorePoolSize(theMaximumThreads);
+			myExecutor.setMaximumPoolSize(theMaximumThreads);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of new searches which may be waiting for a thread before further new
+	 * searches are rejected
+	 */
+	public int getMaximumQueuedSearches() {
+		return myMaximumQueuedSearches;
+	}
+
+	/**
+	 * Sets the maximum number of new searches which may be waiting for a thread before further new
+	 * searches are rejected. Default is {@link #DEFAULT_MAXIMUM_QUEUED_SEARCHES}.
+	 */
+	public void setMaximumQueuedSearches(int theMaximumQueuedSearches) {
+		Validate.isTrue(theMaximumQueuedSearches >= 0, "theMaximumQueuedSearches must not be negative");
+		myMaximumQueuedSearches = theMaximumQueuedSearches;
+	}
+
+	/**
+	 * Submits a task to be run
+	 *
+	 * @param theTask      The task
+	 * @param thePriority  The priority of the task
+	 * @param theClientKey Identifies the client (e.g. the tenant) the task is being run for, for fairness between clients. May be <code>null</code>.
+	 * @throws UnclassifiedServerFailureException (HTTP 503) if a new search is submitted and too many new searches are already waiting
+	 */
+	public void submit(Callable<?> theTask, PriorityEnum thePriority, String theClientKey) {
+		Validate.notNull(theTask, "theTask must not be null");
+		Validate.notNull(thePriority, "thePriority must not be null");
+
+		AtomicInteger queuedCount = myQueuedCounts[thePriority.ordinal()];
+		if (thePriority == PriorityEnum.NEW_SEARCH) {
+			boolean saturated = myExecutor.getActiveCount() >= myExecutor.getMaximumPoolSize();
+			if (saturated && queuedCount.get() >= myMaximumQueuedSearches) {
+				myRejectedCount.incrementAndGet();
+				ourLog.warn("Rejecting search, {} searches are running and {} are already waiting", myExecutor.getActiveCount(), queuedCount.get());
+				throw new UnclassifiedServerFailureException(Constants.STATUS_HTTP_503_SERVICE_UNAVAILABLE, "Server is too busy to perform this search, please try again later")
+					.addResponseHeader(Constants.HEADER_RETRY_AFTER, Integer.toString(RETRY_AFTER_SECONDS));
+			}
+		}
+
+		String clientKey = defaultString(theClientKey);
+		AtomicInteger outstanding = myClientToOutstandingCount.computeIfAbsent(clientKey, t -> new AtomicInteger());
+		int clientRank = outstanding.getAndIncrement();
+		queuedCount.incrementAndGet();
+
+		QueuedTask task = new QueuedTask(theTask, thePriority, clientKey, outstanding, clientRank, mySequence.getAndIncrement());
+		try {
+			myExecutor.execute(task);
+		} catch (RuntimeException e) {
+			queuedCount.decrementAndGet();
+			outstanding.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of tasks of the given priority which are waiting for a thread
+	 */
+	public int getQueuedCount(PriorityEnum thePriority) {
+		return myQueuedCounts[thePriority.ordinal()].get();
+	}
+
+	/**
+	 * Returns <code>true</code> if any task with a higher priority than the given one is waiting for a thread
+	 */
+	public boolean hasQueuedTasksAbove(PriorityEnum thePriority) {
+		for (int i = 0; i < thePriority.ordinal(); i++) {
+			if (myQueuedCounts[i].get() > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the approximate number of tasks which are currently running
+	 */
+	public int getActiveCount() {
+		return myExecutor.getActiveCount();
+	}
+
+	/**
+	 * Returns the number of new searches which have been rejected because too many searches were waiting
+	 */
+	public long getRejectedCount() {
+		return myRejectedCount.get();
+	}
+
+	/**
+	 * Returns the average time tasks have spent waiting for a thread, in milliseconds
+	 */
+	public long getAverageQueueWaitMillis() {
+		long started = myStartedCount.get();
+		if (started == 0) {
+			return 0;
+		}
+		return myTotalQueueWaitMillis.get() / started;
+	}
+
+	/**
+	 * Returns the longest time any task has spent waiting for a thread, in milliseconds
+	 */
+	public long getMaximumQueueWaitMillis() {
+		return myMaximumQueueWaitMillis.get();
+	}
+
+	/**
+	 * Task priorities, highest first
+	 */
+	public enum PriorityEnum {
+		/**
+		 * Loading further results for a search which has already returned its first page.
+		 * These are never rejected, and clients are often waiting for them too.
+		 */
+		CONTINUATION,
+		/**
+		 * Loading the first page of a new search
+		 */
+		NEW_SEARCH,
+		/**
+		 * Loading results of a search beyond what has been returned so far, before any client
+		 * has asked for them
+		 */
+		BACKGROUND_PREFETCH
+	}
+
+	private class QueuedTask implements Runnable, Comparable<QueuedTask> {
+
+		private final Callable<?> myTask;
+		private final PriorityEnum myPriority;
+		private final String myClientKey;
+		private final AtomicInteger myClientOutstandingCount;
+		private final int myClientRank;
+		private final long mySequenceNumber;
+		private final long myQueuedTime;
+
+		private QueuedTask(Callable<?> theTask, PriorityEnum thePriority, String theClientKey, AtomicInteger theClientOutstandingCount, int theClientRank, long theSequenceNumber) {
+			myTask = theTask;
+			myPriority = thePriority;
+			myClientKey = theClientKey;
+			myClientOutstandingCount = theClientOutstandingCount;
+			myClientRank = theClientRank;
+			mySequenceNumber = theSequenceNumber;
+			myQueuedTime = System.currentTimeMillis();
+		}
+
+		@Override
+		public void run() {
+			myQueuedCounts[myPriority.ordinal()].decrementAndGet();
+
+			long waitMillis = System.currentTimeMillis() - myQueuedTime;
+			myStartedCount.incrementAndGet();
+			myTotalQueueWaitMillis.addAndGet(waitMillis);
+			myMaximumQueueWaitMillis.accumulateAndGet(waitMillis, Math::max);
+			if (waitMillis > 1000) {
+				ourLog.debug("Search task for client [{}] waited {}ms for a thread", myClientKey, waitMillis);
+			}
+
+			try {
+				myTask.call();
+			} catch (Exception e) {
+				ourLog.error("Failure running search task", e);
+			} finally {
+				if (myClientOutstandingCount.decrementAndGet() <= 0) {
+					myClientToOutstandingCount.remove(myClientKey, myClientOutstandingCount);
+				}
+			}
+		}
+
+		@Override
+		public int compareTo(QueuedTask theOther) {
+			int retVal = myPriority.compareTo(theOther.myPriority);
+			if (retVal == 0) {
+				retVal = Integer.compare(myClientRank, theOther.myClientRank);
+			}
+			if (retVal == 0) {
+				retVal = Long.compare(mySequenceNumber, theOther.mySequenceNumber);
+			}
+			return retVal;
+		}
+	}
+
+}
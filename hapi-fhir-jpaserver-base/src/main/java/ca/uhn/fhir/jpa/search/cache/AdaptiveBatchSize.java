@@ -0,0 +1,63 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Tracks how many rows should be deleted in a single statement, growing the
+ * batch while statements complete quickly and shrinking it when they are
+ * slower than the target latency.
+ */
+class AdaptiveBatchSize {
+
+	private final int myMinimum;
+	private final int myMaximum;
+	private final long myTargetMillis;
+	private int myCurrent;
+
+	AdaptiveBatchSize(int theInitial, int theMinimum, int theMaximum, long theTargetMillis) {
+		Validate.isTrue(theMinimum > 0, "theMinimum must be greater than 0");
+		Validate.isTrue(theMaximum >= theMinimum, "theMaximum must not be less than theMinimum");
+		myMinimum = theMinimum;
+		myMaximum = theMaximum;
+		myTargetMillis = theTargetMillis;
+		myCurrent = Math.max(theMinimum, Math.min(theMaximum, theInitial));
+	}
+
+	synchronized int get() {
+		return myCurrent;
+	}
+
+	/**
+	 * @param theAffectedRows The number of rows the statement actually affected
+	 * @param theMillis       How long the statement took
+	 */
+	synchronized void recordStatement(int theAffectedRows, long theMillis) {
+		if (theMillis > myTargetMillis) {
+			myCurrent = Math.max(myMinimum, myCurrent / 2);
+		} else if (theMillis < myTargetMillis / 2 && theAffectedRows >= myCurrent) {
+			// Only grow if the statement actually used the whole batch
+			myCurrent = (int) Math.min(myMaximum, myCurrent * 2L);
+		}
+	}
+
+}
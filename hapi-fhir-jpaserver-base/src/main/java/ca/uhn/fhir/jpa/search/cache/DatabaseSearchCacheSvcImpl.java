@@ -26,10 +26,13 @@ import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchInclude;
+import ca.uhn.fhir.jpa.entity.SearchResult;
 import ca.uhn.fhir.jpa.model.search.SearchStatusEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.util.StopWatch;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.dstu3.model.InstantType;
 import org.slf4j.Logger;
@@ -42,24 +45,26 @@ import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.transaction.Transactional;
-import java.util.Collection;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatabaseSearchCacheSvcImpl extends BaseSearchCacheSvcImpl {
 	/*
-	 * Be careful increasing this number! We use the number of params here in a
-	 * DELETE FROM foo WHERE params IN (term,term,term...)
-	 * type query and this can fail if we have 1000s of params
+	 * This is the initial number of results deleted in a single statement. Results
+	 * are deleted by range so this isn't limited by the number of statement parameters,
+	 * and it is adjusted as the purge runs based on how long each statement takes.
 	 */
 	public static final int DEFAULT_MAX_RESULTS_TO_DELETE_IN_ONE_STMT = 500;
 	public static final int DEFAULT_MAX_RESULTS_TO_DELETE_IN_ONE_PAS = 20000;
+	private static final int MINIMUM_RESULTS_TO_DELETE_IN_ONE_STMT = 100;
+	private static final long TARGET_STATEMENT_MILLIS = DateUtils.MILLIS_PER_SECOND;
 	public static final long DEFAULT_CUTOFF_SLACK = 10 * DateUtils.MILLIS_PER_SECOND;
 	private static final Logger ourLog = LoggerFactory.getLogger(DatabaseSearchCacheSvcImpl.class);
 	private static int ourMaximumResultsToDeleteInOneStatement = DEFAULT_MAX_RESULTS_TO_DELETE_IN_ONE_STMT;
 	private static int ourMaximumResultsToDeleteInOnePass = DEFAULT_MAX_RESULTS_TO_DELETE_IN_ONE_PAS;
 	private static Long ourNowForUnitTests;
+	private static AdaptiveBatchSize ourBatchSize;
 	/*
 	 * We give a bit of extra leeway just to avoid race conditions where a query result
 	 * is being reused (because a new client request came in with the same params) right before
@@ -77,6 +82,8 @@ public class DatabaseSearchCacheSvcImpl extends BaseSearchCacheSvcImpl {
 	private PlatformTransactionManager myTxManager;
 	@Autowired
 	private DaoConfig myDaoConfig;
+	private volatile long myLastPurgeBacklogCount;
+	private volatile double myLastPurgeResultsPerSecond;
 
 	@VisibleForTesting
 	public void setCutoffSlackForUnitTest(long theCutoffSlack) {
@@ -170,65 +177,165 @@ public class DatabaseSearchCacheSvcImpl extends BaseSearchCacheSvcImpl {
 
 		ourLog.debug("Searching for searches which are before {}", cutoff);
 
+		StopWatch sw = new StopWatch();
 		TransactionTemplate tt = new TransactionTemplate(myTxManager);
 		final Slice<Long> toDelete = tt.execute(theStatus ->
 			mySearchDao.findWhereLastReturnedBefore(cutoff, new Date(), PageRequest.of(0, 2000))
 		);
 		assert toDelete != null;
 
+		long backlog = toDelete.getNumberOfElements();
+		if (toDelete.hasNext()) {
+			Long count = tt.execute(t -> mySearchDao.countWhereLastReturnedBefore(cutoff, new Date()));
+			backlog = count != null ? count : backlog;
+		}
+		myLastPurgeBacklogCount = backlog;
+
+		if (!toDelete.hasContent()) {
+			myLastPurgeResultsPerSecond = 0;
+			return;
+		}
+
+		AdaptiveBatchSize batchSize = getBatchSize();
+		AtomicLong deletedResults = new AtomicLong();
+		List<Callable<Void>> tasks = new ArrayList<>();
 		for (final Long nextSearchToDelete : toDelete) {
-			ourLog.debug("Deleting search with PID {}", nextSearchToDelete);
-			tt.execute(t -> {
-				mySearchDao.updateDeleted(nextSearchToDelete, true);
+			tasks.add(() -> {
+				try {
+					deletedResults.addAndGet(deleteSearch(tt, nextSearchToDelete, batchSize));
+				} catch (Exception e) {
+					ourLog.warn("Failed to delete search with PID {}: {}", nextSearchToDelete, e.toString());
+					ourLog.debug("Failed to delete search", e);
+				}
 				return null;
 			});
+		}
+		runTasks(tasks);
 
-			tt.execute(t -> {
-				deleteSearch(nextSearchToDelete);
-				return null;
-			});
+		myLastPurgeResultsPerSecond = sw.getThroughput(deletedResults.get(), TimeUnit.SECONDS);
+		ourLog.info("Purged {} expired searches and {} search results in {} ({} results/sec, {} per statement) - {} expired searches were waiting", toDelete.getNumberOfElements(), deletedResults.get(), sw, (long) myLastPurgeResultsPerSecond, batchSize.get(), backlog);
+	}
+
+	private void runTasks(List<Callable<Void>> theTasks) {
+		int threadCount = Math.min(theTasks.size(), myDaoConfig.getExpireSearchResultsWorkerCount());
+		if (threadCount <= 1) {
+			for (Callable<Void> next : theTasks) {
+				try {
+					next.call();
+				} catch (Exception e) {
+					throw new InternalErrorException(e);
+				}
+			}
+			return;
 		}
 
-		int count = toDelete.getContent().size();
-		if (count > 0) {
-			if (ourLog.isDebugEnabled() || "true".equalsIgnoreCase(System.getProperty("test"))) {
-				Long total = tt.execute(t -> mySearchDao.count());
-				ourLog.debug("Deleted {} searches, {} remaining", count, total);
+		BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern("search-purge-%d")
+			.daemon(true)
+			.build();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, threadFactory);
+		try {
+			for (Future<Void> next : executor.invokeAll(theTasks)) {
+				next.get();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			ourLog.warn("Interrupted while purging expired searches");
+		} catch (ExecutionException e) {
+			throw new InternalErrorException(e.getCause());
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
+	private static synchronized AdaptiveBatchSize getBatchSize() {
+		if (ourBatchSize == null) {
+			int minimum = Math.min(MINIMUM_RESULTS_TO_DELETE_IN_ONE_STMT, ourMaximumResultsToDeleteInOneStatement);
+			ourBatchSize = new AdaptiveBatchSize(ourMaximumResultsToDeleteInOneStatement, minimum, Integer.MAX_VALUE, TARGET_STATEMENT_MILLIS);
+		}
+		return ourBatchSize;
+	}
 
-	private void deleteSearch(final Long theSearchPid) {
-		mySearchDao.findById(theSearchPid).ifPresent(searchToDelete -> {
-			mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
-
-			/*
-			 * Note, we're only deleting up to 500 results in an individual search here. This
-			 * is to prevent really long running transactions in cases where there are
-			 * huge searches with tons of results in them. By the time we've gotten here
-			 * we have marked the parent Search entity as deleted, so it's not such a
-			 * huge deal to be only partially deleting search results. They'll get deleted
-			 * eventually
-			 */
-			int max = ourMaximumResultsToDeleteInOnePass;
-			Slice<Long> resultPids = mySearchResultDao.findForSearch(PageRequest.of(0, max), searchToDelete.getId());
-			if (resultPids.hasContent()) {
-				List<List<Long>> partitions = Lists.partition(resultPids.getContent(), ourMaximumResultsToDeleteInOneStatement);
-				for (List<Long> nextPartition : partitions) {
-					mySearchResultDao.deleteByIds(nextPartition);
-				}
+	/**
+	 * Deletes the results for a single search in ranges of {@link SearchResult#getOrder() order},
+	 * and then the search itself once no results remain.
+	 *
+	 * @return The number of search results deleted
+	 */
+	private long deleteSearch(TransactionTemplate theTxTemplate, Long theSearchPid, AdaptiveBatchSize theBatchSize) {
+		ourLog.debug("Deleting search with PID {}", theSearchPid);
+		theTxTemplate.execute(t -> {
+			mySearchDao.updateDeleted(theSearchPid, true);
+			return null;
+		});
 
-			}
+		/*
+		 * Note, we're only deleting up to a fixed number of results in an individual search
+		 * here. This is to prevent one huge search from holding up the purge of all of the
+		 * others. By the time we've gotten here we have marked the parent Search entity as
+		 * deleted, so it's not such a huge deal to be only partially deleting search
+		 * results. They'll get deleted eventually
+		 */
+		long deleted = 0;
+		boolean allResultsDeleted = false;
+		int remaining = ourMaximumResultsToDeleteInOnePass;
+		while (remaining > 0) {
+			int batch = Math.min(theBatchSize.get(), remaining);
+			StopWatch sw = new StopWatch();
+
+			// Find the order of the last result in this batch, and delete everything up to it
+			Integer lastOrder = theTxTemplate.execute(t -> {
+				Slice<Integer> boundary = mySearchResultDao.findOrdersForSearch(PageRequest.of(batch - 1, 1), theSearchPid);
+				return boundary.hasContent() ? boundary.getContent().get(0) : null;
+			});
 
-			// Only delete if we don't have results left in this search
-			if (resultPids.getNumberOfElements() < max) {
-				ourLog.debug("Deleting search {}/{} - Created[{}] -- Last returned[{}]", searchToDelete.getId(), searchToDelete.getUuid(), new InstantType(searchToDelete.getCreated()), new InstantType(searchToDelete.getSearchLastReturned()));
-				mySearchDao.deleteByPid(searchToDelete.getId());
+			Integer count;
+			if (lastOrder == null) {
+				count = theTxTemplate.execute(t -> mySearchResultDao.deleteForSearch(theSearchPid));
+				allResultsDeleted = true;
 			} else {
-				ourLog.debug("Purged {} search results for deleted search {}/{}", resultPids.getSize(), searchToDelete.getId(), searchToDelete.getUuid());
+				count = theTxTemplate.execute(t -> mySearchResultDao.deleteForSearchUpToOrder(theSearchPid, lastOrder));
 			}
-		});
+
+			int deletedInBatch = count != null ? count : 0;
+			theBatchSize.recordStatement(deletedInBatch, sw.getMillis());
+			deleted += deletedInBatch;
+			remaining -= deletedInBatch;
+			if (allResultsDeleted || deletedInBatch == 0) {
+				break;
+			}
+		}
+
+		if (allResultsDeleted) {
+			theTxTemplate.execute(t -> {
+				mySearchDao.findById(theSearchPid).ifPresent(searchToDelete -> {
+					ourLog.debug("Deleting search {}/{} - Created[{}] -- Last returned[{}]", searchToDelete.getId(), searchToDelete.getUuid(), new InstantType(searchToDelete.getCreated()), new InstantType(searchToDelete.getSearchLastReturned()));
+					mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
+					mySearchDao.deleteByPid(searchToDelete.getId());
+				});
+				return null;
+			});
+		} else {
+			ourLog.debug("Purged {} search results for deleted search {}", deleted, theSearchPid);
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * Returns the number of expired searches which were waiting to be deleted at the start
+	 * of the most recent purge pass
+	 */
+	public long getLastPurgeBacklogCount() {
+		return myLastPurgeBacklogCount;
+	}
+
+	/**
+	 * Returns the number of search results per second which were deleted during the most
+	 * recent purge pass
+	 */
+	public double getLastPurgeResultsPerSecond() {
+		return myLastPurgeResultsPerSecond;
 	}
 
 	@VisibleForTesting
@@ -237,8 +344,9 @@ public class DatabaseSearchCacheSvcImpl extends BaseSearchCacheSvcImpl {
 	}
 
 	@VisibleForTesting
-	public static void setMaximumResultsToDeleteForUnitTest(int theMaximumResultsToDelete) {
+	public static synchronized void setMaximumResultsToDeleteForUnitTest(int theMaximumResultsToDelete) {
 		ourMaximumResultsToDeleteInOneStatement = theMaximumResultsToDelete;
+		ourBatchSize = null;
 	}
 
 	/**
@@ -0,0 +1,375 @@
+package ca.uhn.fhir.jpa.search.reindex;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.interceptor.PerformanceTracingMetricsInterceptor;
+import ca.uhn.fhir.jpa.interceptor.perf.IPerformanceMetricsRegistry;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.model.sched.ISchedulerService;
+import ca.uhn.fhir.jpa.model.sched.ScheduledJobDefinition;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.apache.commons.lang3.StringUtils.split;
+
+public class DeferredIndexingSvcImpl implements IDeferredIndexingSvc {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(DeferredIndexingSvcImpl.class);
+	private static final int PASS_SIZE = 1000;
+	private static final int BATCH_SIZE = 100;
+	private static final int TOKEN_RADIX = Character.MAX_RADIX;
+	/**
+	 * Key used to bind the PIDs of the deferred resources written by the current transaction
+	 * to that transaction, keyed by resource type
+	 */
+	private static final String WRITTEN_IN_TRANSACTION_KEY = DeferredIndexingSvcImpl.class.getName() + "_WRITTEN_IN_TRANSACTION";
+	/**
+	 * The most consistency tokens a single request may supply
+	 */
+	static final int MAX_CONSISTENCY_TOKENS = BATCH_SIZE;
+	/**
+	 * Held for a whole pass, so that only one pass runs at a time
+	 */
+	private final ReentrantLock myPassLock = new ReentrantLock();
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+	@Autowired
+	private ISchedulerService mySchedulerService;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+	private TransactionTemplate myTxTemplate;
+	private IPerformanceMetricsRegistry myPerformanceMetricsRegistry;
+
+	@PostConstruct
+	public void start() {
+		myTxTemplate = new TransactionTemplate(myTxManager);
+		myTxTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
+	@PostConstruct
+	public void registerScheduledJob() {
+		ScheduledJobDefinition jobDetail = new ScheduledJobDefinition();
+		jobDetail.setId(DeferredIndexingSvcImpl.class.getName());
+		jobDetail.setJobClass(DeferredIndexingSvcImpl.SubmitJob.class);
+		mySchedulerService.scheduleFixedDelay(5 * DateUtils.MILLIS_PER_SECOND, true, jobDetail);
+	}
+
+	@Override
+	public boolean isDeferIndexing(String theResourceType) {
+		if (!myDaoConfig.getDeferIndexingForResourceTypes().contains(theResourceType)) {
+			return false;
+		}
+
+		// Unique combo search parameters are enforced by their index, so it has to be written with the resource
+		return mySearchParamRegistry.getActiveUniqueSearchParams(theResourceType).isEmpty();
+	}
+
+	@Override
+	public void resourceWritten(ResourceTable theEntity) {
+		if (!myDaoConfig.getDeferIndexingForResourceTypes().contains(theEntity.getResourceType())) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+
+		Map<String, Set<Long>> writtenInTransaction = getWrittenInCurrentTransaction();
+		if (writtenInTransaction == null) {
+			writtenInTransaction = new HashMap<>();
+			TransactionSynchronizationManager.bindResource(WRITTEN_IN_TRANSACTION_KEY, writtenInTransaction);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int theStatus) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(WRITTEN_IN_TRANSACTION_KEY);
+				}
+			});
+		}
+		writtenInTransaction.computeIfAbsent(theEntity.getResourceType(), t -> new HashSet<>()).add(theEntity.getId());
+	}
+
+	@Override
+	public void indexPendingResources(String theResourceType) {
+		if (!myDaoConfig.getDeferIndexingForResourceTypes().contains(theResourceType)) {
+			return;
+		}
+
+		/*
+		 * Resources written by the current transaction can't be seen by any other transaction,
+		 * and their rows are already locked by this one, so they are indexed right here
+		 */
+		Set<Long> attempted = new HashSet<>();
+		Map<String, Set<Long>> writtenInTransaction = getWrittenInCurrentTransaction();
+		if (writtenInTransaction != null && writtenInTransaction.containsKey(theResourceType)) {
+			List<Long> pids = new ArrayList<>(writtenInTransaction.get(theResourceType));
+			Collections.sort(pids);
+			for (Long next : pids) {
+				indexResource(next, false);
+			}
+			attempted.addAll(pids);
+		}
+
+		/*
+		 * Everything else is indexed in separate transactions. Rows which are locked are
+		 * being written by another transaction, so this one can't see their new contents
+		 * anyway and they are skipped.
+		 */
+		while (true) {
+			Slice<Long> pending = myTxTemplate.execute(t -> myResourceTableDao.findIdsOfResourcesWithIndexStatus(PageRequest.of(0, PASS_SIZE), BaseHapiFhirDao.INDEX_STATUS_DEFERRED, theResourceType));
+			if (pending == null) {
+				break;
+			}
+			List<Long> pids = new ArrayList<>();
+			for (Long next : pending.getContent()) {
+				if (attempted.add(next)) {
+					pids.add(next);
+				}
+			}
+			if (pids.isEmpty()) {
+				break;
+			}
+			for (List<Long> nextBatch : Lists.partition(pids, BATCH_SIZE)) {
+				indexBatch(nextBatch, true);
+			}
+			if (!pending.hasNext()) {
+				break;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Set<Long>> getWrittenInCurrentTransaction() {
+		return (Map<String, Set<Long>>) TransactionSynchronizationManager.getResource(WRITTEN_IN_TRANSACTION_KEY);
+	}
+
+	@Override
+	public String toConsistencyToken(Long theResourcePid) {
+		return Long.toString(theResourcePid, TOKEN_RADIX);
+	}
+
+	@Override
+	public void ensureIndexed(Collection<String> theConsistencyTokens) {
+		if (theConsistencyTokens == null || theConsistencyTokens.isEmpty()) {
+			return;
+		}
+
+		// Clients may send the header more than once, or send several tokens in one comma separated value
+		Set<Long> pids = new TreeSet<>();
+		int tokenCount = 0;
+		for (String nextHeader : theConsistencyTokens) {
+			for (String nextToken : split(nextHeader, ", ")) {
+				if (++tokenCount > MAX_CONSISTENCY_TOKENS) {
+					throw new InvalidRequestException("Too many index consistency tokens, a maximum of " + MAX_CONSISTENCY_TOKENS + " may be supplied");
+				}
+				try {
+					pids.add(Long.parseLong(nextToken, TOKEN_RADIX));
+				} catch (NumberFormatException e) {
+					throw new InvalidRequestException("Invalid index consistency token: " + nextToken);
+				}
+			}
+		}
+
+		for (List<Long> nextBatch : Lists.partition(new ArrayList<>(pids), BATCH_SIZE)) {
+			indexBatch(nextBatch, false);
+		}
+	}
+
+	@Override
+	public Integer runIndexingPass() {
+		if (myDaoConfig.isSchedulingDisabled()) {
+			return null;
+		}
+		if (myPassLock.tryLock()) {
+			try {
+				return doIndexingPassInsideLock();
+			} finally {
+				myPassLock.unlock();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int forceIndexingPass() {
+		myPassLock.lock();
+		try {
+			return doIndexingPassInsideLock();
+		} finally {
+			myPassLock.unlock();
+		}
+	}
+
+	private int doIndexingPassInsideLock() {
+		// Resources deferred before their type was removed from the configuration still need indexing
+		StopWatch sw = new StopWatch();
+		Slice<Long> pending = myTxTemplate.execute(t -> myResourceTableDao.findIdsOfResourcesWithIndexStatus(PageRequest.of(0, PASS_SIZE), BaseHapiFhirDao.INDEX_STATUS_DEFERRED));
+		if (pending == null || !pending.hasContent()) {
+			return 0;
+		}
+
+		int count = 0;
+		for (List<Long> nextBatch : Lists.partition(pending.getContent(), BATCH_SIZE)) {
+			count += indexBatch(nextBatch, true);
+		}
+
+		ourLog.info("Indexed {} deferred resources in {} ({} / sec)", count, sw.toString(), sw.formatThroughput(count, TimeUnit.SECONDS));
+		return count;
+	}
+
+	/**
+	 * Indexes a batch of resources in a single transaction. If that fails, each resource is
+	 * retried in its own transaction so that one bad resource doesn't hold up the others.
+	 * <p>
+	 * Each resource row is locked while it is indexed, so that a resource is never indexed
+	 * twice at once, even by different servers in a cluster (e.g. by a search supplying a
+	 * consistency token on one server while the scheduled pass runs on another). Rows are
+	 * locked in PID order to avoid deadlocks between batches.
+	 * </p>
+	 *
+	 * @param theSkipLocked If <code>true</code>, resources whose rows are locked by another
+	 *                      transaction are skipped instead of waiting for the lock
+	 */
+	private int indexBatch(List<Long> thePids, boolean theSkipLocked) {
+		List<Long> pids = new ArrayList<>(thePids);
+		Collections.sort(pids);
+
+		try {
+			Integer count = myTxTemplate.execute(t -> {
+				int retVal = 0;
+				for (Long next : pids) {
+					if (indexResource(next, theSkipLocked)) {
+						retVal++;
+					}
+				}
+				return retVal;
+			});
+			return count != null ? count : 0;
+		} catch (Exception e) {
+			ourLog.warn("Failed to index batch of {} deferred resources, retrying them individually: {}", pids.size(), e.toString());
+		}
+
+		int count = 0;
+		for (Long next : pids) {
+			try {
+				if (Boolean.TRUE.equals(myTxTemplate.execute(t -> indexResource(next, theSkipLocked)))) {
+					count++;
+				}
+			} catch (Exception e) {
+				ourLog.error("Failed to index deferred resource with PID {}", next, e);
+				myTxTemplate.execute(t -> {
+					myResourceTableDao.updateIndexStatus(next, BaseHapiFhirDao.INDEX_STATUS_INDEXING_FAILED);
+					return null;
+				});
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return Returns <code>true</code> if the resource was indexed, or <code>false</code> if it
+	 * didn't need to be (i.e. it had already been indexed or no longer exists) or its row was
+	 * locked and <code>theSkipLocked</code> is set
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean indexResource(Long thePid, boolean theSkipLocked) {
+		Optional<ResourceTable> entityOpt;
+		if (theSkipLocked) {
+			entityOpt = myResourceTableDao.findByIdForUpdateSkipLocked(thePid);
+		} else {
+			entityOpt = myResourceTableDao.findByIdForUpdate(thePid);
+		}
+		ResourceTable entity = entityOpt.orElse(null);
+		if (entity == null || !Long.valueOf(BaseHapiFhirDao.INDEX_STATUS_DEFERRED).equals(entity.getIndexStatus()) || entity.getDeleted() != null) {
+			return false;
+		}
+
+		IFhirResourceDao<IBaseResource> dao = myDaoRegistry.getResourceDao(entity.getResourceType());
+		IBaseResource resource = dao.toResource(entity, false);
+		dao.reindex(resource, entity);
+
+		if (myPerformanceMetricsRegistry != null) {
+			long lag = System.currentTimeMillis() - entity.getUpdatedDate().getTime();
+			myPerformanceMetricsRegistry.record(INDEXING_LAG_MILLIS, entity.getResourceType(), PerformanceTracingMetricsInterceptor.NO_PARAMETERS_SHAPE, lag);
+		}
+		return true;
+	}
+
+	@Override
+	public long getPendingCount() {
+		Long retVal = myTxTemplate.execute(t -> myResourceTableDao.countResourcesWithIndexStatus(BaseHapiFhirDao.INDEX_STATUS_DEFERRED));
+		return retVal != null ? retVal : 0;
+	}
+
+	@Override
+	public long getIndexingLagMillis() {
+		Date oldest = myTxTemplate.execute(t -> myResourceTableDao.findOldestUpdatedOfResourcesWithIndexStatus(BaseHapiFhirDao.INDEX_STATUS_DEFERRED));
+		if (oldest == null) {
+			return 0;
+		}
+		return Math.max(0, System.currentTimeMillis() - oldest.getTime());
+	}
+
+	@Override
+	public void setPerformanceMetricsRegistry(IPerformanceMetricsRegistry theRegistry) {
+		myPerformanceMetricsRegistry = theRegistry;
+	}
+
+	public static class SubmitJob implements Job {
+		@Autowired
+		private IDeferredIndexingSvc myTarget;
+
+		@Override
+		public void execute(JobExecutionContext theContext) {
+			myTarget.runIndexingPass();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package ca.uhn.fhir.jpa.search.reindex;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.interceptor.perf.IPerformanceMetricsRegistry;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+
+import java.util.Collection;
+
+/**
+ * Writes the search indexes for resources which were stored without them because
+ * their type is listed in {@link ca.uhn.fhir.jpa.dao.DaoConfig#setDeferIndexingForResourceTypes(java.util.Set)}.
+ * <p>
+ * Resources waiting to be indexed are the rows in HFJ_RESOURCE with an index status of
+ * {@link ca.uhn.fhir.jpa.dao.BaseHapiFhirDao#INDEX_STATUS_DEFERRED}, so the queue survives a
+ * restart of the server.
+ * </p>
+ */
+public interface IDeferredIndexingSvc {
+
+	/**
+	 * Metric recorded in the {@link #setPerformanceMetricsRegistry(IPerformanceMetricsRegistry) metrics registry}
+	 * for each resource indexed: the time between the resource being written and its
+	 * indexes being written, in milliseconds
+	 */
+	String INDEXING_LAG_MILLIS = "indexing_lag_millis";
+
+	/**
+	 * Should the indexes for a newly written resource of the given type be deferred? This
+	 * is never the case for types with an active unique combo search parameter.
+	 */
+	boolean isDeferIndexing(String theResourceType);
+
+	/**
+	 * Must be called whenever a resource is written, so that resources of a deferred type
+	 * written by the current transaction can be indexed by {@link #indexPendingResources(String)}
+	 */
+	void resourceWritten(ResourceTable theEntity);
+
+	/**
+	 * Writes the indexes for every resource of the given type which is waiting to be indexed,
+	 * including ones written earlier in the current transaction. This is called before a match
+	 * URL (e.g. for a conditional create) is resolved, since the search would otherwise miss
+	 * any resource which hasn't been indexed yet. Resources which are being written by
+	 * another transaction at the same time are not waited for.
+	 */
+	void indexPendingResources(String theResourceType);
+
+	/**
+	 * Returns a token which can be supplied to {@link #ensureIndexed(Collection)} in order to
+	 * make sure that the given resource has been indexed. The token is simply the resource PID
+	 * in base 36, so it is not a secret: any client can make up tokens for arbitrary resources,
+	 * which only causes those resources to be indexed sooner.
+	 */
+	String toConsistencyToken(Long theResourcePid);
+
+	/**
+	 * Writes the indexes for any of the resources identified by the given consistency tokens
+	 * which have not yet been indexed. This is called before a search runs so that clients
+	 * can read their own writes.
+	 *
+	 * @throws ca.uhn.fhir.rest.server.exceptions.InvalidRequestException If a token is not valid, or
+	 *                                                                    if too many tokens are supplied
+	 */
+	void ensureIndexed(Collection<String> theConsistencyTokens);
+
+	/**
+	 * @return Returns null if the system did not attempt to perform a pass because one was
+	 * already proceeding. Otherwise, returns the number of resources indexed.
+	 */
+	Integer runIndexingPass();
+
+	/**
+	 * Does the same thing as {@link #runIndexingPass()} but makes sure to perform at
+	 * least one pass even if one is half finished
+	 */
+	int forceIndexingPass();
+
+	/**
+	 * Returns the number of resources which are waiting to be indexed
+	 */
+	long getPendingCount();
+
+	/**
+	 * Returns how long the oldest resource which is waiting to be indexed has been
+	 * waiting, in milliseconds (or <code>0</code> if nothing is waiting)
+	 */
+	long getIndexingLagMillis();
+
+	/**
+	 * If set, {@link #INDEXING_LAG_MILLIS} is recorded into this registry for each
+	 * resource indexed
+	 */
+	void setPerformanceMetricsRegistry(IPerformanceMetricsRegistry theRegistry);
+
+}
@@ -78,18 +78,35 @@ public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 				toDelete.add(nextEntry.getValue());
 			}
 		}
-		mySearchParamPresentDao.deleteAll(toDelete);
-		retVal.addToRemoveCount(toDelete.size());
 
-		// Add any that should be added
+		// Find any that should be added
 		List<SearchParamPresent> toAdd = new ArrayList<>();
 		for (Entry<Long, SearchParamPresent> nextEntry : newHashToPresence.entrySet()) {
 			if (existingHashToPresence.containsKey(nextEntry.getKey()) == false) {
 				toAdd.add(nextEntry.getValue());
 			}
 		}
+
+		/*
+		 * When a parameter flips between present and missing we would otherwise
+		 * delete a row and insert another one, so instead repurpose the rows
+		 * that are going away ("one delete + one insert" becomes "one update")
+		 */
+		while (!toDelete.isEmpty() && !toAdd.isEmpty()) {
+			SearchParamPresent reused = toDelete.remove(toDelete.size() - 1);
+			SearchParamPresent wanted = toAdd.remove(toAdd.size() - 1);
+			reused.setParamName(wanted.getParamName());
+			reused.setPresent(wanted.isPresent());
+			reused.setHashPresence(wanted.getHashPresence());
+			retVal.addToAddCount(1);
+			retVal.addToRemoveCount(1);
+		}
+
+		mySearchParamPresentDao.deleteAll(toDelete);
+		retVal.addToRemoveCount(toDelete.size());
+
 		mySearchParamPresentDao.saveAll(toAdd);
-		retVal.addToRemoveCount(toAdd.size());
+		retVal.addToAddCount(toAdd.size());
 
 		return retVal;
 	}
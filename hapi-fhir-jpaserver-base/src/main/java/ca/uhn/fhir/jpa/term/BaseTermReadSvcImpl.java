@@ -48,6 +48,7 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Iterables;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
@@ -140,6 +141,10 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc, ApplicationCo
 	private IFhirResourceDaoValueSet<?, ?, ?> myValueSetResourceDao;
 	private Cache<TranslationQuery, List<TermConceptMapGroupElementTarget>> myTranslationCache;
 	private Cache<TranslationQuery, List<TermConceptMapGroupElement>> myTranslationWithReverseCache;
+	private final Cache<Long, Boolean> myClosureCompleteCache = Caffeine.newBuilder()
+		.maximumSize(1000)
+		.expireAfterWrite(1, TimeUnit.MINUTES)
+		.build();
 	private int myFetchSize = DEFAULT_FETCH_SIZE;
 	private ApplicationContext myApplicationContext;
 	private TransactionTemplate myTxTemplate;
@@ -1163,6 +1168,98 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc, ApplicationCo
 		}
 	}
 
+	/**
+	 * Loads all descendants of the given concept using the ancestor closure which is stored
+	 * (and indexed) with every concept in <code>PARENT_PIDS</code>. This needs a single
+	 * query instead of one query per concept in the hierarchy.
+	 */
+	private void fetchChildrenUsingClosure(TermConcept theConcept, Set<TermConcept> theSetToPopulate) {
+		FullTextEntityManager em = org.hibernate.search.jpa.Search.getFullTextEntityManager(myEntityManager);
+		QueryBuilder qb = em.getSearchFactory().buildQueryBuilder().forEntity(TermConcept.class).get();
+		BooleanJunction<?> bool = qb.bool();
+		bool.must(qb.keyword().onField("myCodeSystemVersionPid").matching(theConcept.getCodeSystemVersion().getPid()).createQuery());
+		bool.must(qb.keyword().onField("myParentPids").matching(Long.toString(theConcept.getId())).createQuery());
+		org.apache.lucene.search.Query luceneQuery = bool.createQuery();
+
+		// Page through the results, since a hierarchy can have any number of descendants
+		int firstResult = 0;
+		while (true) {
+			FullTextQuery jpaQuery = em.createFullTextQuery(luceneQuery, TermConcept.class);
+			jpaQuery.setFirstResult(firstResult);
+			jpaQuery.setMaxResults(myFetchSize);
+
+			@SuppressWarnings("unchecked")
+			List<TermConcept> descendants = jpaQuery.getResultList();
+			for (TermConcept next : descendants) {
+				addToSet(theSetToPopulate, next);
+			}
+
+			if (descendants.size() < myFetchSize) {
+				break;
+			}
+			firstResult += descendants.size();
+		}
+	}
+
+	/**
+	 * Loads all ancestors of the given concept using the ancestor closure stored in
+	 * <code>PARENT_PIDS</code>
+	 */
+	private void fetchParentsUsingClosure(Set<Long> theAncestorPids, Set<TermConcept> theSetToPopulate) {
+		for (List<Long> nextPartition : Iterables.partition(theAncestorPids, 800)) {
+			for (TermConcept next : myConceptDao.findAllById(nextPartition)) {
+				addToSet(theSetToPopulate, next);
+			}
+		}
+	}
+
+	/**
+	 * The closure for a code system version is only usable once every concept in it has
+	 * been indexed. Concepts whose hierarchy has changed are flagged for reindexing, and
+	 * until that has happened we need to walk the parent/child links instead.
+	 * <p>
+	 * Only a complete closure is cached, so a version which is waiting for reindexing
+	 * is checked again on every call until the reindexing job has caught up.
+	 * </p>
+	 */
+	private boolean isClosureComplete(TermCodeSystemVersion theCodeSystemVersion) {
+		Long codeSystemVersionPid = theCodeSystemVersion.getPid();
+		if (myClosureCompleteCache.getIfPresent(codeSystemVersionPid) != null) {
+			return true;
+		}
+
+		Integer pending = myConceptDao.countRequiringReindexingByCodeSystemVersion(codeSystemVersionPid);
+		boolean retVal = pending == null || pending == 0;
+		if (retVal) {
+			myClosureCompleteCache.put(codeSystemVersionPid, Boolean.TRUE);
+		}
+		return retVal;
+	}
+
+	@Override
+	public void clearClosureCompleteCache(Long theCodeSystemVersionPid) {
+		myClosureCompleteCache.invalidate(theCodeSystemVersionPid);
+	}
+
+	/**
+	 * Returns the PIDs of all ancestors of the given concept, or <code>null</code> if these
+	 * have not been calculated yet
+	 */
+	@Nullable
+	private static Set<Long> getAncestorPids(TermConcept theConcept) {
+		String parentPids = theConcept.getParentPidsAsString();
+		if (isBlank(parentPids) || theConcept.getIndexStatus() == null) {
+			return null;
+		}
+		Set<Long> retVal = new HashSet<>();
+		for (String next : parentPids.split(" ")) {
+			if (isNotBlank(next) && !"NONE".equals(next)) {
+				retVal.add(Long.parseLong(next));
+			}
+		}
+		return retVal;
+	}
+
 	private Optional<TermConcept> fetchLoadedCode(Long theCodeSystemResourcePid, String theCode) {
 		TermCodeSystemVersion codeSystem = myCodeSystemVersionDao.findCurrentVersionForCodeSystemResourcePid(theCodeSystemResourcePid);
 		return myConceptDao.findByCodeSystemAndCode(codeSystem, theCode);
@@ -1222,7 +1319,12 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc, ApplicationCo
 		Set<TermConcept> retVal = new HashSet<>();
 		retVal.add(concept.get());
 
-		fetchParents(concept.get(), retVal);
+		Set<Long> ancestorPids = getAncestorPids(concept.get());
+		if (ancestorPids != null) {
+			fetchParentsUsingClosure(ancestorPids, retVal);
+		} else {
+			fetchParents(concept.get(), retVal);
+		}
 
 		ourLog.debug("Fetched {} codes above code {} in {}ms", retVal.size(), theCode, stopwatch.getMillis());
 		return retVal;
@@ -1253,7 +1355,11 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc, ApplicationCo
 		Set<TermConcept> retVal = new HashSet<>();
 		retVal.add(concept.get());
 
-		fetchChildren(concept.get(), retVal);
+		if (isClosureComplete(concept.get().getCodeSystemVersion())) {
+			fetchChildrenUsingClosure(concept.get(), retVal);
+		} else {
+			fetchChildren(concept.get(), retVal);
+		}
 
 		ourLog.debug("Fetched {} codes below code {} in {}ms", retVal.size(), theCode, stopwatch.elapsed(TimeUnit.MILLISECONDS));
 		return retVal;
@@ -1603,6 +1709,12 @@ public abstract class BaseTermReadSvcImpl implements ITermReadSvc, ApplicationCo
 
 	private @Nullable
 	ConceptSubsumptionOutcome testForSubsumption(FullTextEntityManager theEntityManager, TermConcept theLeft, TermConcept theRight, ConceptSubsumptionOutcome theOutput) {
+		// If the closure has been calculated for this concept we don't need to query at all
+		Set<Long> ancestorPids = getAncestorPids(theLeft);
+		if (ancestorPids != null) {
+			return ancestorPids.contains(theRight.getId()) ? theOutput : null;
+		}
+
 		QueryBuilder qb = theEntityManager.getSearchFactory().buildQueryBuilder().forEntity(TermConcept.class).get();
 		BooleanJunction<?> bool = qb.bool();
 		bool.must(qb.keyword().onField("myId").matching(Long.toString(theLeft.getId())).createQuery());
@@ -306,6 +306,56 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 		return retVal;
 	}
 
+	/**
+	 * Returns the number of saved concepts
+	 */
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public int saveConcepts(List<TermConcept> theConcepts, boolean theDeferFullTextIndexing) {
+		int retVal = 0;
+		Date updated = new Date();
+		List<TermConceptProperty> properties = new ArrayList<>();
+		List<TermConceptDesignation> designations = new ArrayList<>();
+
+		for (TermConcept nextConcept : theConcepts) {
+			if (nextConcept.getId() == null) {
+				retVal += ensureParentsSaved(nextConcept.getParents());
+			}
+
+			if (nextConcept.getId() == null || nextConcept.getIndexStatus() == null) {
+				retVal++;
+
+				/*
+				 * Concepts without an index status are skipped by DeferConceptIndexingInterceptor
+				 * and get picked up by the terminology reindexing job later on
+				 */
+				if (!theDeferFullTextIndexing) {
+					nextConcept.setIndexStatus(BaseHapiFhirDao.INDEX_STATUS_INDEXED);
+				} else if (nextConcept.getCodeSystemVersion() != null) {
+					myTerminologySvc.clearClosureCompleteCache(nextConcept.getCodeSystemVersion().getPid());
+				}
+				nextConcept.setUpdated(updated);
+
+				// The PID comes from the sequence here, the actual INSERT waits for the flush below
+				myConceptDao.save(nextConcept);
+				properties.addAll(nextConcept.getProperties());
+				designations.addAll(nextConcept.getDesignations());
+			}
+		}
+
+		myConceptPropertyDao.saveAll(properties);
+		myConceptDesignationDao.saveAll(designations);
+
+		/*
+		 * Flushing everything at once means that Hibernate can write the inserts using
+		 * JDBC batches if hibernate.jdbc.batch_size is configured
+		 */
+		myEntityManager.flush();
+
+		ourLog.trace("Saved {} concepts, {} properties and {} designations", retVal, properties.size(), designations.size());
+		return retVal;
+	}
+
 	@Override
 	@Transactional(propagation = Propagation.MANDATORY)
 	public void storeNewCodeSystemVersionIfNeeded(CodeSystem theCodeSystem, ResourceTable theResourceEntity) {
@@ -520,6 +570,7 @@ public class TermCodeSystemStorageSvcImpl implements ITermCodeSystemStorageSvc {
 
 			TermConcept existingCode = myConceptDao.getOne(theCodeToConceptPid.get(nextCodeToAdd));
 			existingCode.setIndexStatus(null);
+			myTerminologySvc.clearClosureCompleteCache(theCsv.getPid());
 			existingCode.setDisplay(nextConceptToAdd.getDisplay());
 			nextConceptToAdd = existingCode;
 
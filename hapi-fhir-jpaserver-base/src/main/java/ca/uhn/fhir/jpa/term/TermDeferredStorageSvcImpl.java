@@ -33,6 +33,7 @@ import ca.uhn.fhir.jpa.term.api.ITermDeferredStorageSvc;
 import ca.uhn.fhir.jpa.term.api.ITermVersionAdapterSvc;
 import ca.uhn.fhir.util.StopWatch;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.r4.model.ConceptMap;
 import org.hl7.fhir.r4.model.ValueSet;
@@ -47,23 +48,27 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 
 	private static final int SCHEDULE_INTERVAL_MILLIS = 5000;
+	/**
+	 * Keeps the number of bind variables in the concept existence check below the limit of any supported database
+	 */
+	private static final int EXISTENCE_CHECK_PARTITION_SIZE = 800;
 	private static final Logger ourLog = LoggerFactory.getLogger(TermDeferredStorageSvcImpl.class);
 	@Autowired
 	protected ITermConceptDao myConceptDao;
 	@Autowired
 	protected PlatformTransactionManager myTransactionMgr;
 	private boolean myProcessDeferred = true;
-	private List<TermConcept> myDeferredConcepts = Collections.synchronizedList(new ArrayList<>());
+	private Queue<TermConcept> myDeferredConcepts = new LinkedBlockingQueue<>();
 	private List<ValueSet> myDeferredValueSets = Collections.synchronizedList(new ArrayList<>());
 	private List<ConceptMap> myDeferredConceptMaps = Collections.synchronizedList(new ArrayList<>());
-	private List<TermConceptParentChildLink> myConceptLinksToSaveLater = Collections.synchronizedList(new ArrayList<>());
+	private Queue<TermConceptParentChildLink> myConceptLinksToSaveLater = new LinkedBlockingQueue<>();
 	@Autowired
 	private DaoConfig myDaoConfig;
 	@Autowired
@@ -118,37 +123,29 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		int codeCount = 0, relCount = 0;
 		StopWatch stopwatch = new StopWatch();
 
-		int count = Math.min(myDaoConfig.getDeferIndexingForCodesystemsOfSize(), myDeferredConcepts.size());
-		ourLog.info("Saving {} deferred concepts...", count);
-		while (codeCount < count && myDeferredConcepts.size() > 0) {
-			TermConcept next = myDeferredConcepts.remove(0);
-			codeCount += myCodeSystemStorageSvc.saveConcept(next);
+		int count = myDaoConfig.getDeferIndexingForCodesystemsOfSize();
+		List<TermConcept> concepts = poll(myDeferredConcepts, count);
+		if (concepts.size() > 0) {
+			ourLog.info("Saving {} deferred concepts...", concepts.size());
+			codeCount = myCodeSystemStorageSvc.saveConcepts(concepts, myDaoConfig.isDeferFullTextIndexingForCodesystemLoads());
 		}
 
 		if (codeCount > 0) {
-			ourLog.info("Saved {} deferred concepts ({} codes remain and {} relationships remain) in {}ms ({}ms / code)",
-				codeCount, myDeferredConcepts.size(), myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(codeCount));
+			ourLog.info("Saved {} deferred concepts ({} codes remain and {} relationships remain) in {}ms ({}ms / code, {} codes/sec)",
+				codeCount, myDeferredConcepts.size(), myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(codeCount), stopwatch.formatThroughput(codeCount, TimeUnit.SECONDS));
 		}
 
 		if (codeCount == 0) {
-			count = Math.min(myDaoConfig.getDeferIndexingForCodesystemsOfSize(), myConceptLinksToSaveLater.size());
-			ourLog.info("Saving {} deferred concept relationships...", count);
-			while (relCount < count && myConceptLinksToSaveLater.size() > 0) {
-				TermConceptParentChildLink next = myConceptLinksToSaveLater.remove(0);
-
-				if (!myConceptDao.findById(next.getChild().getId()).isPresent() || !myConceptDao.findById(next.getParent().getId()).isPresent()) {
-					ourLog.warn("Not inserting link from child {} to parent {} because it appears to have been deleted", next.getParent().getCode(), next.getChild().getCode());
-					continue;
-				}
-
-				saveConceptLink(next);
-				relCount++;
+			List<TermConceptParentChildLink> links = poll(myConceptLinksToSaveLater, count);
+			if (links.size() > 0) {
+				ourLog.info("Saving {} deferred concept relationships...", links.size());
+				relCount = saveConceptLinks(links);
 			}
 		}
 
 		if (relCount > 0) {
-			ourLog.info("Saved {} deferred relationships ({} remain) in {}ms ({}ms / entry)",
-				relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(relCount));
+			ourLog.info("Saved {} deferred relationships ({} remain) in {}ms ({}ms / entry, {} entries/sec)",
+				relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(relCount), stopwatch.formatThroughput(relCount, TimeUnit.SECONDS));
 		}
 
 		if ((myDeferredConcepts.size() + myConceptLinksToSaveLater.size()) == 0) {
@@ -156,6 +153,47 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		}
 	}
 
+	/**
+	 * Saves a batch of links, skipping any whose concepts are no longer in the
+	 * database. The existence of the concepts is checked using one query per
+	 * partition of PIDs instead of two lookups per link.
+	 */
+	private int saveConceptLinks(List<TermConceptParentChildLink> theLinks) {
+		Set<Long> conceptPids = new HashSet<>();
+		for (TermConceptParentChildLink next : theLinks) {
+			if (next.getChild().getId() != null) {
+				conceptPids.add(next.getChild().getId());
+			}
+			if (next.getParent().getId() != null) {
+				conceptPids.add(next.getParent().getId());
+			}
+		}
+
+		Set<Long> existingPids = new HashSet<>();
+		for (List<Long> nextPartition : Lists.partition(new ArrayList<>(conceptPids), EXISTENCE_CHECK_PARTITION_SIZE)) {
+			existingPids.addAll(myConceptDao.findExistingIds(nextPartition));
+		}
+
+		int retVal = 0;
+		List<TermConceptParentChildLink> linksToSave = new ArrayList<>(theLinks.size());
+		for (TermConceptParentChildLink next : theLinks) {
+			if (!existingPids.contains(next.getChild().getId()) || !existingPids.contains(next.getParent().getId())) {
+				ourLog.warn("Not inserting link from child {} to parent {} because it appears to have been deleted", next.getParent().getCode(), next.getChild().getCode());
+				continue;
+			}
+
+			if (next.getId() == null) {
+				linksToSave.add(next);
+			}
+			retVal++;
+		}
+
+		if (!linksToSave.isEmpty()) {
+			myConceptParentChildLinkDao.saveAll(linksToSave);
+		}
+		return retVal;
+	}
+
 	private void processDeferredValueSets() {
 		int count = Math.min(myDeferredValueSets.size(), 20);
 		for (ValueSet nextValueSet : new ArrayList<>(myDeferredValueSets.subList(0, count))) {
@@ -229,12 +267,6 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 	}
 
 
-	private void saveConceptLink(TermConceptParentChildLink next) {
-		if (next.getId() == null) {
-			myConceptParentChildLinkDao.save(next);
-		}
-	}
-
 	private boolean isProcessDeferredPaused() {
 		return !myProcessDeferred;
 	}
@@ -259,6 +291,18 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		return !myDeferredConceptMaps.isEmpty();
 	}
 
+	private static <T> List<T> poll(Queue<T> theQueue, int theMaxCount) {
+		List<T> retVal = new ArrayList<>();
+		while (retVal.size() < theMaxCount) {
+			T next = theQueue.poll();
+			if (next == null) {
+				break;
+			}
+			retVal.add(next);
+		}
+		return retVal;
+	}
+
 	@PostConstruct
 	public void registerScheduledJob() {
 		// Register scheduled job to save deferred concepts
@@ -289,6 +333,11 @@ public class TermDeferredStorageSvcImpl implements ITermDeferredStorageSvc {
 		myConceptDao = theConceptDao;
 	}
 
+	@VisibleForTesting
+	void setConceptParentChildLinkDaoForUnitTest(ITermConceptParentChildLinkDao theConceptParentChildLinkDao) {
+		myConceptParentChildLinkDao = theConceptParentChildLinkDao;
+	}
+
 	public static class SaveDeferredJob extends FireAtIntervalJob {
 
 		@Autowired
@@ -55,5 +55,14 @@ public interface ITermCodeSystemStorageSvc {
 
 	int saveConcept(TermConcept theNextConcept);
 
+	/**
+	 * Saves a batch of concepts along with their properties and designations, and flushes
+	 * them to the database together
+	 *
+	 * @param theDeferFullTextIndexing If <code>true</code>, the concepts are not added to the fulltext index now, and will be indexed by the terminology reindexing job instead
+	 * @return Returns the number of saved concepts
+	 */
+	int saveConcepts(List<TermConcept> theConcepts, boolean theDeferFullTextIndexing);
+
 	Long getValueSetResourcePid(IIdType theIdElement);
 }
@@ -119,5 +119,11 @@ public interface ITermReadSvc {
 	 */
 	boolean isValueSetPreExpandedForCodeValidation(IBaseResource theValueSet);
 
+	/**
+	 * Should be called when concepts in the given code system version are flagged for
+	 * reindexing, so that their stored closure is no longer trusted
+	 */
+	void clearClosureCompleteCache(Long theCodeSystemVersionPid);
+
 
 }
@@ -21,11 +21,13 @@ package ca.uhn.fhir.jpa.util;
  */
 
 import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Queue;
 
 public class CurrentThreadCaptureQueriesListener extends BaseCaptureQueriesListener {
 
 	private static final ThreadLocal<Queue<SqlQuery>> ourQueues = new ThreadLocal<>();
+	private static final ThreadLocal<Deque<Queue<SqlQuery>>> ourSuspendedQueues = new ThreadLocal<>();
 
 	@Override
 	protected Queue<SqlQuery> provideQueryList() {
@@ -34,11 +36,21 @@ public class CurrentThreadCaptureQueriesListener extends BaseCaptureQueriesListe
 
 
 	/**
-	 * Get the current queue of items and stop collecting
+	 * Get the current queue of items and stop collecting. If another capture was
+	 * already in progress on this thread when {@link #startCapturing()} was called,
+	 * that capture is resumed.
 	 */
 	public static SqlQueryList getCurrentQueueAndStopCapturing() {
 		Queue<SqlQuery> retVal = ourQueues.get();
-		ourQueues.remove();
+		Deque<Queue<SqlQuery>> suspended = ourSuspendedQueues.get();
+		if (suspended != null && !suspended.isEmpty()) {
+			ourQueues.set(suspended.pop());
+			if (suspended.isEmpty()) {
+				ourSuspendedQueues.remove();
+			}
+		} else {
+			ourQueues.remove();
+		}
 		if (retVal == null) {
 			return new SqlQueryList();
 		}
@@ -53,8 +65,23 @@ public class CurrentThreadCaptureQueriesListener extends BaseCaptureQueriesListe
 	 * {@link #getCurrentQueueAndStopCapturing()} afterward. Otherwise
 	 * this method is a potential memory leak!
 	 * </p>
+	 * <p>
+	 * Captures may be nested: if a capture is already in progress on this thread
+	 * it is suspended (so it will not include the statements captured by the
+	 * new capture) and resumed when {@link #getCurrentQueueAndStopCapturing()}
+	 * is called.
+	 * </p>
 	 */
 	public static void startCapturing() {
+		Queue<SqlQuery> current = ourQueues.get();
+		if (current != null) {
+			Deque<Queue<SqlQuery>> suspended = ourSuspendedQueues.get();
+			if (suspended == null) {
+				suspended = new ArrayDeque<>();
+				ourSuspendedQueues.set(suspended);
+			}
+			suspended.push(current);
+		}
 		ourQueues.set(new ArrayDeque<>());
 	}
 
@@ -0,0 +1,336 @@
+package ca.uhn.fhir.jpa.dao.r4;
+
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.DaoMethodOutcome;
+import ca.uhn.fhir.jpa.interceptor.perf.InMemoryPerformanceMetricsRegistry;
+import ca.uhn.fhir.jpa.interceptor.perf.PerformanceHistogram;
+import ca.uhn.fhir.jpa.search.reindex.IDeferredIndexingSvc;
+import ca.uhn.fhir.jpa.searchparam.SearchParamConstants;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.TestUtil;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IRestfulResponse;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.google.common.collect.Sets;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.SearchParameter;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@TestPropertySource(properties = {
+	"scheduling_disabled=true"
+})
+public class FhirResourceDaoR4DeferredIndexingTest extends BaseJpaR4Test {
+
+	@Autowired
+	private IDeferredIndexingSvc myDeferredIndexingSvc;
+
+	@Before
+	public void beforeDeferIndexing() {
+		myDaoConfig.setDeferIndexingForResourceTypes(Sets.newHashSet("Observation"));
+	}
+
+	@After
+	public void afterResetDao() {
+		myDaoConfig.setDeferIndexingForResourceTypes(new DaoConfig().getDeferIndexingForResourceTypes());
+		myDaoConfig.setUniqueIndexesEnabled(new DaoConfig().isUniqueIndexesEnabled());
+		myDeferredIndexingSvc.setPerformanceMetricsRegistry(null);
+	}
+
+	@Test
+	public void testCreateDefersIndexing() {
+		IIdType id = createObservation("A");
+
+		assertThat(searchByCode("A"), empty());
+		assertEquals(1, myDeferredIndexingSvc.getPendingCount());
+		runInTransaction(() -> assertEquals(BaseHapiFhirDao.INDEX_STATUS_DEFERRED, myResourceTableDao.findById(id.getIdPartAsLong()).get().getIndexStatus().longValue()));
+
+		// The resource can still be read
+		assertEquals("A", myObservationDao.read(id).getCode().getCodingFirstRep().getCode());
+
+		assertEquals(1, myDeferredIndexingSvc.forceIndexingPass());
+		assertThat(searchByCode("A"), contains(id.getValue()));
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+		assertEquals(0, myDeferredIndexingSvc.getIndexingLagMillis());
+		runInTransaction(() -> assertEquals(BaseHapiFhirDao.INDEX_STATUS_INDEXED, myResourceTableDao.findById(id.getIdPartAsLong()).get().getIndexStatus().longValue()));
+
+		// Nothing left to do
+		assertEquals(0, myDeferredIndexingSvc.forceIndexingPass());
+	}
+
+	@Test
+	public void testUpdateKeepsPreviousIndexesUntilIndexed() {
+		IIdType id = createObservation("A");
+		myDeferredIndexingSvc.forceIndexingPass();
+
+		Observation obs = new Observation();
+		obs.setId(id.getIdPart());
+		obs.getCode().addCoding().setSystem("http://foo").setCode("B");
+		myObservationDao.update(obs);
+
+		assertThat(searchByCode("A"), contains(id.getValue()));
+		assertThat(searchByCode("B"), empty());
+
+		assertEquals(1, myDeferredIndexingSvc.forceIndexingPass());
+		assertThat(searchByCode("A"), empty());
+		assertThat(searchByCode("B"), contains(id.getValue()));
+	}
+
+	@Test
+	public void testOtherResourceTypesAreIndexedImmediately() {
+		myDaoConfig.setDeferIndexingForResourceTypes(Sets.newHashSet("Patient"));
+
+		IIdType id = createObservation("A");
+		assertThat(searchByCode("A"), contains(id.getValue()));
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+	}
+
+	@Test
+	public void testResourcesWithoutIndexStatusAreNotPickedUp() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		IIdType id = myPatientDao.create(patient).getId().toUnqualifiedVersionless();
+		runInTransaction(() -> myResourceTableDao.updateIndexStatus(id.getIdPartAsLong(), null));
+
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+		assertEquals(0, myDeferredIndexingSvc.forceIndexingPass());
+		runInTransaction(() -> assertNull(myResourceTableDao.findById(id.getIdPartAsLong()).get().getIndexStatus()));
+	}
+
+	@Test
+	public void testConditionalCreateFindsPendingResource() {
+		Observation obs = new Observation();
+		obs.addIdentifier().setSystem("urn:foo").setValue("123");
+		IIdType id = myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+		assertEquals(1, myDeferredIndexingSvc.getPendingCount());
+
+		obs = new Observation();
+		obs.addIdentifier().setSystem("urn:foo").setValue("123");
+		DaoMethodOutcome outcome = myObservationDao.create(obs, "Observation?identifier=urn:foo|123");
+		assertNotEquals(Boolean.TRUE, outcome.getCreated());
+		assertEquals(id.getValue(), outcome.getId().toUnqualifiedVersionless().getValue());
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+	}
+
+	@Test
+	public void testConditionalCreateInTransactionFindsPendingResource() {
+		Observation obs = new Observation();
+		obs.addIdentifier().setSystem("urn:foo").setValue("123");
+		IIdType id = myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		obs = new Observation();
+		obs.addIdentifier().setSystem("urn:foo").setValue("123");
+		input.addEntry()
+			.setResource(obs)
+			.getRequest()
+			.setMethod(Bundle.HTTPVerb.POST)
+			.setUrl("Observation")
+			.setIfNoneExist("Observation?identifier=urn:foo|123");
+		Bundle output = mySystemDao.transaction(mySrd, input);
+
+		assertEquals(id.getValue(), new IdType(output.getEntry().get(0).getResponse().getLocation()).toUnqualifiedVersionless().getValue());
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+	}
+
+	@Test
+	public void testTypesWithUniqueSearchParameterAreIndexedImmediately() {
+		myDaoConfig.setUniqueIndexesEnabled(true);
+
+		SearchParameter sp = new SearchParameter();
+		sp.setId("SearchParameter/observation-subject");
+		sp.setCode("observation-subject");
+		sp.setExpression("Observation.subject");
+		sp.setType(Enumerations.SearchParamType.REFERENCE);
+		sp.setStatus(Enumerations.PublicationStatus.ACTIVE);
+		sp.addBase("Observation");
+		mySearchParameterDao.update(sp);
+
+		sp = new SearchParameter();
+		sp.setId("SearchParameter/observation-uniq-subject");
+		sp.setCode("observation-uniq-subject");
+		sp.setExpression("Observation.subject");
+		sp.setType(Enumerations.SearchParamType.COMPOSITE);
+		sp.setStatus(Enumerations.PublicationStatus.ACTIVE);
+		sp.addBase("Observation");
+		sp.addComponent()
+			.setExpression("Observation")
+			.setDefinition("/SearchParameter/observation-subject");
+		sp.addExtension()
+			.setUrl(SearchParamConstants.EXT_SP_UNIQUE)
+			.setValue(new BooleanType(true));
+		mySearchParameterDao.update(sp);
+		mySearchParamRegistry.forceRefresh();
+
+		IIdType patientId = myPatientDao.create(new Patient()).getId().toUnqualifiedVersionless();
+		Observation obs = new Observation();
+		obs.getSubject().setReference(patientId.getValue());
+		myObservationDao.create(obs);
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+
+		try {
+			myObservationDao.create(obs);
+			fail();
+		} catch (PreconditionFailedException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testSearchWithConsistencyTokenReadsOwnWrite() {
+		IRestfulResponse response = mock(IRestfulResponse.class);
+		when(mySrd.getResponse()).thenReturn(response);
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://foo").setCode("A");
+		IIdType id = myObservationDao.create(obs, mySrd).getId().toUnqualifiedVersionless();
+
+		ArgumentCaptor<String> tokenCaptor = ArgumentCaptor.forClass(String.class);
+		verify(response, times(1)).addHeader(eq(Constants.HEADER_INDEX_CONSISTENCY_TOKEN), tokenCaptor.capture());
+		when(mySrd.getHeaders(eq(Constants.HEADER_INDEX_CONSISTENCY_TOKEN))).thenReturn(Collections.singletonList(tokenCaptor.getValue()));
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_CODE, new TokenParam("http://foo", "A"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map, mySrd)), contains(id.getValue()));
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+	}
+
+	@Test
+	public void testSearchWithInvalidConsistencyToken() {
+		when(mySrd.getHeaders(eq(Constants.HEADER_INDEX_CONSISTENCY_TOKEN))).thenReturn(Collections.singletonList("!!!"));
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		try {
+			myObservationDao.search(map, mySrd);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Invalid index consistency token: !!!", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSearchWithTooManyConsistencyTokens() {
+		List<String> tokens = new ArrayList<>();
+		for (int i = 0; i <= 100; i++) {
+			tokens.add(myDeferredIndexingSvc.toConsistencyToken((long) i));
+		}
+		when(mySrd.getHeaders(eq(Constants.HEADER_INDEX_CONSISTENCY_TOKEN))).thenReturn(Collections.singletonList(String.join(",", tokens)));
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		try {
+			myObservationDao.search(map, mySrd);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Too many index consistency tokens, a maximum of 100 may be supplied", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInlineMatchUrlReferenceResolvedWhenWritten() {
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("urn:foo").setValue("123");
+		IIdType patientId = myPatientDao.create(patient).getId().toUnqualifiedVersionless();
+
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://foo").setCode("A");
+		obs.getSubject().setReference("Patient?identifier=urn:foo|123");
+		IIdType id = myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+
+		// The stored resource refers to the matching resource, not to the match URL
+		assertEquals(patientId.getValue(), myObservationDao.read(id).getSubject().getReference());
+
+		assertEquals(1, myDeferredIndexingSvc.forceIndexingPass());
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam(patientId.getValue()));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map)), contains(id.getValue()));
+	}
+
+	@Test
+	public void testUnresolvableReferenceRejectedWhenWritten() {
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://foo").setCode("A");
+		obs.getSubject().setReference("Patient?identifier=urn:foo|999");
+		try {
+			myObservationDao.create(obs);
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+
+		obs.getSubject().setReference("Patient/999999");
+		try {
+			myObservationDao.create(obs);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Resource Patient/999999 not found, specified in path: Observation.subject", e.getMessage());
+		}
+
+		assertEquals(0, myDeferredIndexingSvc.getPendingCount());
+	}
+
+	@Test
+	public void testIndexingLagIsRecorded() {
+		InMemoryPerformanceMetricsRegistry registry = new InMemoryPerformanceMetricsRegistry();
+		myDeferredIndexingSvc.setPerformanceMetricsRegistry(registry);
+
+		createObservation("A");
+		createObservation("B");
+		assertEquals(2, myDeferredIndexingSvc.forceIndexingPass());
+
+		List<PerformanceHistogram> histograms = registry.getHistograms();
+		assertEquals(1, histograms.size());
+		assertEquals(IDeferredIndexingSvc.INDEXING_LAG_MILLIS, histograms.get(0).getMetricName());
+		assertEquals("Observation", histograms.get(0).getResourceType());
+		assertEquals(2, histograms.get(0).getCount());
+	}
+
+	private IIdType createObservation(String theCode) {
+		Observation obs = new Observation();
+		obs.getCode().addCoding().setSystem("http://foo").setCode(theCode);
+		return myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+	}
+
+	private List<String> searchByCode(String theCode) {
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_CODE, new TokenParam("http://foo", theCode));
+		return toUnqualifiedVersionlessIdValues(myObservationDao.search(map));
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -1,9 +1,16 @@
 package ca.uhn.fhir.jpa.dao.r4;
 
+import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.TagDefinitionCacheService;
 import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
 import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.model.entity.TagDefinition;
+import ca.uhn.fhir.jpa.model.entity.TagTypeEnum;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.jpa.util.SqlQuery;
+import ca.uhn.fhir.jpa.util.SqlQueryList;
 import ca.uhn.fhir.jpa.util.TestUtil;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
@@ -17,9 +24,15 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.*;
 import org.junit.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -30,11 +43,15 @@ import static org.mockito.Mockito.reset;
 })
 public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoR4QueryCountTest.class);
+	@Autowired
+	private TagDefinitionCacheService myTagDefinitionCacheService;
 
 	@After
 	public void afterResetDao() {
 		myDaoConfig.setResourceMetaCountHardLimit(new DaoConfig().getResourceMetaCountHardLimit());
 		myDaoConfig.setIndexMissingFields(new DaoConfig().getIndexMissingFields());
+		myDaoConfig.setParsedResourceCacheSize(new DaoConfig().getParsedResourceCacheSize());
+		myDaoConfig.setCaptureWriteSqlEnabled(new DaoConfig().isCaptureWriteSqlEnabled());
 	}
 
 	@Before
@@ -92,6 +109,209 @@ public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 		assertEquals(0, myCaptureQueriesListener.getDeleteQueriesForCurrentThread().size());
 	}
 
+	@Test
+	public void testCreateReportsRawSqlForWrite() {
+		myDaoConfig.setCaptureWriteSqlEnabled(true);
+
+		List<SqlQuery> captured = new ArrayList<>();
+		IAnonymousInterceptor interceptor = (thePointcut, theArgs) -> captured.addAll(theArgs.get(SqlQueryList.class));
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.JPA_PERFTRACE_RAW_SQL, interceptor);
+		try {
+			runInTransaction(() -> {
+				Patient p = new Patient();
+				p.addIdentifier().setSystem("urn:system").setValue("1");
+				p.addIdentifier().setSystem("urn:system").setValue("2");
+				p.addName().setFamily("FAMILY");
+				myPatientDao.create(p, mySrd);
+			});
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+
+		List<String> inserts = captured
+			.stream()
+			.map(t -> t.getSql(false, false).toUpperCase())
+			.filter(t -> t.startsWith("INSERT"))
+			.collect(Collectors.toList());
+		ourLog.info("Inserts: {}", inserts);
+		assertThat(inserts, hasItem(startsWith("INSERT INTO HFJ_RESOURCE ")));
+		assertThat(inserts, hasItem(startsWith("INSERT INTO HFJ_SPIDX_TOKEN ")));
+		assertThat(inserts, hasItem(startsWith("INSERT INTO HFJ_SPIDX_STRING ")));
+	}
+
+	@Test
+	public void testCreateWithConditionalReferenceReportsRawSqlForWrite() {
+		myDaoConfig.setCaptureWriteSqlEnabled(true);
+
+		Organization organization = new Organization();
+		organization.addIdentifier().setSystem("urn:org").setValue("1");
+		myOrganizationDao.create(organization, mySrd);
+
+		// The match URL is resolved using a search, which captures its own SQL while the write is being captured
+		List<List<String>> captured = new ArrayList<>();
+		IAnonymousInterceptor interceptor = (thePointcut, theArgs) -> captured.add(theArgs
+			.get(SqlQueryList.class)
+			.stream()
+			.map(t -> t.getSql(false, false).toUpperCase())
+			.collect(Collectors.toList()));
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.JPA_PERFTRACE_RAW_SQL, interceptor);
+		try {
+			runInTransaction(() -> {
+				Patient p = new Patient();
+				p.addIdentifier().setSystem("urn:system").setValue("1");
+				p.getManagingOrganization().setReference("Organization?identifier=urn:org|1");
+				myPatientDao.create(p, mySrd);
+			});
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+		ourLog.info("Captured: {}", captured);
+
+		List<String> writeQueries = captured
+			.stream()
+			.filter(t -> t.stream().anyMatch(q -> q.startsWith("INSERT INTO HFJ_RESOURCE ")))
+			.findFirst()
+			.orElseThrow(() -> new AssertionError("No captured write"));
+		assertThat(writeQueries, hasItem(startsWith("INSERT INTO HFJ_SPIDX_TOKEN ")));
+		assertThat(writeQueries, hasItem(startsWith("INSERT INTO HFJ_RES_LINK ")));
+
+		// The search queries are reported on their own, and not as a part of the write
+		assertTrue(captured.size() > 1);
+		for (List<String> next : captured) {
+			if (next != writeQueries) {
+				assertThat(next, not(hasItem(startsWith("INSERT INTO HFJ_RESOURCE "))));
+			}
+		}
+	}
+
+	@Test
+	public void testCreateDoesNotReportRawSqlForWriteByDefault() {
+		List<SqlQuery> captured = new ArrayList<>();
+		IAnonymousInterceptor interceptor = (thePointcut, theArgs) -> captured.addAll(theArgs.get(SqlQueryList.class));
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.JPA_PERFTRACE_RAW_SQL, interceptor);
+		try {
+			runInTransaction(() -> {
+				Patient p = new Patient();
+				p.addName().setFamily("FAMILY");
+				myPatientDao.create(p, mySrd);
+			});
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+
+		assertThat(captured.stream().map(t -> t.getSql(false, false).toUpperCase()).collect(Collectors.toList()), not(hasItem(startsWith("INSERT"))));
+	}
+
+	@Test
+	public void testUpdateReusesSearchParamPresentRows() {
+		myDaoConfig.setIndexMissingFields(DaoConfig.IndexEnabledEnum.ENABLED);
+
+		IIdType orgId = myOrganizationDao.create(new Organization()).getId().toUnqualifiedVersionless();
+		IIdType id = runInTransaction(() -> {
+			Patient p = new Patient();
+			p.getManagingOrganization().setReferenceElement(orgId);
+			p.setActive(true);
+			return myPatientDao.create(p).getId().toUnqualifiedVersionless();
+		});
+
+		// The organization reference goes away, so its presence row flips from present to missing
+		myCaptureQueriesListener.clear();
+		runInTransaction(() -> {
+			Patient p = new Patient();
+			p.setId(id.getIdPart());
+			p.setActive(false);
+			myPatientDao.update(p);
+		});
+		myCaptureQueriesListener.logAllQueriesForCurrentThread();
+		assertEquals(0, countQueriesForTable(myCaptureQueriesListener.getInsertQueriesForCurrentThread(), "HFJ_RES_PARAM_PRESENT"));
+		assertEquals(0, countQueriesForTable(myCaptureQueriesListener.getDeleteQueriesForCurrentThread(), "HFJ_RES_PARAM_PRESENT"));
+		assertEquals(1, countQueriesForTable(myCaptureQueriesListener.getUpdateQueriesForCurrentThread(), "HFJ_RES_PARAM_PRESENT"));
+	}
+
+	private static long countQueriesForTable(List<SqlQuery> theQueries, String theTableName) {
+		return theQueries
+			.stream()
+			.filter(t -> t.getSql(false, false).toUpperCase().contains(theTableName))
+			.count();
+	}
+
+	@Test
+	public void testCreateWithTagsUsesCachedTagDefinitions() {
+		runInTransaction(() -> {
+			Patient p = new Patient();
+			p.getMeta().addTag("http://tags", "tag1", "Tag 1");
+			p.getMeta().addSecurity("http://security", "sec1", "Security 1");
+			myPatientDao.create(p);
+		});
+
+		myCaptureQueriesListener.clear();
+		runInTransaction(() -> {
+			Patient p = new Patient();
+			p.getMeta().addTag("http://tags", "tag1", "Tag 1");
+			p.getMeta().addSecurity("http://security", "sec1", "Security 1");
+			myPatientDao.create(p);
+		});
+		myCaptureQueriesListener.logSelectQueriesForCurrentThread();
+		long tagDefSelects = myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).toUpperCase().contains("HFJ_TAG_DEF"))
+			.count();
+		assertEquals(0, tagDefSelects);
+		myCaptureQueriesListener.logInsertQueriesForCurrentThread();
+		long tagDefInserts = myCaptureQueriesListener
+			.getInsertQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).toUpperCase().contains("HFJ_TAG_DEF"))
+			.count();
+		assertEquals(0, tagDefInserts);
+	}
+
+	@Test
+	public void testTagDefinitionKeptWhenWriteRolledBack() {
+		new TransactionTemplate(myTxManager).execute(t -> {
+			Patient p = new Patient();
+			p.getMeta().addTag("http://tags", "rolledback", "Rolled Back");
+			myPatientDao.create(p);
+			t.setRollbackOnly();
+			return null;
+		});
+
+		// The definition was committed in its own transaction, so it is safe to keep it cached
+		TagDefinition cached = myTagDefinitionCacheService.getIfCached(TagTypeEnum.TAG, "http://tags", "rolledback");
+		assertNotNull(cached);
+		runInTransaction(() -> assertNotNull(myTagDefinitionDao.findById(cached.getId()).orElse(null)));
+	}
+
+	@Test
+	public void testCreateWithSameNewTagConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		try {
+			List<Future<IIdType>> futures = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				futures.add(executor.submit(() -> runInTransaction(() -> {
+					Patient p = new Patient();
+					p.getMeta().addTag("http://tags", "concurrent", "Concurrent");
+					return myPatientDao.create(p).getId().toUnqualifiedVersionless();
+				})));
+			}
+			for (Future<IIdType> next : futures) {
+				assertNotNull(next.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		runInTransaction(() -> {
+			long count = myTagDefinitionDao
+				.findAll()
+				.stream()
+				.filter(t -> "concurrent".equals(t.getCode()))
+				.count();
+			assertEquals(1, count);
+		});
+	}
+
 	@Test
 	public void testRead() {
 		IIdType id = runInTransaction(() -> {
@@ -105,7 +325,7 @@ public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 			myPatientDao.read(id.toVersionless());
 		});
 		myCaptureQueriesListener.logSelectQueriesForCurrentThread();
-		assertEquals(2, myCaptureQueriesListener.getSelectQueriesForCurrentThread().size());
+		assertEquals(1, myCaptureQueriesListener.getSelectQueriesForCurrentThread().size());
 		myCaptureQueriesListener.logUpdateQueriesForCurrentThread();
 		assertEquals(0, myCaptureQueriesListener.getUpdateQueriesForCurrentThread().size());
 		myCaptureQueriesListener.logInsertQueriesForCurrentThread();
@@ -114,6 +334,39 @@ public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 		assertEquals(0, myCaptureQueriesListener.getDeleteQueriesForCurrentThread().size());
 	}
 
+	@Test
+	public void testReadWithParsedResourceCache() {
+		myDaoConfig.setParsedResourceCacheSize(100);
+
+		IIdType id = runInTransaction(() -> {
+			Patient p = new Patient();
+			p.addIdentifier().setSystem("urn:system").setValue("2");
+			return myPatientDao.create(p).getId().toUnqualified();
+		});
+
+		// The first read parses the resource and caches it, and callers are free to modify what they get
+		Patient first = runInTransaction(() -> myPatientDao.read(id.toVersionless()));
+		assertEquals("2", first.getIdentifierFirstRep().getValue());
+		first.getIdentifierFirstRep().setValue("MODIFIED");
+
+		Patient second = runInTransaction(() -> myPatientDao.read(id.toVersionless()));
+		assertNotSame(first, second);
+		assertEquals("2", second.getIdentifierFirstRep().getValue());
+		assertEquals("1", second.getIdElement().getVersionIdPart());
+		assertNotNull(second.getMeta().getLastUpdated());
+
+		// Updates must not return the old body
+		runInTransaction(() -> {
+			Patient p = new Patient();
+			p.setId(id.getIdPart());
+			p.addIdentifier().setSystem("urn:system").setValue("3");
+			myPatientDao.update(p);
+		});
+		Patient third = runInTransaction(() -> myPatientDao.read(id.toVersionless()));
+		assertEquals("3", third.getIdentifierFirstRep().getValue());
+		assertEquals("2", third.getIdElement().getVersionIdPart());
+	}
+
 	@Test
 	public void testVRead() {
 		IIdType id = runInTransaction(() -> {
@@ -136,6 +389,81 @@ public class FhirResourceDaoR4QueryCountTest extends BaseJpaR4Test {
 		assertEquals(0, myCaptureQueriesListener.getDeleteQueriesForCurrentThread().size());
 	}
 
+	@Test
+	public void testTransactionWithMultipleConditionalCreates() {
+		for (int i = 0; i < 5; i++) {
+			Patient p = new Patient();
+			p.addIdentifier().setSystem("urn:system").setValue("ID" + i);
+			myPatientDao.create(p);
+		}
+
+		Bundle input = new Bundle();
+		input.setType(Bundle.BundleType.TRANSACTION);
+		for (int i = 0; i < 10; i++) {
+			Patient p = new Patient();
+			p.addIdentifier().setSystem("urn:system").setValue("ID" + i);
+			input
+				.addEntry()
+				.setFullUrl(IdType.newRandomUuid().getValue())
+				.setResource(p)
+				.getRequest()
+				.setMethod(Bundle.HTTPVerb.POST)
+				.setUrl("Patient")
+				.setIfNoneExist("Patient?identifier=urn:system|ID" + i);
+		}
+
+		myCaptureQueriesListener.clear();
+		Bundle output = mySystemDao.transaction(mySrd, input);
+		myCaptureQueriesListener.logSelectQueriesForCurrentThread();
+
+		for (int i = 0; i < 10; i++) {
+			String expectedStatus = i < 5 ? "200 OK" : "201 Created";
+			assertEquals(expectedStatus, output.getEntry().get(i).getResponse().getStatus());
+		}
+
+		// One search through the DAO for all of the conditional URLs, one query to map the matching
+		// resources back to their URLs, plus the duplicate check for each of the 5 created resources
+		long tokenQueries = myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).toUpperCase().contains("HFJ_SPIDX_TOKEN"))
+			.count();
+		assertEquals(7, tokenQueries);
+	}
+
+	@Test
+	public void testSearchWithIterateIncludes() {
+		IIdType patientId = myPatientDao.create(new Patient()).getId().toUnqualifiedVersionless();
+
+		Encounter enc = new Encounter();
+		enc.setSubject(new Reference(patientId));
+		IIdType encId = myEncounterDao.create(enc).getId().toUnqualifiedVersionless();
+
+		Observation obs = new Observation();
+		obs.setSubject(new Reference(patientId));
+		obs.setEncounter(new Reference(encId));
+		IIdType obsId = myObservationDao.create(obs).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.addInclude(Observation.INCLUDE_ENCOUNTER);
+		map.addInclude(Observation.INCLUDE_SUBJECT);
+		map.addInclude(Encounter.INCLUDE_SUBJECT.asRecursive());
+
+		myCaptureQueriesListener.clear();
+		IBundleProvider outcome = myObservationDao.search(map);
+		assertThat(toUnqualifiedVersionlessIdValues(outcome), containsInAnyOrder(obsId.getValue(), encId.getValue(), patientId.getValue()));
+		myCaptureQueriesListener.logSelectQueriesForCurrentThread();
+
+		// All include paths are fetched in one query per round, and the second round finds nothing new
+		long linkQueries = myCaptureQueriesListener
+			.getSelectQueriesForCurrentThread()
+			.stream()
+			.filter(t -> t.getSql(false, false).toUpperCase().contains("HFJ_RES_LINK"))
+			.count();
+		assertEquals(2L, linkQueries);
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
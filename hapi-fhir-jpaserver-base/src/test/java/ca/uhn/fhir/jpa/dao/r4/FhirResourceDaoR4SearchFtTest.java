@@ -4,6 +4,7 @@ import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.FulltextSearchSvcImpl.Suggestion;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.param.*;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.TestUtil;
@@ -98,6 +99,40 @@ public class FhirResourceDaoR4SearchFtTest extends BaseJpaR4Test {
 		return mySrd;
 	}
 
+	@Test
+	public void testResourceTextSearchInRelevanceOrder() {
+		Observation obs1 = new Observation();
+		obs1.getCode().setText("Headache");
+		obs1.setStatus(ObservationStatus.FINAL);
+		obs1.getNoteFirstRep().setText("Two unrelated complaints and some pain, recorded while the patient was waiting for an appointment");
+		IIdType id1 = myObservationDao.create(obs1, mySrd).getId().toUnqualifiedVersionless();
+
+		Observation obs2 = new Observation();
+		obs2.getCode().setText("Pain");
+		obs2.setStatus(ObservationStatus.FINAL);
+		obs2.getNoteFirstRep().setText("Pain pain pain");
+		IIdType id2 = myObservationDao.create(obs2, mySrd).getId().toUnqualifiedVersionless();
+
+		Observation obs3 = new Observation();
+		obs3.getCode().setText("Pain");
+		obs3.setStatus(ObservationStatus.PRELIMINARY);
+		obs3.getNoteFirstRep().setText("Pain pain pain");
+		myObservationDao.create(obs3, mySrd).getId().toUnqualifiedVersionless();
+
+		SearchParameterMap map;
+
+		map = new SearchParameterMap();
+		map.add(Constants.PARAM_CONTENT, new StringParam("pain"));
+		map.add(Observation.SP_STATUS, new TokenParam(null, "final"));
+		map.setSort(new SortSpec(Constants.PARAM_SCORE));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map)), contains(toValues(id2, id1)));
+
+		map = new SearchParameterMap();
+		map.add(Observation.SP_STATUS, new TokenParam(null, "final"));
+		map.setSort(new SortSpec(Constants.PARAM_SCORE));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map)), containsInAnyOrder(toValues(id1, id2)));
+	}
+
 	@Test
 	@Ignore
 	public void testStringTextSearch() {
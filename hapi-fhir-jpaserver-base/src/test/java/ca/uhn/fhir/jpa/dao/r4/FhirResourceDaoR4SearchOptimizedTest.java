@@ -20,6 +20,7 @@ import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.TestUtil;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.*;
@@ -63,6 +64,7 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 		mySearchCoordinatorSvcImpl = (SearchCoordinatorSvcImpl) AopProxyUtils.getSingletonTarget(mySearchCoordinatorSvc);
 		mySearchCoordinatorSvcImpl.setLoadingThrottleForUnitTests(null);
 		mySearchCoordinatorSvcImpl.setSyncSizeForUnitTests(SearchCoordinatorSvcImpl.DEFAULT_SYNC_SIZE);
+		mySearchCoordinatorSvcImpl.clearSearchTotalCache();
 		myCaptureQueriesListener.setCaptureQueryStackTrace(true);
 	}
 
@@ -71,6 +73,8 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 		mySearchCoordinatorSvcImpl.setLoadingThrottleForUnitTests(null);
 		mySearchCoordinatorSvcImpl.setSyncSizeForUnitTests(SearchCoordinatorSvcImpl.DEFAULT_SYNC_SIZE);
 		myDaoConfig.setSearchPreFetchThresholds(new DaoConfig().getSearchPreFetchThresholds());
+		myDaoConfig.setReuseCachedSearchTotalsForMillis(new DaoConfig().getReuseCachedSearchTotalsForMillis());
+		myDaoConfig.setInvalidateCachedSearchTotalsOnWrite(new DaoConfig().isInvalidateCachedSearchTotalsOnWrite());
 		myCaptureQueriesListener.setCaptureQueryStackTrace(false);
 	}
 
@@ -166,6 +170,84 @@ public class FhirResourceDaoR4SearchOptimizedTest extends BaseJpaR4Test {
 
 	}
 
+	@Test
+	public void testFetchTotalEstimatedUsesCachedTotal() {
+		create200Patients();
+
+		// Nothing has been counted for this search yet, so the estimate runs a count
+		myCaptureQueriesListener.clear();
+		SearchParameterMap params = new SearchParameterMap();
+		params.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		params.setCount(10);
+		IBundleProvider results = myPatientDao.search(params);
+		assertEquals(200, results.size().intValue());
+		assertEquals(10, toUnqualifiedVersionlessIdValues(results, 0, 10, true).size());
+		assertEquals(1, countCountQueries());
+
+		// Totals are only reused if that has been enabled
+		myCaptureQueriesListener.clear();
+		params = new SearchParameterMap();
+		params.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		params.setCount(20);
+		results = myPatientDao.search(params);
+		assertEquals(200, results.size().intValue());
+		assertEquals(1, countCountQueries());
+
+		// A total can come from the previous search, since _sort and _include don't change the total
+		myDaoConfig.setReuseCachedSearchTotalsForMillis(DateUtils.MILLIS_PER_MINUTE);
+		myCaptureQueriesListener.clear();
+		params = new SearchParameterMap();
+		params.setSort(new SortSpec(Patient.SP_NAME));
+		params.addInclude(Patient.INCLUDE_ORGANIZATION);
+		params.setSearchTotalMode(SearchTotalModeEnum.ACCURATE);
+		results = myPatientDao.search(params);
+		assertEquals(200, results.size().intValue());
+		assertEquals(0, countCountQueries());
+
+		// By default, writing a Patient doesn't discard the cached total
+		Patient p = new Patient();
+		p.setActive(true);
+		myPatientDao.create(p);
+
+		myCaptureQueriesListener.clear();
+		params = new SearchParameterMap();
+		params.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		params.setCount(30);
+		results = myPatientDao.search(params);
+		assertEquals(200, results.size().intValue());
+		assertEquals(0, countCountQueries());
+
+		// .. but it does if that has been enabled
+		myDaoConfig.setInvalidateCachedSearchTotalsOnWrite(true);
+		p = new Patient();
+		p.setActive(true);
+		myPatientDao.create(p);
+
+		myCaptureQueriesListener.clear();
+		params = new SearchParameterMap();
+		params.setSearchTotalMode(SearchTotalModeEnum.ACCURATE);
+		params.setCount(40);
+		results = myPatientDao.search(params);
+		assertEquals(202, results.size().intValue());
+		assertEquals(1, countCountQueries());
+
+		myCaptureQueriesListener.clear();
+		params = new SearchParameterMap();
+		params.setSearchTotalMode(SearchTotalModeEnum.ACCURATE);
+		params.setCount(50);
+		results = myPatientDao.search(params);
+		assertEquals(202, results.size().intValue());
+		assertEquals(0, countCountQueries());
+	}
+
+	private long countCountQueries() {
+		return myCaptureQueriesListener
+			.getSelectQueries()
+			.stream()
+			.filter(t -> t.getSql(false, false).toLowerCase().contains("count("))
+			.count();
+	}
+
 	@Test
 	public void testFetchTotalAccurateForSlowLoading() throws InterruptedException {
 		create200Patients();
@@ -72,6 +72,7 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		myDaoConfig.setTreatReferencesAsLogical(new DaoConfig().getTreatReferencesAsLogical());
 		myDaoConfig.setEnforceReferentialIntegrityOnDelete(new DaoConfig().isEnforceReferentialIntegrityOnDelete());
 		myDaoConfig.setEnforceReferenceTargetTypes(new DaoConfig().isEnforceReferenceTargetTypes());
+		myDaoConfig.setHistoryKeysetPagingEnabled(new DaoConfig().isHistoryKeysetPagingEnabled());
 	}
 
 	@Before
@@ -1816,6 +1817,106 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 
 	}
 
+	@Test
+	public void testHistoryPagedUsingPageIds() {
+		myDaoConfig.setHistoryKeysetPagingEnabled(true);
+
+		Patient patient = new Patient();
+		patient.setActive(true);
+		IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		for (int i = 0; i < 24; i++) {
+			patient.setId(id.getValue());
+			patient.getNameFirstRep().setFamily("FAM" + i);
+			myPatientDao.update(patient, mySrd);
+		}
+
+		IBundleProvider history = myPatientDao.history(null, null, mySrd);
+		assertEquals(25, history.size().intValue());
+		assertEquals("first", history.getCurrentPageId());
+
+		List<String> versions = new ArrayList<>();
+		for (IBaseResource next : history.getResources(0, 10)) {
+			versions.add(next.getIdElement().getVersionIdPart());
+		}
+		String nextPageId = history.getNextPageId();
+		assertNotNull(nextPageId);
+
+		while (nextPageId != null) {
+			// Write a new version while paging, this should not affect the pages being loaded
+			patient.getNameFirstRep().setFamily("FAM" + nextPageId);
+			myPatientDao.update(patient, mySrd);
+
+			history = myDatabaseBackedPagingProvider.retrieveResultList(null, history.getUuid(), nextPageId);
+			assertEquals(nextPageId, history.getCurrentPageId());
+
+			// Indexes are ignored when loading by page ID
+			for (IBaseResource next : history.getResources(0, 1000)) {
+				versions.add(next.getIdElement().getVersionIdPart());
+			}
+			nextPageId = history.getNextPageId();
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 25; i >= 1; i--) {
+			expected.add(Integer.toString(i));
+		}
+		assertEquals(expected, versions);
+	}
+
+	@Test
+	public void testHistoryPagedUsingPageIdsLastPageExactlyFull() {
+		myDaoConfig.setHistoryKeysetPagingEnabled(true);
+
+		Patient patient = new Patient();
+		patient.setActive(true);
+		IIdType id = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		for (int i = 0; i < 19; i++) {
+			patient.setId(id.getValue());
+			patient.getNameFirstRep().setFamily("FAM" + i);
+			myPatientDao.update(patient, mySrd);
+		}
+
+		IBundleProvider history = myPatientDao.history(null, null, mySrd);
+		assertEquals(20, history.size().intValue());
+		assertEquals(10, history.getResources(0, 10).size());
+		String nextPageId = history.getNextPageId();
+		assertNotNull(nextPageId);
+
+		history = myDatabaseBackedPagingProvider.retrieveResultList(null, history.getUuid(), nextPageId);
+		List<IBaseResource> resources = history.getResources(0, 1000);
+		assertEquals(10, resources.size());
+		assertEquals("1", resources.get(9).getIdElement().getVersionIdPart());
+		assertNull(history.getNextPageId());
+	}
+
+	@Test
+	public void testHistoryNotPagedUsingPageIdsByDefault() {
+		Patient patient = new Patient();
+		patient.setActive(true);
+		myPatientDao.create(patient, mySrd);
+
+		IBundleProvider history = myPatientDao.history(null, null, mySrd);
+		assertNull(history.getCurrentPageId());
+		assertNull(history.getNextPageId());
+	}
+
+	@Test
+	public void testHistoryInvalidPageId() {
+		myDaoConfig.setHistoryKeysetPagingEnabled(true);
+
+		Patient patient = new Patient();
+		patient.setActive(true);
+		myPatientDao.create(patient, mySrd);
+
+		IBundleProvider history = myPatientDao.history(null, null, mySrd);
+		try {
+			myDatabaseBackedPagingProvider.retrieveResultList(null, history.getUuid(), "foo");
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Invalid page ID: foo", e.getMessage());
+		}
+	}
+
 	@Test
 	public void testHistoryReflectsMetaOperations() {
 		Patient inPatient = new Patient();
@@ -0,0 +1,112 @@
+package ca.uhn.fhir.jpa.interceptor;
+
+import ca.uhn.fhir.jpa.interceptor.perf.InMemoryPerformanceMetricsRegistry;
+import ca.uhn.fhir.jpa.interceptor.perf.PerformanceHistogram;
+import ca.uhn.fhir.jpa.model.search.SearchRuntimeDetails;
+import ca.uhn.fhir.jpa.model.search.StorageProcessingMessage;
+import ca.uhn.fhir.jpa.util.SqlQuery;
+import ca.uhn.fhir.jpa.util.SqlQueryList;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.StopWatch;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class PerformanceTracingMetricsInterceptorTest {
+
+	@Test
+	public void testToParameterShape() {
+		assertEquals("(none)", PerformanceTracingMetricsInterceptor.toParameterShape(null));
+		assertEquals("(none)", PerformanceTracingMetricsInterceptor.toParameterShape("?"));
+		assertEquals("birthdate&name:exact", PerformanceTracingMetricsInterceptor.toParameterShape("?name:exact=smith&birthdate=ge2000&birthdate=le2010"));
+	}
+
+	@Test
+	public void testRecordSearchTimings() {
+		InMemoryPerformanceMetricsRegistry registry = new InMemoryPerformanceMetricsRegistry();
+		PerformanceTracingMetricsInterceptor interceptor = new PerformanceTracingMetricsInterceptor(registry);
+
+		ServletRequestDetails request = new ServletRequestDetails(null);
+		SearchRuntimeDetails details = new SearchRuntimeDetails(request, "uuid");
+		details.setResourceType("Patient");
+		details.setQueryString("?name=smith");
+		details.setQueryStopwatch(new StopWatch());
+		details.setQueryBuildMillis(5);
+
+		SqlQueryList queries = new SqlQueryList();
+		queries.add(mock(SqlQuery.class));
+		queries.add(mock(SqlQuery.class));
+
+		interceptor.rawSql(request, queries);
+		interceptor.searchFirstResultLoaded(details);
+		interceptor.searchSelectComplete(details);
+
+		List<PerformanceHistogram> histograms = registry.getHistograms();
+		assertEquals(4, histograms.size());
+		assertEquals(PerformanceTracingMetricsInterceptor.FIRST_RESULT_MILLIS, histograms.get(0).getMetricName());
+		assertEquals(PerformanceTracingMetricsInterceptor.QUERY_BUILD_MILLIS, histograms.get(1).getMetricName());
+		assertEquals(5, histograms.get(1).getMax());
+		assertEquals(PerformanceTracingMetricsInterceptor.SELECT_COMPLETE_MILLIS, histograms.get(2).getMetricName());
+		assertEquals(PerformanceTracingMetricsInterceptor.SQL_COUNT, histograms.get(3).getMetricName());
+		assertEquals("Patient", histograms.get(3).getResourceType());
+		assertEquals("name", histograms.get(3).getParameterShape());
+		assertEquals(2, histograms.get(3).getMax());
+	}
+
+	@Test
+	public void testRecordLoadTimings() {
+		InMemoryPerformanceMetricsRegistry registry = new InMemoryPerformanceMetricsRegistry();
+		PerformanceTracingMetricsInterceptor interceptor = new PerformanceTracingMetricsInterceptor(registry);
+
+		interceptor.info(new StorageProcessingMessage().setMessage("No timing"));
+		interceptor.info(new StorageProcessingMessage()
+			.setTiming(StorageProcessingMessage.TimingEnum.RESOURCE_LOAD, 7)
+			.setResourceType("Patient"));
+		interceptor.info(new StorageProcessingMessage()
+			.setTiming(StorageProcessingMessage.TimingEnum.INCLUDE_LOAD, 3)
+			.setResourceType("Patient")
+			.setQueryString("?name=smith"));
+
+		List<PerformanceHistogram> histograms = registry.getHistograms();
+		assertEquals(2, histograms.size());
+		assertEquals(PerformanceTracingMetricsInterceptor.INCLUDE_LOAD_MILLIS, histograms.get(0).getMetricName());
+		assertEquals("name", histograms.get(0).getParameterShape());
+		assertEquals(3, histograms.get(0).getMax());
+		assertEquals(PerformanceTracingMetricsInterceptor.RESOURCE_LOAD_MILLIS, histograms.get(1).getMetricName());
+		assertEquals(PerformanceTracingMetricsInterceptor.UNKNOWN_PARAMETERS_SHAPE, histograms.get(1).getParameterShape());
+		assertEquals(7, histograms.get(1).getMax());
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		PerformanceHistogram histogram = new PerformanceHistogram("metric", "Patient", "name");
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50, histogram.getMean());
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+		assertEquals(100, histogram.getMax());
+	}
+
+	@Test
+	public void testRegistryCapsParameterShapes() {
+		InMemoryPerformanceMetricsRegistry registry = new InMemoryPerformanceMetricsRegistry();
+		registry.setMaximumHistogramCount(2);
+
+		registry.record("metric", "Patient", "a", 1);
+		registry.record("metric", "Patient", "b", 1);
+		registry.record("metric", "Patient", "c", 1);
+		registry.record("metric", "Patient", "d", 1);
+
+		assertEquals(3, registry.getHistogramCount());
+		assertEquals(InMemoryPerformanceMetricsRegistry.OTHER_PARAMETER_SHAPE, registry.getHistograms().get(0).getParameterShape());
+		assertEquals(2, registry.getHistograms().get(0).getCount());
+	}
+
+}
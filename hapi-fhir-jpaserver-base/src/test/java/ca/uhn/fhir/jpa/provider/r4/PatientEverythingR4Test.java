@@ -18,6 +18,8 @@ import org.junit.*;
 
 import com.google.common.base.Charsets;
 
+import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.parser.StrictErrorHandler;
 import ca.uhn.fhir.rest.api.EncodingEnum;
@@ -47,6 +49,7 @@ public class PatientEverythingR4Test extends BaseResourceProviderR4Test {
 
 		myDaoConfig.setReuseCachedSearchResultsForMillis(new DaoConfig().getReuseCachedSearchResultsForMillis());
 		myDaoConfig.setEverythingIncludesFetchPageSize(new DaoConfig().getEverythingIncludesFetchPageSize());
+		myDaoConfig.setEverythingIncludesFetchThreadCount(new DaoConfig().getEverythingIncludesFetchThreadCount());
 		myDaoConfig.setSearchPreFetchThresholds(new DaoConfig().getSearchPreFetchThresholds());
 	}
 
@@ -152,6 +155,54 @@ public class PatientEverythingR4Test extends BaseResourceProviderR4Test {
 		assertThat(actual, not(hasItem(myWrongEnc1)));
 	}
 	
+	@Test
+	public void testEverythingReturnsCorrectResourcesParallelIncludes() throws Exception {
+		myDaoConfig.setEverythingIncludesFetchPageSize(1);
+		myDaoConfig.setEverythingIncludesFetchThreadCount(4);
+
+		Bundle bundle = fetchBundle(ourServerBase + "/" + patId + "/$everything?_format=json&_count=100", EncodingEnum.JSON);
+
+		assertNull(bundle.getLink("next"));
+
+		List<String> actual = new ArrayList<>();
+		for (BundleEntryComponent nextEntry : bundle.getEntry()) {
+			actual.add(nextEntry.getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		}
+
+		ourLog.info("Found IDs: {}", actual);
+
+		// Nothing is returned twice even though several batches can include the same resource
+		assertEquals(actual.size(), new HashSet<>(actual).size());
+		assertThat(actual, hasItem(patId));
+		assertThat(actual, hasItem(encId1));
+		assertThat(actual, hasItem(encId2));
+		assertThat(actual, hasItem(orgId));
+		assertThat(actual, hasItems(myObsIds.toArray(new String[0])));
+		assertThat(actual, not(hasItem(myWrongPatId)));
+		assertThat(actual, not(hasItem(myWrongEnc1)));
+	}
+
+	@Test
+	public void testEverythingParallelIncludesCallInterceptorsOnSearchThread() throws Exception {
+		myDaoConfig.setEverythingIncludesFetchPageSize(1);
+		myDaoConfig.setEverythingIncludesFetchThreadCount(4);
+
+		List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+		IAnonymousInterceptor interceptor = (thePointcut, theArgs) -> threadNames.add(Thread.currentThread().getName());
+		myInterceptorRegistry.registerAnonymousInterceptor(Pointcut.STORAGE_PREACCESS_RESOURCES, interceptor);
+		try {
+			Bundle bundle = fetchBundle(ourServerBase + "/" + patId + "/$everything?_format=json&_count=100", EncodingEnum.JSON);
+			assertThat(bundle.getEntry(), not(empty()));
+		} finally {
+			myInterceptorRegistry.unregisterInterceptor(interceptor);
+		}
+
+		assertThat(threadNames, not(empty()));
+		for (String next : threadNames) {
+			assertThat(next, not(startsWith("everything-includes-")));
+		}
+	}
+
 	/**
 	 * See #674
 	 */
@@ -170,6 +170,9 @@ public class StaleSearchDeletingSvcR4Test extends BaseResourceProviderR4Test {
 		myStaleSearchDeletingSvc.pollForStaleSearchesAndDeleteThem();
 		assertEquals(0, mySearchEntityDao.count());
 
+		DatabaseSearchCacheSvcImpl staleSearchDeletingSvc = AopTestUtils.getTargetObject(mySearchCacheSvc);
+		assertEquals(1, staleSearchDeletingSvc.getLastPurgeBacklogCount());
+
 	}
 
 	@Test
@@ -0,0 +1,110 @@
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.*;
+
+public class SearchTaskExecutorTest {
+
+	@Test
+	public void testContinuationsRunBeforeNewSearchesAndClientsAreInterleaved() throws InterruptedException {
+		SearchTaskExecutor svc = new SearchTaskExecutor();
+		svc.setMaximumThreads(1);
+
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		svc.submit(() -> {
+			started.countDown();
+			blocker.await();
+			return null;
+		}, SearchTaskExecutor.PriorityEnum.NEW_SEARCH, "A");
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		svc.submit(() -> order.add("A-continuation"), SearchTaskExecutor.PriorityEnum.CONTINUATION, "A");
+		svc.submit(() -> order.add("A-1"), SearchTaskExecutor.PriorityEnum.NEW_SEARCH, "A");
+		svc.submit(() -> order.add("A-2"), SearchTaskExecutor.PriorityEnum.NEW_SEARCH, "A");
+		svc.submit(() -> order.add("B-1"), SearchTaskExecutor.PriorityEnum.NEW_SEARCH, "B");
+
+		assertEquals(3, svc.getQueuedCount(SearchTaskExecutor.PriorityEnum.NEW_SEARCH));
+		assertEquals(1, svc.getQueuedCount(SearchTaskExecutor.PriorityEnum.CONTINUATION));
+
+		blocker.countDown();
+		await().until(() -> order.size() == 4);
+
+		assertThat(order, contains("A-continuation", "B-1", "A-1", "A-2"));
+		assertEquals(0, svc.getQueuedCount(SearchTaskExecutor.PriorityEnum.NEW_SEARCH));
+	}
+
+	@Test
+	public void testBackgroundPrefetchRunsLast() throws InterruptedException {
+		SearchTaskExecutor svc = new SearchTaskExecutor();
+		svc.setMaximumThreads(1);
+
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		svc.submit(() -> {
+			started.countDown();
+			blocker.await();
+			return null;
+		}, SearchTaskExecutor.PriorityEnum.NEW_SEARCH, "A");
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		svc.submit(() -> order.add("B-prefetch"), SearchTaskExecutor.PriorityEnum.BACKGROUND_PREFETCH, "B");
+		assertFalse(svc.hasQueuedTasksAbove(SearchTaskExecutor.PriorityEnum.BACKGROUND_PREFETCH));
+
+		svc.submit(() -> order.add("A-1"), SearchTaskExecutor.PriorityEnum.NEW_SEARCH, "A");
+		assertTrue(svc.hasQueuedTasksAbove(SearchTaskExecutor.PriorityEnum.BACKGROUND_PREFETCH));
+		assertFalse(svc.hasQueuedTasksAbove(SearchTaskExecutor.PriorityEnum.NEW_SEARCH));
+
+		svc.submit(() -> order.add("A-continuation"), SearchTaskExecutor.PriorityEnum.CONTINUATION, "A");
+		assertTrue(svc.hasQueuedTasksAbove(SearchTaskExecutor.PriorityEnum.NEW_SEARCH));
+
+		blocker.countDown();
+		await().until(() -> order.size() == 3);
+
+		assertThat(order, contains("A-continuation", "A-1", "B-prefetch"));
+		assertFalse(svc.hasQueuedTasksAbove(SearchTaskExecutor.PriorityEnum.BACKGROUND_PREFETCH));
+	}
+
+	@Test
+	public void testRejectNewSearchWhenQueueFull() throws InterruptedException {
+		SearchTaskExecutor svc = new SearchTaskExecutor();
+		svc.setMaximumThreads(1);
+		svc.setMaximumQueuedSearches(1);
+
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		svc.submit(() -> {
+			started.countDown();
+			blocker.await();
+			return null;
+		}, SearchTaskExecutor.PriorityEnum.NEW_SEARCH, null);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		svc.submit(() -> null, SearchTaskExecutor.PriorityEnum.NEW_SEARCH, null);
+		try {
+			svc.submit(() -> null, SearchTaskExecutor.PriorityEnum.NEW_SEARCH, null);
+			fail();
+		} catch (UnclassifiedServerFailureException e) {
+			assertEquals(503, e.getStatusCode());
+		}
+
+		// Continuations are never rejected
+		svc.submit(() -> null, SearchTaskExecutor.PriorityEnum.CONTINUATION, null);
+
+		assertEquals(1, svc.getRejectedCount());
+		blocker.countDown();
+	}
+
+}
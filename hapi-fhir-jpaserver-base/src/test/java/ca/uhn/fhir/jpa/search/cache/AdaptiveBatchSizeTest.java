@@ -0,0 +1,41 @@
+package ca.uhn.fhir.jpa.search.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveBatchSizeTest {
+
+	@Test
+	public void testGrowWhenFastAndShrinkWhenSlow() {
+		AdaptiveBatchSize size = new AdaptiveBatchSize(500, 100, 1000, 1000);
+		assertEquals(500, size.get());
+
+		// Fast and full batch
+		size.recordStatement(500, 10);
+		assertEquals(1000, size.get());
+
+		// Capped at the maximum
+		size.recordStatement(1000, 10);
+		assertEquals(1000, size.get());
+
+		// Fast but the batch wasn't full, so don't grow
+		size.recordStatement(200, 10);
+		assertEquals(1000, size.get());
+
+		// Slow
+		size.recordStatement(1000, 2000);
+		assertEquals(500, size.get());
+		size.recordStatement(500, 2000);
+		size.recordStatement(250, 2000);
+		size.recordStatement(125, 2000);
+		assertEquals(100, size.get());
+	}
+
+	@Test
+	public void testInitialValueIsClamped() {
+		assertEquals(100, new AdaptiveBatchSize(10, 100, 1000, 1000).get());
+		assertEquals(1000, new AdaptiveBatchSize(10000, 100, 1000, 1000).get());
+	}
+
+}
@@ -2,6 +2,7 @@ package ca.uhn.fhir.jpa.term;
 
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ITermConceptDao;
+import ca.uhn.fhir.jpa.dao.data.ITermConceptParentChildLinkDao;
 import ca.uhn.fhir.jpa.entity.TermConcept;
 import ca.uhn.fhir.jpa.entity.TermConceptParentChildLink;
 import ca.uhn.fhir.jpa.term.api.ITermCodeSystemStorageSvc;
@@ -11,7 +12,11 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.transaction.PlatformTransactionManager;
 
-import static org.mockito.ArgumentMatchers.same;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -24,6 +29,8 @@ public class TermDeferredStorageSvcImplTest {
 	private ITermCodeSystemStorageSvc myTermConceptStorageSvc;
 	@Mock
 	private ITermConceptDao myConceptDao;
+	@Mock
+	private ITermConceptParentChildLinkDao myConceptParentChildLinkDao;
 
 	@Test
 	public void testSaveDeferredWithExecutionSuspended() {
@@ -46,7 +53,7 @@ public class TermDeferredStorageSvcImplTest {
 		svc.addConceptToStorageQueue(concept);
 		svc.saveDeferred();
 
-		verify(myTermConceptStorageSvc, times(1)).saveConcept(same(concept));
+		verify(myTermConceptStorageSvc, times(1)).saveConcepts(eq(Collections.singletonList(concept)), eq(false));
 		verifyNoMoreInteractions(myTermConceptStorageSvc);
 	}
 
@@ -68,4 +75,27 @@ public class TermDeferredStorageSvcImplTest {
 		verifyNoMoreInteractions(myTermConceptStorageSvc);
 	}
 
+	@Test
+	public void testSaveDeferred_ConceptParentChildLink_ConceptsPresent() {
+		TermConceptParentChildLink conceptLink = new TermConceptParentChildLink();
+		conceptLink.setChild(new TermConcept().setId(111L));
+		conceptLink.setParent(new TermConcept().setId(222L));
+
+		when(myConceptDao.findExistingIds(anyCollection())).thenReturn(Arrays.asList(111L, 222L));
+
+		TermDeferredStorageSvcImpl svc = new TermDeferredStorageSvcImpl();
+		svc.setTransactionManagerForUnitTest(myTxManager);
+		svc.setCodeSystemStorageSvcForUnitTest(myTermConceptStorageSvc);
+		svc.setConceptDaoForUnitTest(myConceptDao);
+		svc.setConceptParentChildLinkDaoForUnitTest(myConceptParentChildLinkDao);
+		svc.setDaoConfigForUnitTest(new DaoConfig());
+		svc.setProcessDeferred(true);
+		svc.addConceptLinkToStorageQueue(conceptLink);
+		svc.saveDeferred();
+
+		verify(myConceptDao, times(1)).findExistingIds(anyCollection());
+		verify(myConceptParentChildLinkDao, times(1)).saveAll(eq(Collections.singletonList(conceptLink)));
+		verifyNoMoreInteractions(myTermConceptStorageSvc);
+	}
+
 }
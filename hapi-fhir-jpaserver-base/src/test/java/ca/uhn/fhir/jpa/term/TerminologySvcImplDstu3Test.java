@@ -46,6 +46,7 @@ public class TerminologySvcImplDstu3Test extends BaseJpaDstu3Test {
 	@After
 	public void after() {
 		myDaoConfig.setDeferIndexingForCodesystemsOfSize(new DaoConfig().getDeferIndexingForCodesystemsOfSize());
+		myDaoConfig.setMaximumExpansionSize(new DaoConfig().getMaximumExpansionSize());
 		TermReindexingSvcImpl.setForceSaveDeferredAlwaysForUnitTest(false);
 	}
 
@@ -1705,6 +1706,39 @@ public class TerminologySvcImplDstu3Test extends BaseJpaDstu3Test {
 
 	}
 
+	@Test
+	public void testFindCodesBelowMoreDescendantsThanExpansionLimit() {
+		IIdType id = createCodeSystem();
+		myDaoConfig.setMaximumExpansionSize(2);
+
+		Set<String> codes = toCodes(myTermSvc.findCodesBelow(id.getIdPartAsLong(), id.getVersionIdPartAsLong(), "ParentA"));
+		assertThat(codes, containsInAnyOrder("ParentA", "childAA", "childAAA", "childAAB", "childAB"));
+	}
+
+	@Test
+	public void testFindCodesAboveAndBelowWhileReindexPending() {
+		IIdType id = createCodeSystem();
+		Long codeSystemVersionPid = runInTransaction(() -> myTermCodeSystemDao.findByResourcePid(id.getIdPartAsLong()).getCurrentVersion().getPid());
+
+		// Flag a concept as needing reindexing, so the stored closure can't be trusted
+		runInTransaction(() -> {
+			TermCodeSystemVersion codeSystemVersion = myTermCodeSystemDao.findByResourcePid(id.getIdPartAsLong()).getCurrentVersion();
+			TermConcept concept = myTermConceptDao.findByCodeSystemAndCode(codeSystemVersion, "childAAB").orElseThrow(IllegalStateException::new);
+			concept.setIndexStatus(null);
+			concept.setParentPids(null);
+			myTermConceptDao.save(concept);
+		});
+		myTermSvc.clearClosureCompleteCache(codeSystemVersionPid);
+
+		Set<String> codes;
+
+		codes = toCodes(myTermSvc.findCodesBelow(id.getIdPartAsLong(), id.getVersionIdPartAsLong(), "childAA"));
+		assertThat(codes, containsInAnyOrder("childAA", "childAAA", "childAAB"));
+
+		codes = toCodes(myTermSvc.findCodesAbove(id.getIdPartAsLong(), id.getVersionIdPartAsLong(), "childAAB"));
+		assertThat(codes, containsInAnyOrder("ParentA", "childAA", "childAAB"));
+	}
+
 	@Test
 	public void testFindCodesBelowBuiltInCodeSystem() {
 		List<VersionIndependentConcept> concepts;
@@ -33,10 +33,16 @@ import org.hibernate.search.indexes.interceptor.IndexingOverride;
  */
 public class IndexNonDeletedInterceptor implements EntityIndexingInterceptor<ResourceTable> {
 
+	/**
+	 * Must match BaseHapiFhirDao#INDEX_STATUS_DEFERRED, which isn't visible from this module.
+	 * The fulltext fields of a resource whose indexing was deferred aren't populated yet.
+	 */
+	private static final long INDEX_STATUS_DEFERRED = 3L;
+
 	@Override
 	public IndexingOverride onAdd(ResourceTable entity) {
 		if (entity.getDeleted() == null) {
-			if (entity.getIndexStatus() != null) {
+			if (isIndexed(entity)) {
 				return IndexingOverride.APPLY_DEFAULT;
 			}
 		}
@@ -45,7 +51,7 @@ public class IndexNonDeletedInterceptor implements EntityIndexingInterceptor<Res
 
 	@Override
 	public IndexingOverride onUpdate(ResourceTable entity) {
-		if (entity.getIndexStatus() == null) {
+		if (!isIndexed(entity)) {
 			return IndexingOverride.SKIP;
 		}
 		if (entity.getDeleted() == null) {
@@ -63,4 +69,8 @@ public class IndexNonDeletedInterceptor implements EntityIndexingInterceptor<Res
 	public IndexingOverride onCollectionUpdate(ResourceTable entity) {
 		return IndexingOverride.APPLY_DEFAULT;
 	}
+
+	private static boolean isIndexed(ResourceTable theEntity) {
+		return theEntity.getIndexStatus() != null && theEntity.getIndexStatus() != INDEX_STATUS_DEFERRED;
+	}
 }
@@ -37,6 +37,9 @@ public class SearchRuntimeDetails {
 	private boolean myLoadSynchronous;
 	private String myQueryString;
 	private SearchStatusEnum mySearchStatus;
+	private String myResourceType;
+	private long myQueryBuildMillis;
+
 	public SearchRuntimeDetails(RequestDetails theRequestDetails, String theSearchUuid) {
 		myRequestDetails = theRequestDetails;
 		mySearchUuid = theSearchUuid;
@@ -90,4 +93,27 @@ public class SearchRuntimeDetails {
 	public void setSearchStatus(SearchStatusEnum theSearchStatus) {
 		mySearchStatus = theSearchStatus;
 	}
+
+	/**
+	 * The resource type being searched for, if known
+	 */
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	/**
+	 * The time spent building the SQL query for the most recent pass of this
+	 * search (i.e. before the query was sent to the database)
+	 */
+	public long getQueryBuildMillis() {
+		return myQueryBuildMillis;
+	}
+
+	public void setQueryBuildMillis(long theQueryBuildMillis) {
+		myQueryBuildMillis = theQueryBuildMillis;
+	}
 }
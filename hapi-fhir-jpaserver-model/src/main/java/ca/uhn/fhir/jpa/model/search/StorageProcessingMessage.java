@@ -23,6 +23,10 @@ package ca.uhn.fhir.jpa.model.search;
 public class StorageProcessingMessage {
 
 	private String myMessage;
+	private TimingEnum myTiming;
+	private long myMillis;
+	private String myResourceType;
+	private String myQueryString;
 
 	public String getMessage() {
 		return myMessage;
@@ -33,8 +37,70 @@ public class StorageProcessingMessage {
 		return this;
 	}
 
+	/**
+	 * If this message reports how long a processing step took, returns the step. Otherwise returns <code>null</code>.
+	 */
+	public TimingEnum getTiming() {
+		return myTiming;
+	}
+
+	/**
+	 * Returns the number of milliseconds the step returned by {@link #getTiming()} took
+	 */
+	public long getMillis() {
+		return myMillis;
+	}
+
+	/**
+	 * Marks this message as reporting how long a processing step took
+	 */
+	public StorageProcessingMessage setTiming(TimingEnum theTiming, long theMillis) {
+		myTiming = theTiming;
+		myMillis = theMillis;
+		return this;
+	}
+
+	/**
+	 * The resource type being searched for, if known
+	 */
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public StorageProcessingMessage setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+		return this;
+	}
+
+	/**
+	 * The normalized query string of the search, if known
+	 */
+	public String getQueryString() {
+		return myQueryString;
+	}
+
+	public StorageProcessingMessage setQueryString(String theQueryString) {
+		myQueryString = theQueryString;
+		return this;
+	}
+
 	@Override
 	public String toString() {
 		return myMessage;
 	}
+
+	public enum TimingEnum {
+		/**
+		 * Loading the resources for a page of search results
+		 */
+		RESOURCE_LOAD,
+		/**
+		 * Finding the resources added to a page of search results by <code>_include</code>
+		 */
+		INCLUDE_LOAD,
+		/**
+		 * Finding the resources added to a page of search results by <code>_revinclude</code>
+		 */
+		REVINCLUDE_LOAD
+	}
 }
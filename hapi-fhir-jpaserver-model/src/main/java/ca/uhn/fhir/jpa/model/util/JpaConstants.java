@@ -191,6 +191,11 @@ public class JpaConstants {
 	 */
 	public static final String OPERATION_EXPORT_POLL_STATUS = "$export-poll-status";
 
+	/**
+	 * Operation name for the "$perf-stats" operation
+	 */
+	public static final String OPERATION_PERF_STATS = "$perf-stats";
+
 	/**
 	 * <p>
 	 * This extension should be of type <code>string</code> and should be
@@ -227,6 +232,51 @@ public class JpaConstants {
 	 */
 	public static final String EXT_SUBSCRIPTION_RESTHOOK_DELIVER_LATEST_VERSION = "http://hapifhir.io/fhir/StructureDefinition/subscription-resthook-deliver-latest-version";
 
+	/**
+	 * This extension URL indicates that a REST HOOK subscription should
+	 * group deliveries into a single transaction Bundle of up to the given
+	 * number of resources, instead of invoking the endpoint once per
+	 * resource. If the same resource changes more than once while a batch
+	 * is being collected, only the most recent version is delivered.
+	 * <p>
+	 * This extension should be of type <code>integer</code> and should be
+	 * placed on the <code>Subscription.channel</code> element.
+	 * </p>
+	 */
+	public static final String EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE = "http://hapifhir.io/fhir/StructureDefinition/subscription-resthook-batch-size";
+
+	/**
+	 * This extension URL indicates the maximum number of milliseconds that a
+	 * REST HOOK delivery may wait in a batch (see {@link #EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE})
+	 * before the batch is delivered even if it is not full.
+	 * <p>
+	 * This extension should be of type <code>integer</code> and should be
+	 * placed on the <code>Subscription.channel</code> element.
+	 * </p>
+	 */
+	public static final String EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS = "http://hapifhir.io/fhir/StructureDefinition/subscription-resthook-batch-window-millis";
+
+	/**
+	 * This extension URL indicates the maximum number of REST HOOK deliveries
+	 * that may be in progress against the subscription endpoint at the same time.
+	 * <p>
+	 * This extension should be of type <code>integer</code> and should be
+	 * placed on the <code>Subscription.channel</code> element.
+	 * </p>
+	 */
+	public static final String EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES = "http://hapifhir.io/fhir/StructureDefinition/subscription-resthook-max-concurrent-deliveries";
+
+	/**
+	 * This extension URL indicates the number of times that a failed REST HOOK
+	 * delivery should be retried (with an exponentially increasing delay
+	 * between attempts) before it is considered to have failed.
+	 * <p>
+	 * This extension should be of type <code>integer</code> and should be
+	 * placed on the <code>Subscription.channel</code> element.
+	 * </p>
+	 */
+	public static final String EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT = "http://hapifhir.io/fhir/StructureDefinition/subscription-resthook-delivery-retry-count";
+
 	/**
 	 * Indicate which strategy will be used to match this subscription
 	 */
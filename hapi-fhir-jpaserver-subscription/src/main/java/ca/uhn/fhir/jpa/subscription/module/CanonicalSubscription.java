@@ -342,6 +342,14 @@ public class CanonicalSubscription implements Serializable, Cloneable {
 		private boolean myStripVersionId;
 		@JsonProperty("deliverLatestVersion")
 		private boolean myDeliverLatestVersion;
+		@JsonProperty("batchSize")
+		private int myBatchSize;
+		@JsonProperty("batchWindowMillis")
+		private int myBatchWindowMillis;
+		@JsonProperty("maxConcurrentDeliveries")
+		private int myMaxConcurrentDeliveries;
+		@JsonProperty("deliveryRetryCount")
+		private int myDeliveryRetryCount;
 
 		/**
 		 * Constructor
@@ -367,6 +375,53 @@ public class CanonicalSubscription implements Serializable, Cloneable {
 			myStripVersionId = theStripVersionId;
 		}
 
+		/**
+		 * The maximum number of resources to deliver in a single transaction Bundle,
+		 * or <code>0</code> or <code>1</code> if each resource is delivered individually
+		 */
+		public int getBatchSize() {
+			return myBatchSize;
+		}
+
+		public void setBatchSize(int theBatchSize) {
+			myBatchSize = theBatchSize;
+		}
+
+		/**
+		 * The maximum time in milliseconds that a delivery may wait for its batch
+		 * to fill, or <code>0</code> to use the default
+		 */
+		public int getBatchWindowMillis() {
+			return myBatchWindowMillis;
+		}
+
+		public void setBatchWindowMillis(int theBatchWindowMillis) {
+			myBatchWindowMillis = theBatchWindowMillis;
+		}
+
+		/**
+		 * The maximum number of deliveries in progress against the endpoint at once,
+		 * or <code>0</code> for no limit
+		 */
+		public int getMaxConcurrentDeliveries() {
+			return myMaxConcurrentDeliveries;
+		}
+
+		public void setMaxConcurrentDeliveries(int theMaxConcurrentDeliveries) {
+			myMaxConcurrentDeliveries = theMaxConcurrentDeliveries;
+		}
+
+		/**
+		 * The number of times a failed delivery is retried before giving up
+		 */
+		public int getDeliveryRetryCount() {
+			return myDeliveryRetryCount;
+		}
+
+		public void setDeliveryRetryCount(int theDeliveryRetryCount) {
+			myDeliveryRetryCount = theDeliveryRetryCount;
+		}
+
 		@Override
 		public boolean equals(Object theO) {
 			if (this == theO) return true;
@@ -378,6 +433,10 @@ public class CanonicalSubscription implements Serializable, Cloneable {
 			return new EqualsBuilder()
 				.append(myStripVersionId, that.myStripVersionId)
 				.append(myDeliverLatestVersion, that.myDeliverLatestVersion)
+				.append(myBatchSize, that.myBatchSize)
+				.append(myBatchWindowMillis, that.myBatchWindowMillis)
+				.append(myMaxConcurrentDeliveries, that.myMaxConcurrentDeliveries)
+				.append(myDeliveryRetryCount, that.myDeliveryRetryCount)
 				.isEquals();
 		}
 
@@ -386,6 +445,10 @@ public class CanonicalSubscription implements Serializable, Cloneable {
 			return new HashCodeBuilder(17, 37)
 				.append(myStripVersionId)
 				.append(myDeliverLatestVersion)
+				.append(myBatchSize)
+				.append(myBatchWindowMillis)
+				.append(myMaxConcurrentDeliveries)
+				.append(myDeliveryRetryCount)
 				.toHashCode();
 		}
 
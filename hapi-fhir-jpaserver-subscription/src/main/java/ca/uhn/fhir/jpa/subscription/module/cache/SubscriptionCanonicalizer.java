@@ -49,6 +49,7 @@ import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @Service
 public class SubscriptionCanonicalizer<S extends IBaseResource> {
@@ -129,14 +130,26 @@ public class SubscriptionCanonicalizer<S extends IBaseResource> {
 
 				String stripVersionIds;
 				String deliverLatestVersion;
+				String batchSize;
+				String batchWindowMillis;
+				String maxConcurrentDeliveries;
+				String deliveryRetryCount;
 				try {
 					stripVersionIds = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_STRIP_VERSION_IDS);
 					deliverLatestVersion = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVER_LATEST_VERSION);
+					batchSize = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE);
+					batchWindowMillis = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS);
+					maxConcurrentDeliveries = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES);
+					deliveryRetryCount = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT);
 				} catch (FHIRException theE) {
 					throw new ConfigurationException("Failed to extract subscription extension(s): " + theE.getMessage(), theE);
 				}
 				retVal.getRestHookDetails().setStripVersionId(Boolean.parseBoolean(stripVersionIds));
 				retVal.getRestHookDetails().setDeliverLatestVersion(Boolean.parseBoolean(deliverLatestVersion));
+				retVal.getRestHookDetails().setBatchSize(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE, batchSize));
+				retVal.getRestHookDetails().setBatchWindowMillis(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS, batchWindowMillis));
+				retVal.getRestHookDetails().setMaxConcurrentDeliveries(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES, maxConcurrentDeliveries));
+				retVal.getRestHookDetails().setDeliveryRetryCount(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT, deliveryRetryCount));
 			}
 
 		} catch (FHIRException theE) {
@@ -145,6 +158,22 @@ public class SubscriptionCanonicalizer<S extends IBaseResource> {
 		return retVal;
 	}
 
+	private static int parseNonNegativeInteger(String theExtensionUrl, String theValue) {
+		if (isBlank(theValue)) {
+			return 0;
+		}
+		int retVal = -1;
+		try {
+			retVal = Integer.parseInt(theValue.trim());
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		if (retVal < 0) {
+			throw new ConfigurationException("Invalid value for extension " + theExtensionUrl + ": " + theValue);
+		}
+		return retVal;
+	}
+
 	private @Nonnull
 	Map<String, List<String>> extractExtension(IBaseResource theSubscription) {
 		try {
@@ -223,14 +252,26 @@ public class SubscriptionCanonicalizer<S extends IBaseResource> {
 		if (retVal.getChannelType() == CanonicalSubscriptionChannelType.RESTHOOK) {
 			String stripVersionIds;
 			String deliverLatestVersion;
+			String batchSize;
+			String batchWindowMillis;
+			String maxConcurrentDeliveries;
+			String deliveryRetryCount;
 			try {
 				stripVersionIds = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_STRIP_VERSION_IDS);
 				deliverLatestVersion = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVER_LATEST_VERSION);
+				batchSize = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE);
+				batchWindowMillis = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS);
+				maxConcurrentDeliveries = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES);
+				deliveryRetryCount = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT);
 			} catch (FHIRException theE) {
 				throw new ConfigurationException("Failed to extract subscription extension(s): " + theE.getMessage(), theE);
 			}
 			retVal.getRestHookDetails().setStripVersionId(Boolean.parseBoolean(stripVersionIds));
 			retVal.getRestHookDetails().setDeliverLatestVersion(Boolean.parseBoolean(deliverLatestVersion));
+			retVal.getRestHookDetails().setBatchSize(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE, batchSize));
+			retVal.getRestHookDetails().setBatchWindowMillis(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS, batchWindowMillis));
+			retVal.getRestHookDetails().setMaxConcurrentDeliveries(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES, maxConcurrentDeliveries));
+			retVal.getRestHookDetails().setDeliveryRetryCount(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT, deliveryRetryCount));
 		}
 
 		List<Extension> topicExts = subscription.getExtensionsByUrl("http://hl7.org/fhir/subscription/topics");
@@ -273,14 +314,26 @@ public class SubscriptionCanonicalizer<S extends IBaseResource> {
 		if (retVal.getChannelType() == CanonicalSubscriptionChannelType.RESTHOOK) {
 			String stripVersionIds;
 			String deliverLatestVersion;
+			String batchSize;
+			String batchWindowMillis;
+			String maxConcurrentDeliveries;
+			String deliveryRetryCount;
 			try {
 				stripVersionIds = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_STRIP_VERSION_IDS);
 				deliverLatestVersion = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVER_LATEST_VERSION);
+				batchSize = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE);
+				batchWindowMillis = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS);
+				maxConcurrentDeliveries = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES);
+				deliveryRetryCount = subscription.getChannel().getExtensionString(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT);
 			} catch (FHIRException theE) {
 				throw new ConfigurationException("Failed to extract subscription extension(s): " + theE.getMessage(), theE);
 			}
 			retVal.getRestHookDetails().setStripVersionId(Boolean.parseBoolean(stripVersionIds));
 			retVal.getRestHookDetails().setDeliverLatestVersion(Boolean.parseBoolean(deliverLatestVersion));
+			retVal.getRestHookDetails().setBatchSize(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_SIZE, batchSize));
+			retVal.getRestHookDetails().setBatchWindowMillis(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_BATCH_WINDOW_MILLIS, batchWindowMillis));
+			retVal.getRestHookDetails().setMaxConcurrentDeliveries(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_MAX_CONCURRENT_DELIVERIES, maxConcurrentDeliveries));
+			retVal.getRestHookDetails().setDeliveryRetryCount(parseNonNegativeInteger(JpaConstants.EXT_SUBSCRIPTION_RESTHOOK_DELIVERY_RETRY_COUNT, deliveryRetryCount));
 		}
 
 		List<org.hl7.fhir.r5.model.Extension> topicExts = subscription.getExtensionsByUrl("http://hl7.org/fhir/subscription/topics");
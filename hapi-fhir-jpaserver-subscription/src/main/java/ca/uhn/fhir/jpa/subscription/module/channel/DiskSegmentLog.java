@@ -0,0 +1,486 @@
+package ca.uhn.fhir.jpa.subscription.module.channel;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of messages stored in a directory of fixed size, memory-mapped
+ * segment files, along with the offset up to which a single consumer has processed
+ * the log.
+ * <p>
+ * Each record is stored as a 4 byte length, a 4 byte CRC32 checksum and the record body.
+ * When the log is opened, the last segment is scanned and anything after the last
+ * intact record (e.g. a partial write from a crash) is discarded.
+ * </p>
+ * <p>
+ * Segments are flushed to disk after a configurable number of appends or amount of time
+ * has passed (the latter is checked by a background thread, so that the last few appends
+ * are flushed even if no more follow them), so a crash of the operating system (as opposed to the JVM) may lose the
+ * most recent writes. Segments which have been completely consumed are deleted, and
+ * if the maximum number of segments is reached, appends block until the consumer
+ * catches up.
+ * </p>
+ */
+public class DiskSegmentLog implements Closeable {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(DiskSegmentLog.class);
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String OFFSET_FILE_NAME = "consumer.offset";
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int END_OF_SEGMENT = -1;
+
+	private final File myDirectory;
+	private final int mySegmentSize;
+	private final int myMaxSegments;
+	private final int myFsyncBatchSize;
+	private final long myFsyncIntervalMillis;
+	private final TreeMap<Long, Segment> mySegments = new TreeMap<>();
+	private final RandomAccessFile myOffsetFile;
+	private final MappedByteBuffer myOffsetBuffer;
+	private final ScheduledExecutorService mySyncExecutor;
+	private long myWriteOffset;
+	private long myCommittedOffset;
+	private int myUnsyncedWrites;
+	private long myLastSync;
+	private boolean myClosed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theDirectory          The directory holding the log. It will be created if it doesn't exist, and any existing log in it will be reopened.
+	 * @param theSegmentSize        The size of each segment file in bytes. No single record may be larger than this.
+	 * @param theMaxSegments        The maximum number of segment files, which bounds the disk space used by the log
+	 * @param theFsyncBatchSize     Writes are flushed to disk after this many appends...
+	 * @param theFsyncIntervalMillis ...or once this many milliseconds have passed since the last flush, whichever comes first
+	 */
+	public DiskSegmentLog(File theDirectory, int theSegmentSize, int theMaxSegments, int theFsyncBatchSize, long theFsyncIntervalMillis) {
+		Validate.isTrue(theSegmentSize > RECORD_HEADER_SIZE, "Segment size must be greater than %d", RECORD_HEADER_SIZE);
+		Validate.isTrue(theMaxSegments >= 2, "Max segments must be at least 2");
+		Validate.isTrue(theFsyncBatchSize >= 1, "Fsync batch size must be at least 1");
+
+		myDirectory = theDirectory;
+		mySegmentSize = theSegmentSize;
+		myMaxSegments = theMaxSegments;
+		myFsyncBatchSize = theFsyncBatchSize;
+		myFsyncIntervalMillis = theFsyncIntervalMillis;
+
+		try {
+			if (!myDirectory.exists() && !myDirectory.mkdirs()) {
+				throw new IOException("Unable to create directory " + myDirectory.getAbsolutePath());
+			}
+
+			myOffsetFile = new RandomAccessFile(new File(myDirectory, OFFSET_FILE_NAME), "rw");
+			boolean haveOffset = myOffsetFile.length() >= Long.BYTES;
+			myOffsetBuffer = myOffsetFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+			myCommittedOffset = haveOffset ? myOffsetBuffer.getLong(0) : 0;
+
+			File[] segmentFiles = myDirectory.listFiles((theDir, theName) -> theName.endsWith(SEGMENT_SUFFIX));
+			if (segmentFiles != null) {
+				for (File next : segmentFiles) {
+					String name = next.getName();
+					long segmentNumber = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+					mySegments.put(segmentNumber, openSegment(segmentNumber));
+				}
+			}
+
+			if (mySegments.isEmpty()) {
+				long segmentNumber = myCommittedOffset / mySegmentSize;
+				mySegments.put(segmentNumber, openSegment(segmentNumber));
+				myWriteOffset = segmentNumber * mySegmentSize;
+			} else {
+				myWriteOffset = recoverWriteOffset(mySegments.lastEntry().getValue());
+			}
+
+			long firstOffset = mySegments.firstKey() * mySegmentSize;
+			myCommittedOffset = Math.min(Math.max(myCommittedOffset, firstOffset), myWriteOffset);
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to open message log in " + myDirectory.getAbsolutePath() + ": " + e.getMessage(), e);
+		}
+
+		myLastSync = System.currentTimeMillis();
+
+		if (myFsyncIntervalMillis > 0) {
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("message-log-sync-%d")
+				.daemon(true)
+				.build();
+			mySyncExecutor = new ScheduledThreadPoolExecutor(1, threadFactory);
+			mySyncExecutor.scheduleWithFixedDelay(this::syncIfDue, myFsyncIntervalMillis, myFsyncIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			mySyncExecutor = null;
+		}
+
+		ourLog.info("Opened message log in {} with {} segment(s), {} bytes pending", myDirectory.getAbsolutePath(), mySegments.size(), myWriteOffset - myCommittedOffset);
+	}
+
+	/**
+	 * Appends a record to the log, blocking if the log is full
+	 *
+	 * @return The offset of the record
+	 */
+	public synchronized long append(byte[] theRecord) {
+		return append(theRecord, -1);
+	}
+
+	/**
+	 * Appends a record to the log, waiting for up to the given amount of time for
+	 * the consumer to free up space if the log is full
+	 *
+	 * @param theTimeoutMillis How long to wait for space, or a negative number to wait indefinitely
+	 * @return The offset of the record, or <code>-1</code> if no space became available in time
+	 */
+	public synchronized long append(byte[] theRecord, long theTimeoutMillis) {
+		Validate.isTrue(theRecord.length + RECORD_HEADER_SIZE <= mySegmentSize, "Record of %d bytes is larger than the segment size of %d bytes", theRecord.length, mySegmentSize);
+		assertNotClosed();
+
+		long deadline = theTimeoutMillis < 0 ? -1 : System.currentTimeMillis() + theTimeoutMillis;
+		int position = getWritePosition();
+		while (position + RECORD_HEADER_SIZE + theRecord.length > mySegmentSize) {
+			if (!rollSegment(position, deadline)) {
+				return -1;
+			}
+			position = getWritePosition();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(theRecord, 0, theRecord.length);
+
+		MappedByteBuffer buffer = mySegments.lastEntry().getValue().myBuffer;
+		buffer.putInt(position + 4, (int) crc.getValue());
+		ByteBuffer body = buffer.duplicate();
+		body.position(position + RECORD_HEADER_SIZE);
+		body.put(theRecord);
+		// The length is written last, since a zero length marks the end of the log
+		buffer.putInt(position, theRecord.length);
+
+		long retVal = myWriteOffset;
+		myWriteOffset += RECORD_HEADER_SIZE + theRecord.length;
+
+		myUnsyncedWrites++;
+		if (myUnsyncedWrites >= myFsyncBatchSize || System.currentTimeMillis() - myLastSync >= myFsyncIntervalMillis) {
+			sync();
+		}
+
+		notifyAll();
+		return retVal;
+	}
+
+	/**
+	 * Returns the record at the given offset, waiting for up to the given amount
+	 * of time for one to be appended if the offset is at the end of the log
+	 *
+	 * @return The record, or <code>null</code> if none was appended in time or the log was closed
+	 */
+	public synchronized Record read(long theOffset, long theTimeoutMillis) throws InterruptedException {
+		long offset = theOffset;
+		long deadline = System.currentTimeMillis() + theTimeoutMillis;
+		while (offset >= myWriteOffset) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (myClosed || remaining <= 0) {
+				return null;
+			}
+			wait(remaining);
+		}
+
+		int position = (int) (offset % mySegmentSize);
+		Segment segment = mySegments.get(offset / mySegmentSize);
+		if (position + RECORD_HEADER_SIZE > mySegmentSize || segment.myBuffer.getInt(position) == END_OF_SEGMENT) {
+			offset = (offset / mySegmentSize + 1) * mySegmentSize;
+			position = 0;
+			segment = mySegments.get(offset / mySegmentSize);
+		}
+
+		int length = segment.myBuffer.getInt(position);
+		byte[] body = new byte[length];
+		ByteBuffer source = segment.myBuffer.duplicate();
+		source.position(position + RECORD_HEADER_SIZE);
+		source.get(body);
+
+		return new Record(offset, offset + RECORD_HEADER_SIZE + length, body);
+	}
+
+	/**
+	 * Records that everything before the given offset has been processed, so that
+	 * it won't be replayed when the log is reopened and so that its space can
+	 * be reclaimed
+	 */
+	public synchronized void commit(long theOffset) {
+		if (myClosed || theOffset <= myCommittedOffset) {
+			return;
+		}
+		myCommittedOffset = Math.min(theOffset, myWriteOffset);
+		myOffsetBuffer.putLong(0, myCommittedOffset);
+
+		long currentSegmentNumber = mySegments.lastKey();
+		long committedSegmentNumber = myCommittedOffset / mySegmentSize;
+		while (mySegments.firstKey() < committedSegmentNumber && mySegments.firstKey() < currentSegmentNumber) {
+			Map.Entry<Long, Segment> oldest = mySegments.pollFirstEntry();
+			oldest.getValue().delete();
+		}
+
+		notifyAll();
+	}
+
+	public synchronized long getCommittedOffset() {
+		return myCommittedOffset;
+	}
+
+	public synchronized long getWriteOffset() {
+		return myWriteOffset;
+	}
+
+	public synchronized int getSegmentCount() {
+		return mySegments.size();
+	}
+
+	@VisibleForTesting
+	synchronized int getUnsyncedWriteCountForUnitTest() {
+		return myUnsyncedWrites;
+	}
+
+	/**
+	 * Flushes to disk if anything has been appended since the last flush, and the
+	 * fsync interval has passed since then
+	 */
+	synchronized void syncIfDue() {
+		if (!myClosed && myUnsyncedWrites > 0 && System.currentTimeMillis() - myLastSync >= myFsyncIntervalMillis) {
+			sync();
+		}
+	}
+
+	/**
+	 * Flushes all written records and the committed offset to disk
+	 */
+	public synchronized void sync() {
+		if (myClosed) {
+			return;
+		}
+		mySegments.lastEntry().getValue().myBuffer.force();
+		myOffsetBuffer.force();
+		myUnsyncedWrites = 0;
+		myLastSync = System.currentTimeMillis();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (myClosed) {
+			return;
+		}
+		if (mySyncExecutor != null) {
+			mySyncExecutor.shutdown();
+		}
+		sync();
+		myClosed = true;
+		for (Segment next : mySegments.values()) {
+			next.close();
+		}
+		try {
+			myOffsetFile.close();
+		} catch (IOException e) {
+			ourLog.warn("Failed to close {}: {}", OFFSET_FILE_NAME, e.toString());
+		}
+		notifyAll();
+	}
+
+	/**
+	 * The position within the last segment at which the next record will be written
+	 */
+	private int getWritePosition() {
+		return (int) (myWriteOffset - mySegments.lastKey() * mySegmentSize);
+	}
+
+	/**
+	 * @param theDeadline The time to stop waiting for space at, or a negative number to wait indefinitely
+	 * @return Returns <code>false</code> if the log was full and no space became available before the deadline
+	 */
+	private boolean rollSegment(int thePosition, long theDeadline) {
+		Segment current = mySegments.lastEntry().getValue();
+		if (thePosition + 4 <= mySegmentSize) {
+			current.myBuffer.putInt(thePosition, END_OF_SEGMENT);
+		}
+		current.myBuffer.force();
+
+		if (mySegments.size() >= myMaxSegments) {
+			ourLog.info("Message log in {} is full ({} segments), waiting for the consumer to catch up", myDirectory.getAbsolutePath(), mySegments.size());
+			while (mySegments.size() >= myMaxSegments) {
+				assertNotClosed();
+				try {
+					if (theDeadline < 0) {
+						wait();
+					} else {
+						long remaining = theDeadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							return false;
+						}
+						wait(remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InternalErrorException("Interrupted while waiting for space in message log " + myDirectory.getAbsolutePath());
+				}
+			}
+
+			// Another writer may have rolled the segment while we were waiting
+			if (mySegments.lastKey() != current.myNumber) {
+				return true;
+			}
+		}
+
+		long segmentNumber = mySegments.lastKey() + 1;
+		try {
+			mySegments.put(segmentNumber, openSegment(segmentNumber));
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to create segment in message log " + myDirectory.getAbsolutePath() + ": " + e.getMessage(), e);
+		}
+		myWriteOffset = segmentNumber * mySegmentSize;
+		return true;
+	}
+
+	/**
+	 * Finds the end of the last intact record in the given segment, and clears
+	 * anything after it
+	 */
+	private long recoverWriteOffset(Segment theSegment) {
+		MappedByteBuffer buffer = theSegment.myBuffer;
+		int position = 0;
+		while (position + RECORD_HEADER_SIZE <= mySegmentSize) {
+			int length = buffer.getInt(position);
+			if (length == END_OF_SEGMENT) {
+				return theSegment.myNumber * mySegmentSize + position;
+			}
+			if (length <= 0 || position + RECORD_HEADER_SIZE + length > mySegmentSize) {
+				break;
+			}
+
+			byte[] body = new byte[length];
+			ByteBuffer source = buffer.duplicate();
+			source.position(position + RECORD_HEADER_SIZE);
+			source.get(body);
+			CRC32 crc = new CRC32();
+			crc.update(body, 0, body.length);
+			if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+				ourLog.warn("Discarding corrupt record at position {} of segment {} in {}", position, theSegment.myNumber, myDirectory.getAbsolutePath());
+				break;
+			}
+
+			position += RECORD_HEADER_SIZE + length;
+		}
+
+		for (int i = position; i < mySegmentSize; i++) {
+			buffer.put(i, (byte) 0);
+		}
+		return theSegment.myNumber * mySegmentSize + position;
+	}
+
+	private Segment openSegment(long theSegmentNumber) throws IOException {
+		File file = new File(myDirectory, String.format("%019d%s", theSegmentNumber, SEGMENT_SUFFIX));
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mySegmentSize);
+		return new Segment(theSegmentNumber, file, raf, buffer);
+	}
+
+	private void assertNotClosed() {
+		if (myClosed) {
+			throw new InternalErrorException("Message log in " + myDirectory.getAbsolutePath() + " is closed");
+		}
+	}
+
+	public static class Record {
+
+		private final long myOffset;
+		private final long myNextOffset;
+		private final byte[] myBody;
+
+		Record(long theOffset, long theNextOffset, byte[] theBody) {
+			myOffset = theOffset;
+			myNextOffset = theNextOffset;
+			myBody = theBody;
+		}
+
+		public long getOffset() {
+			return myOffset;
+		}
+
+		/**
+		 * The offset immediately after this record
+		 */
+		public long getNextOffset() {
+			return myNextOffset;
+		}
+
+		public byte[] getBody() {
+			return myBody;
+		}
+
+	}
+
+	private static class Segment {
+
+		private final long myNumber;
+		private final File myFile;
+		private final RandomAccessFile myRandomAccessFile;
+		private final MappedByteBuffer myBuffer;
+
+		Segment(long theNumber, File theFile, RandomAccessFile theRandomAccessFile, MappedByteBuffer theBuffer) {
+			myNumber = theNumber;
+			myFile = theFile;
+			myRandomAccessFile = theRandomAccessFile;
+			myBuffer = theBuffer;
+		}
+
+		void close() {
+			try {
+				myRandomAccessFile.close();
+			} catch (IOException e) {
+				ourLog.warn("Failed to close {}: {}", myFile.getAbsolutePath(), e.toString());
+			}
+		}
+
+		void delete() {
+			close();
+			if (!myFile.delete()) {
+				ourLog.warn("Failed to delete consumed segment {}", myFile.getAbsolutePath());
+			}
+		}
+
+	}
+
+}
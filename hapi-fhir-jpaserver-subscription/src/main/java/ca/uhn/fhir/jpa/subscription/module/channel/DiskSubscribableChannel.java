@@ -0,0 +1,298 @@
+package ca.uhn.fhir.jpa.subscription.module.channel;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.subscription.module.subscriber.BaseJsonMessage;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+
+/**
+ * A {@link SubscribableChannel} which stores messages in a {@link DiskSegmentLog} so
+ * that they survive a restart, and so that a burst of messages doesn't need to
+ * be held on the heap.
+ * <p>
+ * Messages are read from the log in order by a single thread and are handed off to a
+ * pool of consumer threads. The consumer offset only advances past a message once
+ * every subscribed handler has processed it, so messages which were in progress when
+ * the channel was closed (or the JVM crashed) are delivered again when the channel
+ * is reopened (i.e. delivery is at-least-once). Messages are only read and delivered
+ * while at least one handler is subscribed, and a message which is still waiting for
+ * a handler when the channel is closed is left in the log.
+ * </p>
+ * <p>
+ * Only {@link BaseJsonMessage} subclasses can be sent, since they are serialized
+ * to JSON in order to be stored. Message headers are not stored.
+ * </p>
+ */
+public class DiskSubscribableChannel implements SubscribableChannel, DisposableBean {
+
+	private static final Logger ourLog = LoggerFactory.getLogger(DiskSubscribableChannel.class);
+	private static final long READ_TIMEOUT_MILLIS = 1000;
+
+	private final DiskSegmentLog myLog;
+	private final ObjectMapper myObjectMapper;
+	private final Set<MessageHandler> myHandlers = new CopyOnWriteArraySet<>();
+	private final ThreadPoolExecutor myConsumerExecutor;
+	private final Thread myReaderThread;
+	// Offsets of messages which have been read but not yet fully handled
+	private final TreeSet<Long> myInProgressOffsets = new TreeSet<>();
+	private long myReadOffset;
+	private volatile boolean myStopped;
+
+	public DiskSubscribableChannel(DiskSegmentLog theLog, String theThreadNamingPattern, int theConcurrentConsumers) {
+		myLog = theLog;
+		myReadOffset = theLog.getCommittedOffset();
+
+		myObjectMapper = new ObjectMapper();
+		myObjectMapper.addMixIn(BaseJsonMessage.class, IgnoreHeadersMixIn.class);
+		myObjectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+		ThreadFactory threadFactory = new BasicThreadFactory.Builder()
+			.namingPattern(theThreadNamingPattern)
+			.daemon(false)
+			.priority(Thread.NORM_PRIORITY)
+			.build();
+		BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(theConcurrentConsumers);
+		RejectedExecutionHandler rejectedExecutionHandler = (theRunnable, theExecutor) -> {
+			try {
+				queue.put(theRunnable);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Task " + theRunnable.toString() +
+					" rejected from " + e.toString());
+			}
+		};
+		myConsumerExecutor = new ThreadPoolExecutor(
+			theConcurrentConsumers,
+			theConcurrentConsumers,
+			0L,
+			TimeUnit.MILLISECONDS,
+			queue,
+			threadFactory,
+			rejectedExecutionHandler);
+
+		myReaderThread = threadFactory.newThread(this::readMessages);
+	}
+
+	@Override
+	public synchronized boolean subscribe(MessageHandler theHandler) {
+		boolean retVal = myHandlers.add(theHandler);
+		synchronized (myHandlers) {
+			myHandlers.notifyAll();
+		}
+
+		// Don't start reading until there is someone to deliver to, so that
+		// messages left over from a previous run aren't dropped
+		if (myReaderThread.getState() == Thread.State.NEW) {
+			myReaderThread.start();
+		}
+		return retVal;
+	}
+
+	@Override
+	public boolean unsubscribe(MessageHandler theHandler) {
+		return myHandlers.remove(theHandler);
+	}
+
+	/**
+	 * Stores the message in the log, waiting for up to the given timeout (or indefinitely
+	 * if the timeout is negative) for space if the log is full
+	 *
+	 * @return Returns <code>false</code> if the log was still full when the timeout expired
+	 */
+	@Override
+	public boolean send(Message<?> theMessage, long theTimeout) {
+		if (!(theMessage instanceof BaseJsonMessage)) {
+			throw new MessageDeliveryException(theMessage, "Unable to store message of type " + theMessage.getClass().getName());
+		}
+
+		byte[] record;
+		try {
+			String json = myObjectMapper.writeValueAsString(theMessage);
+			record = (theMessage.getClass().getName() + "\n" + json).getBytes(StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new MessageDeliveryException(theMessage, "Failed to serialize message", e);
+		}
+
+		if (myLog.append(record, theTimeout) == -1) {
+			ourLog.warn("Timed out after {}ms waiting for space to store message", theTimeout);
+			return false;
+		}
+		return true;
+	}
+
+	private void readMessages() {
+		long offset = myReadOffset;
+		while (!myStopped) {
+			if (!awaitHandlers()) {
+				return;
+			}
+
+			DiskSegmentLog.Record record;
+			try {
+				record = myLog.read(offset, READ_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (record == null) {
+				continue;
+			}
+
+			Message<?> message = parseMessage(record);
+			synchronized (myInProgressOffsets) {
+				myInProgressOffsets.add(record.getOffset());
+				myReadOffset = record.getNextOffset();
+			}
+			offset = record.getNextOffset();
+
+			try {
+				myConsumerExecutor.execute(() -> {
+					// If the message isn't delivered it stays in progress, so it won't be committed
+					if (message == null || deliver(message)) {
+						markHandled(record.getOffset());
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// We're shutting down, and the message will be replayed next time
+				return;
+			}
+		}
+	}
+
+	private Message<?> parseMessage(DiskSegmentLog.Record theRecord) {
+		String recordString = new String(theRecord.getBody(), StandardCharsets.UTF_8);
+		int separatorIndex = recordString.indexOf('\n');
+		try {
+			Class<? extends BaseJsonMessage> type = Class.forName(recordString.substring(0, separatorIndex)).asSubclass(BaseJsonMessage.class);
+			return myObjectMapper.readValue(recordString.substring(separatorIndex + 1), type);
+		} catch (ClassNotFoundException | ClassCastException | IOException | IndexOutOfBoundsException e) {
+			ourLog.error("Discarding unreadable message at offset {}", theRecord.getOffset(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Waits until at least one handler is subscribed
+	 *
+	 * @return Returns <code>false</code> if the channel was stopped first
+	 */
+	private boolean awaitHandlers() {
+		synchronized (myHandlers) {
+			while (myHandlers.isEmpty()) {
+				if (myStopped) {
+					return false;
+				}
+				try {
+					myHandlers.wait(READ_TIMEOUT_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return !myStopped;
+	}
+
+	/**
+	 * Delivers the message to every subscribed handler, waiting for a handler to be
+	 * subscribed if there are none (e.g. because they were unsubscribed while the
+	 * channel is being closed)
+	 *
+	 * @return Returns <code>false</code> if the message wasn't delivered because the channel
+	 * was stopped, in which case it should be delivered again when the channel is reopened
+	 */
+	private boolean deliver(Message<?> theMessage) {
+		List<MessageHandler> handlers;
+		do {
+			if (!awaitHandlers()) {
+				return false;
+			}
+			handlers = new ArrayList<>(myHandlers);
+		} while (handlers.isEmpty());
+
+		for (MessageHandler next : handlers) {
+			try {
+				next.handleMessage(theMessage);
+			} catch (Exception e) {
+				ourLog.error("Failed to handle message: {}", theMessage, e);
+			}
+		}
+		return true;
+	}
+
+	private void markHandled(long theOffset) {
+		long committableOffset;
+		synchronized (myInProgressOffsets) {
+			myInProgressOffsets.remove(theOffset);
+			committableOffset = myInProgressOffsets.isEmpty() ? myReadOffset : myInProgressOffsets.first();
+		}
+		myLog.commit(committableOffset);
+	}
+
+	/**
+	 * Stops the reader first so that nothing more is handed off to the consumers, and then
+	 * waits for the consumers to finish. Messages which were read but not yet delivered are
+	 * not committed, so they are delivered again when the channel is reopened.
+	 */
+	@Override
+	public void destroy() throws InterruptedException {
+		myStopped = true;
+		myReaderThread.interrupt();
+		if (myReaderThread.getState() != Thread.State.NEW) {
+			myReaderThread.join();
+		}
+		myConsumerExecutor.shutdown();
+		if (!myConsumerExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+			ourLog.warn("Timed out waiting for consumers to finish, unfinished messages will be delivered again");
+		}
+		myLog.close();
+	}
+
+	@VisibleForTesting
+	public long getPendingBytesForUnitTest() {
+		return myLog.getWriteOffset() - myLog.getCommittedOffset();
+	}
+
+	@JsonIgnoreProperties({"headers"})
+	private static abstract class IgnoreHeadersMixIn {
+		// nothing
+	}
+
+}
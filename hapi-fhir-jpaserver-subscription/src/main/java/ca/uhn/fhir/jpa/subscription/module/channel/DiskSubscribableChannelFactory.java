@@ -0,0 +1,144 @@
+package ca.uhn.fhir.jpa.subscription.module.channel;
+
+/*-
+ * #%L
+ * HAPI FHIR Subscription Server
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.subscription.module.cache.SubscriptionConstants;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.messaging.SubscribableChannel;
+
+import java.io.File;
+
+/**
+ * Creates {@link DiskSubscribableChannel channels} which keep their messages on local disk
+ * instead of in memory, so that queued subscription matching and delivery work survives
+ * a restart. Each channel is stored in its own subdirectory of the given directory.
+ * <p>
+ * To use this factory instead of the default in-memory one, declare it as the
+ * {@link ISubscribableChannelFactory} bean in the application configuration.
+ * </p>
+ */
+public class DiskSubscribableChannelFactory implements ISubscribableChannelFactory {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+	public static final int DEFAULT_MAX_SEGMENTS = 16;
+	public static final int DEFAULT_FSYNC_BATCH_SIZE = 100;
+	public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = DateUtils.MILLIS_PER_SECOND;
+
+	private final File myDirectory;
+	private int mySegmentSize = DEFAULT_SEGMENT_SIZE;
+	private int myMaxSegments = DEFAULT_MAX_SEGMENTS;
+	private int myFsyncBatchSize = DEFAULT_FSYNC_BATCH_SIZE;
+	private long myFsyncIntervalMillis = DEFAULT_FSYNC_INTERVAL_MILLIS;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theDirectory The directory in which channel data is stored
+	 */
+	public DiskSubscribableChannelFactory(File theDirectory) {
+		Validate.notNull(theDirectory, "theDirectory must not be null");
+		myDirectory = theDirectory;
+	}
+
+	@Override
+	public SubscribableChannel createSubscribableChannel(String theChannelName, int theConcurrentConsumers) {
+		File channelDirectory = new File(myDirectory, theChannelName.replaceAll("[^a-zA-Z0-9._-]", "_"));
+		DiskSegmentLog log = new DiskSegmentLog(channelDirectory, mySegmentSize, myMaxSegments, myFsyncBatchSize, myFsyncIntervalMillis);
+		return new DiskSubscribableChannel(log, theChannelName + "-%d", theConcurrentConsumers);
+	}
+
+	@Override
+	public int getDeliveryChannelConcurrentConsumers() {
+		return SubscriptionConstants.DELIVERY_CHANNEL_CONCURRENT_CONSUMERS;
+	}
+
+	@Override
+	public int getMatchingChannelConcurrentConsumers() {
+		return SubscriptionConstants.MATCHING_CHANNEL_CONCURRENT_CONSUMERS;
+	}
+
+	/**
+	 * The size in bytes of each segment file. No single message may be larger than this.
+	 * The maximum disk space used by each channel is this value multiplied by
+	 * {@link #getMaxSegments() the maximum number of segments}. Defaults to {@link #DEFAULT_SEGMENT_SIZE}.
+	 */
+	public int getSegmentSize() {
+		return mySegmentSize;
+	}
+
+	/**
+	 * The size in bytes of each segment file. No single message may be larger than this.
+	 * The maximum disk space used by each channel is this value multiplied by
+	 * {@link #getMaxSegments() the maximum number of segments}. Defaults to {@link #DEFAULT_SEGMENT_SIZE}.
+	 */
+	public void setSegmentSize(int theSegmentSize) {
+		mySegmentSize = theSegmentSize;
+	}
+
+	/**
+	 * The maximum number of segment files for each channel. When a channel is full,
+	 * senders block until its consumers catch up. Defaults to {@link #DEFAULT_MAX_SEGMENTS}.
+	 */
+	public int getMaxSegments() {
+		return myMaxSegments;
+	}
+
+	/**
+	 * The maximum number of segment files for each channel. When a channel is full,
+	 * senders block until its consumers catch up. Defaults to {@link #DEFAULT_MAX_SEGMENTS}.
+	 */
+	public void setMaxSegments(int theMaxSegments) {
+		myMaxSegments = theMaxSegments;
+	}
+
+	/**
+	 * Messages are flushed to disk after this many messages have been sent, or after
+	 * {@link #getFsyncIntervalMillis()} has passed. Defaults to {@link #DEFAULT_FSYNC_BATCH_SIZE}.
+	 */
+	public int getFsyncBatchSize() {
+		return myFsyncBatchSize;
+	}
+
+	/**
+	 * Messages are flushed to disk after this many messages have been sent, or after
+	 * {@link #getFsyncIntervalMillis()} has passed. Defaults to {@link #DEFAULT_FSYNC_BATCH_SIZE}.
+	 */
+	public void setFsyncBatchSize(int theFsyncBatchSize) {
+		myFsyncBatchSize = theFsyncBatchSize;
+	}
+
+	/**
+	 * Messages are flushed to disk after this many milliseconds have passed, or after
+	 * {@link #getFsyncBatchSize()} messages have been sent. Defaults to {@link #DEFAULT_FSYNC_INTERVAL_MILLIS}.
+	 */
+	public long getFsyncIntervalMillis() {
+		return myFsyncIntervalMillis;
+	}
+
+	/**
+	 * Messages are flushed to disk after this many milliseconds have passed, or after
+	 * {@link #getFsyncBatchSize()} messages have been sent. Defaults to {@link #DEFAULT_FSYNC_INTERVAL_MILLIS}.
+	 */
+	public void setFsyncIntervalMillis(long theFsyncIntervalMillis) {
+		myFsyncIntervalMillis = theFsyncIntervalMillis;
+	}
+}
@@ -20,6 +20,9 @@ package ca.uhn.fhir.jpa.subscription.module.subscriber;
  * #L%
  */
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.interceptor.api.HookParams;
 import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
 import ca.uhn.fhir.jpa.subscription.module.CanonicalSubscription;
@@ -31,11 +34,19 @@ import ca.uhn.fhir.rest.client.interceptor.SimpleRequestHeaderInterceptor;
 import ca.uhn.fhir.rest.gclient.IClientExecutable;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.google.common.annotations.VisibleForTesting;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.MessagingException;
@@ -43,16 +54,42 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 @Component
 @Scope("prototype")
 public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDeliverySubscriber {
+	/**
+	 * How long a batched delivery waits for its batch to fill if the subscription
+	 * doesn't specify a batch window
+	 */
+	public static final int DEFAULT_BATCH_WINDOW_MILLIS = (int) DateUtils.MILLIS_PER_SECOND;
+	private static final long MAX_RETRY_DELAY_MILLIS = DateUtils.MILLIS_PER_MINUTE;
+	private static final int MAX_CACHED_CLIENTS = 1000;
+
 	@Autowired
 	IResourceRetriever myResourceRetriever;
 	private Logger ourLog = LoggerFactory.getLogger(SubscriptionDeliveringRestHookSubscriber.class);
 
+	/*
+	 * A single delivery handler can be shared by several subscriptions (they share
+	 * a channel when they have the same channel name), so everything below is
+	 * keyed by endpoint or subscription
+	 */
+	private final Cache<String, IGenericClient> myClients = Caffeine
+		.newBuilder()
+		.maximumSize(MAX_CACHED_CLIENTS)
+		.expireAfterAccess(10, TimeUnit.MINUTES)
+		.build();
+	private final Map<String, Semaphore> myEndpointPermits = new ConcurrentHashMap<>();
+	private final Map<String, PendingBatch> myPendingBatches = new ConcurrentHashMap<>();
+	private ScheduledThreadPoolExecutor myBatchFlushExecutor;
+	private long myRetryDelayMillis = DateUtils.MILLIS_PER_SECOND;
+
 	protected void deliverPayload(ResourceDeliveryMessage theMsg, CanonicalSubscription theSubscription, EncodingEnum thePayloadType, IGenericClient theClient) {
 		IBaseResource payloadResource = getAndMassagePayload(theMsg, theSubscription);
 
@@ -146,42 +183,288 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 			return;
 		}
 
-		// Grab the endpoint from the subscription
-		String endpointUrl = subscription.getEndpointUrl();
-
 		// Grab the payload type (encoding mimetype) from the subscription
 		String payloadString = subscription.getPayloadString();
-		EncodingEnum payloadType = null;
-		if (payloadString != null) {
-			payloadType = EncodingEnum.forContentType(payloadString);
+		EncodingEnum payloadType = payloadString != null ? EncodingEnum.forContentType(payloadString) : null;
+
+		IGenericClient client = getClient(subscription);
+
+		if (client != null && payloadType != null && subscription.getRestHookDetails().getBatchSize() > 1) {
+			IBaseResource payloadResource = getAndMassagePayload(theMessage, subscription);
+			if (isBatchable(theMessage, payloadResource)) {
+				addToBatch(new PendingDelivery(theMessage, subscription, payloadType, client, payloadResource));
+				return;
+			}
+
+			// Anything that can't be batched (e.g. a delete) goes after whatever is already waiting
+			PendingBatch batch = getPendingBatch(subscription);
+			batch.myDeliveryLock.lock();
+			try {
+				flushBatch(subscription, theMessage);
+				deliverWithRetries(subscription, () -> doDelivery(theMessage, subscription, payloadType, client, payloadResource));
+			} finally {
+				batch.myDeliveryLock.unlock();
+			}
+		} else {
+			deliverWithRetries(subscription, () -> deliverPayload(theMessage, subscription, payloadType, client));
+		}
+
+		afterRestHookDelivery(subscription, theMessage);
+	}
+
+	private void afterRestHookDelivery(CanonicalSubscription theSubscription, ResourceDeliveryMessage theMessage) {
+		// Interceptor call: SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY
+		HookParams params = new HookParams()
+			.add(CanonicalSubscription.class, theSubscription)
+			.add(ResourceDeliveryMessage.class, theMessage);
+		getInterceptorBroadcaster().callHooks(Pointcut.SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY, params);
+	}
+
+	/**
+	 * Clients are reused across deliveries to the same endpoint with the same headers. Clients
+	 * which haven't been used for a while are discarded so that the cache doesn't keep growing
+	 * as subscriptions come and go.
+	 */
+	private IGenericClient getClient(CanonicalSubscription theSubscription) {
+		String endpointUrl = theSubscription.getEndpointUrl();
+		if (isBlank(endpointUrl)) {
+			return null;
 		}
 
-		// Create the client request
-		myFhirContext.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
-		IGenericClient client = null;
-		if (isNotBlank(endpointUrl)) {
-			client = myFhirContext.newRestfulGenericClient(endpointUrl);
+		List<String> headers = theSubscription.getHeaders();
+		String key = endpointUrl + " " + headers;
+		return myClients.get(key, t -> {
+			myFhirContext.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+			IGenericClient client = myFhirContext.newRestfulGenericClient(endpointUrl);
 
 			// Additional headers specified in the subscription
-			List<String> headers = subscription.getHeaders();
 			for (String next : headers) {
 				if (isNotBlank(next)) {
 					client.registerInterceptor(new SimpleRequestHeaderInterceptor(next));
 				}
 			}
+			return client;
+		});
+	}
+
+	/**
+	 * Invokes the endpoint, respecting the subscription's concurrency limit and
+	 * retrying failures with an exponentially increasing delay
+	 */
+	private void deliverWithRetries(CanonicalSubscription theSubscription, Runnable theDelivery) {
+		int retryCount = theSubscription.getRestHookDetails().getDeliveryRetryCount();
+		Semaphore permits = getEndpointPermits(theSubscription);
+
+		for (int attempt = 0; ; attempt++) {
+			try {
+				if (permits != null) {
+					permits.acquireUninterruptibly();
+				}
+				try {
+					theDelivery.run();
+				} finally {
+					if (permits != null) {
+						permits.release();
+					}
+				}
+				return;
+			} catch (RuntimeException e) {
+				if (attempt >= retryCount) {
+					throw e;
+				}
+
+				long delay = Math.min(myRetryDelayMillis << Math.min(attempt, 20), MAX_RETRY_DELAY_MILLIS);
+				ourLog.warn("Failed to deliver rest-hook to {} ({}), will retry in {}ms", theSubscription.getEndpointUrl(), e.toString(), delay);
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException theInterruptedException) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
 		}
+	}
 
-		deliverPayload(theMessage, subscription, payloadType, client);
+	private Semaphore getEndpointPermits(CanonicalSubscription theSubscription) {
+		int maxConcurrentDeliveries = theSubscription.getRestHookDetails().getMaxConcurrentDeliveries();
+		if (maxConcurrentDeliveries <= 0) {
+			return null;
+		}
+		String key = theSubscription.getEndpointUrl() + " " + maxConcurrentDeliveries;
+		return myEndpointPermits.computeIfAbsent(key, t -> new Semaphore(maxConcurrentDeliveries));
+	}
 
-		// Interceptor call: SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY
-		params = new HookParams()
-			.add(CanonicalSubscription.class, subscription)
-			.add(ResourceDeliveryMessage.class, theMessage);
-		if (!getInterceptorBroadcaster().callHooks(Pointcut.SUBSCRIPTION_AFTER_REST_HOOK_DELIVERY, params)) {
-			//noinspection UnnecessaryReturnStatement
+	private boolean isBatchable(ResourceDeliveryMessage theMessage, IBaseResource thePayloadResource) {
+		switch (theMessage.getOperationType()) {
+			case CREATE:
+			case UPDATE:
+				return thePayloadResource != null && !thePayloadResource.isEmpty() && thePayloadResource.getIdElement().hasIdPart();
+			default:
+				return false;
+		}
+	}
+
+	private PendingBatch getPendingBatch(CanonicalSubscription theSubscription) {
+		String subscriptionId = theSubscription.getIdElement(myFhirContext).toUnqualifiedVersionless().getValue();
+		return myPendingBatches.computeIfAbsent(subscriptionId, t -> new PendingBatch());
+	}
+
+	private void addToBatch(PendingDelivery theDelivery) {
+		CanonicalSubscription subscription = theDelivery.getSubscription();
+		PendingBatch batch = getPendingBatch(subscription);
+
+		boolean full = false;
+		synchronized (batch) {
+			String resourceId = theDelivery.getPayloadResource().getIdElement().toUnqualifiedVersionless().getValue();
+			PendingDelivery superseded = batch.myDeliveries.put(resourceId, theDelivery);
+			if (superseded != null) {
+				ourLog.debug("Delivery of {} for {} supersedes a pending delivery of the same resource", resourceId, subscription.getIdElement(myFhirContext).toUnqualifiedVersionless().getValue());
+			}
+
+			if (batch.myDeliveries.size() >= subscription.getRestHookDetails().getBatchSize()) {
+				full = true;
+			} else if (batch.myScheduledFlush == null) {
+				int window = subscription.getRestHookDetails().getBatchWindowMillis();
+				if (window <= 0) {
+					window = DEFAULT_BATCH_WINDOW_MILLIS;
+				}
+				batch.myScheduledFlush = getBatchFlushExecutor().schedule(() -> flushBatch(subscription, null), window, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		if (full) {
+			flushBatch(subscription, theDelivery.getMessage());
+		}
+	}
+
+	/**
+	 * Deliver anything that is waiting in a batch for the given subscription
+	 * <p>
+	 * Batches are drained and delivered while holding the subscription's delivery lock,
+	 * so that a batch flushed by the timer can't overtake (or be overtaken by) a delivery
+	 * made by the thread handling the subscription's messages.
+	 * </p>
+	 *
+	 * @param theCurrentMessage If this flush happens while handling a message, that message, since a
+	 *                          failure will be reported for it by the caller
+	 */
+	private void flushBatch(CanonicalSubscription theSubscription, ResourceDeliveryMessage theCurrentMessage) {
+		String subscriptionId = theSubscription.getIdElement(myFhirContext).toUnqualifiedVersionless().getValue();
+		PendingBatch batch = myPendingBatches.get(subscriptionId);
+		if (batch == null) {
 			return;
 		}
 
+		batch.myDeliveryLock.lock();
+		try {
+			List<PendingDelivery> deliveries;
+			synchronized (batch) {
+				deliveries = batch.drain();
+			}
+			if (deliveries.isEmpty()) {
+				return;
+			}
+
+			if (theCurrentMessage != null) {
+				deliverBatch(deliveries, theCurrentMessage);
+			} else {
+				try {
+					deliverBatch(deliveries, null);
+				} catch (Exception e) {
+					ourLog.error("Failure delivering rest-hook batch for subscription: " + subscriptionId, e);
+				}
+			}
+		} finally {
+			batch.myDeliveryLock.unlock();
+		}
+	}
+
+	/**
+	 * Delivers all of the given resources in a single transaction
+	 */
+	private void deliverBatch(List<PendingDelivery> theDeliveries, ResourceDeliveryMessage theCurrentMessage) {
+		PendingDelivery last = theDeliveries.get(theDeliveries.size() - 1);
+		CanonicalSubscription subscription = last.getSubscription();
+		IBaseBundle bundle = createTransactionBundle(theDeliveries);
+
+		ourLog.info("Delivering rest-hook batch of {} payload(s) for {}", theDeliveries.size(), subscription.getIdElement(myFhirContext).toUnqualifiedVersionless().getValue());
+
+		try {
+			deliverWithRetries(subscription, () -> last.getClient().transaction().withBundle(bundle).encoded(last.getPayloadType()).execute());
+		} catch (RuntimeException e) {
+			for (PendingDelivery next : theDeliveries) {
+				if (next.getMessage() != theCurrentMessage) {
+					// Interceptor call: SUBSCRIPTION_AFTER_DELIVERY_FAILED
+					HookParams hookParams = new HookParams()
+						.add(ResourceDeliveryMessage.class, next.getMessage())
+						.add(Exception.class, e);
+					getInterceptorBroadcaster().callHooks(Pointcut.SUBSCRIPTION_AFTER_DELIVERY_FAILED, hookParams);
+				}
+			}
+			throw e;
+		}
+
+		for (PendingDelivery next : theDeliveries) {
+			afterRestHookDelivery(next.getSubscription(), next.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a transaction Bundle with an entry for each delivery. Every entry is sent as
+	 * a PUT to the resource's versionless ID, creates included, exactly as unbatched
+	 * delivery does, so that the receiving server keeps the same resource IDs.
+	 */
+	private IBaseBundle createTransactionBundle(List<PendingDelivery> theDeliveries) {
+		RuntimeResourceDefinition bundleDef = myFhirContext.getResourceDefinition("Bundle");
+		IBaseBundle retVal = (IBaseBundle) bundleDef.newInstance();
+		setPrimitiveChild(bundleDef, retVal, "type", "transaction");
+
+		BaseRuntimeChildDefinition entryChild = bundleDef.getChildByName("entry");
+		BaseRuntimeElementCompositeDefinition<?> entryDef = (BaseRuntimeElementCompositeDefinition<?>) entryChild.getChildByName("entry");
+		BaseRuntimeChildDefinition resourceChild = entryDef.getChildByName("resource");
+		BaseRuntimeChildDefinition requestChild = entryDef.getChildByName("request");
+		BaseRuntimeElementCompositeDefinition<?> requestDef = (BaseRuntimeElementCompositeDefinition<?>) requestChild.getChildByName("request");
+
+		for (PendingDelivery next : theDeliveries) {
+			IBaseResource resource = next.getPayloadResource();
+			String resourceType = myFhirContext.getResourceDefinition(resource).getName();
+
+			IBase request = requestDef.newInstance(requestChild.getInstanceConstructorArguments());
+			setPrimitiveChild(requestDef, request, "method", "PUT");
+			setPrimitiveChild(requestDef, request, "url", resourceType + "/" + resource.getIdElement().getIdPart());
+
+			IBase entry = entryDef.newInstance(entryChild.getInstanceConstructorArguments());
+			resourceChild.getMutator().setValue(entry, resource);
+			requestChild.getMutator().setValue(entry, request);
+			entryChild.getMutator().addValue(retVal, entry);
+		}
+
+		return retVal;
+	}
+
+	private static void setPrimitiveChild(BaseRuntimeElementCompositeDefinition<?> theDefinition, IBase theTarget, String theChildName, String theValue) {
+		BaseRuntimeChildDefinition child = theDefinition.getChildByName(theChildName);
+		IPrimitiveType<?> value = (IPrimitiveType<?>) child.getChildByName(theChildName).newInstance(child.getInstanceConstructorArguments());
+		value.setValueAsString(theValue);
+		child.getMutator().setValue(theTarget, value);
+	}
+
+	private synchronized ScheduledThreadPoolExecutor getBatchFlushExecutor() {
+		if (myBatchFlushExecutor == null) {
+			BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+				.namingPattern("resthook-batch-%d")
+				.daemon(true)
+				.build();
+			myBatchFlushExecutor = new ScheduledThreadPoolExecutor(1, threadFactory);
+			myBatchFlushExecutor.setKeepAliveTime(1, TimeUnit.MINUTES);
+			myBatchFlushExecutor.allowCoreThreadTimeOut(true);
+		}
+		return myBatchFlushExecutor;
+	}
+
+	@VisibleForTesting
+	void setRetryDelayMillisForUnitTest(long theRetryDelayMillis) {
+		myRetryDelayMillis = theRetryDelayMillis;
 	}
 
 	/**
@@ -216,4 +499,62 @@ public class SubscriptionDeliveringRestHookSubscriber extends BaseSubscriptionDe
 			throw new ResourceNotFoundException(e.getMessage());
 		}
 	}
+
+	private static class PendingBatch {
+
+		// Keyed by versionless resource ID so that repeated changes to one resource are coalesced
+		private final LinkedHashMap<String, PendingDelivery> myDeliveries = new LinkedHashMap<>();
+		// Held while draining and delivering, so that deliveries for one subscription happen in order
+		private final ReentrantLock myDeliveryLock = new ReentrantLock();
+		private ScheduledFuture<?> myScheduledFlush;
+
+		private List<PendingDelivery> drain() {
+			List<PendingDelivery> retVal = new ArrayList<>(myDeliveries.values());
+			myDeliveries.clear();
+			if (myScheduledFlush != null) {
+				myScheduledFlush.cancel(false);
+				myScheduledFlush = null;
+			}
+			return retVal;
+		}
+
+	}
+
+	private static class PendingDelivery {
+
+		private final ResourceDeliveryMessage myMessage;
+		private final CanonicalSubscription mySubscription;
+		private final EncodingEnum myPayloadType;
+		private final IGenericClient myClient;
+		private final IBaseResource myPayloadResource;
+
+		PendingDelivery(ResourceDeliveryMessage theMessage, CanonicalSubscription theSubscription, EncodingEnum thePayloadType, IGenericClient theClient, IBaseResource thePayloadResource) {
+			myMessage = theMessage;
+			mySubscription = theSubscription;
+			myPayloadType = thePayloadType;
+			myClient = theClient;
+			myPayloadResource = thePayloadResource;
+		}
+
+		ResourceDeliveryMessage getMessage() {
+			return myMessage;
+		}
+
+		CanonicalSubscription getSubscription() {
+			return mySubscription;
+		}
+
+		EncodingEnum getPayloadType() {
+			return myPayloadType;
+		}
+
+		IGenericClient getClient() {
+			return myClient;
+		}
+
+		IBaseResource getPayloadResource() {
+			return myPayloadResource;
+		}
+
+	}
 }
@@ -0,0 +1,187 @@
+package ca.uhn.fhir.jpa.subscription.module.channel;
+
+import ca.uhn.fhir.jpa.subscription.module.ResourceModifiedMessage;
+import ca.uhn.fhir.jpa.subscription.module.subscriber.ResourceModifiedJsonMessage;
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.*;
+
+public class DiskSubscribableChannelTest {
+
+	@Rule
+	public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+	private final List<String> myReceivedIds = Collections.synchronizedList(new ArrayList<>());
+	private final MessageHandler myHandler = theMessage -> myReceivedIds.add(((ResourceModifiedJsonMessage) theMessage).getPayload().getId());
+	private DiskSubscribableChannel myChannel;
+
+	@After
+	public void after() throws InterruptedException {
+		if (myChannel != null) {
+			myChannel.destroy();
+		}
+	}
+
+	@Test
+	public void testSendAndReceive() throws Exception {
+		myChannel = newChannel(1024 * 1024);
+		myChannel.subscribe(myHandler);
+
+		myChannel.send(newMessage("Patient/1"));
+		myChannel.send(newMessage("Patient/2"));
+		myChannel.send(newMessage("Patient/3"));
+
+		await().until(() -> myReceivedIds.size() == 3);
+		assertThat(myReceivedIds, containsInAnyOrder("Patient/1", "Patient/2", "Patient/3"));
+		await().until(() -> myChannel.getPendingBytesForUnitTest() == 0);
+	}
+
+	@Test
+	public void testUndeliveredMessagesReplayedAfterRestart() throws Exception {
+		myChannel = newChannel(1024 * 1024);
+		myChannel.send(newMessage("Patient/1"));
+		myChannel.send(newMessage("Patient/2"));
+		myChannel.destroy();
+		assertThat(myReceivedIds, empty());
+
+		myChannel = newChannel(1024 * 1024);
+		myChannel.subscribe(myHandler);
+
+		await().until(() -> myReceivedIds.size() == 2);
+		assertThat(myReceivedIds, containsInAnyOrder("Patient/1", "Patient/2"));
+		await().until(() -> myChannel.getPendingBytesForUnitTest() == 0);
+		myChannel.destroy();
+
+		// Nothing is delivered twice once it has been handled
+		myReceivedIds.clear();
+		myChannel = newChannel(1024 * 1024);
+		myChannel.subscribe(myHandler);
+		myChannel.send(newMessage("Patient/3"));
+		await().until(() -> myReceivedIds.size() == 1);
+		assertThat(myReceivedIds, contains("Patient/3"));
+	}
+
+	@Test
+	public void testMessagesNotCommittedWhileUnsubscribed() throws Exception {
+		myChannel = newChannel(1024 * 1024);
+		myChannel.subscribe(myHandler);
+		myChannel.send(newMessage("Patient/1"));
+		await().until(() -> myReceivedIds.size() == 1);
+
+		// As when the channel is closed, the handler is unsubscribed before the channel is destroyed
+		myChannel.unsubscribe(myHandler);
+		myChannel.send(newMessage("Patient/2"));
+		myChannel.send(newMessage("Patient/3"));
+		myChannel.destroy();
+		assertThat(myReceivedIds, contains("Patient/1"));
+
+		myReceivedIds.clear();
+		myChannel = newChannel(1024 * 1024);
+		myChannel.subscribe(myHandler);
+		await().until(() -> myReceivedIds.size() == 2);
+		assertThat(myReceivedIds, containsInAnyOrder("Patient/2", "Patient/3"));
+	}
+
+	@Test
+	public void testSendTimesOutWhenLogIsFull() throws Exception {
+		DiskSegmentLog log = new DiskSegmentLog(myTemporaryFolder.newFolder(), 1024, 2, 10, 1000);
+		myChannel = new DiskSubscribableChannel(log, "test-%d", 2);
+
+		// Nobody is subscribed, so nothing is consumed
+		int sent = 0;
+		while (myChannel.send(newMessage("Patient/" + sent), 0)) {
+			sent++;
+			assertThat(sent, lessThan(1000));
+		}
+		assertThat(sent, greaterThan(0));
+
+		long start = System.currentTimeMillis();
+		assertFalse(myChannel.send(newMessage("Patient/A"), 100));
+		assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(100L));
+	}
+
+	@Test
+	public void testAppendsAreSyncedAfterInterval() throws Exception {
+		DiskSegmentLog log = new DiskSegmentLog(myTemporaryFolder.newFolder(), 1000, 3, 100, 50);
+		log.append("message 1".getBytes(StandardCharsets.UTF_8));
+		assertEquals(1, log.getUnsyncedWriteCountForUnitTest());
+
+		// No more appends follow, but the write is still synced once the interval passes
+		await().until(() -> log.getUnsyncedWriteCountForUnitTest() == 0);
+		log.close();
+	}
+
+	@Test
+	public void testConsumedSegmentsAreDeleted() throws Exception {
+		File directory = myTemporaryFolder.newFolder();
+		DiskSegmentLog log = new DiskSegmentLog(directory, 100, 3, 10, 1000);
+
+		for (int i = 0; i < 20; i++) {
+			long offset = log.append(("message " + i).getBytes(StandardCharsets.UTF_8));
+			DiskSegmentLog.Record record = log.read(offset, 0);
+			assertEquals("message " + i, new String(record.getBody(), StandardCharsets.UTF_8));
+			log.commit(record.getNextOffset());
+		}
+
+		assertEquals(1, log.getSegmentCount());
+		assertEquals(log.getWriteOffset(), log.getCommittedOffset());
+		log.close();
+	}
+
+	@Test
+	public void testPartialWriteIsDiscardedOnRecovery() throws Exception {
+		File directory = myTemporaryFolder.newFolder();
+		DiskSegmentLog log = new DiskSegmentLog(directory, 1000, 3, 10, 1000);
+		log.append("message 1".getBytes(StandardCharsets.UTF_8));
+		long secondOffset = log.append("message 2".getBytes(StandardCharsets.UTF_8));
+		log.close();
+
+		// Corrupt the body of the second record, as if the process died part way through writing it
+		try (RandomAccessFile file = new RandomAccessFile(new File(directory, String.format("%019d.log", 0)), "rw")) {
+			file.seek(secondOffset + 10);
+			file.write('X');
+		}
+
+		log = new DiskSegmentLog(directory, 1000, 3, 10, 1000);
+		assertEquals(secondOffset, log.getWriteOffset());
+		assertEquals("message 1", new String(log.read(0, 0).getBody(), StandardCharsets.UTF_8));
+		assertNull(log.read(secondOffset, 0));
+
+		long thirdOffset = log.append("message 3".getBytes(StandardCharsets.UTF_8));
+		assertEquals(secondOffset, thirdOffset);
+		assertEquals("message 3", new String(log.read(thirdOffset, 0).getBody(), StandardCharsets.UTF_8));
+		log.close();
+	}
+
+	private DiskSubscribableChannel newChannel(int theSegmentSize) {
+		DiskSegmentLog log = new DiskSegmentLog(new File(myTemporaryFolder.getRoot(), "channel"), theSegmentSize, 4, 10, 1000);
+		return new DiskSubscribableChannel(log, "test-%d", 2);
+	}
+
+	private Message<ResourceModifiedMessage> newMessage(String theId) {
+		ResourceModifiedMessage payload = new ResourceModifiedMessage();
+		payload.setId(new IdType(theId));
+		payload.setOperationType(ResourceModifiedMessage.OperationTypeEnum.DELETE);
+		return new ResourceModifiedJsonMessage(payload);
+	}
+
+}
@@ -9,13 +9,17 @@ import ca.uhn.fhir.jpa.subscription.module.cache.SubscriptionRegistry;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.gclient.IUpdate;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Patient;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -170,6 +174,113 @@ public class BaseSubscriptionDeliverySubscriberTest {
 		verify(myGenericClient, times(0)).update();
 	}
 
+	@Test
+	public void testRestHookDeliveryReusesClient() {
+		when(myInterceptorBroadcaster.callHooks(any(), any())).thenReturn(true);
+
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setIdElement(new IdType("Subscription/123"));
+		subscription.setEndpointUrl("http://example.com/fhir");
+		subscription.setPayloadString("application/fhir+json");
+
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(newUpdateMessage(subscription, "Patient/1")));
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(newUpdateMessage(subscription, "Patient/2")));
+
+		verify(myRestfulClientFactory, times(1)).newGenericClient(any());
+		verify(myGenericClient, times(2)).update();
+	}
+
+	@Test
+	public void testRestHookDeliveryBatchedAndCoalesced() {
+		when(myInterceptorBroadcaster.callHooks(any(), any())).thenReturn(true);
+
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setIdElement(new IdType("Subscription/123"));
+		subscription.setEndpointUrl("http://example.com/fhir");
+		subscription.setPayloadString("application/fhir+json");
+		subscription.getRestHookDetails().setBatchSize(2);
+		subscription.getRestHookDetails().setBatchWindowMillis(60000);
+
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(newUpdateMessage(subscription, "Patient/1/_history/1")));
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(newUpdateMessage(subscription, "Patient/1/_history/2")));
+		verify(myGenericClient, never()).transaction();
+
+		ResourceDeliveryMessage create = newUpdateMessage(subscription, "Patient/2/_history/1");
+		create.setOperationType(ResourceModifiedMessage.OperationTypeEnum.CREATE);
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(create));
+
+		ArgumentCaptor<Bundle> captor = ArgumentCaptor.forClass(Bundle.class);
+		verify(myGenericClient.transaction(), times(1)).withBundle(captor.capture());
+		verify(myGenericClient, never()).update();
+
+		// Check the Bundle as it will actually be sent
+		String encoded = myCtx.newJsonParser().encodeResourceToString(captor.getValue());
+		Bundle bundle = myCtx.newJsonParser().parseResource(Bundle.class, encoded);
+		assertEquals(Bundle.BundleType.TRANSACTION, bundle.getType());
+		assertEquals(2, bundle.getEntry().size());
+		assertEquals(Bundle.HTTPVerb.PUT, bundle.getEntry().get(0).getRequest().getMethod());
+		assertEquals("Patient/1", bundle.getEntry().get(0).getRequest().getUrl());
+		assertEquals("Patient/1/_history/2", bundle.getEntry().get(0).getResource().getIdElement().toUnqualified().getValue());
+		// Creates are sent as updates too, so that the receiving server keeps the same ID
+		assertEquals(Bundle.HTTPVerb.PUT, bundle.getEntry().get(1).getRequest().getMethod());
+		assertEquals("Patient/2", bundle.getEntry().get(1).getRequest().getUrl());
+		assertEquals("Patient/2/_history/1", bundle.getEntry().get(1).getResource().getIdElement().toUnqualified().getValue());
+	}
+
+	@Test
+	public void testRestHookBatchFlushedBeforeDelete() {
+		when(myInterceptorBroadcaster.callHooks(any(), any())).thenReturn(true);
+
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setIdElement(new IdType("Subscription/123"));
+		subscription.setEndpointUrl("http://example.com/fhir");
+		subscription.setPayloadString("application/fhir+json");
+		subscription.getRestHookDetails().setBatchSize(10);
+		subscription.getRestHookDetails().setBatchWindowMillis(60000);
+
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(newUpdateMessage(subscription, "Patient/1/_history/1")));
+
+		ResourceDeliveryMessage delete = newUpdateMessage(subscription, "Patient/1/_history/2");
+		delete.setOperationType(ResourceModifiedMessage.OperationTypeEnum.DELETE);
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(delete));
+
+		InOrder inOrder = inOrder(myGenericClient);
+		inOrder.verify(myGenericClient).transaction();
+		inOrder.verify(myGenericClient).delete();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRestHookDeliveryRetried() {
+		when(myInterceptorBroadcaster.callHooks(any(), any())).thenReturn(true);
+		mySubscriber.setRetryDelayMillisForUnitTest(1);
+
+		CanonicalSubscription subscription = new CanonicalSubscription();
+		subscription.setIdElement(new IdType("Subscription/123"));
+		subscription.setEndpointUrl("http://example.com/fhir");
+		subscription.setPayloadString("application/fhir+json");
+		subscription.getRestHookDetails().setDeliveryRetryCount(2);
+
+		IUpdate update = mock(IUpdate.class, Answers.RETURNS_DEEP_STUBS);
+		when(myGenericClient.update()).thenThrow(new InternalErrorException("FOO")).thenReturn(update);
+
+		mySubscriber.handleMessage(new ResourceDeliveryJsonMessage(newUpdateMessage(subscription, "Patient/1")));
+
+		verify(myGenericClient, times(2)).update();
+	}
+
+	private ResourceDeliveryMessage newUpdateMessage(CanonicalSubscription theSubscription, String theId) {
+		Patient patient = new Patient();
+		patient.setId(theId);
+		patient.setActive(true);
+
+		ResourceDeliveryMessage retVal = new ResourceDeliveryMessage();
+		retVal.setSubscription(theSubscription);
+		retVal.setPayload(myCtx, patient, EncodingEnum.JSON);
+		retVal.setOperationType(ResourceModifiedMessage.OperationTypeEnum.UPDATE);
+		return retVal;
+	}
+
 	@Test
 	public void testInterceptorBroadcasterAbortsDelivery() {
 
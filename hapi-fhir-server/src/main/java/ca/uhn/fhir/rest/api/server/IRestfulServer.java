@@ -4,6 +4,7 @@ import ca.uhn.fhir.context.api.BundleInclusionRule;
 import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import ca.uhn.fhir.rest.server.IPagingProvider;
 import ca.uhn.fhir.rest.server.IRestfulServerDefaults;
+import ca.uhn.fhir.rest.server.ReadResponseCache;
 
 /*
  * #%L
@@ -33,4 +34,20 @@ public interface IRestfulServer<T extends RequestDetails> extends IRestfulServer
 
 	PreferReturnEnum getDefaultPreferReturn();
 
+	/**
+	 * Should search Bundle responses be encoded and flushed progressively as resources
+	 * are loaded, instead of being built completely before being written (default is <code>false</code>)
+	 */
+	default boolean isStreamBundleResponses() {
+		return false;
+	}
+
+	/**
+	 * Returns the cache of encoded <code>read</code> and <code>vread</code> responses, or
+	 * <code>null</code> if responses should not be cached (which is the default)
+	 */
+	default ReadResponseCache getReadResponseCache() {
+		return null;
+	}
+
 }
@@ -0,0 +1,311 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IRestfulResponse;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.util.DateUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * A size-bounded cache of encoded <code>read</code> and <code>vread</code> response bodies,
+ * for use with {@link RestfulServer#setReadResponseCache(ReadResponseCache)}.
+ * <p>
+ * Entries are keyed on the resource ID and version, along with everything in the request that
+ * changes how the resource is encoded (server base, tenant, response content type, pretty
+ * printing, and request parameters such as <code>_summary</code> and <code>_elements</code>).
+ * Since a specific version of a resource never changes, a <code>vread</code> which hits the cache
+ * is answered without invoking the resource provider at all. A <code>read</code> still invokes the
+ * provider in order to find the current version, but skips encoding the response if that version
+ * has already been encoded.
+ * </p>
+ * <p>
+ * The cache is bypassed for any request where an interceptor is registered that can see or modify
+ * the resources being returned (e.g. the <code>AuthorizationInterceptor</code> or the
+ * <code>ConsentInterceptor</code>), since those interceptors need to see every response.
+ * </p>
+ * <p>
+ * This class is also an interceptor, and is registered with the server's interceptor service by
+ * {@link RestfulServer#setReadResponseCache(ReadResponseCache)}. Resource versions which are
+ * physically deleted by <code>$expunge</code> are removed from the cache, since the server may
+ * later assign the same version IDs to different content (e.g. after an
+ * <code>expungeEverything</code>).
+ * </p>
+ */
+@Interceptor
+public class ReadResponseCache {
+
+	/**
+	 * Default value for {@link #setMaximumBodyLength(int)}
+	 */
+	public static final int DEFAULT_MAXIMUM_BODY_LENGTH = 100000;
+
+	private final Cache<String, Entry> myEntries;
+	private final int myMaximumEntries;
+	private int myMaximumBodyLength = DEFAULT_MAXIMUM_BODY_LENGTH;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theMaximumEntries The maximum number of encoded responses to keep
+	 */
+	public ReadResponseCache(int theMaximumEntries) {
+		Validate.isTrue(theMaximumEntries > 0, "theMaximumEntries must be greater than 0");
+		myMaximumEntries = theMaximumEntries;
+		myEntries = Caffeine
+			.newBuilder()
+			.maximumSize(theMaximumEntries)
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * Returns the maximum length (in characters) of a response body which will be cached. Larger
+	 * responses are returned normally but are not cached.
+	 */
+	public int getMaximumBodyLength() {
+		return myMaximumBodyLength;
+	}
+
+	/**
+	 * Sets the maximum length (in characters) of a response body which will be cached. Larger
+	 * responses are returned normally but are not cached. Default is {@link #DEFAULT_MAXIMUM_BODY_LENGTH}.
+	 */
+	public void setMaximumBodyLength(int theMaximumBodyLength) {
+		Validate.isTrue(theMaximumBodyLength > 0, "theMaximumBodyLength must be greater than 0");
+		myMaximumBodyLength = theMaximumBodyLength;
+	}
+
+	/**
+	 * Returns the maximum number of entries held by this cache
+	 */
+	public int getMaximumEntries() {
+		return myMaximumEntries;
+	}
+
+	/**
+	 * Returns the number of entries currently held by this cache
+	 */
+	public int size() {
+		myEntries.cleanUp();
+		return (int) myEntries.estimatedSize();
+	}
+
+	/**
+	 * Returns the number of lookups which found an entry
+	 */
+	public long getHitCount() {
+		return myEntries.stats().hitCount();
+	}
+
+	/**
+	 * Returns the number of lookups which did not find an entry
+	 */
+	public long getMissCount() {
+		return myEntries.stats().missCount();
+	}
+
+	/**
+	 * Removes all entries from the cache. This should be called if resource versions
+	 * are physically deleted (e.g. by an <code>$expunge</code> operation).
+	 */
+	public void clear() {
+		myEntries.invalidateAll();
+	}
+
+	/**
+	 * Removes all cached versions of the given resource
+	 */
+	public void remove(String theResourceName, String theIdPart) {
+		String marker = "|" + theResourceName + "/" + theIdPart + "/_history/";
+		myEntries.asMap().keySet().removeIf(t -> t.contains(marker));
+	}
+
+	@Hook(Pointcut.STORAGE_PRESTORAGE_EXPUNGE_RESOURCE)
+	public void expungeResource(IIdType theId) {
+		if (theId != null && theId.hasResourceType() && theId.hasIdPart()) {
+			remove(theId.getResourceType(), theId.getIdPart());
+		} else {
+			clear();
+		}
+	}
+
+	@Hook(Pointcut.STORAGE_PRESTORAGE_EXPUNGE_EVERYTHING)
+	public void expungeEverything() {
+		clear();
+	}
+
+	/**
+	 * Returns the cached response for the given resource version, as it would be encoded for
+	 * the given request, or <code>null</code> if it is not cached
+	 */
+	public Entry get(IRestfulServerDefaults theServer, RequestDetails theRequest, String theResourceName, String theIdPart, String theVersionId) {
+		String key = createKey(theServer, theRequest, theResourceName, theIdPart, theVersionId);
+		return myEntries.getIfPresent(key);
+	}
+
+	/**
+	 * Encodes the given resource for the given request, and stores the result in the cache
+	 * (unless it is longer than {@link #getMaximumBodyLength()})
+	 *
+	 * @param theIdPart The ID part of the resource, as it was requested by the client
+	 */
+	public Entry encodeAndStore(IRestfulServerDefaults theServer, RequestDetails theRequest, String theResourceName, String theIdPart, IBaseResource theResource) {
+		String versionId = theResource.getIdElement().getVersionIdPart();
+		if (isBlank(versionId)) {
+			versionId = theResource.getMeta().getVersionId();
+		}
+		Validate.notBlank(versionId, "Can not cache a resource with no version");
+
+		IParser parser = RestfulServerUtils.getNewParser(theServer.getFhirContext(), theResource.getStructureFhirVersionEnum(), theRequest);
+		String body = parser.encodeResourceToString(theResource);
+
+		String contentLocation = null;
+		IIdType fullId = RestfulServerUtils.fullyQualifyResourceIdOrReturnNull(theServer, theResource, theRequest.getFhirServerBase(), theResource.getIdElement());
+		if (fullId != null) {
+			contentLocation = fullId.getValue();
+		}
+
+		Date lastModified = null;
+		IPrimitiveType<Date> lastUpdated = RestfulServerUtils.extractLastUpdatedFromResource(theResource);
+		if (lastUpdated != null && !lastUpdated.isEmpty()) {
+			lastModified = lastUpdated.getValue();
+		}
+
+		Entry retVal = new Entry(body, determineContentType(theServer, theRequest), contentLocation, versionId, lastModified);
+		if (body.length() <= myMaximumBodyLength) {
+			String key = createKey(theServer, theRequest, theResourceName, theIdPart, versionId);
+			myEntries.put(key, retVal);
+		}
+		return retVal;
+	}
+
+	private static String determineContentType(IRestfulServerDefaults theServer, RequestDetails theRequest) {
+		RestfulServerUtils.ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingNoDefault(theRequest, theServer.getDefaultResponseEncoding());
+		if (responseEncoding == null) {
+			responseEncoding = new RestfulServerUtils.ResponseEncoding(theServer.getFhirContext(), theServer.getDefaultResponseEncoding(), null);
+		}
+		return responseEncoding.getResourceContentType();
+	}
+
+	/**
+	 * Creates the key for a given resource version, as encoded for the given request
+	 */
+	private static String createKey(IRestfulServerDefaults theServer, RequestDetails theRequest, String theResourceName, String theIdPart, String theVersionId) {
+		StringBuilder b = new StringBuilder();
+		b.append(theRequest.getFhirServerBase());
+		b.append('|').append(theRequest.getTenantId());
+		b.append('|').append(theResourceName);
+		b.append('/').append(theIdPart);
+		b.append("/_history/").append(theVersionId);
+		b.append('|').append(determineContentType(theServer, theRequest));
+		b.append('|').append(RestfulServerUtils.prettyPrintResponse(theServer, theRequest));
+
+		// Sorted so that parameter order doesn't matter
+		Map<String, String[]> parameters = theRequest.getParameters();
+		if (parameters != null) {
+			for (Map.Entry<String, String[]> next : new TreeMap<>(parameters).entrySet()) {
+				b.append('|').append(next.getKey()).append('=').append(Arrays.toString(next.getValue()));
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * A single encoded response
+	 */
+	public static class Entry {
+
+		private final String myBody;
+		private final String myContentType;
+		private final String myContentLocation;
+		private final String myVersionId;
+		private final Date myLastModified;
+
+		Entry(String theBody, String theContentType, String theContentLocation, String theVersionId, Date theLastModified) {
+			myBody = theBody;
+			myContentType = theContentType;
+			myContentLocation = theContentLocation;
+			myVersionId = theVersionId;
+			myLastModified = theLastModified;
+		}
+
+		String getBody() {
+			return myBody;
+		}
+
+		/**
+		 * Returns the version ID of the cached resource
+		 */
+		public String getVersionId() {
+			return myVersionId;
+		}
+
+		/**
+		 * Returns the last updated time of the cached resource, or <code>null</code>
+		 */
+		public Date getLastModified() {
+			return myLastModified;
+		}
+
+		/**
+		 * Writes this response (headers and body) to the client
+		 */
+		public Object stream(IRestfulServerDefaults theServer, RequestDetails theRequest, boolean theRespondGzip) throws IOException {
+			IRestfulResponse response = theRequest.getResponse();
+
+			if (myContentLocation != null) {
+				response.addHeader(Constants.HEADER_CONTENT_LOCATION, myContentLocation);
+			}
+			if (theServer.getETagSupport() == ETagSupportEnum.ENABLED) {
+				response.addHeader(Constants.HEADER_ETAG, RestfulServerUtils.createEtag(myVersionId));
+			}
+			if (myLastModified != null) {
+				response.addHeader(Constants.HEADER_LAST_MODIFIED, DateUtils.formatDate(myLastModified));
+			}
+
+			String charset = Constants.CHARSET_NAME_UTF8;
+			Writer writer = response.getResponseWriter(Constants.STATUS_HTTP_200_OK, null, myContentType, charset, theRespondGzip);
+			writer.write(myBody);
+			return response.sendWriterResponse(Constants.STATUS_HTTP_200_OK, myContentType, charset, writer);
+		}
+	}
+
+}
@@ -133,6 +133,8 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 	private ITenantIdentificationStrategy myTenantIdentificationStrategy;
 	private PreferReturnEnum myDefaultPreferReturn = DEFAULT_PREFER_RETURN;
 	private ElementsSupportEnum myElementsSupport = ElementsSupportEnum.EXTENDED;
+	private boolean myStreamBundleResponses;
+	private ReadResponseCache myReadResponseCache;
 
 	/**
 	 * Constructor. Note that if no {@link FhirContext} is passed in to the server (either through the constructor, or
@@ -1403,6 +1405,72 @@ public class RestfulServer extends HttpServlet implements IRestfulServer<Servlet
 		myUncompressIncomingContents = theUncompressIncomingContents;
 	}
 
+	/**
+	 * Should search Bundle responses be streamed (default is <code>false</code>)
+	 *
+	 * @see #setStreamBundleResponses(boolean)
+	 */
+	@Override
+	public boolean isStreamBundleResponses() {
+		return myStreamBundleResponses;
+	}
+
+	/**
+	 * Should search Bundle responses be streamed (default is <code>false</code>). If set to <code>true</code>,
+	 * large pages of search results are loaded from the {@link ca.uhn.fhir.rest.api.server.IBundleProvider} in
+	 * chunks, and each chunk is encoded and flushed to the client as soon as it has been loaded instead of
+	 * building the complete Bundle in memory first. This applies only to JSON and XML responses, and is
+	 * skipped for any request where an interceptor is registered against
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE}, since those interceptors
+	 * expect to see the complete Bundle.
+	 * <p>
+	 * Note that the <code>200 OK</code> status is sent along with the first chunk. If loading or encoding a
+	 * later chunk fails, the error is logged and the response is ended without closing the Bundle, so clients
+	 * will receive a truncated document which can not be parsed rather than an error status.
+	 * </p>
+	 */
+	public void setStreamBundleResponses(boolean theStreamBundleResponses) {
+		myStreamBundleResponses = theStreamBundleResponses;
+	}
+
+	/**
+	 * Returns the cache of encoded <code>read</code> and <code>vread</code> responses, or
+	 * <code>null</code> if none is configured (which is the default)
+	 *
+	 * @see #setReadResponseCache(ReadResponseCache)
+	 */
+	@Override
+	public ReadResponseCache getReadResponseCache() {
+		return myReadResponseCache;
+	}
+
+	/**
+	 * Sets a cache of encoded <code>read</code> and <code>vread</code> responses. This is useful
+	 * for servers where the same resource versions are read over and over, since a <code>vread</code>
+	 * for a version that is already in the cache is answered without calling the resource provider,
+	 * and a <code>read</code> whose current version is already in the cache is not encoded again.
+	 * The cache is not used for any request where an interceptor is registered against
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#SERVER_OUTGOING_RESPONSE},
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PREACCESS_RESOURCES}, or
+	 * {@link ca.uhn.fhir.interceptor.api.Pointcut#STORAGE_PRESHOW_RESOURCES}, since these
+	 * interceptors may block or modify the resource being returned.
+	 * <p>
+	 * The cache is registered with this server's {@link #getInterceptorService() interceptor service}
+	 * so that entries are removed when resources are expunged.
+	 * </p>
+	 *
+	 * @param theReadResponseCache The cache, or <code>null</code> to disable caching (which is the default)
+	 */
+	public void setReadResponseCache(ReadResponseCache theReadResponseCache) {
+		if (myReadResponseCache != null) {
+			getInterceptorService().unregisterInterceptor(myReadResponseCache);
+		}
+		myReadResponseCache = theReadResponseCache;
+		if (theReadResponseCache != null) {
+			getInterceptorService().registerInterceptor(theReadResponseCache);
+		}
+	}
+
 
 	public void populateRequestDetailsFromRequestPath(RequestDetails theRequestDetails, String theRequestPath) {
 		UrlPathTokenizer tok = new UrlPathTokenizer(theRequestPath);
@@ -890,6 +890,50 @@ public class RestfulServerUtils {
 		return response.sendWriterResponse(theStatusCode, contentType, charset, writer);
 	}
 
+	/**
+	 * Streams a Bundle response, writing the given Bundle first and then appending the entries
+	 * of each Bundle returned by <code>theAdditionalEntries</code>, flushing as each one is written
+	 */
+	public static Object streamResponseAsBundle(IRestfulServerDefaults theServer, IBaseResource theBundle, Iterator<IBaseResource> theAdditionalEntries, boolean theRespondGzip, RequestDetails theRequestDetails) throws IOException {
+		IRestfulResponse response = theRequestDetails.getResponse();
+
+		ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingNoDefault(theRequestDetails, theServer.getDefaultResponseEncoding());
+		if (responseEncoding == null) {
+			responseEncoding = new ResponseEncoding(theServer.getFhirContext(), theServer.getDefaultResponseEncoding(), null);
+		}
+
+		IPrimitiveType<Date> lastUpdated = extractLastUpdatedFromResource(theBundle);
+		if (lastUpdated != null && lastUpdated.isEmpty() == false) {
+			response.addHeader(Constants.HEADER_LAST_MODIFIED, DateUtils.formatDate(lastUpdated.getValue()));
+		}
+
+		String contentType = responseEncoding.getResourceContentType();
+		String charset = Constants.CHARSET_NAME_UTF8;
+		int statusCode = Constants.STATUS_HTTP_200_OK;
+
+		Writer writer = response.getResponseWriter(statusCode, null, contentType, charset, theRespondGzip);
+		IParser parser = getNewParser(theServer.getFhirContext(), theBundle.getStructureFhirVersionEnum(), theRequestDetails);
+		StreamingBundleWriter bundleWriter = new StreamingBundleWriter(theServer.getFhirContext(), parser, responseEncoding.getEncoding(), writer);
+		bundleWriter.writeBundle(theBundle);
+		try {
+			while (theAdditionalEntries.hasNext()) {
+				bundleWriter.writeEntries(theAdditionalEntries.next());
+			}
+		} catch (RuntimeException e) {
+			/*
+			 * The status line and the start of the Bundle have already been sent, so we
+			 * can't return an error response any more. We deliberately don't finish the
+			 * document either, so that the client fails to parse the response instead of
+			 * silently accepting a Bundle with entries missing.
+			 */
+			ourLog.error("Failure while streaming Bundle response, response will be incomplete", e);
+			return response.sendWriterResponse(statusCode, contentType, charset, writer);
+		}
+		bundleWriter.close();
+
+		return response.sendWriterResponse(statusCode, contentType, charset, writer);
+	}
+
 	// static Integer tryToExtractNamedParameter(HttpServletRequest theRequest, String name) {
 	// String countString = theRequest.getParameter(name);
 	// Integer count = null;
@@ -0,0 +1,249 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a Bundle to a {@link Writer} in several parts, so that additional entries
+ * can be appended to the Bundle (and flushed to the client) after the start of the
+ * Bundle has already been written.
+ * <p>
+ * The Bundle passed to {@link #writeBundle(IBaseResource)} is written first, including
+ * any entries it already contains. Each call to {@link #writeEntries(IBaseResource)}
+ * then appends the entries of another Bundle, and {@link #close()} finishes the
+ * document. Entries for a resource which has already been written are skipped, since
+ * included resources may be returned for more than one part of a page.
+ * </p>
+ * <p>
+ * Only JSON and XML encodings are supported, and the Bundle must not have a
+ * signature (which would otherwise need to be written after the entries). If
+ * {@link #close()} is never called the document is left unterminated, which is how
+ * a failure part way through a response is surfaced to the client.
+ * </p>
+ */
+public class StreamingBundleWriter {
+
+	private static final String XML_BUNDLE_END = "</Bundle>";
+
+	private final FhirContext myContext;
+	private final IParser myParser;
+	private final EncodingEnum myEncoding;
+	private final Writer myWriter;
+	private final Set<String> myWrittenResourceIds = new HashSet<>();
+	private BaseRuntimeChildDefinition myEntryChild;
+	private String myTail;
+	private boolean myHaveWrittenEntry;
+
+	/**
+	 * Constructor
+	 */
+	public StreamingBundleWriter(FhirContext theContext, IParser theParser, EncodingEnum theEncoding, Writer theWriter) {
+		Validate.isTrue(theEncoding == EncodingEnum.JSON || theEncoding == EncodingEnum.XML, "Can not stream Bundle using encoding: %s", theEncoding);
+		myContext = theContext;
+		myParser = theParser;
+		myEncoding = theEncoding;
+		myWriter = theWriter;
+	}
+
+	/**
+	 * Writes the given Bundle, leaving it open so that more entries can be added
+	 */
+	public void writeBundle(IBaseResource theBundle) throws IOException {
+		Validate.isTrue(myTail == null, "Bundle has already been written");
+
+		List<IBase> entries = getEntryChild(theBundle).getAccessor().getValues(theBundle);
+		for (IBase next : entries) {
+			myWrittenResourceIds.add(toResourceKey(next));
+		}
+
+		String encoded = myParser.encodeResourceToString(theBundle);
+		int tailIndex;
+		switch (myEncoding) {
+			case JSON:
+				if (entries.isEmpty()) {
+					tailIndex = encoded.lastIndexOf('}');
+					myWriter.write(encoded.substring(0, tailIndex));
+					myWriter.write(",\"entry\":[");
+					myTail = "]" + encoded.substring(tailIndex);
+				} else {
+					tailIndex = encoded.lastIndexOf(']');
+					myWriter.write(encoded.substring(0, tailIndex));
+					myTail = encoded.substring(tailIndex);
+					myHaveWrittenEntry = true;
+				}
+				break;
+			case XML:
+			default:
+				tailIndex = encoded.lastIndexOf(XML_BUNDLE_END);
+				if (tailIndex == -1) {
+					throw new InternalErrorException("Unable to stream Bundle, no closing element found");
+				}
+				myWriter.write(encoded.substring(0, tailIndex));
+				myTail = encoded.substring(tailIndex);
+				break;
+		}
+
+		myWriter.flush();
+	}
+
+	/**
+	 * Appends the entries found in the given Bundle to the Bundle being written, and
+	 * flushes the writer
+	 */
+	public void writeEntries(IBaseResource theEntriesBundle) throws IOException {
+		Validate.isTrue(myTail != null, "Bundle has not been started");
+
+		RuntimeResourceDefinition bundleDef = myContext.getResourceDefinition(theEntriesBundle);
+		BaseRuntimeChildDefinition entryChild = getEntryChild(theEntriesBundle);
+
+		for (IBase nextEntry : entryChild.getAccessor().getValues(theEntriesBundle)) {
+			String key = toResourceKey(nextEntry);
+			if (key != null && !myWrittenResourceIds.add(key)) {
+				continue;
+			}
+
+			IBaseResource singleEntryBundle = bundleDef.newInstance();
+			entryChild.getMutator().addValue(singleEntryBundle, nextEntry);
+			String encoded = myParser.encodeResourceToString(singleEntryBundle);
+
+			switch (myEncoding) {
+				case JSON:
+					if (myHaveWrittenEntry) {
+						myWriter.write(',');
+					}
+					myWriter.write(encoded.substring(findJsonEntryArrayStart(encoded), encoded.lastIndexOf(']')));
+					break;
+				case XML:
+				default:
+					myWriter.write(encoded.substring(encoded.indexOf("<entry"), encoded.lastIndexOf(XML_BUNDLE_END)));
+					break;
+			}
+			myHaveWrittenEntry = true;
+		}
+
+		myWriter.flush();
+	}
+
+	/**
+	 * Finishes the Bundle. Note that this does not close the underlying writer.
+	 */
+	public void close() throws IOException {
+		Validate.isTrue(myTail != null, "Bundle has not been started");
+		myWriter.write(myTail);
+		myTail = null;
+	}
+
+	/**
+	 * Returns the index immediately after the opening bracket of the top level
+	 * <code>entry</code> array in an encoded JSON Bundle. Other arrays may come
+	 * before it (e.g. <code>meta.tag</code>, which holds the SUBSETTED tag when
+	 * a summary mode is used), so this tracks the nesting depth and skips over
+	 * string contents rather than just looking for the first bracket.
+	 */
+	static int findJsonEntryArrayStart(String theEncoded) {
+		int depth = 0;
+		int stringStart = -1;
+		for (int i = 0; i < theEncoded.length(); i++) {
+			char nextChar = theEncoded.charAt(i);
+			if (stringStart != -1) {
+				if (nextChar == '\\') {
+					i++;
+				} else if (nextChar == '"') {
+					if (depth == 1 && "entry".equals(theEncoded.substring(stringStart + 1, i))) {
+						int index = skipWhitespace(theEncoded, i + 1);
+						if (index < theEncoded.length() && theEncoded.charAt(index) == ':') {
+							index = skipWhitespace(theEncoded, index + 1);
+							if (index < theEncoded.length() && theEncoded.charAt(index) == '[') {
+								return index + 1;
+							}
+						}
+					}
+					stringStart = -1;
+				}
+				continue;
+			}
+
+			switch (nextChar) {
+				case '"':
+					stringStart = i;
+					break;
+				case '{':
+				case '[':
+					depth++;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					break;
+				default:
+					break;
+			}
+		}
+		throw new InternalErrorException("Unable to stream Bundle, no entry array found");
+	}
+
+	private static int skipWhitespace(String theString, int theIndex) {
+		int retVal = theIndex;
+		while (retVal < theString.length() && Character.isWhitespace(theString.charAt(retVal))) {
+			retVal++;
+		}
+		return retVal;
+	}
+
+	private BaseRuntimeChildDefinition getEntryChild(IBaseResource theBundle) {
+		if (myEntryChild == null) {
+			RuntimeResourceDefinition bundleDef = myContext.getResourceDefinition(theBundle);
+			myEntryChild = bundleDef.getChildByName("entry");
+		}
+		return myEntryChild;
+	}
+
+	private String toResourceKey(IBase theEntry) {
+		BaseRuntimeElementCompositeDefinition<?> entryDef = (BaseRuntimeElementCompositeDefinition<?>) myEntryChild.getChildByName("entry");
+		BaseRuntimeChildDefinition resourceChild = entryDef.getChildByName("resource");
+		List<IBase> resources = resourceChild.getAccessor().getValues(theEntry);
+		if (resources.isEmpty()) {
+			return null;
+		}
+		IBaseResource resource = (IBaseResource) resources.get(0);
+		if (resource.getIdElement() == null || !resource.getIdElement().hasIdPart()) {
+			return null;
+		}
+		return myContext.getResourceDefinition(resource).getName() + "/" + resource.getIdElement().getIdPart();
+	}
+
+}
@@ -31,6 +31,7 @@ import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
 import ca.uhn.fhir.rest.server.interceptor.consent.ConsentInterceptor;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
@@ -42,6 +43,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.commons.lang3.StringUtils.defaultString;
@@ -62,13 +64,20 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 @Interceptor
 public class AuthorizationInterceptor implements IRuleApplier {
 
+	/**
+	 * Default value for {@link #setRuleListCacheMillis(long)}
+	 */
+	public static final long DEFAULT_RULE_LIST_CACHE_MILLIS = DateUtils.MILLIS_PER_MINUTE;
+	private static final int MAXIMUM_CACHED_RULE_LISTS = 10000;
 	private static final AtomicInteger ourInstanceCount = new AtomicInteger(0);
 	private static final Logger ourLog = LoggerFactory.getLogger(AuthorizationInterceptor.class);
 	private final int myInstanceIndex = ourInstanceCount.incrementAndGet();
 	private final String myRequestSeenResourcesKey = AuthorizationInterceptor.class.getName() + "_" + myInstanceIndex + "_SEENRESOURCES";
 	private final String myRequestRuleListKey = AuthorizationInterceptor.class.getName() + "_" + myInstanceIndex + "_RULELIST";
+	private final ConcurrentHashMap<Object, CompiledRuleList> myCachedRuleLists = new ConcurrentHashMap<>();
 	private PolicyEnum myDefaultPolicy = PolicyEnum.DENY;
 	private Set<AuthorizationFlagsEnum> myFlags = Collections.emptySet();
+	private long myRuleListCacheMillis = DEFAULT_RULE_LIST_CACHE_MILLIS;
 
 	/**
 	 * Constructor
@@ -101,11 +110,19 @@ public class AuthorizationInterceptor implements IRuleApplier {
 	@Override
 	public Verdict applyRulesAndReturnDecision(RestOperationTypeEnum theOperation, RequestDetails theRequestDetails, IBaseResource theInputResource, IIdType theInputResourceId,
 															 IBaseResource theOutputResource, Pointcut thePointcut) {
-		@SuppressWarnings("unchecked")
-		List<IAuthRule> rules = (List<IAuthRule>) theRequestDetails.getUserData().get(myRequestRuleListKey);
-		if (rules == null) {
-			rules = buildRuleList(theRequestDetails);
-			theRequestDetails.getUserData().put(myRequestRuleListKey, rules);
+		CompiledRuleList ruleList = getRuleList(theRequestDetails);
+
+		/*
+		 * Outgoing resources are checked once for every resource returned, so for
+		 * these we only walk the rules which could possibly apply to the operation
+		 * and resource type
+		 */
+		List<IAuthRule> rules;
+		if (theInputResource == null && theInputResourceId == null && theOutputResource != null) {
+			String outputResourceType = theRequestDetails.getFhirContext().getResourceDefinition(theOutputResource).getName();
+			rules = ruleList.getRulesForOutputResource(theOperation, outputResourceType);
+		} else {
+			rules = ruleList.getRules();
 		}
 		Set<AuthorizationFlagsEnum> flags = getFlags();
 		ourLog.trace("Applying {} rules to render an auth decision for operation {}, theInputResource type={}, theOutputResource type={} ", rules.size(), theOperation,
@@ -146,6 +163,75 @@ public class AuthorizationInterceptor implements IRuleApplier {
 		return new ArrayList<>();
 	}
 
+	/**
+	 * Subclasses may override this method to allow the rule list returned by {@link #buildRuleList(RequestDetails)}
+	 * to be reused across requests. If this method returns a non-null key (typically something identifying
+	 * the user making the request, such as the username or access token), any rule list built for the same key
+	 * within the last {@link #setRuleListCacheMillis(long) cache period} will be used instead of calling
+	 * {@link #buildRuleList(RequestDetails)} again. The rule list is always built only once per request.
+	 * <p>
+	 * The default implementation returns <code>null</code>, meaning that rule lists are not reused
+	 * across requests.
+	 * </p>
+	 *
+	 * @param theRequestDetails The individual request currently being applied
+	 * @return A key with appropriate {@link Object#equals(Object)} and {@link Object#hashCode()} implementations, or <code>null</code>
+	 */
+	protected Object getRuleListCacheKey(RequestDetails theRequestDetails) {
+		return null;
+	}
+
+	/**
+	 * The number of milliseconds that a rule list may be reused across requests for, if
+	 * {@link #getRuleListCacheKey(RequestDetails)} has been overridden. Default value for this
+	 * setting is {@link #DEFAULT_RULE_LIST_CACHE_MILLIS}.
+	 */
+	public long getRuleListCacheMillis() {
+		return myRuleListCacheMillis;
+	}
+
+	/**
+	 * The number of milliseconds that a rule list may be reused across requests for, if
+	 * {@link #getRuleListCacheKey(RequestDetails)} has been overridden. Default value for this
+	 * setting is {@link #DEFAULT_RULE_LIST_CACHE_MILLIS}.
+	 *
+	 * @param theRuleListCacheMillis The number of milliseconds (must not be negative)
+	 */
+	public AuthorizationInterceptor setRuleListCacheMillis(long theRuleListCacheMillis) {
+		Validate.isTrue(theRuleListCacheMillis >= 0, "theRuleListCacheMillis must not be negative");
+		myRuleListCacheMillis = theRuleListCacheMillis;
+		myCachedRuleLists.clear();
+		return this;
+	}
+
+	private CompiledRuleList getRuleList(RequestDetails theRequestDetails) {
+		CompiledRuleList retVal = (CompiledRuleList) theRequestDetails.getUserData().get(myRequestRuleListKey);
+		if (retVal != null) {
+			return retVal;
+		}
+
+		Object cacheKey = getRuleListCacheKey(theRequestDetails);
+		if (cacheKey != null) {
+			retVal = myCachedRuleLists.get(cacheKey);
+			if (retVal != null && retVal.isExpired(myRuleListCacheMillis)) {
+				retVal = null;
+			}
+		}
+
+		if (retVal == null) {
+			retVal = new CompiledRuleList(buildRuleList(theRequestDetails));
+			if (cacheKey != null && myRuleListCacheMillis > 0) {
+				if (myCachedRuleLists.size() >= MAXIMUM_CACHED_RULE_LISTS) {
+					myCachedRuleLists.clear();
+				}
+				myCachedRuleLists.put(cacheKey, retVal);
+			}
+		}
+
+		theRequestDetails.getUserData().put(myRequestRuleListKey, retVal);
+		return retVal;
+	}
+
 	private OperationExamineDirection determineOperationDirection(RestOperationTypeEnum theOperation, IBaseResource theRequestResource) {
 		switch (theOperation) {
 			case ADD_TAGS:
@@ -411,6 +497,42 @@ public class AuthorizationInterceptor implements IRuleApplier {
 		handleUserOperation(theRequest, theNewResource, RestOperationTypeEnum.UPDATE, thePointcut);
 	}
 
+	/**
+	 * A rule list, along with an index of the rules which can apply to each
+	 * combination of operation and resource type for outgoing resources
+	 */
+	private static class CompiledRuleList {
+
+		private final List<IAuthRule> myRules;
+		private final long myCreated = System.currentTimeMillis();
+		private final ConcurrentHashMap<String, List<IAuthRule>> myOutputResourceRules = new ConcurrentHashMap<>();
+
+		CompiledRuleList(List<IAuthRule> theRules) {
+			myRules = theRules;
+		}
+
+		List<IAuthRule> getRules() {
+			return myRules;
+		}
+
+		List<IAuthRule> getRulesForOutputResource(RestOperationTypeEnum theOperation, String theResourceType) {
+			return myOutputResourceRules.computeIfAbsent(theOperation + "/" + theResourceType, t -> {
+				List<IAuthRule> retVal = new ArrayList<>();
+				for (IAuthRule next : myRules) {
+					if (next instanceof BaseRule && ((BaseRule) next).isNeverApplicableToOutputResource(theOperation, theResourceType)) {
+						continue;
+					}
+					retVal.add(next);
+				}
+				return retVal;
+			});
+		}
+
+		boolean isExpired(long theCacheMillis) {
+			return System.currentTimeMillis() - myCreated > theCacheMillis;
+		}
+	}
+
 	private enum OperationExamineDirection {
 		BOTH,
 		IN,
@@ -105,6 +105,17 @@ abstract class BaseRule implements IAuthRule {
 		return otherTenant;
 	}
 
+	/**
+	 * Returns <code>true</code> if this rule is guaranteed not to apply (i.e. to return <code>null</code>
+	 * from {@link #applyRule}) when a resource of type <code>theResourceType</code> is being returned
+	 * to the client by an operation of type <code>theOperation</code>. {@link AuthorizationInterceptor}
+	 * uses this to skip rules when checking outgoing resources, so implementations must only return
+	 * <code>true</code> if this holds regardless of the request and resource contents.
+	 */
+	boolean isNeverApplicableToOutputResource(RestOperationTypeEnum theOperation, String theResourceType) {
+		return false;
+	}
+
 	Verdict newVerdict() {
 		return new Verdict(myMode, this);
 	}
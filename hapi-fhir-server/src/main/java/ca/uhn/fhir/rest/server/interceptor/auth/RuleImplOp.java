@@ -14,7 +14,6 @@ import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor.Verdict;
 import ca.uhn.fhir.util.BundleUtil;
 import ca.uhn.fhir.util.bundle.BundleEntryParts;
-import ca.uhn.fhir.util.FhirTerser;
 import ca.uhn.fhir.util.UrlUtil;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.StringUtils;
@@ -53,6 +52,8 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 @SuppressWarnings("EnumSwitchStatementWhichMissesCases")
 class RuleImplOp extends BaseRule /* implements IAuthRule */ {
 
+	private static final String REQUEST_COMPARTMENT_OWNERS_KEY = RuleImplOp.class.getName() + "_COMPARTMENT_OWNERS";
+
 	private AppliesTypeEnum myAppliesTo;
 	private Set<String> myAppliesToTypes;
 	private String myClassifierCompartmentName;
@@ -468,7 +469,6 @@ class RuleImplOp extends BaseRule /* implements IAuthRule */ {
 			case ANY_ID:
 				break;
 			case IN_COMPARTMENT:
-				FhirTerser t = ctx.newTerser();
 				boolean foundMatch = false;
 
 				if (appliesToResourceId != null && appliesToResourceId.size() > 0) {
@@ -480,9 +480,14 @@ class RuleImplOp extends BaseRule /* implements IAuthRule */ {
 					}
 				}
 
+				Set<String> resourceCompartmentOwners = null;
+				if (appliesToResource != null) {
+					resourceCompartmentOwners = getCompartmentOwners(theRequestDetails, ctx, appliesToResource, appliesToResource == theOutputResource);
+				}
+
 				for (IIdType next : myClassifierCompartmentOwners) {
-					if (appliesToResource != null) {
-						if (t.isSourceInCompartmentForTarget(myClassifierCompartmentName, appliesToResource, next)) {
+					if (resourceCompartmentOwners != null) {
+						if (resourceCompartmentOwners.contains(next.toUnqualifiedVersionless().getValue())) {
 							foundMatch = true;
 							break;
 						}
@@ -556,6 +561,52 @@ class RuleImplOp extends BaseRule /* implements IAuthRule */ {
 		return newVerdict();
 	}
 
+	/**
+	 * Returns the owners of every compartment named {@link #myClassifierCompartmentName} that
+	 * the given resource belongs to. Resources being returned to the client are often checked
+	 * against many compartment rules, so for those the owners are worked out once per request
+	 * and shared by all of the rules. Input resources aren't cached, since they can still be
+	 * modified between checks.
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<String> getCompartmentOwners(RequestDetails theRequestDetails, FhirContext theContext, IBaseResource theResource, boolean theCache) {
+		if (!theCache) {
+			return theContext.newTerser().getCompartmentOwnersForResource(myClassifierCompartmentName, theResource);
+		}
+
+		Map<Object, Object> userData = theRequestDetails.getUserData();
+		IdentityHashMap<IBaseResource, Map<String, Set<String>>> cache = (IdentityHashMap<IBaseResource, Map<String, Set<String>>>) userData.get(REQUEST_COMPARTMENT_OWNERS_KEY);
+		if (cache == null) {
+			cache = new IdentityHashMap<>();
+			userData.put(REQUEST_COMPARTMENT_OWNERS_KEY, cache);
+		}
+		return cache
+			.computeIfAbsent(theResource, t -> new HashMap<>())
+			.computeIfAbsent(myClassifierCompartmentName, t -> theContext.newTerser().getCompartmentOwnersForResource(t, theResource));
+	}
+
+	@Override
+	boolean isNeverApplicableToOutputResource(RestOperationTypeEnum theOperation, String theResourceType) {
+		switch (myOp) {
+			case WRITE:
+			case CREATE:
+				// These only look at input resources
+				return true;
+			case DELETE:
+				return theOperation != RestOperationTypeEnum.DELETE;
+			case GRAPHQL:
+				return theOperation != RestOperationTypeEnum.GRAPHQL_REQUEST;
+			case TRANSACTION:
+				return theOperation != RestOperationTypeEnum.TRANSACTION;
+			case METADATA:
+				return theOperation != RestOperationTypeEnum.METADATA;
+			case READ:
+				return myAppliesTo == AppliesTypeEnum.TYPES && myClassifierType == ClassifierTypeEnum.ANY_ID && !myAppliesToTypes.contains(theResourceType);
+			default:
+				return false;
+		}
+	}
+
 	private Verdict checkForSearchParameterMatchingCompartmentAndReturnSuccessfulVerdictOrNull(Map<String, String[]> theSearchParams, IIdType theCompartmentOwner, String theSearchParamName) {
 		Verdict verdict = null;
 		if (theSearchParams != null) {
@@ -39,6 +39,8 @@ import ca.uhn.fhir.util.IModelVisitor2;
 import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.*;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +53,7 @@ public class ConsentInterceptor {
 	private final String myRequestAuthorizedKey = ConsentInterceptor.class.getName() + "_" + myInstanceIndex + "_AUTHORIZED";
 	private final String myRequestCompletedKey = ConsentInterceptor.class.getName() + "_" + myInstanceIndex + "_COMPLETED";
 	private final String myRequestSeenResourcesKey = ConsentInterceptor.class.getName() + "_" + myInstanceIndex + "_SEENRESOURCES";
+	private final String myRequestCanSeeDecisionsKey = ConsentInterceptor.class.getName() + "_" + myInstanceIndex + "_CANSEEDECISIONS";
 
 	private IConsentService myConsentService;
 	private IConsentContextServices myContextConsentServices;
@@ -130,10 +133,56 @@ public class ConsentInterceptor {
 			return;
 		}
 
+		/*
+		 * Decisions are remembered for the rest of the request, since the same
+		 * resource is often checked more than once (e.g. a resource which is
+		 * both a search match and an _include, or which is loaded again for a
+		 * later page)
+		 */
+		Map<String, ConsentOutcome> decisionCache = getCanSeeDecisionCache(theRequestDetails);
+		ConsentOutcome[] outcomes = new ConsentOutcome[thePreResourceAccessDetails.size()];
+		List<IBaseResource> resourcesToCheck = new ArrayList<>();
+		List<Integer> indexesToCheck = new ArrayList<>();
+		Map<String, Integer> keyToCheckIndex = new HashMap<>();
+		int[] resourceIndexToCheckIndex = new int[outcomes.length];
+
 		for (int i = 0; i < thePreResourceAccessDetails.size(); i++) {
 			IBaseResource nextResource = thePreResourceAccessDetails.getResource(i);
-			ConsentOutcome nextOutcome = myConsentService.canSeeResource(theRequestDetails, nextResource, myContextConsentServices);
-			switch (nextOutcome.getStatus()) {
+			String key = toDecisionCacheKey(nextResource);
+			if (key != null) {
+				outcomes[i] = decisionCache.get(key);
+				if (outcomes[i] != null) {
+					continue;
+				}
+				Integer existingCheckIndex = keyToCheckIndex.get(key);
+				if (existingCheckIndex != null) {
+					resourceIndexToCheckIndex[i] = existingCheckIndex;
+					continue;
+				}
+				keyToCheckIndex.put(key, resourcesToCheck.size());
+			}
+			resourceIndexToCheckIndex[i] = resourcesToCheck.size();
+			resourcesToCheck.add(nextResource);
+			indexesToCheck.add(i);
+		}
+
+		if (!resourcesToCheck.isEmpty()) {
+			List<ConsentOutcome> checkedOutcomes = canSeeResources(theRequestDetails, resourcesToCheck);
+			for (int i = 0; i < indexesToCheck.size(); i++) {
+				String key = toDecisionCacheKey(resourcesToCheck.get(i));
+				if (key != null) {
+					decisionCache.put(key, checkedOutcomes.get(i));
+				}
+			}
+			for (int i = 0; i < outcomes.length; i++) {
+				if (outcomes[i] == null) {
+					outcomes[i] = checkedOutcomes.get(resourceIndexToCheckIndex[i]);
+				}
+			}
+		}
+
+		for (int i = 0; i < outcomes.length; i++) {
+			switch (outcomes[i].getStatus()) {
 				case PROCEED:
 					break;
 				case AUTHORIZED:
@@ -152,13 +201,25 @@ public class ConsentInterceptor {
 		}
 		IdentityHashMap<IBaseResource, Boolean> alreadySeenResources = getAlreadySeenResourcesMap(theRequestDetails);
 
+		List<IBaseResource> resourcesToCheck = new ArrayList<>();
+		List<Integer> indexesToCheck = new ArrayList<>();
 		for (int i = 0; i < thePreResourceShowDetails.size(); i++) {
 			IBaseResource nextResource = thePreResourceShowDetails.getResource(i);
 			if (alreadySeenResources.putIfAbsent(nextResource, Boolean.TRUE) != null) {
 				continue;
 			}
+			resourcesToCheck.add(nextResource);
+			indexesToCheck.add(i);
+		}
+		if (resourcesToCheck.isEmpty()) {
+			return;
+		}
 
-			ConsentOutcome nextOutcome = myConsentService.willSeeResource(theRequestDetails, nextResource, myContextConsentServices);
+		List<ConsentOutcome> outcomes = willSeeResources(theRequestDetails, resourcesToCheck);
+		for (int j = 0; j < indexesToCheck.size(); j++) {
+			int i = indexesToCheck.get(j);
+			IBaseResource nextResource = resourcesToCheck.get(j);
+			ConsentOutcome nextOutcome = outcomes.get(j);
 			switch (nextOutcome.getStatus()) {
 				case PROCEED:
 					if (nextOutcome.getResource() != null) {
@@ -186,6 +247,39 @@ public class ConsentInterceptor {
 		}
 	}
 
+	private List<ConsentOutcome> canSeeResources(RequestDetails theRequestDetails, List<IBaseResource> theResources) {
+		List<ConsentOutcome> retVal;
+		if (myConsentService instanceof IBatchConsentService) {
+			retVal = ((IBatchConsentService) myConsentService).canSeeResources(theRequestDetails, theResources, myContextConsentServices);
+		} else {
+			retVal = new ArrayList<>(theResources.size());
+			for (IBaseResource next : theResources) {
+				retVal.add(myConsentService.canSeeResource(theRequestDetails, next, myContextConsentServices));
+			}
+		}
+		validateBatchOutcomes(theResources, retVal);
+		return retVal;
+	}
+
+	private List<ConsentOutcome> willSeeResources(RequestDetails theRequestDetails, List<IBaseResource> theResources) {
+		List<ConsentOutcome> retVal;
+		if (myConsentService instanceof IBatchConsentService) {
+			retVal = ((IBatchConsentService) myConsentService).willSeeResources(theRequestDetails, theResources, myContextConsentServices);
+		} else {
+			retVal = new ArrayList<>(theResources.size());
+			for (IBaseResource next : theResources) {
+				retVal.add(myConsentService.willSeeResource(theRequestDetails, next, myContextConsentServices));
+			}
+		}
+		validateBatchOutcomes(theResources, retVal);
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, ConsentOutcome> getCanSeeDecisionCache(RequestDetails theRequestDetails) {
+		return (Map<String, ConsentOutcome>) theRequestDetails.getUserData().computeIfAbsent(myRequestCanSeeDecisionsKey, t -> new HashMap<>());
+	}
+
 	private IdentityHashMap<IBaseResource, Boolean> getAlreadySeenResourcesMap(RequestDetails theRequestDetails) {
 		return getAlreadySeenResourcesMap(theRequestDetails, myRequestSeenResourcesKey);
 	}
@@ -318,6 +412,30 @@ public class ConsentInterceptor {
 		return alreadySeenResources;
 	}
 
+	private static void validateBatchOutcomes(List<IBaseResource> theResources, List<ConsentOutcome> theOutcomes) {
+		Validate.notNull(theOutcomes, "Consent service returned null outcomes");
+		Validate.isTrue(theOutcomes.size() == theResources.size(), "Consent service returned %d outcomes for %d resources", theOutcomes.size(), theResources.size());
+		for (ConsentOutcome next : theOutcomes) {
+			Validate.notNull(next, "Consent service returned null outcome");
+		}
+	}
+
+	/**
+	 * Returns the key used to remember {@link IConsentService#canSeeResource(RequestDetails, IBaseResource, IConsentContextServices) canSeeResource}
+	 * decisions for the rest of a request, or <code>null</code> if the resource doesn't have
+	 * an ID which identifies it
+	 */
+	private static String toDecisionCacheKey(IBaseResource theResource) {
+		if (theResource == null) {
+			return null;
+		}
+		IIdType id = theResource.getIdElement();
+		if (id == null || !id.hasResourceType() || !id.hasIdPart()) {
+			return null;
+		}
+		return id.toUnqualified().getValue();
+	}
+
 	private static ForbiddenOperationException toForbiddenOperationException(ConsentOutcome theOutcome) {
 		IBaseOperationOutcome operationOutcome = null;
 		if (theOutcome.getOperationOutcome() != null) {
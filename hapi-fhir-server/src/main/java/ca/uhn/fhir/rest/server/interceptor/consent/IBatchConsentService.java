@@ -0,0 +1,74 @@
+package ca.uhn.fhir.rest.server.interceptor.consent;
+
+/*-
+ * #%L
+ * HAPI FHIR - Server Framework
+ * %%
+ * Copyright (C) 2014 - 2019 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.List;
+
+/**
+ * Consent services which are able to make decisions about several resources at
+ * once (e.g. because each decision requires a lookup in an external policy store)
+ * may implement this interface instead of {@link IConsentService}. When the
+ * {@link ConsentInterceptor} is given an implementation of this interface, it
+ * will call the batch methods once for each group of resources being returned
+ * (e.g. a page of search results) instead of calling the single-resource methods
+ * once per resource.
+ * <p>
+ * The single-resource methods are still called in cases where resources are
+ * examined one at a time, such as resources found when walking the contents of
+ * a response Bundle.
+ * </p>
+ */
+public interface IBatchConsentService extends IConsentService {
+
+	/**
+	 * Equivalent to calling {@link #canSeeResource(RequestDetails, IBaseResource, IConsentContextServices)}
+	 * for each of the given resources.
+	 *
+	 * @param theRequestDetails  Contains details about the operation that is
+	 *                           beginning, including details about the request type,
+	 *                           URL, etc.
+	 * @param theResources       The resources that will be exposed
+	 * @param theContextServices An object passed in by the consent framework that
+	 *                           provides utility functions relevant to acting on
+	 *                           consent directives.
+	 * @return A list containing one outcome for each resource in <code>theResources</code>, in the same order
+	 */
+	List<ConsentOutcome> canSeeResources(RequestDetails theRequestDetails, List<IBaseResource> theResources, IConsentContextServices theContextServices);
+
+	/**
+	 * Equivalent to calling {@link #willSeeResource(RequestDetails, IBaseResource, IConsentContextServices)}
+	 * for each of the given resources.
+	 *
+	 * @param theRequestDetails  Contains details about the operation that is
+	 *                           beginning, including details about the request type,
+	 *                           URL, etc.
+	 * @param theResources       The resources that will be exposed
+	 * @param theContextServices An object passed in by the consent framework that
+	 *                           provides utility functions relevant to acting on
+	 *                           consent directives.
+	 * @return A list containing one outcome for each resource in <code>theResources</code>, in the same order
+	 */
+	List<ConsentOutcome> willSeeResources(RequestDetails theRequestDetails, List<IBaseResource> theResources, IConsentContextServices theContextServices);
+
+}
@@ -58,7 +58,10 @@ public interface IConsentService {
 	 * <b>Performance note:</b> Note that this method should be efficient, since it will be called once
 	 * for every resource potentially returned (e.g. by searches). If this method
 	 * takes a significant amount of time to execute, performance on the server
-	 * will suffer.
+	 * will suffer. Decisions are remembered for the rest of the request, so this method
+	 * is called at most once per resource ID and version in a given request. Services which
+	 * can make decisions for many resources at once more efficiently may implement
+	 * {@link IBatchConsentService}.
 	 * </p>
 	 *
 	 * @param theRequestDetails Contains details about the operation that is
@@ -60,6 +60,13 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Object> {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseResourceReturningMethodBinding.class);
+	/**
+	 * When streaming Bundle responses, this is the number of resources loaded and
+	 * encoded at a time
+	 */
+	static final int STREAMING_CHUNK_SIZE = 100;
+	private static final String STREAMING_REQUESTED_KEY = BaseResourceReturningMethodBinding.class.getName() + "_STREAMING_REQUESTED";
+	private static final String STREAMING_REMAINING_ENTRIES_KEY = BaseResourceReturningMethodBinding.class.getName() + "_STREAMING_REMAINING_ENTRIES";
 
 	private MethodReturnTypeEnum myMethodReturnType;
 	private String myResourceName;
@@ -141,7 +148,17 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 				numToReturn = Math.min(numToReturn, numTotalResults - theOffset);
 			}
 
-			if (numToReturn > 0 || theResult.getCurrentPageId() != null) {
+			if (numToReturn > STREAMING_CHUNK_SIZE && theResult.getCurrentPageId() == null && theRequest.getUserData().containsKey(STREAMING_REQUESTED_KEY)) {
+				/*
+				 * The response will be streamed, so only load the first chunk of the page
+				 * here. The rest is loaded (and encoded) one chunk at a time as the response
+				 * is written.
+				 */
+				resourceList = theResult.getResources(theOffset, STREAMING_CHUNK_SIZE + theOffset);
+				RestfulServerUtils.validateResourceListNotNull(resourceList);
+				Iterator<IBaseResource> remainingEntries = new StreamingEntriesIterator(theServer, theRequest, theIncludes, theResult, theOffset + STREAMING_CHUNK_SIZE, theOffset + numToReturn, theBundleType);
+				theRequest.getUserData().put(STREAMING_REMAINING_ENTRIES_KEY, remainingEntries);
+			} else if (numToReturn > 0 || theResult.getCurrentPageId() != null) {
 				resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
 			} else {
 				resourceList = Collections.emptyList();
@@ -165,32 +182,7 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			}
 		}
 
-		/*
-		 * Remove any null entries in the list - This generally shouldn't happen but can if
-		 * data has been manually purged from the JPA database
-		 */
-		boolean hasNull = false;
-		for (IBaseResource next : resourceList) {
-			if (next == null) {
-				hasNull = true;
-				break;
-			}
-		}
-		if (hasNull) {
-			resourceList.removeIf(Objects::isNull);
-		}
-
-		/*
-		 * Make sure all returned resources have an ID (if not, this is a bug
-		 * in the user server code)
-		 */
-		for (IBaseResource next : resourceList) {
-			if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
-				if (!(next instanceof IBaseOperationOutcome)) {
-					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
-				}
-			}
-		}
+		cleanAndValidateResourceList(resourceList);
 
 		String serverBase = theRequest.getFhirServerBase();
 		boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theServer, theRequest);
@@ -239,6 +231,35 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 	}
 
+	private static void cleanAndValidateResourceList(List<IBaseResource> theResourceList) {
+		/*
+		 * Remove any null entries in the list - This generally shouldn't happen but can if
+		 * data has been manually purged from the JPA database
+		 */
+		boolean hasNull = false;
+		for (IBaseResource next : theResourceList) {
+			if (next == null) {
+				hasNull = true;
+				break;
+			}
+		}
+		if (hasNull) {
+			theResourceList.removeIf(Objects::isNull);
+		}
+
+		/*
+		 * Make sure all returned resources have an ID (if not, this is a bug
+		 * in the user server code)
+		 */
+		for (IBaseResource next : theResourceList) {
+			if (next.getIdElement() == null || next.getIdElement().isEmpty()) {
+				if (!(next instanceof IBaseOperationOutcome)) {
+					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
+				}
+			}
+		}
+	}
+
 	public IBaseResource doInvokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) {
 		Object[] params = createMethodParams(theRequest);
 
@@ -376,18 +397,43 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 	public abstract ReturnTypeEnum getReturnType();
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
+		Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequest);
 
-		IBaseResource response = doInvokeServer(theServer, theRequest);
+		IBaseResource response;
+		Iterator<IBaseResource> remainingEntries = null;
+		if (isStreamingPossible(theServer, theRequest, summaryMode)) {
+			theRequest.getUserData().put(STREAMING_REQUESTED_KEY, Boolean.TRUE);
+			try {
+				response = doInvokeServer(theServer, theRequest);
+				remainingEntries = (Iterator<IBaseResource>) theRequest.getUserData().get(STREAMING_REMAINING_ENTRIES_KEY);
+			} finally {
+				theRequest.getUserData().remove(STREAMING_REQUESTED_KEY);
+				theRequest.getUserData().remove(STREAMING_REMAINING_ENTRIES_KEY);
+			}
+		} else {
+			response = doInvokeServer(theServer, theRequest);
+		}
 		if (response == null) {
 			return null;
 		}
 
-		Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequest);
+		if (remainingEntries != null) {
+			return RestfulServerUtils.streamResponseAsBundle(theServer, response, remainingEntries, theRequest.isRespondGzip(), theRequest);
+		}
 
+		return streamResourceResponse(theServer, theRequest, response, summaryMode);
+	}
+
+	/**
+	 * Calls any {@link Pointcut#SERVER_OUTGOING_RESPONSE} hooks and then streams the
+	 * given resource to the client
+	 */
+	protected Object streamResourceResponse(IRestfulServer<?> theServer, RequestDetails theRequest, IBaseResource theResponse, Set<SummaryEnum> theSummaryMode) throws IOException {
 		ResponseDetails responseDetails = new ResponseDetails();
-		responseDetails.setResponseResource(response);
+		responseDetails.setResponseResource(theResponse);
 		responseDetails.setResponseCode(Constants.STATUS_HTTP_200_OK);
 
 		if (!callOutgoingResponseHook(theRequest, responseDetails)) {
@@ -396,12 +442,32 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 
 		boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theServer, theRequest);
 
-		return theRequest.getResponse().streamResponseAsResource(responseDetails.getResponseResource(), prettyPrint, summaryMode, responseDetails.getResponseCode(), null, theRequest.isRespondGzip(), isAddContentLocationHeader());
-
+		return theRequest.getResponse().streamResponseAsResource(responseDetails.getResponseResource(), prettyPrint, theSummaryMode, responseDetails.getResponseCode(), null, theRequest.isRespondGzip(), isAddContentLocationHeader());
 	}
 
 	public abstract Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theMethodParams) throws InvalidRequestException, InternalErrorException;
 
+	/**
+	 * A Bundle response can only be streamed if it is built from an {@link IBundleProvider}, and
+	 * if nothing needs to see (or replace) the complete Bundle before it is written
+	 */
+	private boolean isStreamingPossible(IRestfulServer<?> theServer, RequestDetails theRequest, Set<SummaryEnum> theSummaryMode) {
+		if (!theServer.isStreamBundleResponses()) {
+			return false;
+		}
+		if (getReturnType() != ReturnTypeEnum.BUNDLE || getMethodReturnType() == MethodReturnTypeEnum.BUNDLE_RESOURCE) {
+			return false;
+		}
+		if (theRequest.getInterceptorBroadcaster() != null && theRequest.getInterceptorBroadcaster().hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)) {
+			return false;
+		}
+		if (theSummaryMode.contains(SummaryEnum.TEXT) || theSummaryMode.contains(SummaryEnum.COUNT)) {
+			return false;
+		}
+		EncodingEnum encoding = RestfulServerUtils.determineResponseEncodingWithDefault(theRequest).getEncoding();
+		return encoding == EncodingEnum.JSON || encoding == EncodingEnum.XML;
+	}
+
 	/**
 	 * Should the response include a Content-Location header. Search method bunding (and any others?) may override this to disable the content-location, since it doesn't make sense
 	 */
@@ -424,6 +490,63 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		RESOURCE
 	}
 
+	/**
+	 * Loads the remainder of a streamed page one chunk at a time, returning each
+	 * chunk as a Bundle containing only entries
+	 */
+	private static class StreamingEntriesIterator implements Iterator<IBaseResource> {
+
+		private final IRestfulServer<?> myServer;
+		private final RequestDetails myRequest;
+		private final Set<Include> myIncludes;
+		private final IBundleProvider myResult;
+		private final int myToIndex;
+		private final BundleTypeEnum myBundleType;
+		private int myNextIndex;
+		private IBaseResource myNext;
+
+		StreamingEntriesIterator(IRestfulServer<?> theServer, RequestDetails theRequest, Set<Include> theIncludes, IBundleProvider theResult, int theFromIndex, int theToIndex, BundleTypeEnum theBundleType) {
+			myServer = theServer;
+			myRequest = theRequest;
+			myIncludes = theIncludes;
+			myResult = theResult;
+			myNextIndex = theFromIndex;
+			myToIndex = theToIndex;
+			myBundleType = theBundleType;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (myNext == null && myNextIndex < myToIndex) {
+				int toIndex = Math.min(myToIndex, myNextIndex + STREAMING_CHUNK_SIZE);
+				List<IBaseResource> resourceList = myResult.getResources(myNextIndex, toIndex);
+				RestfulServerUtils.validateResourceListNotNull(resourceList);
+				cleanAndValidateResourceList(resourceList);
+
+				if (resourceList.isEmpty()) {
+					// The provider has fewer results than it claimed
+					myNextIndex = myToIndex;
+				} else {
+					myNextIndex = toIndex;
+					IVersionSpecificBundleFactory bundleFactory = myServer.getFhirContext().newBundleFactory();
+					bundleFactory.addResourcesToBundle(new ArrayList<>(resourceList), myBundleType, myRequest.getFhirServerBase(), myServer.getBundleInclusionRule(), myIncludes);
+					myNext = bundleFactory.getResourceBundle();
+				}
+			}
+			return myNext != null;
+		}
+
+		@Override
+		public IBaseResource next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			IBaseResource retVal = myNext;
+			myNext = null;
+			return retVal;
+		}
+	}
+
 	public static boolean callOutgoingResponseHook(RequestDetails theRequest, ResponseDetails theResponseDetails) {
 		HttpServletRequest servletRequest = null;
 		HttpServletResponse servletResponse = null;
@@ -22,6 +22,8 @@ package ca.uhn.fhir.rest.server.method;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.IInterceptorBroadcaster;
+import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.primitive.InstantDt;
@@ -30,13 +32,18 @@ import ca.uhn.fhir.rest.annotation.Elements;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.IRestfulServer;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.ParameterUtil;
 import ca.uhn.fhir.rest.server.ETagSupportEnum;
+import ca.uhn.fhir.rest.server.ReadResponseCache;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
@@ -47,10 +54,12 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -164,48 +173,123 @@ public class ReadMethodBinding extends BaseResourceReturningMethodBinding {
 			List<IBaseResource> responseResources = retVal.getResources(0, 1);
 			IBaseResource responseResource = responseResources.get(0);
 
-			// If-None-Match
-			if (theRequest.getServer().getETagSupport() == ETagSupportEnum.ENABLED) {
-				String ifNoneMatch = theRequest.getHeader(Constants.HEADER_IF_NONE_MATCH_LC);
-				if (StringUtils.isNotBlank(ifNoneMatch)) {
-					ifNoneMatch = ParameterUtil.parseETagValue(ifNoneMatch);
-					String versionIdPart = responseResource.getIdElement().getVersionIdPart();
-					if (StringUtils.isBlank(versionIdPart)) {
-						versionIdPart = responseResource.getMeta().getVersionId();
-					}
-					if (ifNoneMatch.equals(versionIdPart)) {
-						ourLog.debug("Returning HTTP 304 because request specified {}={}", Constants.HEADER_IF_NONE_MATCH, ifNoneMatch);
-						throw new NotModifiedException("Not Modified");
-					}
-				}
+			String versionIdPart = responseResource.getIdElement().getVersionIdPart();
+			if (StringUtils.isBlank(versionIdPart)) {
+				versionIdPart = responseResource.getMeta().getVersionId();
 			}
-				
-			// If-Modified-Since
-			String ifModifiedSince = theRequest.getHeader(Constants.HEADER_IF_MODIFIED_SINCE_LC);
-			if (isNotBlank(ifModifiedSince)) {
-				Date ifModifiedSinceDate = DateUtils.parseDate(ifModifiedSince);
-				Date lastModified = null;
-				if (responseResource instanceof IResource) {
-					InstantDt lastModifiedDt = ResourceMetadataKeyEnum.UPDATED.get((IResource) responseResource);
-					if (lastModifiedDt != null) {
-						lastModified = lastModifiedDt.getValue();
-					}
-				} else {
-					lastModified = responseResource.getMeta().getLastUpdated();
-				}
-				
-				if (lastModified != null && lastModified.getTime() <= ifModifiedSinceDate.getTime()) {
-					ourLog.debug("Returning HTTP 304 because If-Modified-Since does not match");
-					throw new NotModifiedException("Not Modified");
+
+			Date lastModified = null;
+			if (responseResource instanceof IResource) {
+				InstantDt lastModifiedDt = ResourceMetadataKeyEnum.UPDATED.get((IResource) responseResource);
+				if (lastModifiedDt != null) {
+					lastModified = lastModifiedDt.getValue();
 				}
+			} else {
+				lastModified = responseResource.getMeta().getLastUpdated();
 			}
-				
+
+			throwNotModifiedIfAppropriate(theRequest, versionIdPart, lastModified);
+
 		} // if we have at least 1 result
 		
 		
 		return retVal;
 	}
 
+	@Override
+	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
+		ReadResponseCache cache = theServer.getReadResponseCache();
+		if (cache == null || !isResponseCacheable(theServer, theRequest)) {
+			return super.invokeServer(theServer, theRequest);
+		}
+
+		String resourceName = getResourceName();
+		IIdType requestId = theRequest.getId();
+
+		// A specific version never changes, so there's no need to ask the provider for it again
+		if (mySupportsVersion && requestId.hasVersionIdPart()) {
+			ReadResponseCache.Entry cached = cache.get(theServer, theRequest, resourceName, requestId.getIdPart(), requestId.getVersionIdPart());
+			if (cached != null) {
+				ourLog.trace("Returning cached response for {}", requestId);
+				throwNotModifiedIfAppropriate(theRequest, cached.getVersionId(), cached.getLastModified());
+				return cached.stream(theServer, theRequest, theRequest.isRespondGzip());
+			}
+		}
+
+		IBaseResource response = doInvokeServer(theServer, theRequest);
+		if (response == null) {
+			return null;
+		}
+
+		String versionId = response.getIdElement().getVersionIdPart();
+		if (StringUtils.isBlank(versionId)) {
+			versionId = response.getMeta().getVersionId();
+		}
+		if (StringUtils.isBlank(versionId)) {
+			return streamResourceResponse(theServer, theRequest, response, RestfulServerUtils.determineSummaryMode(theRequest));
+		}
+
+		ReadResponseCache.Entry entry = null;
+		if (!requestId.hasVersionIdPart()) {
+			entry = cache.get(theServer, theRequest, resourceName, requestId.getIdPart(), versionId);
+		}
+		if (entry == null) {
+			entry = cache.encodeAndStore(theServer, theRequest, resourceName, requestId.getIdPart(), response);
+		}
+		return entry.stream(theServer, theRequest, theRequest.isRespondGzip());
+	}
+
+	/**
+	 * Responses can only be cached if the resource is encoded as a normal FHIR resource,
+	 * and if there are no interceptors which might block or change the response
+	 */
+	private boolean isResponseCacheable(IRestfulServer<?> theServer, RequestDetails theRequest) {
+		if (theRequest.getRequestType() != RequestTypeEnum.GET) {
+			return false;
+		}
+		if ("Binary".equals(getResourceName())) {
+			return false;
+		}
+		IInterceptorBroadcaster interceptorBroadcaster = theRequest.getInterceptorBroadcaster();
+		if (interceptorBroadcaster != null) {
+			if (interceptorBroadcaster.hasHooks(Pointcut.SERVER_OUTGOING_RESPONSE)
+				|| interceptorBroadcaster.hasHooks(Pointcut.STORAGE_PREACCESS_RESOURCES)
+				|| interceptorBroadcaster.hasHooks(Pointcut.STORAGE_PRESHOW_RESOURCES)) {
+				return false;
+			}
+		}
+		Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequest);
+		if (summaryMode.size() == 1 && summaryMode.contains(SummaryEnum.TEXT)) {
+			return false;
+		}
+		EncodingEnum encoding = RestfulServerUtils.determineResponseEncodingWithDefault(theRequest).getEncoding();
+		return encoding == EncodingEnum.JSON || encoding == EncodingEnum.XML;
+	}
+
+	private void throwNotModifiedIfAppropriate(RequestDetails theRequest, String theVersionId, Date theLastModified) {
+		// If-None-Match
+		if (theRequest.getServer().getETagSupport() == ETagSupportEnum.ENABLED) {
+			String ifNoneMatch = theRequest.getHeader(Constants.HEADER_IF_NONE_MATCH_LC);
+			if (StringUtils.isNotBlank(ifNoneMatch)) {
+				ifNoneMatch = ParameterUtil.parseETagValue(ifNoneMatch);
+				if (ifNoneMatch.equals(theVersionId)) {
+					ourLog.debug("Returning HTTP 304 because request specified {}={}", Constants.HEADER_IF_NONE_MATCH, ifNoneMatch);
+					throw new NotModifiedException("Not Modified");
+				}
+			}
+		}
+
+		// If-Modified-Since
+		String ifModifiedSince = theRequest.getHeader(Constants.HEADER_IF_MODIFIED_SINCE_LC);
+		if (isNotBlank(ifModifiedSince)) {
+			Date ifModifiedSinceDate = DateUtils.parseDate(ifModifiedSince);
+			if (theLastModified != null && theLastModified.getTime() <= ifModifiedSinceDate.getTime()) {
+				ourLog.debug("Returning HTTP 304 because If-Modified-Since does not match");
+				throw new NotModifiedException("Not Modified");
+			}
+		}
+	}
+
 	public boolean isVread() {
 		return mySupportsVersion;
 	}
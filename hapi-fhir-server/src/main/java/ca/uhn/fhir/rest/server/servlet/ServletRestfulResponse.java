@@ -72,7 +72,7 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		theHttpResponse.setContentType(theContentType);
 		if (theRespondGzip) {
 			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
-			return new OutputStreamWriter(new GZIPOutputStream(theHttpResponse.getOutputStream()), Constants.CHARSET_NAME_UTF8);
+			return new OutputStreamWriter(new GZIPOutputStream(theHttpResponse.getOutputStream(), true), Constants.CHARSET_NAME_UTF8);
 		}
 		return theHttpResponse.getWriter();
 	}
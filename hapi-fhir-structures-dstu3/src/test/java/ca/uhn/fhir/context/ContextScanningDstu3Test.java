@@ -1,7 +1,9 @@
 package ca.uhn.fhir.context;
 
 import static org.hamcrest.Matchers.containsInRelativeOrder;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -16,6 +18,7 @@ import org.hl7.fhir.dstu3.model.Observation.ObservationStatus;
 import org.hl7.fhir.exceptions.FHIRFormatError;
 import org.junit.*;
 
+import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
@@ -57,6 +60,26 @@ public class ContextScanningDstu3Test {
 		assertThat(resDefs, containsInRelativeOrder("Observation"));
 	}
 
+	@Test
+	public void testResourceNamesAvailableWithoutScanning() {
+		long start = System.currentTimeMillis();
+		FhirContext ctx = FhirContext.forDstu3();
+		ctx.getResourceDefinition("Patient");
+		ourLog.info("Created context and scanned Patient in {}ms", System.currentTimeMillis() - start);
+
+		assertThat(ctx.getResourceNames(), hasItems("Patient", "Observation", "Encounter"));
+		assertThat(scannedResourceNames(ctx), not(containsInRelativeOrder("Observation")));
+
+		assertEquals(Observation.class, ctx.getResourceDefinition("observation").getImplementingClass());
+		assertEquals(Observation.class, ctx.getResourceDefinition(FhirVersionEnum.DSTU3, "Observation").getImplementingClass());
+		assertThat(scannedResourceNames(ctx), containsInRelativeOrder("Observation"));
+	}
+
+	@Test(expected = DataFormatException.class)
+	public void testUnknownResourceName() {
+		FhirContext.forDstu3().getResourceDefinition("FooBar");
+	}
+
 	public static void main(String[] args) {
 		
 		// 1.6 - no defer - Took 6700 ms - 6.7ms / pass
@@ -606,7 +606,6 @@ public class JsonParserR4Test extends BaseTest {
 
 	}
 
-
 	private Bundle createBigBundle() {
 		Observation obs = new Observation();
 
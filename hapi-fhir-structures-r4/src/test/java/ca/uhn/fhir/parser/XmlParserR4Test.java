@@ -1,9 +1,11 @@
 package ca.uhn.fhir.parser;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
 import org.hl7.fhir.r4.model.Composition;
 import org.hl7.fhir.r4.model.Narrative;
+import org.hl7.fhir.r4.model.Patient;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,5 +43,34 @@ public class XmlParserR4Test {
 		int idx = encoded.indexOf(sectionText);
 		assertNotEquals(-1, idx);
 	}
-	
+
+	@Test
+	public void testParseNarrativeExtensionsAndComments() {
+		String input = "<Patient xmlns=\"http://hl7.org/fhir\">" +
+			"<!-- leading comment -->" +
+			"<text>" +
+			"<status value=\"generated\"/>" +
+			"<div xmlns=\"http://www.w3.org/1999/xhtml\"><p class=\"a\">Hello <b>World</b> &amp; <i>friends</i></p><!-- narrative comment --><table><tr><td>1</td></tr></table></div>" +
+			"</text>" +
+			"<extension url=\"http://example.com/ext\"><valueString value=\"ext value\"/></extension>" +
+			"<modifierExtension url=\"http://example.com/modext\"><valueBoolean value=\"true\"/></modifierExtension>" +
+			"<active value=\"true\"/>" +
+			"<name><family value=\"FAMILY\"/><given value=\"GIVEN\"/></name>" +
+			"</Patient>";
+
+		IParser parser = ourCtx.newXmlParser();
+		Patient patient = parser.parseResource(Patient.class, input);
+
+		assertEquals("<div xmlns=\"http://www.w3.org/1999/xhtml\"><p class=\"a\">Hello <b>World</b> &amp; <i>friends</i></p><!-- narrative comment --><table><tr><td>1</td></tr></table></div>", patient.getText().getDivAsString());
+		assertEquals("ext value", patient.getExtensionByUrl("http://example.com/ext").getValueAsPrimitive().getValueAsString());
+		assertEquals("true", patient.getModifierExtension().get(0).getValueAsPrimitive().getValueAsString());
+		assertEquals("FAMILY", patient.getNameFirstRep().getFamily());
+		assertEquals("GIVEN", patient.getNameFirstRep().getGivenAsSingleString());
+
+		// Re-parsing the encoded output should give the same result
+		String encoded = parser.encodeResourceToString(patient);
+		ourLog.info(encoded);
+		assertEquals(encoded, parser.encodeResourceToString(parser.parseResource(Patient.class, encoded)));
+	}
+
 }
@@ -0,0 +1,227 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.*;
+
+public class ReadResponseCacheR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ReadResponseCacheR4Test.class);
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static AtomicInteger ourReadCount = new AtomicInteger();
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+	private static ReadResponseCache ourCache;
+
+	@Before
+	public void before() {
+		ourReadCount.set(0);
+		ourCache = new ReadResponseCache(100);
+		ourServlet.setReadResponseCache(ourCache);
+	}
+
+	@After
+	public void after() {
+		ourServlet.getInterceptorService().unregisterAllInterceptors();
+		ourServlet.setReadResponseCache(null);
+	}
+
+	@Test
+	public void testVreadIsCached() throws Exception {
+		String first = executeGet("/Patient/123/_history/2?_format=json", null, 200);
+		String second = executeGet("/Patient/123/_history/2?_format=json", null, 200);
+
+		assertEquals(first, second);
+		assertThat(second, containsString("FAMILY2"));
+		assertEquals(1, ourReadCount.get());
+		assertEquals(1, ourCache.getHitCount());
+	}
+
+	@Test
+	public void testVreadCachedSeparatelyPerEncoding() throws Exception {
+		String json = executeGet("/Patient/123/_history/2?_format=json", null, 200);
+		String xml = executeGet("/Patient/123/_history/2?_format=xml", null, 200);
+		String jsonPretty = executeGet("/Patient/123/_history/2?_format=json&_pretty=true", null, 200);
+
+		assertThat(json, containsString("\"resourceType\":\"Patient\""));
+		assertThat(xml, containsString("<Patient"));
+		assertThat(jsonPretty, containsString("\"resourceType\": \"Patient\""));
+		assertEquals(3, ourReadCount.get());
+		assertEquals(3, ourCache.size());
+	}
+
+	@Test
+	public void testVreadIfNoneMatchAnsweredFromCache() throws Exception {
+		executeGet("/Patient/123/_history/2", null, 200);
+		executeGet("/Patient/123/_history/2", "W/\"2\"", 304);
+
+		assertEquals(1, ourReadCount.get());
+	}
+
+	@Test
+	public void testReadAlwaysInvokesProvider() throws Exception {
+		String first = executeGet("/Patient/123", null, 200);
+		String second = executeGet("/Patient/123", null, 200);
+
+		assertEquals(first, second);
+		assertEquals(2, ourReadCount.get());
+		assertEquals(1, ourCache.size());
+		assertEquals(1, ourCache.getHitCount());
+	}
+
+	@Test
+	public void testNotFoundIsNotCached() throws Exception {
+		executeGet("/Patient/999/_history/1", null, 404);
+		executeGet("/Patient/999/_history/1", null, 404);
+
+		assertEquals(2, ourReadCount.get());
+		assertEquals(0, ourCache.size());
+	}
+
+	@Test
+	public void testExpungeResourceRemovesCachedVersions() throws Exception {
+		executeGet("/Patient/123/_history/2?_format=json", null, 200);
+		executeGet("/Patient/123/_history/2?_format=xml", null, 200);
+		assertEquals(2, ourCache.size());
+
+		HookParams params = new HookParams()
+			.add(AtomicInteger.class, new AtomicInteger())
+			.add(IIdType.class, new IdType("Patient/123/_history/2"))
+			.add(IBaseResource.class, null)
+			.add(RequestDetails.class, null)
+			.add(ServletRequestDetails.class, null);
+		ourServlet.getInterceptorService().callHooks(Pointcut.STORAGE_PRESTORAGE_EXPUNGE_RESOURCE, params);
+		assertEquals(0, ourCache.size());
+
+		executeGet("/Patient/123/_history/2?_format=json", null, 200);
+		assertEquals(3, ourReadCount.get());
+	}
+
+	@Test
+	public void testExpungeEverythingClearsCache() throws Exception {
+		executeGet("/Patient/123/_history/2?_format=json", null, 200);
+		assertEquals(1, ourCache.size());
+
+		HookParams params = new HookParams()
+			.add(AtomicInteger.class, new AtomicInteger())
+			.add(RequestDetails.class, null)
+			.add(ServletRequestDetails.class, null);
+		ourServlet.getInterceptorService().callHooks(Pointcut.STORAGE_PRESTORAGE_EXPUNGE_EVERYTHING, params);
+		assertEquals(0, ourCache.size());
+	}
+
+	@Test
+	public void testCacheBypassedWhenOutgoingResponseInterceptorRegistered() throws Exception {
+		ourServlet.getInterceptorService().registerInterceptor(new Object() {
+			@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+			public void outgoing() {
+				// nothing
+			}
+		});
+
+		executeGet("/Patient/123/_history/2", null, 200);
+		executeGet("/Patient/123/_history/2", null, 200);
+
+		assertEquals(2, ourReadCount.get());
+		assertEquals(0, ourCache.size());
+	}
+
+	private String executeGet(String thePath, String theIfNoneMatch, int theExpectedStatus) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + thePath);
+		if (theIfNoneMatch != null) {
+			httpGet.addHeader(Constants.HEADER_IF_NONE_MATCH, theIfNoneMatch);
+		}
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = null;
+			if (status.getEntity() != null) {
+				responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			}
+			ourLog.info(responseContent);
+			assertEquals(theExpectedStatus, status.getStatusLine().getStatusCode());
+			if (theExpectedStatus == 200) {
+				assertEquals("W/\"2\"", status.getFirstHeader(Constants.HEADER_ETAG_LC).getValue());
+				assertThat(status.getFirstHeader(Constants.HEADER_CONTENT_LOCATION).getValue(), containsString("/Patient/123/_history/2"));
+			}
+			return responseContent;
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		JettyUtil.closeServer(ourServer);
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourServer = new Server(0);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+		ourServlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		JettyUtil.startServer(ourServer);
+		ourPort = JettyUtil.getPortForStartedServer(ourServer);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read(version = true)
+		public Patient read(@IdParam IdType theId) {
+			ourReadCount.incrementAndGet();
+			if (!"123".equals(theId.getIdPart())) {
+				throw new ResourceNotFoundException(theId);
+			}
+			Patient p = new Patient();
+			p.setId(new IdType("Patient", "123", "2"));
+			p.addName().setFamily("FAMILY2");
+			return p;
+		}
+
+	}
+
+}
@@ -0,0 +1,222 @@
+package ca.uhn.fhir.rest.server;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.test.utilities.JettyUtil;
+import ca.uhn.fhir.util.TestUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.*;
+
+public class StreamingBundleResponseR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StreamingBundleResponseR4Test.class);
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = FhirContext.forR4();
+	private static List<String> ourLoadedRanges = Collections.synchronizedList(new ArrayList<>());
+	private static Integer ourFailAtIndex;
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+
+	@Before
+	public void before() {
+		ourLoadedRanges.clear();
+		ourFailAtIndex = null;
+		ourServlet.setStreamBundleResponses(true);
+	}
+
+	@Test
+	public void testStreamedJson() throws Exception {
+		Bundle bundle = executeSearch("_format=json&_count=250");
+
+		assertEquals(250, bundle.getEntry().size());
+		assertEquals(250, bundle.getTotal());
+		assertEquals("Patient/0", bundle.getEntry().get(0).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertEquals("Patient/249", bundle.getEntry().get(249).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertNotNull(bundle.getLink(Constants.LINK_SELF));
+		assertThat(ourLoadedRanges, contains("0-100", "100-200", "200-250"));
+	}
+
+	@Test
+	public void testStreamedXml() throws Exception {
+		Bundle bundle = executeSearch("_format=xml&_count=250");
+
+		assertEquals(250, bundle.getEntry().size());
+		assertEquals("Patient/249", bundle.getEntry().get(249).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertThat(ourLoadedRanges, contains("0-100", "100-200", "200-250"));
+	}
+
+	@Test
+	public void testStreamedJsonSummaryTrue() throws Exception {
+		Bundle bundle = executeSearch("_format=json&_count=250&_summary=true");
+
+		assertEquals(250, bundle.getEntry().size());
+		assertEquals("Patient/249", bundle.getEntry().get(249).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertEquals("FAMILY249", ((Patient) bundle.getEntry().get(249).getResource()).getNameFirstRep().getFamily());
+		assertThat(ourLoadedRanges, contains("0-100", "100-200", "200-250"));
+	}
+
+	@Test
+	public void testStreamedJsonSummaryData() throws Exception {
+		Bundle bundle = executeSearch("_format=json&_count=250&_summary=data&_pretty=true");
+
+		assertEquals(250, bundle.getEntry().size());
+		assertEquals("Patient/249", bundle.getEntry().get(249).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertThat(ourLoadedRanges, contains("0-100", "100-200", "200-250"));
+	}
+
+	@Test
+	public void testStreamedXmlSummaryTrue() throws Exception {
+		Bundle bundle = executeSearch("_format=xml&_count=250&_summary=true");
+
+		assertEquals(250, bundle.getEntry().size());
+		assertEquals("Patient/249", bundle.getEntry().get(249).getResource().getIdElement().toUnqualifiedVersionless().getValue());
+		assertThat(ourLoadedRanges, contains("0-100", "100-200", "200-250"));
+	}
+
+	@Test
+	public void testFailureWhileStreamingLeavesResponseUnterminated() throws Exception {
+		ourFailAtIndex = 100;
+
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_format=json&_count=250");
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			assertThat(responseContent, containsString("\"id\":\"99\""));
+			assertThat(responseContent, not(containsString("\"id\":\"100\"")));
+			try {
+				ourCtx.newJsonParser().parseResource(Bundle.class, responseContent);
+				fail();
+			} catch (DataFormatException e) {
+				// good
+			}
+		}
+	}
+
+	@Test
+	public void testFindJsonEntryArrayStart() {
+		String encoded = "{\n  \"resourceType\": \"Bundle\",\n  \"meta\": { \"tag\": [ { \"code\": \"SUBSETTED\" } ] },\n  \"id\": \"a \\\"entry\\\": [\",\n  \"entry\" : [ { \"fullUrl\": \"Patient/1\" } ]\n}";
+		int start = StreamingBundleWriter.findJsonEntryArrayStart(encoded);
+		assertEquals(" { \"fullUrl\": \"Patient/1\" } ", encoded.substring(start, encoded.lastIndexOf(']')));
+	}
+
+	@Test
+	public void testSmallPageNotChunked() throws Exception {
+		Bundle bundle = executeSearch("_format=json&_count=50");
+
+		assertEquals(50, bundle.getEntry().size());
+		assertThat(ourLoadedRanges, contains("0-50"));
+	}
+
+	@Test
+	public void testStreamingDisabled() throws Exception {
+		ourServlet.setStreamBundleResponses(false);
+
+		Bundle bundle = executeSearch("_format=json&_count=250");
+
+		assertEquals(250, bundle.getEntry().size());
+		assertThat(ourLoadedRanges, contains("0-250"));
+	}
+
+	private Bundle executeSearch(String theParams) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?" + theParams);
+		httpGet.addHeader(Constants.HEADER_ACCEPT_ENCODING, "gzip");
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.debug(responseContent);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			if (theParams.contains("_format=xml")) {
+				return ourCtx.newXmlParser().parseResource(Bundle.class, responseContent);
+			}
+			return ourCtx.newJsonParser().parseResource(Bundle.class, responseContent);
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() throws Exception {
+		JettyUtil.closeServer(ourServer);
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourServer = new Server(0);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer(ourCtx);
+		FifoMemoryPagingProvider pagingProvider = new FifoMemoryPagingProvider(10);
+		pagingProvider.setMaximumPageSize(1000);
+		ourServlet.setPagingProvider(pagingProvider);
+		ourServlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		JettyUtil.startServer(ourServer);
+		ourPort = JettyUtil.getPortForStartedServer(ourServer);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IBaseResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Search()
+		public IBundleProvider searchAll() {
+			List<Patient> patients = new ArrayList<>();
+			for (int i = 0; i < 250; i++) {
+				Patient p = new Patient();
+				p.setId("Patient/" + i);
+				p.addName().setFamily("FAMILY" + i);
+				patients.add(p);
+			}
+			return new SimpleBundleProvider(patients) {
+				@Override
+				public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+					ourLoadedRanges.add(theFromIndex + "-" + theToIndex);
+					if (ourFailAtIndex != null && theFromIndex >= ourFailAtIndex) {
+						throw new InternalErrorException("Failed to load resources");
+					}
+					return super.getResources(theFromIndex, theToIndex);
+				}
+			};
+		}
+
+	}
+
+}
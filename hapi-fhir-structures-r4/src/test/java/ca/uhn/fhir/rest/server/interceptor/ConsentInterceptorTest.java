@@ -6,6 +6,7 @@ import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.SimplePreResourceAccessDetails;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.server.RestfulServer;
@@ -13,10 +14,12 @@ import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.interceptor.consent.ConsentInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.consent.ConsentOperationStatusEnum;
 import ca.uhn.fhir.rest.server.interceptor.consent.ConsentOutcome;
+import ca.uhn.fhir.rest.server.interceptor.consent.IBatchConsentService;
 import ca.uhn.fhir.rest.server.interceptor.consent.IConsentService;
 import ca.uhn.fhir.rest.server.provider.HashMapResourceProvider;
 import ca.uhn.fhir.test.utilities.JettyUtil;
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -38,8 +41,11 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.Matchers.not;
@@ -63,6 +69,8 @@ public class ConsentInterceptorTest {
 
 	@Mock
 	private IConsentService myConsentSvc;
+	@Mock
+	private IBatchConsentService myBatchConsentSvc;
 	private ConsentInterceptor myInterceptor;
 	@Captor
 	private ArgumentCaptor<BaseServerResponseException> myExceptionCaptor;
@@ -351,6 +359,70 @@ public class ConsentInterceptorTest {
 		verifyNoMoreInteractions(myConsentSvc);
 	}
 
+	@Test
+	public void testBatchConsentService() throws IOException {
+		ourServlet.unregisterInterceptor(myInterceptor);
+		myInterceptor = new ConsentInterceptor(myBatchConsentSvc);
+		ourServlet.registerInterceptor(myInterceptor);
+
+		ourPatientProvider.store((Patient) new Patient().setActive(true).setId("PTA"));
+		ourPatientProvider.store((Patient) new Patient().setActive(false).setId("PTB"));
+
+		when(myBatchConsentSvc.startOperation(any(), any())).thenReturn(ConsentOutcome.PROCEED);
+		when(myBatchConsentSvc.canSeeResources(any(), any(), any())).thenAnswer(t -> {
+			List<IBaseResource> resources = t.getArgument(1);
+			assertEquals(2, resources.size());
+			return resources
+				.stream()
+				.map(r -> r.getIdElement().getIdPart().equals("PTB") ? ConsentOutcome.REJECT : ConsentOutcome.PROCEED)
+				.collect(Collectors.toList());
+		});
+		when(myBatchConsentSvc.willSeeResources(any(), any(), any())).thenAnswer(t -> {
+			List<IBaseResource> resources = t.getArgument(1);
+			return Collections.nCopies(resources.size(), ConsentOutcome.PROCEED);
+		});
+		when(myBatchConsentSvc.willSeeResource(any(), any(), any())).thenReturn(ConsentOutcome.PROCEED);
+
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient");
+
+		try (CloseableHttpResponse status = ourClient.execute(httpGet)) {
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			String responseContent = IOUtils.toString(status.getEntity().getContent(), Charsets.UTF_8);
+			ourLog.info("Response: {}", responseContent);
+			assertThat(responseContent, containsString("PTA"));
+			assertThat(responseContent, not(containsString("PTB")));
+		}
+
+		verify(myBatchConsentSvc, times(1)).canSeeResources(any(), any(), any());
+		verify(myBatchConsentSvc, times(0)).canSeeResource(any(), any(), any());
+		verify(myBatchConsentSvc, times(1)).willSeeResources(any(), any(), any());
+		// Only the outer Bundle is checked individually
+		verify(myBatchConsentSvc, times(1)).willSeeResource(any(), any(), any());
+	}
+
+	@Test
+	public void testCanSeeDecisionsAreRememberedForRequest() {
+		RequestDetails requestDetails = mock(RequestDetails.class);
+		when(requestDetails.getUserData()).thenReturn(new HashMap<>());
+		when(myConsentSvc.canSeeResource(any(), any(), any())).thenReturn(ConsentOutcome.REJECT);
+
+		Patient patient = new Patient();
+		patient.setId("Patient/A/_history/1");
+		Patient patientCopy = patient.copy();
+		patientCopy.setId("Patient/A/_history/1");
+
+		SimplePreResourceAccessDetails details = new SimplePreResourceAccessDetails(Lists.newArrayList(patient, patientCopy));
+		myInterceptor.interceptPreAccess(requestDetails, details);
+		assertTrue(details.isDontReturnResourceAtIndex(0));
+		assertTrue(details.isDontReturnResourceAtIndex(1));
+
+		details = new SimplePreResourceAccessDetails(patient);
+		myInterceptor.interceptPreAccess(requestDetails, details);
+		assertTrue(details.isDontReturnResourceAtIndex(0));
+
+		verify(myConsentSvc, times(1)).canSeeResource(any(), any(), any());
+	}
+
 	@Test
 	public void testOutcomeException() throws IOException {
 		when(myConsentSvc.startOperation(any(), any())).thenReturn(ConsentOutcome.PROCEED);
@@ -47,6 +47,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.hamcrest.Matchers.containsString;
@@ -2313,6 +2314,58 @@ public class AuthorizationInterceptorR4Test {
 
 	}
 
+	@Test
+	public void testRuleListReusedForSameCacheKey() throws Exception {
+		AtomicInteger buildCount = new AtomicInteger();
+		ourServlet.registerInterceptor(new AuthorizationInterceptor(PolicyEnum.DENY) {
+			@Override
+			public List<IAuthRule> buildRuleList(RequestDetails theRequestDetails) {
+				buildCount.incrementAndGet();
+				return new RuleBuilder()
+					.allow("Rule 1").write().allResources().withAnyId().andThen()
+					.allow("Rule 2").read().resourcesOfType(Observation.class).withAnyId().andThen()
+					.allow("Rule 3").read().resourcesOfType(Patient.class).inCompartment("Patient", new IdType("Patient/1"))
+					.build();
+			}
+
+			@Override
+			protected Object getRuleListCacheKey(RequestDetails theRequestDetails) {
+				return "user1";
+			}
+		});
+
+		HttpGet httpGet;
+		HttpResponse status;
+
+		for (int i = 0; i < 2; i++) {
+			ourReturn = Collections.singletonList(createPatient(1));
+			ourHitMethod = false;
+			httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1");
+			status = ourClient.execute(httpGet);
+			extractResponseAndClose(status);
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			assertTrue(ourHitMethod);
+		}
+
+		ourReturn = Collections.singletonList(createPatient(2));
+		ourHitMethod = false;
+		httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/2");
+		status = ourClient.execute(httpGet);
+		extractResponseAndClose(status);
+		assertEquals(403, status.getStatusLine().getStatusCode());
+		assertFalse(ourHitMethod);
+
+		ourReturn = Collections.singletonList(createObservation(10, "Patient/2"));
+		ourHitMethod = false;
+		httpGet = new HttpGet("http://localhost:" + ourPort + "/Observation/10");
+		status = ourClient.execute(httpGet);
+		extractResponseAndClose(status);
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		assertTrue(ourHitMethod);
+
+		assertEquals(1, buildCount.get());
+	}
+
 	@Test
 	public void testReadByCompartmentWrongAllTypesProactiveBlockEnabledNoResponse() throws Exception {
 		ourServlet.registerInterceptor(new AuthorizationInterceptor(PolicyEnum.DENY) {
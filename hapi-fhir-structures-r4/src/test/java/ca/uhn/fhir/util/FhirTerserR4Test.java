@@ -31,6 +31,26 @@ public class FhirTerserR4Test {
 	private static final Logger ourLog = LoggerFactory.getLogger(FhirTerserR4Test.class);
 	private static FhirContext ourCtx = FhirContext.forR4();
 
+	@Test
+	public void testGetCompartmentOwnersForResource() {
+		Observation obs = new Observation();
+		obs.setId("Observation/O1");
+		obs.getSubject().setReference("Patient/P1");
+		obs.addPerformer().setReference("Patient/P2/_history/3");
+
+		FhirTerser terser = ourCtx.newTerser();
+		Set<String> owners = terser.getCompartmentOwnersForResource("Patient", obs);
+		assertThat(owners, containsInAnyOrder("Patient/P1", "Patient/P2"));
+		for (String next : owners) {
+			assertTrue(terser.isSourceInCompartmentForTarget("Patient", obs, new IdType(next)));
+		}
+		assertFalse(terser.isSourceInCompartmentForTarget("Patient", obs, new IdType("Patient/P3")));
+
+		Patient patient = new Patient();
+		patient.setId("Patient/P1");
+		assertThat(terser.getCompartmentOwnersForResource("Patient", patient), containsInAnyOrder("Patient/P1"));
+	}
+
 	@Test
 	public void testClear() {
 		Bundle input = new Bundle();